@@ -3,6 +3,7 @@ package com.zhss.microservice.client.config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.zhss.microservice.client.network.Server;
+import com.zhss.microservice.common.entity.Request;
 import com.zhss.microservice.common.utils.StringUtils;
 
 import java.io.File;
@@ -41,6 +42,63 @@ public class Configuration {
      * 发送心跳的时间间隔
      */
     public static final String HEARTBEAT_INTERVAL = "heartbeat.interval";
+    /**
+     * 给服务端发送消息时，一次批量写最多发送的消息数量
+     */
+    public static final String WRITE_BATCH_MESSAGES = "write.batch.messages";
+    /**
+     * 给服务端发送消息时，一次批量写最多发送的字节数
+     */
+    public static final String WRITE_BATCH_BYTES = "write.batch.bytes";
+    /**
+     * 读取服务端消息的buffer池是否使用堆外内存
+     */
+    public static final String READ_BUFFER_DIRECT = "read.buffer.direct";
+    /**
+     * 请求等待响应的超时时间，单位是毫秒
+     */
+    public static final String REQUEST_TIMEOUT = "request.timeout";
+    /**
+     * 跟server通信使用的协议版本，1是32字节的uuid请求id，2是8字节的long请求id
+     */
+    public static final String PROTOCOL_VERSION = "protocol.version";
+    /**
+     * 是否把本机所有服务实例的心跳合并成批量心跳发送
+     */
+    public static final String HEARTBEAT_BATCH_ENABLED = "heartbeat.batch.enabled";
+    /**
+     * 心跳合并窗口，单位是毫秒
+     */
+    public static final String HEARTBEAT_FLUSH_WINDOW = "heartbeat.flush.window";
+
+    /**
+     * 一次批量写最多发送的消息数量的默认值
+     */
+    public static final Integer DEFAULT_WRITE_BATCH_MESSAGES = 64;
+    /**
+     * 一次批量写最多发送的字节数的默认值
+     */
+    public static final Integer DEFAULT_WRITE_BATCH_BYTES = 256 * 1024;
+    /**
+     * 读取服务端消息的buffer池是否使用堆外内存的默认值
+     */
+    public static final Boolean DEFAULT_READ_BUFFER_DIRECT = false;
+    /**
+     * 请求超时时间的默认值
+     */
+    public static final Integer DEFAULT_REQUEST_TIMEOUT = 10000;
+    /**
+     * 协议版本的默认值
+     */
+    public static final Integer DEFAULT_PROTOCOL_VERSION = Request.PROTOCOL_VERSION_2;
+    /**
+     * 是否合并心跳的默认值
+     */
+    public static final Boolean DEFAULT_HEARTBEAT_BATCH_ENABLED = true;
+    /**
+     * 心跳合并窗口的默认值
+     */
+    public static final Integer DEFAULT_HEARTBEAT_FLUSH_WINDOW = 100;
 
     /**
      * controller候选节点列表
@@ -62,6 +120,34 @@ public class Configuration {
      * 心跳间隔
      */
     private Integer heartbeatInterval;
+    /**
+     * 一次批量写最多发送的消息数量
+     */
+    private Integer writeBatchMessages;
+    /**
+     * 一次批量写最多发送的字节数
+     */
+    private Integer writeBatchBytes;
+    /**
+     * 读取服务端消息的buffer池是否使用堆外内存
+     */
+    private Boolean readBufferDirect;
+    /**
+     * 请求等待响应的超时时间
+     */
+    private Integer requestTimeout;
+    /**
+     * 跟server通信使用的协议版本
+     */
+    private Integer protocolVersion;
+    /**
+     * 是否合并心跳
+     */
+    private Boolean heartbeatBatchEnabled;
+    /**
+     * 心跳合并窗口
+     */
+    private Integer heartbeatFlushWindow;
 
     /**
      * 单例
@@ -134,6 +220,55 @@ public class Configuration {
                 this.heartbeatInterval = Integer.valueOf(heartbeatInterval);
                 LOGGER.debug("debug模式：heartbeat.interval=" + heartbeatInterval);
             }
+
+            // 校验一次批量写最多发送的消息数量
+            String writeBatchMessages = configProperties.getProperty(WRITE_BATCH_MESSAGES);
+            if(validatePositiveNumber(WRITE_BATCH_MESSAGES, writeBatchMessages)) {
+                this.writeBatchMessages = Integer.valueOf(writeBatchMessages);
+                LOGGER.debug("debug模式：write.batch.messages=" + writeBatchMessages);
+            }
+
+            // 校验一次批量写最多发送的字节数
+            String writeBatchBytes = configProperties.getProperty(WRITE_BATCH_BYTES);
+            if(validatePositiveNumber(WRITE_BATCH_BYTES, writeBatchBytes)) {
+                this.writeBatchBytes = Integer.valueOf(writeBatchBytes);
+                LOGGER.debug("debug模式：write.batch.bytes=" + writeBatchBytes);
+            }
+
+            // 校验读取服务端消息的buffer池是否使用堆外内存
+            String readBufferDirect = configProperties.getProperty(READ_BUFFER_DIRECT);
+            if(validateBoolean(READ_BUFFER_DIRECT, readBufferDirect)) {
+                this.readBufferDirect = Boolean.valueOf(readBufferDirect);
+                LOGGER.debug("debug模式：read.buffer.direct=" + readBufferDirect);
+            }
+
+            // 校验请求超时时间
+            String requestTimeout = configProperties.getProperty(REQUEST_TIMEOUT);
+            if(validatePositiveNumber(REQUEST_TIMEOUT, requestTimeout)) {
+                this.requestTimeout = Integer.valueOf(requestTimeout);
+                LOGGER.debug("debug模式：request.timeout=" + requestTimeout);
+            }
+
+            // 校验协议版本
+            String protocolVersion = configProperties.getProperty(PROTOCOL_VERSION);
+            if(validateProtocolVersion(protocolVersion)) {
+                this.protocolVersion = Integer.valueOf(protocolVersion);
+                LOGGER.debug("debug模式：protocol.version=" + protocolVersion);
+            }
+
+            // 校验是否合并心跳
+            String heartbeatBatchEnabled = configProperties.getProperty(HEARTBEAT_BATCH_ENABLED);
+            if(validateBoolean(HEARTBEAT_BATCH_ENABLED, heartbeatBatchEnabled)) {
+                this.heartbeatBatchEnabled = Boolean.valueOf(heartbeatBatchEnabled);
+                LOGGER.debug("debug模式：heartbeat.batch.enabled=" + heartbeatBatchEnabled);
+            }
+
+            // 校验心跳合并窗口
+            String heartbeatFlushWindow = configProperties.getProperty(HEARTBEAT_FLUSH_WINDOW);
+            if(validatePositiveNumber(HEARTBEAT_FLUSH_WINDOW, heartbeatFlushWindow)) {
+                this.heartbeatFlushWindow = Integer.valueOf(heartbeatFlushWindow);
+                LOGGER.debug("debug模式：heartbeat.flush.window=" + heartbeatFlushWindow);
+            }
         } catch(IllegalArgumentException e) {
             LOGGER.error("parsing config file error", e);
         } catch (FileNotFoundException e) {
@@ -231,6 +366,51 @@ public class Configuration {
         return true;
     }
 
+    /**
+     * 校验可选的正整数配置项，没有配置的时候返回false，使用默认值
+     */
+    private Boolean validatePositiveNumber(String name, String value) throws IllegalArgumentException {
+        if(StringUtils.isEmpty(value)) {
+            return false;
+        }
+
+        final String regex = "(\\d+)";
+
+        Boolean isMatch = Pattern.matches(regex, value);
+        if(!isMatch || Integer.valueOf(value) <= 0) {
+            throw new IllegalArgumentException(name + " must be a positive number: " + value);
+        }
+
+        return true;
+    }
+
+    /**
+     * 校验可选的布尔类型配置项，没有配置的时候返回false，使用默认值
+     */
+    private Boolean validateBoolean(String name, String value) throws IllegalArgumentException {
+        if(StringUtils.isEmpty(value)) {
+            return false;
+        }
+        if(value.equals("true") || value.equals("false")) {
+            return true;
+        }
+        throw new IllegalArgumentException(name + " must be true or false: " + value);
+    }
+
+    /**
+     * 校验协议版本，没有配置的时候返回false，使用默认值
+     */
+    private Boolean validateProtocolVersion(String protocolVersion) throws IllegalArgumentException {
+        if(StringUtils.isEmpty(protocolVersion)) {
+            return false;
+        }
+        if(protocolVersion.equals(String.valueOf(Request.PROTOCOL_VERSION_1))
+                || protocolVersion.equals(String.valueOf(Request.PROTOCOL_VERSION_2))) {
+            return true;
+        }
+        throw new IllegalArgumentException(PROTOCOL_VERSION + " must be 1 or 2: " + protocolVersion);
+    }
+
     /**
      * 校验服务名称
      */
@@ -269,4 +449,53 @@ public class Configuration {
         return heartbeatInterval;
     }
 
+    public Integer getWriteBatchMessages() {
+        if(writeBatchMessages == null) {
+            return DEFAULT_WRITE_BATCH_MESSAGES;
+        }
+        return writeBatchMessages;
+    }
+
+    public Integer getWriteBatchBytes() {
+        if(writeBatchBytes == null) {
+            return DEFAULT_WRITE_BATCH_BYTES;
+        }
+        return writeBatchBytes;
+    }
+
+    public Boolean isReadBufferDirect() {
+        if(readBufferDirect == null) {
+            return DEFAULT_READ_BUFFER_DIRECT;
+        }
+        return readBufferDirect;
+    }
+
+    public Integer getRequestTimeout() {
+        if(requestTimeout == null) {
+            return DEFAULT_REQUEST_TIMEOUT;
+        }
+        return requestTimeout;
+    }
+
+    public Integer getProtocolVersion() {
+        if(protocolVersion == null) {
+            return DEFAULT_PROTOCOL_VERSION;
+        }
+        return protocolVersion;
+    }
+
+    public Boolean isHeartbeatBatchEnabled() {
+        if(heartbeatBatchEnabled == null) {
+            return DEFAULT_HEARTBEAT_BATCH_ENABLED;
+        }
+        return heartbeatBatchEnabled;
+    }
+
+    public Integer getHeartbeatFlushWindow() {
+        if(heartbeatFlushWindow == null) {
+            return DEFAULT_HEARTBEAT_FLUSH_WINDOW;
+        }
+        return heartbeatFlushWindow;
+    }
+
 }
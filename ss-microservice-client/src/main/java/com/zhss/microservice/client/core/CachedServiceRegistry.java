@@ -1,11 +1,18 @@
 package com.zhss.microservice.client.core;
 
+import com.zhss.microservice.common.entity.Request;
+
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 客户端缓存的服务注册表
+ *
+ * 缓存的地址列表不会被修改，每次变动都是换成一个新的列表，读取的时候不需要加锁
  */
 public class CachedServiceRegistry {
 
@@ -26,6 +33,11 @@ public class CachedServiceRegistry {
      */
     private Map<String, List<ServiceInstanceAddress>> serviceRegistry =
             new ConcurrentHashMap<>();
+    /**
+     * 缓存的地址列表对应的服务版本号
+     */
+    private Map<String, Long> serviceVersions =
+            new ConcurrentHashMap<>();
 
     /**
      * 判断服务名称是否缓存过
@@ -52,7 +64,80 @@ public class CachedServiceRegistry {
      */
     public void cache(String serviceName,
                       List<ServiceInstanceAddress> serviceInstanceAddresses) {
+        cache(serviceName, serviceInstanceAddresses, Request.UNKNOWN_SERVICE_VERSION);
+    }
+
+    /**
+     * 缓存某个版本的服务实例地址列表，比已经缓存的版本旧的地址列表直接丢弃
+     * @param serviceName
+     * @param serviceInstanceAddresses
+     * @param serviceVersion 老版本的server不会带上版本号
+     */
+    public synchronized void cache(String serviceName,
+                                   List<ServiceInstanceAddress> serviceInstanceAddresses,
+                                   long serviceVersion) {
+        if(serviceVersion == Request.UNKNOWN_SERVICE_VERSION) {
+            serviceVersions.remove(serviceName);
+        } else {
+            Long cachedVersion = serviceVersions.get(serviceName);
+            if(cachedVersion != null && cachedVersion > serviceVersion) {
+                return;
+            }
+            serviceVersions.put(serviceName, serviceVersion);
+        }
         serviceRegistry.put(serviceName, serviceInstanceAddresses);
     }
 
+    /**
+     * 在缓存的地址列表上应用一次增量变动
+     * @param serviceName
+     * @param fromVersion 变动之前的版本号
+     * @param toVersion 变动之后的版本号
+     * @param addedAddresses
+     * @param removedAddresses
+     * @return 缓存的版本号不是fromVersion的时候返回false，需要重新拉取完整的地址列表
+     */
+    public synchronized boolean applyDelta(String serviceName,
+                                           long fromVersion,
+                                           long toVersion,
+                                           List<ServiceInstanceAddress> addedAddresses,
+                                           List<ServiceInstanceAddress> removedAddresses) {
+        Long cachedVersion = serviceVersions.get(serviceName);
+        List<ServiceInstanceAddress> cachedAddresses = serviceRegistry.get(serviceName);
+        if(cachedVersion == null || cachedAddresses == null) {
+            return false;
+        }
+        // 重复收到已经应用过的变动，直接忽略
+        if(cachedVersion >= toVersion) {
+            return true;
+        }
+        if(cachedVersion != fromVersion) {
+            return false;
+        }
+
+        Set<ServiceInstanceAddress> removed = new HashSet<>(removedAddresses);
+        List<ServiceInstanceAddress> serviceInstanceAddresses = new ArrayList<>(
+                cachedAddresses.size() + addedAddresses.size());
+        for(ServiceInstanceAddress serviceInstanceAddress : cachedAddresses) {
+            if(!removed.contains(serviceInstanceAddress)) {
+                serviceInstanceAddresses.add(serviceInstanceAddress);
+            }
+        }
+        serviceInstanceAddresses.addAll(addedAddresses);
+
+        serviceRegistry.put(serviceName, serviceInstanceAddresses);
+        serviceVersions.put(serviceName, toVersion);
+        return true;
+    }
+
+    /**
+     * 获取缓存的服务版本号
+     * @param serviceName
+     * @return 没有缓存或者版本号未知的时候返回UNKNOWN_SERVICE_VERSION
+     */
+    public long getVersion(String serviceName) {
+        Long serviceVersion = serviceVersions.get(serviceName);
+        return serviceVersion == null ? Request.UNKNOWN_SERVICE_VERSION : serviceVersion;
+    }
+
 }
@@ -0,0 +1,160 @@
+package com.zhss.microservice.client.core;
+
+import com.zhss.microservice.client.config.Configuration;
+import com.zhss.microservice.client.network.Server;
+import com.zhss.microservice.common.entity.BatchHeartbeatRequest;
+import com.zhss.microservice.common.entity.BatchHeartbeatResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 心跳合并组件
+ *
+ * 本机所有服务实例的心跳先放到这里，每个合并窗口结束的时候
+ * 把发往同一个server的心跳合并成一个批量心跳请求发送出去
+ */
+public class HeartbeatAggregator {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeartbeatAggregator.class);
+
+    private HeartbeatAggregator() {
+        HeartbeatFlushThread heartbeatFlushThread = new HeartbeatFlushThread();
+        heartbeatFlushThread.setDaemon(true);
+        heartbeatFlushThread.start();
+    }
+
+    static class Singleton {
+        static HeartbeatAggregator instance = new HeartbeatAggregator();
+    }
+
+    public static HeartbeatAggregator getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 等待合并发送的心跳
+     */
+    private ConcurrentLinkedQueue<PendingHeartbeat> pendingHeartbeats =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * 提交一个服务实例的心跳，等到合并窗口结束的时候再发送
+     * @param serviceInstance 发送心跳用的客户端，需要已经连接上了server
+     * @param server 服务实例路由到的server
+     * @param serviceName
+     * @param serviceInstanceIp
+     * @param serviceInstancePort
+     */
+    public void offer(ServiceInstance serviceInstance,
+                      Server server,
+                      String serviceName,
+                      String serviceInstanceIp,
+                      Integer serviceInstancePort) {
+        pendingHeartbeats.offer(new PendingHeartbeat(serviceInstance, server,
+                serviceName, serviceInstanceIp, serviceInstancePort));
+    }
+
+    /**
+     * 把等待发送的心跳按照server分组，每个server发送一个批量心跳请求
+     * @return 发送的批量心跳请求数量
+     */
+    public int flush() {
+        Map<String, Map<String, PendingHeartbeat>> heartbeatsByServer = new LinkedHashMap<>();
+        PendingHeartbeat pendingHeartbeat;
+        while((pendingHeartbeat = pendingHeartbeats.poll()) != null) {
+            // 同一个服务实例在一个窗口里提交了多次心跳，只发送一次
+            heartbeatsByServer
+                    .computeIfAbsent(pendingHeartbeat.server.getRemoteSocketAddress(), key -> new LinkedHashMap<>())
+                    .put(pendingHeartbeat.getServiceInstanceId(), pendingHeartbeat);
+        }
+
+        Configuration configuration = Configuration.getInstance();
+        for(Map<String, PendingHeartbeat> serverHeartbeats : heartbeatsByServer.values()) {
+            List<PendingHeartbeat> heartbeats = new ArrayList<>(serverHeartbeats.values());
+            PendingHeartbeat first = heartbeats.get(0);
+
+            BatchHeartbeatRequest.Builder requestBuilder = new BatchHeartbeatRequest.Builder()
+                    .protocolVersion(configuration.getProtocolVersion());
+            for(PendingHeartbeat heartbeat : heartbeats) {
+                requestBuilder.heartbeat(heartbeat.serviceName,
+                        heartbeat.serviceInstanceIp, heartbeat.serviceInstancePort);
+            }
+            BatchHeartbeatRequest request = requestBuilder.build();
+
+            first.serviceInstance.sendRequestAsync(request, first.server, configuration.getRequestTimeout())
+                    .whenComplete((response, e) -> {
+                        if(e != null) {
+                            LOGGER.error("批量心跳发送失败：" + first.server, e);
+                            return;
+                        }
+                        BatchHeartbeatResponse batchHeartbeatResponse = (BatchHeartbeatResponse) response;
+                        for(Integer failedEntry : batchHeartbeatResponse.getFailedEntries()) {
+                            LOGGER.warn("服务实例心跳失败：" + request.getEntries().get(failedEntry));
+                        }
+                    });
+        }
+
+        return heartbeatsByServer.size();
+    }
+
+    /**
+     * 等待合并发送的一个心跳
+     */
+    static class PendingHeartbeat {
+
+        final ServiceInstance serviceInstance;
+        final Server server;
+        final String serviceName;
+        final String serviceInstanceIp;
+        final Integer serviceInstancePort;
+
+        PendingHeartbeat(ServiceInstance serviceInstance,
+                         Server server,
+                         String serviceName,
+                         String serviceInstanceIp,
+                         Integer serviceInstancePort) {
+            this.serviceInstance = serviceInstance;
+            this.server = server;
+            this.serviceName = serviceName;
+            this.serviceInstanceIp = serviceInstanceIp;
+            this.serviceInstancePort = serviceInstancePort;
+        }
+
+        String getServiceInstanceId() {
+            return serviceName + "_" + serviceInstanceIp + "_" + serviceInstancePort;
+        }
+
+    }
+
+    /**
+     * 每个合并窗口发送一次心跳的线程
+     */
+    class HeartbeatFlushThread extends Thread {
+
+        HeartbeatFlushThread() {
+            super("heartbeat-flush");
+        }
+
+        @Override
+        public void run() {
+            Integer heartbeatFlushWindow = Configuration.getInstance().getHeartbeatFlushWindow();
+
+            while(true) {
+                try {
+                    Thread.sleep(heartbeatFlushWindow);
+                    flush();
+                } catch(Exception e) {
+                    LOGGER.error("heartbeat flush thread error......", e);
+                }
+            }
+        }
+
+    }
+
+}
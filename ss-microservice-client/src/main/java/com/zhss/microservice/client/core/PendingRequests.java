@@ -0,0 +1,150 @@
+package com.zhss.microservice.client.core;
+
+import com.zhss.microservice.common.entity.OverloadResponse;
+import com.zhss.microservice.common.entity.Response;
+import com.zhss.microservice.common.utils.LongObjectHashMap;
+import com.zhss.microservice.common.utils.TimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 发送出去还没有收到响应的请求
+ *
+ * 发送请求的时候登记一个future，IO线程收到响应之后完成这个future
+ * 超时没有收到响应的请求由时间轮清理掉，避免一直占着内存
+ * 请求id是long，直接用long做key，不用为每个请求装箱一个key
+ */
+public class PendingRequests {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PendingRequests.class);
+
+    /**
+     * 时间轮每个tick的毫秒数
+     */
+    private static final long TIMEOUT_TICK_MILLIS = 100L;
+    /**
+     * 时间轮的槽位数量
+     */
+    private static final int TIMEOUT_WHEEL_SIZE = 512;
+
+    /**
+     * 请求id -> 等待响应的future，访问的时候锁住自己
+     */
+    private final LongObjectHashMap<PendingRequest> pendingRequests =
+            new LongObjectHashMap<>(1024);
+    /**
+     * 请求超时的时间轮
+     */
+    private TimerWheel<PendingRequest> timeoutWheel = new TimerWheel<>(
+            TIMEOUT_TICK_MILLIS, TIMEOUT_WHEEL_SIZE, System.currentTimeMillis());
+
+    public PendingRequests() {
+        RequestTimeoutThread requestTimeoutThread = new RequestTimeoutThread();
+        requestTimeoutThread.setDaemon(true);
+        requestTimeoutThread.start();
+    }
+
+    /**
+     * 登记一个发送出去的请求
+     * @param requestId
+     * @param timeoutMillis 超时时间
+     * @return 收到响应之后完成的future
+     */
+    public CompletableFuture<Response> add(long requestId, long timeoutMillis) {
+        PendingRequest pendingRequest = new PendingRequest(requestId);
+        synchronized(pendingRequests) {
+            pendingRequests.put(requestId, pendingRequest);
+        }
+        timeoutWheel.add(pendingRequest, System.currentTimeMillis() + timeoutMillis);
+        return pendingRequest;
+    }
+
+    /**
+     * 收到了一个响应
+     * @param response
+     */
+    public void complete(Response response) {
+        CompletableFuture<Response> future = remove(response.getRequestId());
+        if(future == null) {
+            LOGGER.warn("收到的响应没有对应的请求，可能已经超时了：" + response.getRequestId());
+            return;
+        }
+
+        // server端业务线程处理不过来，拒绝了这个请求
+        if(response instanceof OverloadResponse) {
+            future.completeExceptionally(new ServerOverloadException(
+                    "server过载，拒绝了请求：" + response.getRequestId()));
+            return;
+        }
+
+        future.complete(response);
+    }
+
+    /**
+     * 请求没有发送出去，直接失败
+     * @param requestId
+     * @param cause
+     */
+    public void fail(long requestId, Throwable cause) {
+        CompletableFuture<Response> future = remove(requestId);
+        if(future != null) {
+            future.completeExceptionally(cause);
+        }
+    }
+
+    private PendingRequest remove(long requestId) {
+        synchronized(pendingRequests) {
+            return pendingRequests.remove(requestId);
+        }
+    }
+
+    public int size() {
+        synchronized(pendingRequests) {
+            return pendingRequests.size();
+        }
+    }
+
+    /**
+     * 一个等待响应的请求，时间轮里放的也是它，不用再单独包装
+     */
+    static class PendingRequest extends CompletableFuture<Response> {
+
+        final long requestId;
+
+        PendingRequest(long requestId) {
+            this.requestId = requestId;
+        }
+
+    }
+
+    /**
+     * 请求超时处理线程
+     */
+    class RequestTimeoutThread extends Thread {
+
+        RequestTimeoutThread() {
+            super("request-timeout");
+        }
+
+        @Override
+        public void run() {
+            while(true) {
+                try {
+                    Thread.sleep(TIMEOUT_TICK_MILLIS);
+
+                    // 已经收到响应的请求不在map里了，到期的时候直接忽略掉
+                    timeoutWheel.advance(System.currentTimeMillis(), pendingRequest ->
+                            fail(pendingRequest.requestId, new TimeoutException(
+                                    "请求超时没有收到响应：" + pendingRequest.requestId)));
+                } catch(Exception e) {
+                    LOGGER.error("request timeout thread error......", e);
+                }
+            }
+        }
+
+    }
+
+}
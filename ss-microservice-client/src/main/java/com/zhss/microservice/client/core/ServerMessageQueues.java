@@ -45,6 +45,10 @@ public class ServerMessageQueues {
     public void offer(String serverConnectionId, Message message) {
         LinkedBlockingQueue<Message> messageQueue =
                 messageQueues.get(serverConnectionId);
+        // 连接已经关闭了
+        if(messageQueue == null) {
+            return;
+        }
         messageQueue.offer(message);
     }
 
@@ -57,4 +61,12 @@ public class ServerMessageQueues {
         return messageQueues.get(serverConnectionId);
     }
 
+    /**
+     * 删除消息队列
+     * @param serverConnectionId
+     */
+    public void remove(String serverConnectionId) {
+        messageQueues.remove(serverConnectionId);
+    }
+
 }
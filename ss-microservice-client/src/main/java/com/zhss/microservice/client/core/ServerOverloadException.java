@@ -0,0 +1,14 @@
+package com.zhss.microservice.client.core;
+
+/**
+ * server端过载拒绝请求的异常
+ */
+public class ServerOverloadException extends Exception {
+
+    private static final long serialVersionUID = 1L;
+
+    public ServerOverloadException(String msg) {
+        super(msg);
+    }
+
+}
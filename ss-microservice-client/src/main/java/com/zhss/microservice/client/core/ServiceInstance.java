@@ -2,6 +2,9 @@ package com.zhss.microservice.client.core;
 
 import com.zhss.microservice.client.network.ServerRequestProcessor;
 import com.zhss.microservice.common.entity.*;
+import com.zhss.microservice.common.network.ByteBufferPool;
+import com.zhss.microservice.common.network.MessageBatchWriter;
+import com.zhss.microservice.common.utils.SlotRoutingTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.zhss.microservice.client.config.Configuration;
@@ -11,14 +14,17 @@ import com.zhss.microservice.client.network.ServerConnectionManager;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 代表服务实例的一个客户端
@@ -27,8 +33,8 @@ public class ServiceInstance {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ServiceInstance.class);
     private static final Long SELECTOR_TIMEOUT = 5000L;
-    private static final Long REQUEST_WAIT_SLEEP_INTERVAL = 10L;
-    private static final Integer SLOT_COUNT = 16384;
+    private static final Integer MAX_POOLED_READ_BUFFER_SIZE = 64 * 1024;
+    private static final Integer MAX_FREE_READ_BUFFERS_PER_SIZE_CLASS = 8;
 
     /**
      * NIO多路复用组件
@@ -39,15 +45,26 @@ public class ServiceInstance {
      */
     private ServerConnectionManager serverConnectionManager;
     /**
-     * 发送出去的请求以及对应的响应
-     * bug2：每个请求的响应在收到处理完毕之后，需要从map里删除掉，避免内存泄漏
+     * 发送出去还没有收到响应的请求，超时的请求会被自动清理掉
      */
-    private ConcurrentHashMap<String, Response> responses =
-            new ConcurrentHashMap<String, Response>();
+    private PendingRequests pendingRequests = new PendingRequests();
+    /**
+     * 跟server通信使用的协议版本
+     */
+    private int protocolVersion = Configuration.getInstance().getProtocolVersion();
+    /**
+     * 有消息等待发送的服务端连接
+     */
+    private ConcurrentLinkedQueue<ServerConnection> pendingWriteConnections =
+            new ConcurrentLinkedQueue<>();
     /**
      * 槽位分配数据
      */
     private Map<Integer, List<String>> slotsAllocation;
+    /**
+     * 按照槽位分配数据展开的槽位路由表，槽位分配数据变动的时候整个替换掉
+     */
+    private volatile SlotRoutingTable slotRoutingTable;
     /**
      * server地址列表
      */
@@ -109,7 +126,9 @@ public class ServiceInstance {
      */
     private Integer fetchServerNodeId(Server controllerCandidate)
             throws Exception {
-        FetchServerNodeIdRequest request = new FetchServerNodeIdRequest.Builder().build();
+        FetchServerNodeIdRequest request = new FetchServerNodeIdRequest.Builder()
+                .protocolVersion(protocolVersion)
+                .build();
         FetchServerNodeIdResponse response = (FetchServerNodeIdResponse)
                 sendRequest(request, controllerCandidate);
         return response.getServerNodeId();
@@ -128,25 +147,20 @@ public class ServiceInstance {
         // 构建服务注册请求
         RegisterRequest.Builder requestBuilder = new RegisterRequest.Builder();
         RegisterRequest request = requestBuilder
+                .protocolVersion(protocolVersion)
                 .serviceName(serviceName)
                 .serviceInstanceIp(serviceInstanceIp)
                 .serviceInstancePort(serviceInstancePort)
                 .build();
 
         // 将服务注册请求发送到自己slot所在的server上去
-        ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
-        serverMessageQueues.offer(serverConnection.getConnectionId(), request);
-
         LOGGER.info("准备发送服务注册请求，开始等待服务注册的响应结果......");
 
         // server端处理服务注册请求，返回响应
         // 等待服务注册响应的返回
-        while(responses.get(request.getId()) == null) {
-            Thread.sleep(REQUEST_WAIT_SLEEP_INTERVAL);
-        }
+        sendRequest(request, server);
 
         LOGGER.info("服务注册已经成功......");
-        responses.remove(request.getId());
 
         return true;
     }
@@ -180,33 +194,59 @@ public class ServiceInstance {
 
         // 向指定的server发送过去subscribe请求
         SubscribeRequest request = new SubscribeRequest.Builder()
+                .protocolVersion(protocolVersion)
                 .serviceName(serviceName)
                 .build();
         SubscribeResponse response = (SubscribeResponse) sendRequest(request, server);
 
-        // 对服务实例地址的结果进行处理
-        List<ServiceInstanceAddress> serviceInstanceAddresses = new ArrayList<ServiceInstanceAddress>();
-
-        for(String serviceInstanceAddressInfo : response.getServiceInstanceAddresses()) {
-            String[] serviceInstanceAddressInfoSplited =
-                    serviceInstanceAddressInfo.split(",");
+        // 对服务实例地址进行本地缓存
+        List<ServiceInstanceAddress> serviceInstanceAddresses = cacheSubscribeResponse(serviceName, response);
+        LOGGER.info("获取到服务【" + serviceName + "】的最新实例地址列表：" + serviceInstanceAddresses);
 
-            ServiceInstanceAddress serviceInstanceAddress = new ServiceInstanceAddress(
-                    serviceInstanceAddressInfoSplited[0],
-                    serviceInstanceAddressInfoSplited[1],
-                    Integer.parseInt(serviceInstanceAddressInfoSplited[2])
-            );
+        return serviceInstanceAddresses;
+    }
 
-            serviceInstanceAddresses.add(serviceInstanceAddress);
+    /**
+     * 把订阅响应里的地址列表放到本地缓存里
+     * @param serviceName
+     * @param response
+     * @return
+     */
+    private List<ServiceInstanceAddress> cacheSubscribeResponse(String serviceName, SubscribeResponse response) {
+        List<ServiceInstanceAddress> serviceInstanceAddresses = new ArrayList<ServiceInstanceAddress>();
+        for(String serviceInstanceAddressInfo : response.getServiceInstanceAddresses()) {
+            serviceInstanceAddresses.add(ServiceInstanceAddress.parse(serviceInstanceAddressInfo));
         }
 
-        // 对服务实例地址进行本地缓存
-        cachedServiceRegistry.cache(serviceName, serviceInstanceAddresses);
-        LOGGER.info("获取到服务【" + serviceName + "】的最新实例地址列表：" + serviceInstanceAddresses);
-
+        CachedServiceRegistry cachedServiceRegistry = CachedServiceRegistry.getInstance();
+        cachedServiceRegistry.cache(serviceName, serviceInstanceAddresses, response.getServiceVersion());
         return serviceInstanceAddresses;
     }
 
+    /**
+     * 增量推送的版本号对不上，在同一个连接上重新订阅，拉取完整的地址列表
+     * @param serverConnection
+     * @param serviceName
+     */
+    private void resubscribe(ServerConnection serverConnection, String serviceName) {
+        SubscribeRequest request = new SubscribeRequest.Builder()
+                .protocolVersion(protocolVersion)
+                .serviceName(serviceName)
+                .build();
+
+        pendingRequests.add(request.getId(), Configuration.getInstance().getRequestTimeout())
+                .whenComplete((response, e) -> {
+                    if(e != null) {
+                        LOGGER.error("重新订阅服务【" + serviceName + "】失败", e);
+                        return;
+                    }
+                    List<ServiceInstanceAddress> serviceInstanceAddresses =
+                            cacheSubscribeResponse(serviceName, (SubscribeResponse) response);
+                    LOGGER.info("重新订阅服务【" + serviceName + "】，最新实例地址列表：" + serviceInstanceAddresses);
+                });
+        sendMessage(serverConnection, request);
+    }
+
     /**
      * 获取服务名称下最新的服务实例地址列表
      * @param serviceName
@@ -218,73 +258,69 @@ public class ServiceInstance {
     }
 
     /**
-     * 发送请求到指定的server去
+     * 发送请求到指定的server去，同步等待响应
      * @param request
      * @param server
      */
     private Response sendRequest(Request request, Server server) throws Exception {
-        ServerConnection serverConnection = serverConnectionManager
-                .getServerConnection(server.getRemoteSocketAddress());
-
-        ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
-        serverMessageQueues.offer(serverConnection.getConnectionId(), request);
-
-        while(responses.get(request.getId()) == null) {
-            Thread.sleep(REQUEST_WAIT_SLEEP_INTERVAL);
+        long timeout = Configuration.getInstance().getRequestTimeout();
+        try {
+            return sendRequestAsync(request, server, timeout).get();
+        } catch(ExecutionException e) {
+            // 把超时、server过载之类的真实异常抛出去
+            if(e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
         }
-
-        Response response = responses.get(request.getId());
-        responses.remove(request.getId());
-
-        return response;
     }
 
     /**
-     * 将服务实例路由到一个server节点
+     * 发送请求到指定的server去，不等待响应
+     * @param request
+     * @param server
+     * @param timeoutMillis 超时没有收到响应，future会以TimeoutException失败
+     * @return 收到响应之后完成的future
      */
-    private Server routeServer(String serviceName) {
-        Integer slot = routeSlot(serviceName);
-        Integer serverId = locateServerBySlot(slot);
-        Server server = servers.get(serverId);
-        LOGGER.info("服务实例路由到server节点：" + server);
-        return server;
+    public CompletableFuture<Response> sendRequestAsync(Request request, Server server, long timeoutMillis) {
+        CompletableFuture<Response> future = pendingRequests.add(request.getId(), timeoutMillis);
+
+        ServerConnection serverConnection = serverConnectionManager
+                .getServerConnection(server.getRemoteSocketAddress());
+        if(serverConnection == null) {
+            pendingRequests.fail(request.getId(), new IOException("还没有跟server建立连接：" + server));
+            return future;
+        }
+
+        sendMessage(serverConnection, request);
+        return future;
     }
 
     /**
-     * 把服务路由到一个槽位
-     * @return
+     * 把消息放入服务端连接的消息队列，并通知IO线程去发送
+     *
+     * 一个连接在被IO线程处理之前，不管放进来多少条消息都只会通知一次
+     * @param serverConnection
+     * @param message
      */
-    private Integer routeSlot(String serviceName) {
-        int hashCode = serviceName.hashCode() & Integer.MAX_VALUE;
-        Integer slot = hashCode % SLOT_COUNT;
+    private void sendMessage(ServerConnection serverConnection, Message message) {
+        ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
+        serverMessageQueues.offer(serverConnection.getConnectionId(), message);
 
-        if(slot == 0) {
-            slot = slot + 1;
+        if(serverConnection.getWriteScheduled().compareAndSet(false, true)) {
+            pendingWriteConnections.offer(serverConnection);
+            selector.wakeup();
         }
-
-        return slot;
     }
 
     /**
-     * 根据槽位定位master节点
-     * @param slot
-     * @return
+     * 将服务实例路由到一个server节点
      */
-    private Integer locateServerBySlot(Integer slot) {
-        for(Integer serverNodeId : slotsAllocation.keySet()) {
-            List<String> slotsList = slotsAllocation.get(serverNodeId);
-
-            for(String slots : slotsList) {
-                String[] slotsSpited = slots.split(",");
-                Integer startSlot = Integer.valueOf(slotsSpited[0]);
-                Integer endSlot = Integer.valueOf(slotsSpited[1]);
-
-                if(slot >= startSlot && slot <= endSlot) {
-                    return serverNodeId;
-                }
-            }
-        }
-        return null;
+    private Server routeServer(String serviceName) {
+        int serverId = slotRoutingTable.getNodeId(serviceName);
+        Server server = servers.get(serverId);
+        LOGGER.info("服务实例路由到server节点：" + server);
+        return server;
     }
 
     /**
@@ -306,7 +342,7 @@ public class ServiceInstance {
      * 跟指定的server建立长连接
      * @param server
      */
-    private ServerConnection connectServer(Server server) throws IOException {
+    private ServerConnection connectServer(Server server) throws Exception {
         // 向server节点发起连接请求
         InetSocketAddress address = new InetSocketAddress(
                 server.getAddress(), server.getPort());
@@ -315,25 +351,25 @@ public class ServiceInstance {
         socketChannel.configureBlocking(false);
         socketChannel.socket().setSoLinger(false, -1);
         socketChannel.socket().setTcpNoDelay(true);
-        socketChannel.register(selector, SelectionKey.OP_CONNECT);
+
+        // IO线程完成连接之后会完成这个future
+        CompletableFuture<ServerConnection> connectFuture = new CompletableFuture<>();
+        socketChannel.register(selector, SelectionKey.OP_CONNECT, connectFuture);
 
         socketChannel.connect(address);
+        selector.wakeup();
         LOGGER.info("正在尝试连接到server节点: " + server);
 
         // 等待跟server节点建立连接
-        String remoteSocketAddress = server.getRemoteSocketAddress();
-        ServerConnection serverConnection = null;
-        boolean finishedConnect = false;
-
-        while(!finishedConnect) {
-            serverConnection = serverConnectionManager
-                    .getServerConnection(remoteSocketAddress);
-            if(serverConnection != null) {
-                finishedConnect = true;
-            }
+        long timeout = Configuration.getInstance().getRequestTimeout();
+        try {
+            return connectFuture.get(timeout, TimeUnit.MILLISECONDS);
+        } catch(TimeoutException e) {
+            socketChannel.close();
+            throw new IOException("连接server节点超时：" + server, e);
+        } catch(ExecutionException e) {
+            throw new IOException("连接server节点失败：" + server, e.getCause());
         }
-
-        return serverConnection;
     }
 
     /**
@@ -341,10 +377,13 @@ public class ServiceInstance {
      */
     private void fetchSlotsAllocation(Server controllerCandidate) throws Exception {
         FetchSlotsAllocationRequest request =
-                new FetchSlotsAllocationRequest.Builder().build();
+                new FetchSlotsAllocationRequest.Builder()
+                        .protocolVersion(protocolVersion)
+                        .build();
         FetchSlotsAllocationResponse response = (FetchSlotsAllocationResponse)
                 sendRequest(request, controllerCandidate);
         this.slotsAllocation = response.getSlotsAllocation();
+        this.slotRoutingTable = SlotRoutingTable.build(slotsAllocation);
         LOGGER.info("拉取到槽位分配数据: " + slotsAllocation);
     }
 
@@ -356,7 +395,9 @@ public class ServiceInstance {
      */
     private void fetchServerAddresses(Server controllerCandidate) throws Exception {
         FetchServerAddressesRequest request =
-                new FetchServerAddressesRequest.Builder().build();
+                new FetchServerAddressesRequest.Builder()
+                        .protocolVersion(protocolVersion)
+                        .build();
         FetchServerAddressesResponse response = (FetchServerAddressesResponse)
                 sendRequest(request, controllerCandidate);
 
@@ -393,8 +434,18 @@ public class ServiceInstance {
 
             while(true) {
                 try {
+                    // 交给心跳合并组件，跟本机其他服务实例的心跳合并成一个请求发送
+                    if(configuration.isHeartbeatBatchEnabled()) {
+                        HeartbeatAggregator heartbeatAggregator = HeartbeatAggregator.getInstance();
+                        heartbeatAggregator.offer(ServiceInstance.this, server,
+                                serviceName, serviceInstanceIp, serviceInstancePort);
+                        Thread.sleep(heartbeatInterval * 1000);
+                        continue;
+                    }
+
                     HeartbeatRequest.Builder requestBuilder = new HeartbeatRequest.Builder();
                     HeartbeatRequest request = requestBuilder
+                            .protocolVersion(protocolVersion)
                             .serviceName(serviceName)
                             .serviceInstanceIp(serviceInstanceIp)
                             .serviceInstancePort(serviceInstancePort)
@@ -415,9 +466,30 @@ public class ServiceInstance {
 
     /**
      * 负责网络IO的线程
+     *
+     * 连接平时只关注OP_READ事件，有消息要发送的时候由生产者通知IO线程直接去写
+     * 只有socket写缓冲满了写不完的时候才关注OP_WRITE事件，写完了再取消关注
      */
     class NetworkIOThread extends Thread {
 
+        /**
+         * 把排队的多条消息合并成一次write发送出去
+         */
+        private MessageBatchWriter messageBatchWriter = new MessageBatchWriter(
+                Configuration.getInstance().getWriteBatchMessages(),
+                Configuration.getInstance().getWriteBatchBytes());
+        /**
+         * 所有服务端连接读取消息共用的buffer池
+         */
+        private ByteBufferPool readBufferPool = new ByteBufferPool(
+                MAX_POOLED_READ_BUFFER_SIZE,
+                MAX_FREE_READ_BUFFERS_PER_SIZE_CLASS,
+                Configuration.getInstance().isReadBufferDirect());
+        /**
+         * 一次读取解析出来的消息，反复使用
+         */
+        private List<Message> readMessages = new ArrayList<>();
+
         @Override
         public void run() {
             // 把请求数据发送到server端
@@ -427,96 +499,191 @@ public class ServiceInstance {
                 try {
                     selector.select(SELECTOR_TIMEOUT);
 
+                    flushPendingWriteConnections();
+
                     Set<SelectionKey> selectionKeys = selector.selectedKeys();
                     if(selectionKeys == null || selectionKeys.isEmpty()) {
                         continue;
                     }
 
-                    for(SelectionKey selectionKey : selectionKeys) {
-                        // 处理跟server端的连接
-                        if((selectionKey.readyOps() & SelectionKey.OP_CONNECT) != 0) {
-                            if(selectionKey.isConnectable()) {
-                                SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
-                                if(socketChannel.finishConnect()) {
-                                    selectionKey.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-
-                                    serverConnection = new ServerConnection(selectionKey, socketChannel);
-
-                                    ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
-                                    serverMessageQueues.init(serverConnection.getConnectionId());
+                    Iterator<SelectionKey> selectionKeyIterator = selectionKeys.iterator();
 
-                                    selectionKey.attach(serverConnection);
+                    while(selectionKeyIterator.hasNext()) {
+                        SelectionKey selectionKey = selectionKeyIterator.next();
+                        selectionKeyIterator.remove();
 
-                                    serverConnectionManager.addServerConnection(serverConnection);
+                        if(!selectionKey.isValid()) {
+                            continue;
+                        }
 
-                                    LOGGER.info("已经跟server节点建立连接：" + socketChannel.socket() +  "......");
-                                }
-                            }
+                        // 处理跟server端的连接
+                        if(selectionKey.isConnectable()) {
+                            finishConnect(selectionKey);
                         }
                         // 读取服务端返回的响应
-                        if((selectionKey.readyOps() & SelectionKey.OP_READ) != 0) {
-                            if(selectionKey.isReadable()) {
-                                ServerConnection serverConnection = (ServerConnection)
-                                        selectionKey.attachment();
-
-                                Integer messageFlag = serverConnection.readMessageFlag();
-
-                                if(messageFlag != null) {
-                                    Message message = serverConnection.readMessage();
-                                    if (message != null) {
-                                        if(message instanceof Response) {
-                                            Response response = (Response) message;
-                                            responses.put(response.getRequestId(), response);
-                                        } else if(message instanceof Request) {
-                                            Request request = (Request) message;
-                                            ServerRequestProcessor serverRequestProcessor = ServerRequestProcessor.getInstance();
-                                            Response response = serverRequestProcessor.process(request);
-
-                                            ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
-                                            serverMessageQueues.offer(serverConnection.getConnectionId(), response);
-                                        }
-                                    }
-                                }
-                            }
+                        if(selectionKey.isValid() && selectionKey.isReadable()) {
+                            ServerConnection serverConnection = (ServerConnection)
+                                    selectionKey.attachment();
+                            readMessages(serverConnection);
                         }
-                        // 发送请求/响应给服务端
-                        if ((selectionKey.readyOps() & SelectionKey.OP_WRITE) != 0) {
-                            if(selectionKey.isWritable()) {
-                                ServerConnection serverConnection = (ServerConnection)
-                                        selectionKey.attachment();
-                                if(serverConnection == null) {
-                                    continue;
-                                }
-
-                                ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
-                                LinkedBlockingQueue<Message> messageQueue =
-                                        serverMessageQueues.get(serverConnection.getConnectionId());
-                                if(messageQueue.isEmpty()) {
-                                    continue;
-                                }
-
-                                Message message = messageQueue.peek();
-                                if(message == null) {
-                                    continue;
-                                }
-
-                                ByteBuffer requestData = message.getData();
-
-                                SocketChannel socketChannel = serverConnection.getSocketChannel();
-                                socketChannel.write(requestData);
-
-                                if(!requestData.hasRemaining()) {
-                                    messageQueue.poll();
-                                }
+                        // socket写缓冲又有空间了，继续发送没写完的消息
+                        if(selectionKey.isValid() && selectionKey.isWritable()) {
+                            ServerConnection serverConnection = (ServerConnection)
+                                    selectionKey.attachment();
+                            if(serverConnection != null) {
+                                writeMessages(serverConnection);
                             }
                         }
-
                     }
                 } catch(Exception e) {
                     LOGGER.error("client network io thread error......", e);
                 }
             }
         }
+
+        /**
+         * 完成跟server端的连接，通知等待连接的线程
+         * @param selectionKey
+         */
+        @SuppressWarnings("unchecked")
+        private void finishConnect(SelectionKey selectionKey) {
+            CompletableFuture<ServerConnection> connectFuture =
+                    (CompletableFuture<ServerConnection>) selectionKey.attachment();
+            SocketChannel socketChannel = (SocketChannel) selectionKey.channel();
+
+            try {
+                if(!socketChannel.finishConnect()) {
+                    return;
+                }
+            } catch(IOException e) {
+                LOGGER.error("连接server节点失败......", e);
+                selectionKey.cancel();
+                connectFuture.completeExceptionally(e);
+                return;
+            }
+
+            selectionKey.interestOps(SelectionKey.OP_READ);
+
+            ServerConnection serverConnection = new ServerConnection(selectionKey, socketChannel, readBufferPool);
+
+            ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
+            serverMessageQueues.init(serverConnection.getConnectionId());
+
+            selectionKey.attach(serverConnection);
+
+            serverConnectionManager.addServerConnection(serverConnection);
+
+            LOGGER.info("已经跟server节点建立连接：" + socketChannel.socket() +  "......");
+
+            connectFuture.complete(serverConnection);
+        }
+
+        /**
+         * 读取服务端发送过来的响应/请求
+         *
+         * 一次把socket里能读到的数据都读出来，解析出所有完整的消息再回到select
+         * @param serverConnection
+         */
+        private void readMessages(ServerConnection serverConnection) {
+            try {
+                boolean connected = serverConnection.readMessages(readMessages);
+
+                for(Message message : readMessages) {
+                    if(message instanceof Response) {
+                        pendingRequests.complete((Response) message);
+                    } else if(message instanceof Request) {
+                        Request request = (Request) message;
+                        ServerRequestProcessor serverRequestProcessor = ServerRequestProcessor.getInstance();
+                        Response response = serverRequestProcessor.process(request);
+
+                        sendMessage(serverConnection, response);
+
+                        if(response instanceof ServiceChangedDeltaResponse &&
+                                ServiceChangedDeltaResponse.RESYNC.equals(
+                                        ((ServiceChangedDeltaResponse) response).getResult())) {
+                            resubscribe(serverConnection, ((ServiceChangedDeltaRequest) request).getServiceName());
+                        }
+                    }
+                }
+
+                if(!connected) {
+                    LOGGER.error("server节点关闭了连接：" + serverConnection.getSocketChannel().socket() + "......");
+                    closeServerConnection(serverConnection);
+                }
+            } catch(Exception e) {
+                LOGGER.error("read server message error, close connection......", e);
+                closeServerConnection(serverConnection);
+            } finally {
+                readMessages.clear();
+            }
+        }
+
+        /**
+         * 关闭跟服务端的连接，清理连接相关的数据
+         * @param serverConnection
+         */
+        private void closeServerConnection(ServerConnection serverConnection) {
+            serverConnection.close();
+            serverConnectionManager.removeServerConnection(serverConnection);
+
+            ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
+            serverMessageQueues.remove(serverConnection.getConnectionId());
+        }
+
+        /**
+         * 发送所有有消息等待发送的连接的消息
+         */
+        private void flushPendingWriteConnections() {
+            ServerConnection serverConnection;
+            while((serverConnection = pendingWriteConnections.poll()) != null) {
+                // 先清理标记再发送，发送期间新放进来的消息会重新通知IO线程
+                serverConnection.getWriteScheduled().set(false);
+
+                if(!serverConnection.getSelectionKey().isValid()) {
+                    continue;
+                }
+                writeMessages(serverConnection);
+            }
+        }
+
+        /**
+         * 发送请求/响应给服务端
+         *
+         * 尽可能多的发送队列里的消息，直到队列空了或者socket写缓冲满了
+         * 排队的多条消息会凑成一批，通过一次write(ByteBuffer[])发送出去
+         * 写失败只关闭这一个连接，不影响其他连接的发送和这一轮select到的其他事件
+         * @param serverConnection
+         */
+        private void writeMessages(ServerConnection serverConnection) {
+            ServerMessageQueues serverMessageQueues = ServerMessageQueues.getInstance();
+            LinkedBlockingQueue<Message> messageQueue =
+                    serverMessageQueues.get(serverConnection.getConnectionId());
+            if(messageQueue == null) {
+                return;
+            }
+
+            boolean writeCompleted;
+            try {
+                writeCompleted = messageBatchWriter.write(
+                        serverConnection.getSocketChannel(), messageQueue);
+            } catch(IOException e) {
+                // 对端已经断开了，跟读取失败一样关闭连接、清理连接相关的数据
+                LOGGER.error("write server message error, close connection......", e);
+                closeServerConnection(serverConnection);
+                return;
+            }
+
+            // 写不完的时候关注OP_WRITE事件，等写缓冲有空间了再继续写
+            SelectionKey selectionKey = serverConnection.getSelectionKey();
+            int interestOps = selectionKey.interestOps();
+            if(writeCompleted) {
+                if((interestOps & SelectionKey.OP_WRITE) != 0) {
+                    selectionKey.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+                }
+            } else if((interestOps & SelectionKey.OP_WRITE) == 0) {
+                selectionKey.interestOps(interestOps | SelectionKey.OP_WRITE);
+            }
+        }
     }
 
 }
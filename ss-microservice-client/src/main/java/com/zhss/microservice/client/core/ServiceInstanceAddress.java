@@ -1,5 +1,7 @@
 package com.zhss.microservice.client.core;
 
+import java.util.Objects;
+
 /**
  * 服务实例地址
  */
@@ -15,6 +17,20 @@ public class ServiceInstanceAddress {
         this.port = port;
     }
 
+    /**
+     * 解析server推送过来的服务实例地址，格式是：服务名称,ip,端口号
+     * @param rawServiceInstanceAddress
+     * @return
+     */
+    public static ServiceInstanceAddress parse(String rawServiceInstanceAddress) {
+        String[] rawServiceInstanceAddressSplited = rawServiceInstanceAddress.split(",");
+        return new ServiceInstanceAddress(
+                rawServiceInstanceAddressSplited[0],
+                rawServiceInstanceAddressSplited[1],
+                Integer.valueOf(rawServiceInstanceAddressSplited[2])
+        );
+    }
+
     public String getServiceName() {
         return serviceName;
     }
@@ -39,6 +55,21 @@ public class ServiceInstanceAddress {
         this.port = port;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ServiceInstanceAddress that = (ServiceInstanceAddress) o;
+        return Objects.equals(serviceName, that.serviceName) &&
+                Objects.equals(ip, that.ip) &&
+                Objects.equals(port, that.port);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(serviceName, ip, port);
+    }
+
     @Override
     public String toString() {
         return "ServiceInstanceAddress{" +
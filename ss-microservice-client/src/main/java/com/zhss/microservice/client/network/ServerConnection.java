@@ -1,14 +1,17 @@
 package com.zhss.microservice.client.network;
 
-import com.zhss.microservice.common.entity.*;
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.network.ByteBufferPool;
+import com.zhss.microservice.common.network.MessageDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 客户端跟一个服务端建立的长连接
@@ -17,15 +20,6 @@ public class ServerConnection {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ServerConnection.class);
 
-    /**
-     * 消息标识字节数
-     */
-    private static final Integer MESSAGE_FLAG_BYTES = 4;
-    /**
-     * 消息长度字节数
-     */
-    private static final Integer MESSAGE_LENGTH_BYTES = 4;
-
     /**
      * 代表客户端和server端连接的SelectionKey
      */
@@ -39,136 +33,46 @@ public class ServerConnection {
      */
     private String connectionId;
     /**
-     * 是否读取完毕消息标识（请求/响应）
+     * 从连接里读取和解析消息的组件
      */
-    private Boolean hasReadMessageFlag = false;
+    private MessageDecoder messageDecoder;
     /**
-     * 消息标识buffer
+     * 是否已经通知过IO线程来发送这个连接的消息
      */
-    private ByteBuffer messageFlagBuffer =
-            ByteBuffer.allocate(MESSAGE_FLAG_BYTES);
-    /**
-     * 消息标识
-     */
-    private Integer messageFlag = null;
-    /**
-     * 是否读取完毕响应长度
-     */
-    private Boolean hasReadMessageLength = false;
-    /**
-     * 响应长度buffer
-     */
-    private ByteBuffer messageLengthBuffer =
-            ByteBuffer.allocate(MESSAGE_LENGTH_BYTES);
-    /**
-     * 是否读取完毕响应数据
-     */
-    private Boolean hasReadMessage = false;
-    /**
-     * 响应数据buffer
-     */
-    private ByteBuffer messageBuffer = null;
+    private AtomicBoolean writeScheduled = new AtomicBoolean(false);
 
     public ServerConnection(
             SelectionKey selectionKey,
-            SocketChannel socketChannel) {
+            SocketChannel socketChannel,
+            ByteBufferPool readBufferPool) {
         this.selectionKey = selectionKey;
         this.socketChannel = socketChannel;
+        this.messageDecoder = new MessageDecoder(readBufferPool);
         this.connectionId = UUID.randomUUID().toString().replace(
                 "-", "");
     }
 
     /**
-     * 读取消息标识
-     * @return
+     * 读取服务端发送过来的所有完整的请求/响应
+     * @param messages 解析出来的消息会按顺序放到这里
+     * @return 连接是否还没有被服务端关闭
+     * @throws IOException
      */
-    public Integer readMessageFlag() {
-        try {
-            if(!hasReadMessageFlag) {
-                socketChannel.read(messageFlagBuffer);
-
-                if(messageFlagBuffer.hasRemaining()) {
-                    return null;
-                }
-
-                hasReadMessageFlag = true;
-
-                messageFlagBuffer.flip();
-                messageFlag = messageFlagBuffer.getInt();
-                return messageFlag;
-            } else {
-                return messageFlag;
-            }
-        } catch(Exception e) {
-            LOGGER.error("read flag error......", e);
-        }
-
-        return null;
+    public boolean readMessages(List<Message> messages) throws IOException {
+        return messageDecoder.read(socketChannel, messages);
     }
 
     /**
-     * 读取消息
+     * 关闭连接
      */
-    public Message readMessage() {
+    public void close() {
+        messageDecoder.release();
+        selectionKey.cancel();
         try {
-            if(!hasReadMessageLength) {
-                socketChannel.read(messageLengthBuffer);
-
-                if(messageLengthBuffer.hasRemaining()) {
-                    return null;
-                }
-
-                hasReadMessageLength = true;
-            }
-
-            if(messageBuffer == null) {
-                messageLengthBuffer.flip();
-                Integer messageLength = messageLengthBuffer.getInt();
-                messageBuffer = ByteBuffer.allocate(messageLength);
-            }
-
-            if(!hasReadMessage) {
-                socketChannel.read(messageBuffer);
-
-                if(messageBuffer.hasRemaining()) {
-                    return null;
-                }
-
-                hasReadMessage = true;
-
-                messageBuffer.flip();
-                Integer requestType = messageBuffer.getInt();
-
-                Message message = null;
-                if(messageFlag.equals(Response.RESPONSE_FLAG)) {
-                    message = Response.deserialize(requestType, messageBuffer);
-                } else if(messageFlag.equals(Request.REQUEST_FLAG)) {
-                    message = Request.deserialize(requestType, messageBuffer);
-                }
-
-                // 再对buffer数据做一个清空
-                reset();
-
-                // 返回解析到的请求对象
-                return message;
-            }
+            socketChannel.close();
         } catch(IOException e) {
-            LOGGER.error("do read io error......", e);
+            LOGGER.error("close server connection error......", e);
         }
-        return null;
-    }
-
-    /**
-     * 重置读取的请求数据
-     */
-    private void reset() {
-        hasReadMessageFlag = false;
-        messageFlagBuffer = ByteBuffer.allocate(MESSAGE_FLAG_BYTES);
-        messageFlag = null;
-        hasReadMessageLength = false;
-        messageLengthBuffer = ByteBuffer.allocate(MESSAGE_LENGTH_BYTES);
-        hasReadMessage = false;
-        messageBuffer = null;
     }
 
     public SelectionKey getSelectionKey() {
@@ -183,4 +87,8 @@ public class ServerConnection {
         return connectionId;
     }
 
+    public AtomicBoolean getWriteScheduled() {
+        return writeScheduled;
+    }
+
 }
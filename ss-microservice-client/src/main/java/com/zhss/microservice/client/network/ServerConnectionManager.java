@@ -44,4 +44,12 @@ public class ServerConnectionManager {
         return serverConnections.containsKey(server.getRemoteSocketAddress());
     }
 
+    /**
+     * 删除一个跟远程server的连接
+     * @param serverConnection
+     */
+    public void removeServerConnection(ServerConnection serverConnection) {
+        serverConnections.values().remove(serverConnection);
+    }
+
 }
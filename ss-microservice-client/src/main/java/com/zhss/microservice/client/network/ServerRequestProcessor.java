@@ -4,6 +4,8 @@ import com.zhss.microservice.client.core.CachedServiceRegistry;
 import com.zhss.microservice.client.core.ServiceInstanceAddress;
 import com.zhss.microservice.common.entity.Request;
 import com.zhss.microservice.common.entity.Response;
+import com.zhss.microservice.common.entity.ServiceChangedDeltaRequest;
+import com.zhss.microservice.common.entity.ServiceChangedDeltaResponse;
 import com.zhss.microservice.common.entity.ServiceChangedRequest;
 import com.zhss.microservice.common.entity.ServiceChangedResponse;
 import org.slf4j.Logger;
@@ -34,6 +36,8 @@ public class ServerRequestProcessor {
     public Response process(Request request) {
         if(request instanceof ServiceChangedRequest) {
              return serviceChanged((ServiceChangedRequest) request);
+        } else if(request instanceof ServiceChangedDeltaRequest) {
+            return serviceChangedDelta((ServiceChangedDeltaRequest) request);
         }
         return null;
     }
@@ -48,31 +52,61 @@ public class ServerRequestProcessor {
         String serviceName = request.getServiceName();
         List<String> rawServiceInstanceAddresses = request.getServiceInstanceAddresses();
 
-        List<ServiceInstanceAddress> serviceInstanceAddresses =
-                new ArrayList<ServiceInstanceAddress>();
-
-        for(String rawServiceInstanceAddress : rawServiceInstanceAddresses) {
-            String[] rawServiceInstanceAddressSplited = rawServiceInstanceAddress.split(",");
-            ServiceInstanceAddress serviceInstanceAddress = new ServiceInstanceAddress(
-                    rawServiceInstanceAddressSplited[0],
-                    rawServiceInstanceAddressSplited[1],
-                    Integer.valueOf(rawServiceInstanceAddressSplited[2])
-            );
-            serviceInstanceAddresses.add(serviceInstanceAddress);
-        }
+        List<ServiceInstanceAddress> serviceInstanceAddresses = parse(rawServiceInstanceAddresses);
 
         // 刷新服务实例地址的缓存
         CachedServiceRegistry cachedServiceRegistry = CachedServiceRegistry.getInstance();
-        cachedServiceRegistry.cache(serviceName, serviceInstanceAddresses);
+        cachedServiceRegistry.cache(serviceName, serviceInstanceAddresses, request.getServiceVersion());
         LOGGER.info("服务器推送服务【" + serviceName + "】最新地址列表：" + serviceInstanceAddresses);
 
         // 构建响应对象
         ServiceChangedResponse response = new ServiceChangedResponse.Builder()
-                .requestId(request.getId())
+                .request(request)
                 .result(ServiceChangedResponse.SUCCESS)
                 .build();
 
         return response;
     }
 
+    /**
+     * 处理服务增量变动的事件
+     *
+     * 缓存的版本号对不上的时候不应用这次变动，返回RESYNC让客户端重新订阅拉取完整的地址列表
+     * @param request
+     * @return
+     */
+    private Response serviceChangedDelta(ServiceChangedDeltaRequest request) {
+        String serviceName = request.getServiceName();
+
+        CachedServiceRegistry cachedServiceRegistry = CachedServiceRegistry.getInstance();
+        boolean applied = cachedServiceRegistry.applyDelta(
+                serviceName,
+                request.getFromVersion(),
+                request.getToVersion(),
+                parse(request.getAddedAddresses()),
+                parse(request.getRemovedAddresses()));
+
+        if(applied) {
+            LOGGER.info("服务器推送服务【" + serviceName + "】版本" + request.getToVersion() +
+                    "的变动，新增：" + request.getAddedAddresses() + "，摘除：" + request.getRemovedAddresses());
+        } else {
+            LOGGER.warn("服务【" + serviceName + "】缓存的版本" + cachedServiceRegistry.getVersion(serviceName) +
+                    "跟推送的起始版本" + request.getFromVersion() + "对不上，重新拉取完整的地址列表......");
+        }
+
+        return new ServiceChangedDeltaResponse.Builder()
+                .request(request)
+                .result(applied ? ServiceChangedDeltaResponse.SUCCESS : ServiceChangedDeltaResponse.RESYNC)
+                .build();
+    }
+
+    private List<ServiceInstanceAddress> parse(List<String> rawServiceInstanceAddresses) {
+        List<ServiceInstanceAddress> serviceInstanceAddresses =
+                new ArrayList<ServiceInstanceAddress>(rawServiceInstanceAddresses.size());
+        for(String rawServiceInstanceAddress : rawServiceInstanceAddresses) {
+            serviceInstanceAddresses.add(ServiceInstanceAddress.parse(rawServiceInstanceAddress));
+        }
+        return serviceInstanceAddresses;
+    }
+
 }
@@ -0,0 +1,64 @@
+package org.zhss.govern.client;
+
+import com.zhss.microservice.client.core.PendingRequests;
+import com.zhss.microservice.client.core.ServerOverloadException;
+import com.zhss.microservice.common.entity.FetchServerNodeIdRequest;
+import com.zhss.microservice.common.entity.FetchServerNodeIdResponse;
+import com.zhss.microservice.common.entity.OverloadResponse;
+import com.zhss.microservice.common.entity.Response;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 验证等待响应的请求表：收到响应、server过载、超时清理
+ */
+public class PendingRequestsTest {
+
+    public static void main(String[] args) throws Exception {
+        PendingRequests pendingRequests = new PendingRequests();
+
+        // 收到响应，唤醒等待的线程
+        FetchServerNodeIdRequest request = new FetchServerNodeIdRequest.Builder().build();
+        CompletableFuture<Response> future = pendingRequests.add(request.getId(), 10000);
+        long start = System.nanoTime();
+        new Thread(() -> pendingRequests.complete(
+                new FetchServerNodeIdResponse.Builder().request(request).serverNodeId(1).build())).start();
+        Response response = future.get();
+        System.out.println("收到响应：" + response + "，等待了" + (System.nanoTime() - start) / 1000 + "us");
+
+        // server过载
+        FetchServerNodeIdRequest rejectedRequest = new FetchServerNodeIdRequest.Builder().build();
+        future = pendingRequests.add(rejectedRequest.getId(), 10000);
+        pendingRequests.complete(new OverloadResponse.Builder()
+                .request(rejectedRequest).rejectedRequestType(5).build());
+        try {
+            future.get();
+            throw new IllegalStateException("过载响应应该失败");
+        } catch(ExecutionException e) {
+            if(!(e.getCause() instanceof ServerOverloadException)) {
+                throw e;
+            }
+            System.out.println("server过载：" + e.getCause().getMessage());
+        }
+
+        // 一直没有响应的请求，超时之后被清理掉
+        for(int i = 0; i < 10000; i++) {
+            pendingRequests.add(-1L - i, 300);
+        }
+        future = pendingRequests.add(new FetchServerNodeIdRequest.Builder().build().getId(), 300);
+        try {
+            future.get();
+            throw new IllegalStateException("请求应该超时");
+        } catch(ExecutionException e) {
+            if(!(e.getCause() instanceof TimeoutException)) {
+                throw e;
+            }
+            System.out.println("请求超时：" + e.getCause().getMessage());
+        }
+        Thread.sleep(300);
+        System.out.println("超时清理之后还在等待响应的请求数量：" + pendingRequests.size());
+    }
+
+}
@@ -0,0 +1,80 @@
+package org.zhss.govern.client;
+
+import com.zhss.microservice.client.core.PendingRequests;
+import com.zhss.microservice.common.entity.HeartbeatRequest;
+import com.zhss.microservice.common.entity.HeartbeatResponse;
+import com.zhss.microservice.common.entity.Request;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 请求id的压测程序
+ *
+ * 用法：RequestIdBenchmarkTest [心跳请求数量]
+ * 对比两个版本的协议构造心跳请求的耗时、内存分配和帧大小，以及请求从登记到收到响应的耗时
+ */
+public class RequestIdBenchmarkTest {
+
+    private static final int[] PROTOCOL_VERSIONS = new int[] {
+            Request.PROTOCOL_VERSION_1, Request.PROTOCOL_VERSION_2};
+
+    public static void main(String[] args) throws Exception {
+        int requests = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        PendingRequests pendingRequests = new PendingRequests();
+
+        for(int round = 0; round < 3; round++) {
+            for(int protocolVersion : PROTOCOL_VERSIONS) {
+                // 构造心跳请求
+                long frameBytes = 0;
+                long startAllocated = threadMXBean.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                for(int i = 0; i < requests; i++) {
+                    HeartbeatRequest request = new HeartbeatRequest.Builder()
+                            .protocolVersion(protocolVersion)
+                            .serviceName("ORDER-SERVICE")
+                            .serviceInstanceIp("192.168.0.1")
+                            .serviceInstancePort(8080)
+                            .build();
+                    frameBytes += request.getData().remaining();
+                }
+                long buildElapsed = System.nanoTime() - start;
+                long buildAllocated = threadMXBean.getThreadAllocatedBytes(threadId) - startAllocated;
+
+                // 登记请求，收到响应之后完成
+                HeartbeatRequest request = new HeartbeatRequest.Builder()
+                        .protocolVersion(protocolVersion)
+                        .serviceName("ORDER-SERVICE")
+                        .serviceInstanceIp("192.168.0.1")
+                        .serviceInstancePort(8080)
+                        .build();
+                HeartbeatResponse response = new HeartbeatResponse.Builder()
+                        .request(request)
+                        .result(HeartbeatResponse.SUCCESS)
+                        .build();
+                start = System.nanoTime();
+                for(int i = 0; i < requests; i++) {
+                    pendingRequests.add(request.getId(), 100);
+                    pendingRequests.complete(response);
+                }
+                long correlateElapsed = System.nanoTime() - start;
+
+                if(round == 0) {
+                    continue;
+                }
+                System.out.printf("protocol v%d: frame=%d bytes, build=%.0f ns/op, %.0f bytes allocated/op, " +
+                                "add+complete=%.0f ns/op%n",
+                        protocolVersion,
+                        frameBytes / requests,
+                        buildElapsed * 1.0 / requests,
+                        buildAllocated * 1.0 / requests,
+                        correlateElapsed * 1.0 / requests);
+            }
+        }
+    }
+
+}
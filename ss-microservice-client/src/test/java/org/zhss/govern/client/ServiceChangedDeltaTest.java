@@ -0,0 +1,135 @@
+package org.zhss.govern.client;
+
+import com.zhss.microservice.client.core.CachedServiceRegistry;
+import com.zhss.microservice.client.core.ServiceInstanceAddress;
+import com.zhss.microservice.client.network.ServerRequestProcessor;
+import com.zhss.microservice.common.entity.*;
+import com.zhss.microservice.common.network.ByteBufferPool;
+import com.zhss.microservice.common.network.MessageDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 服务实例增量推送的测试程序
+ *
+ * 用法：ServiceChangedDeltaTest [服务实例数量]
+ * 校验增量推送的编解码、客户端缓存的应用和版本号不连续时要求重新订阅
+ * 再对比滚动发布时一次变动的完整推送和增量推送的字节数
+ */
+public class ServiceChangedDeltaTest {
+
+    private static final String SERVICE_NAME = "ORDER-SERVICE";
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        CachedServiceRegistry cachedServiceRegistry = CachedServiceRegistry.getInstance();
+        ServerRequestProcessor serverRequestProcessor = ServerRequestProcessor.getInstance();
+
+        // 订阅拿到版本1的完整地址列表
+        ServiceChangedRequest fullRequest = decode(new ServiceChangedRequest.Builder()
+                .serviceName(SERVICE_NAME)
+                .serviceInstanceAddresses(Arrays.asList(address(1), address(2)))
+                .serviceVersion(1)
+                .build());
+        check(fullRequest.getServiceVersion() == 1, "完整推送带上版本号");
+        serverRequestProcessor.process(fullRequest);
+
+        // 版本1到3：新增3，摘除1
+        ServiceChangedDeltaResponse response = process(delta(1, 3,
+                Collections.singletonList(address(3)), Collections.singletonList(address(1))));
+        check(ServiceChangedDeltaResponse.SUCCESS.equals(response.getResult()), "应用增量");
+        check(cachedServiceRegistry.getVersion(SERVICE_NAME) == 3, "版本号推进");
+        check(cachedServiceRegistry.get(SERVICE_NAME).equals(Arrays.asList(
+                ServiceInstanceAddress.parse(address(2)), ServiceInstanceAddress.parse(address(3)))), "地址列表");
+
+        // 重复收到已经应用过的增量
+        response = process(delta(1, 3, Collections.<String>emptyList(), Collections.<String>emptyList()));
+        check(ServiceChangedDeltaResponse.SUCCESS.equals(response.getResult()), "重复的增量忽略");
+
+        // 漏掉了版本4
+        response = process(delta(4, 5, Collections.singletonList(address(5)), Collections.<String>emptyList()));
+        check(ServiceChangedDeltaResponse.RESYNC.equals(response.getResult()), "版本号不连续要求重新订阅");
+        check(cachedServiceRegistry.get(SERVICE_NAME).size() == 2, "不连续的增量不应用");
+
+        // 第一版协议的订阅响应不带版本号，老版本的客户端也能解析带版本号的响应
+        SubscribeRequest subscribeRequest = new SubscribeRequest.Builder()
+                .protocolVersion(Request.PROTOCOL_VERSION_1)
+                .serviceName(SERVICE_NAME)
+                .build();
+        SubscribeResponse v1Response = decode(new SubscribeResponse.Builder()
+                .request(subscribeRequest)
+                .serviceInstanceAddresses(Collections.singletonList(address(1)))
+                .serviceVersion(7)
+                .build());
+        check(v1Response.getServiceVersion() == Request.UNKNOWN_SERVICE_VERSION, "第一版协议不带版本号");
+
+        // 滚动发布时一次变动的推送字节数
+        List<String> addresses = new ArrayList<>();
+        for(int i = 0; i < instances; i++) {
+            addresses.add(address(i));
+        }
+        int fullBytes = new ServiceChangedRequest.Builder()
+                .serviceName(SERVICE_NAME)
+                .serviceInstanceAddresses(addresses)
+                .serviceVersion(2)
+                .build().getData().remaining();
+        int deltaBytes = new ServiceChangedDeltaRequest.Builder()
+                .serviceName(SERVICE_NAME)
+                .fromVersion(2)
+                .toVersion(4)
+                .addedAddresses(Collections.singletonList(address(instances)))
+                .removedAddresses(Collections.singletonList(address(0)))
+                .build().getData().remaining();
+        System.out.println("instances=" + instances + " full push: " + fullBytes + " bytes, delta push: " + deltaBytes + " bytes");
+    }
+
+    private static ServiceChangedDeltaRequest delta(long fromVersion, long toVersion,
+                                                    List<String> added, List<String> removed) throws Exception {
+        return decode(new ServiceChangedDeltaRequest.Builder()
+                .serviceName(SERVICE_NAME)
+                .fromVersion(fromVersion)
+                .toVersion(toVersion)
+                .addedAddresses(added)
+                .removedAddresses(removed)
+                .build());
+    }
+
+    private static ServiceChangedDeltaResponse process(ServiceChangedDeltaRequest request) throws Exception {
+        Response response = ServerRequestProcessor.getInstance().process(request);
+        return decode(response);
+    }
+
+    /**
+     * 走一遍编码和解码，确认线上格式是对的
+     */
+    @SuppressWarnings("unchecked")
+    private static <T extends Message> T decode(Message message) throws Exception {
+        ByteBuffer data = message.getData();
+        byte[] bytes = new byte[data.remaining()];
+        data.duplicate().get(bytes);
+
+        MessageDecoder messageDecoder = new MessageDecoder(new ByteBufferPool(64 * 1024, 8, false));
+        List<Message> messages = new ArrayList<>();
+        messageDecoder.read(Channels.newChannel(new ByteArrayInputStream(bytes)), messages);
+        check(messages.size() == 1, "解析出一条消息");
+        return (T) messages.get(0);
+    }
+
+    private static String address(int i) {
+        return SERVICE_NAME + ",10.0." + (i >> 8 & 255) + "." + (i & 255) + ",8080";
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
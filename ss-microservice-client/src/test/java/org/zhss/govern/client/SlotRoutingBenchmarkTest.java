@@ -0,0 +1,130 @@
+package org.zhss.govern.client;
+
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 槽位路由表的测试程序
+ *
+ * 用法：SlotRoutingBenchmarkTest [server节点数量] [每个节点的槽位范围数量] [路由次数]
+ * 先校验路由表跟原来逐个解析槽位范围字符串的路由结果完全一致，槽位范围按照Controller的方式分配，
+ * 从1开始，最后一段加上除不尽的槽位，一直到16384
+ * 再对比两种方式路由一个服务的耗时
+ */
+public class SlotRoutingBenchmarkTest {
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 3;
+        int scopesPerNode = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        int routes = args.length > 2 ? Integer.parseInt(args[2]) : 2000000;
+
+        Map<Integer, List<String>> slotsAllocation = allocate(nodes, scopesPerNode);
+        SlotRoutingTable slotRoutingTable = SlotRoutingTable.build(slotsAllocation);
+
+        for(int slot = 1; slot <= SlotRoutingTable.SLOT_COUNT; slot++) {
+            int nodeId = slotRoutingTable.getNodeId(slot);
+            check(nodeId != SlotRoutingTable.UNASSIGNED, "槽位" + slot + "分配给了某个节点");
+            check(nodeId == locateServerBySlot(slotsAllocation, slot), "槽位" + slot + "的路由结果一致");
+        }
+        verifyControllerAllocation();
+
+        String[] serviceNames = new String[1024];
+        for(int i = 0; i < serviceNames.length; i++) {
+            serviceNames[i] = "SERVICE-" + i;
+        }
+
+        long blackhole = 0;
+        for(int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < routes; i++) {
+                String serviceName = serviceNames[i & (serviceNames.length - 1)];
+                blackhole += locateServerBySlot(slotsAllocation, routeSlot(serviceName));
+            }
+            long scanNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(int i = 0; i < routes; i++) {
+                blackhole += slotRoutingTable.getNodeId(serviceNames[i & (serviceNames.length - 1)]);
+            }
+            long tableNanos = System.nanoTime() - start;
+
+            System.out.printf("round %d: nodes=%d scopes/node=%d, string scan %.1f ns/op, routing table %.1f ns/op%n",
+                    round, nodes, scopesPerNode, (double) scanNanos / routes, (double) tableNanos / routes);
+        }
+        System.out.println("blackhole=" + blackhole);
+    }
+
+    /**
+     * 三个节点的时候Controller实际分配出来的槽位范围，最后一段以16384结束
+     */
+    private static void verifyControllerAllocation() {
+        Map<Integer, List<String>> slotsAllocation = new HashMap<>();
+        slotsAllocation.put(1, Collections.singletonList("1,5461"));
+        slotsAllocation.put(2, Collections.singletonList("5462,10922"));
+        slotsAllocation.put(3, Collections.singletonList("10923,16384"));
+        SlotRoutingTable slotRoutingTable = SlotRoutingTable.build(slotsAllocation);
+        check(slotRoutingTable.getNodeId(1) == 1, "第一个槽位");
+        check(slotRoutingTable.getNodeId(5461) == 1 && slotRoutingTable.getNodeId(5462) == 2, "范围边界");
+        check(slotRoutingTable.getNodeId(SlotRoutingTable.SLOT_COUNT) == 3, "最后一个槽位");
+    }
+
+    /**
+     * 跟Controller一样把槽位从1开始均匀地切成若干段，除不尽的槽位加到最后一段上，轮流分给各个节点
+     */
+    private static Map<Integer, List<String>> allocate(int nodes, int scopesPerNode) {
+        Map<Integer, List<String>> slotsAllocation = new HashMap<>();
+        int scopes = nodes * scopesPerNode;
+        int scopeSize = SlotRoutingTable.SLOT_COUNT / scopes;
+        int remainSlots = SlotRoutingTable.SLOT_COUNT - scopeSize * scopes;
+        for(int i = 0; i < scopes; i++) {
+            int startSlot = 1 + i * scopeSize;
+            int endSlot = startSlot + scopeSize - 1 + (i == scopes - 1 ? remainSlots : 0);
+            slotsAllocation.computeIfAbsent(i % nodes + 1, nodeId -> new ArrayList<>())
+                    .add(startSlot + "," + endSlot);
+        }
+        return slotsAllocation;
+    }
+
+    /**
+     * 原来客户端的路由方式：每次都把槽位范围字符串切开解析一遍
+     */
+    private static int locateServerBySlot(Map<Integer, List<String>> slotsAllocation, Integer slot) {
+        for(Integer serverNodeId : slotsAllocation.keySet()) {
+            List<String> slotsList = slotsAllocation.get(serverNodeId);
+
+            for(String slots : slotsList) {
+                String[] slotsSpited = slots.split(",");
+                Integer startSlot = Integer.valueOf(slotsSpited[0]);
+                Integer endSlot = Integer.valueOf(slotsSpited[1]);
+
+                if(slot >= startSlot && slot <= endSlot) {
+                    return serverNodeId;
+                }
+            }
+        }
+        return SlotRoutingTable.UNASSIGNED;
+    }
+
+    private static Integer routeSlot(String serviceName) {
+        int hashCode = serviceName.hashCode() & Integer.MAX_VALUE;
+        Integer slot = hashCode % SlotRoutingTable.SLOT_COUNT;
+
+        if(slot == 0) {
+            slot = slot + 1;
+        }
+
+        return slot;
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
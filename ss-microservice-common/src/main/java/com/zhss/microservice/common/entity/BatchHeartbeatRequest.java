@@ -0,0 +1,214 @@
+package com.zhss.microservice.common.entity;
+
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量心跳请求
+ *
+ * 一台机器上的多个服务实例在同一个时间窗口里的心跳合并成一个请求发送
+ */
+public class BatchHeartbeatRequest extends Request {
+
+    private BatchHeartbeatRequest() {
+
+    }
+
+    /**
+     * 每个服务实例的心跳
+     */
+    private List<Entry> entries = new ArrayList<>();
+    /**
+     * 请求字节数据
+     */
+    private ByteBuffer data;
+
+    public static class Builder {
+
+        private BatchHeartbeatRequest request = new BatchHeartbeatRequest();
+
+        public Builder() {
+            request.generateId();
+        }
+
+        public BatchHeartbeatRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
+        }
+
+        public BatchHeartbeatRequest.Builder heartbeat(String serviceName,
+                                                       String serviceInstanceIp,
+                                                       Integer serviceInstancePort) {
+            this.request.entries.add(new Entry(serviceName, serviceInstanceIp, serviceInstancePort));
+            return this;
+        }
+
+        public BatchHeartbeatRequest build() {
+            // 先把字符串都转成字节，算出整个请求的长度
+            List<byte[]> fieldBytes = new ArrayList<>(request.entries.size() * 2);
+            int entriesLength = 0;
+            for(Entry entry : request.entries) {
+                byte[] serviceNameBytes = entry.getServiceName().getBytes();
+                byte[] serviceInstanceIpBytes = entry.getServiceInstanceIp().getBytes();
+                fieldBytes.add(serviceNameBytes);
+                fieldBytes.add(serviceInstanceIpBytes);
+                entriesLength += Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
+                        serviceNameBytes.length +
+                        Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
+                        serviceInstanceIpBytes.length +
+                        Request.REQUEST_INTEGER_FIELD_BYTES;
+            }
+
+            ByteBuffer byteBuffer = ByteBuffer.allocate(
+                    Request.REQUEST_FLAG_BYTES +
+                    Request.REQUEST_LENGTH_BYTES +
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(request.getProtocolVersion()) +
+                    Request.REQUEST_INTEGER_FIELD_BYTES +
+                    entriesLength
+            );
+
+            byteBuffer.putInt(Request.requestFlag(request.getProtocolVersion()));
+            byteBuffer.putInt(
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(request.getProtocolVersion()) +
+                    Request.REQUEST_INTEGER_FIELD_BYTES +
+                    entriesLength
+            );
+            byteBuffer.putInt(Request.BATCH_HEARTBEAT);
+            request.writeId(byteBuffer);
+            byteBuffer.putInt(request.entries.size());
+            for(int i = 0; i < request.entries.size(); i++) {
+                byte[] serviceNameBytes = fieldBytes.get(i * 2);
+                byte[] serviceInstanceIpBytes = fieldBytes.get(i * 2 + 1);
+                byteBuffer.putInt(serviceNameBytes.length);
+                byteBuffer.put(serviceNameBytes);
+                byteBuffer.putInt(serviceInstanceIpBytes.length);
+                byteBuffer.put(serviceInstanceIpBytes);
+                byteBuffer.putInt(request.entries.get(i).getServiceInstancePort());
+            }
+            byteBuffer.flip();
+
+            request.setData(byteBuffer);
+
+            return request;
+        }
+
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    private void setData(ByteBuffer data) {
+        this.data = data;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * 反序列化获取请求对象
+     * @param buffer
+     * @return
+     */
+    public static BatchHeartbeatRequest deserialize(ByteBuffer buffer) {
+        BatchHeartbeatRequest request = new BatchHeartbeatRequest();
+
+        int entryCount = buffer.getInt();
+        for(int i = 0; i < entryCount; i++) {
+            // 解析服务名称
+            int serviceNameLength = buffer.getInt();
+            ServiceNameDictionary.Entry serviceName = ServiceNameDictionary.getInstance()
+                    .read(buffer, serviceNameLength);
+
+            // 解析服务实例ip地址
+            byte[] serviceInstanceIpBytes = new byte[buffer.getInt()];
+            buffer.get(serviceInstanceIpBytes);
+
+            // 解析服务实例端口号
+            Integer serviceInstancePort = buffer.getInt();
+
+            request.entries.add(new Entry(
+                    serviceName.getServiceName(),
+                    serviceName.getId(),
+                    serviceName.getSlot(),
+                    new String(serviceInstanceIpBytes),
+                    serviceInstancePort));
+        }
+
+        return request;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchHeartbeatRequest{" +
+                "id=" + getId() +
+                ", entries=" + entries +
+                '}';
+    }
+
+    /**
+     * 一个服务实例的心跳
+     */
+    public static class Entry {
+
+        private String serviceName;
+        /**
+         * 服务名称字典分配的id，不是解码出来的心跳是NO_ID
+         */
+        private int serviceNameId;
+        /**
+         * 服务路由到的槽位
+         */
+        private int serviceSlot;
+        private String serviceInstanceIp;
+        private Integer serviceInstancePort;
+
+        public Entry(String serviceName, String serviceInstanceIp, Integer serviceInstancePort) {
+            this(serviceName, ServiceNameDictionary.NO_ID, SlotRoutingTable.routeSlot(serviceName),
+                    serviceInstanceIp, serviceInstancePort);
+        }
+
+        Entry(String serviceName, int serviceNameId, int serviceSlot,
+              String serviceInstanceIp, Integer serviceInstancePort) {
+            this.serviceName = serviceName;
+            this.serviceNameId = serviceNameId;
+            this.serviceSlot = serviceSlot;
+            this.serviceInstanceIp = serviceInstanceIp;
+            this.serviceInstancePort = serviceInstancePort;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public int getServiceNameId() {
+            return serviceNameId;
+        }
+
+        public int getServiceSlot() {
+            return serviceSlot;
+        }
+
+        public String getServiceInstanceIp() {
+            return serviceInstanceIp;
+        }
+
+        public Integer getServiceInstancePort() {
+            return serviceInstancePort;
+        }
+
+        @Override
+        public String toString() {
+            return serviceName + "," + serviceInstanceIp + "," + serviceInstancePort;
+        }
+
+    }
+
+}
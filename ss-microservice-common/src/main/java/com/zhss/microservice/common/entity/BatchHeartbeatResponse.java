@@ -0,0 +1,124 @@
+package com.zhss.microservice.common.entity;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量心跳响应
+ */
+public class BatchHeartbeatResponse extends Response {
+
+    public static final Integer SUCCESS = 1;
+    public static final Integer FAILURE = 2;
+
+    private BatchHeartbeatResponse() {
+
+    }
+
+    /**
+     * 响应结果，有任何一个服务实例心跳失败就是FAILURE
+     */
+    private Integer result;
+    /**
+     * 心跳失败的服务实例在请求里的下标，一般是服务端还没有这个服务实例的注册信息
+     */
+    private List<Integer> failedEntries = new ArrayList<>();
+    /**
+     * 二进制字节数据
+     */
+    private ByteBuffer data;
+
+    public static class Builder {
+
+        private BatchHeartbeatResponse response = new BatchHeartbeatResponse();
+
+        public BatchHeartbeatResponse.Builder request(Request request) {
+            this.response.setRequest(request);
+            return this;
+        }
+
+        public BatchHeartbeatResponse.Builder failedEntries(List<Integer> failedEntries) {
+            this.response.failedEntries = failedEntries;
+            return this;
+        }
+
+        public BatchHeartbeatResponse build() {
+            response.result = response.failedEntries.isEmpty() ? SUCCESS : FAILURE;
+
+            ByteBuffer byteBuffer = ByteBuffer.allocate(
+                    RESPONSE_FLAG_BYTES +
+                    RESPONSE_LENGTH_BYTES +
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES * response.failedEntries.size()
+            );
+
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
+            byteBuffer.putInt(
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES * response.failedEntries.size()
+            );
+            byteBuffer.putInt(Request.BATCH_HEARTBEAT);
+            response.writeRequestId(byteBuffer);
+            byteBuffer.putInt(response.getResult());
+            byteBuffer.putInt(response.failedEntries.size());
+            for(Integer failedEntry : response.failedEntries) {
+                byteBuffer.putInt(failedEntry);
+            }
+            byteBuffer.flip();
+
+            response.setData(byteBuffer);
+
+            return response;
+        }
+
+    }
+
+    /**
+     * 反序列化获取响应对象
+     * @param buffer
+     * @return
+     */
+    public static BatchHeartbeatResponse deserialize(ByteBuffer buffer) {
+        BatchHeartbeatResponse response = new BatchHeartbeatResponse();
+        response.result = buffer.getInt();
+
+        int failedEntryCount = buffer.getInt();
+        for(int i = 0; i < failedEntryCount; i++) {
+            response.failedEntries.add(buffer.getInt());
+        }
+
+        return response;
+    }
+
+    public Integer getResult() {
+        return result;
+    }
+
+    public List<Integer> getFailedEntries() {
+        return failedEntries;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    private void setData(ByteBuffer data) {
+        this.data = data;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchHeartbeatResponse{" +
+                "requestId=" + getRequestId() +
+                ", result=" + result +
+                ", failedEntries=" + failedEntries +
+                '}';
+    }
+}
@@ -1,7 +1,6 @@
 package com.zhss.microservice.common.entity;
 
 import java.nio.ByteBuffer;
-import java.util.UUID;
 
 /**
  * 拉取slots分配数据请求
@@ -12,10 +11,6 @@ public class FetchServerAddressesRequest extends Request {
 
     }
 
-    /**
-     * 请求id
-     */
-    private String id;
     /**
      * 请求数据
      */
@@ -26,24 +21,28 @@ public class FetchServerAddressesRequest extends Request {
         private FetchServerAddressesRequest request =
                 new FetchServerAddressesRequest();
 
+        public FetchServerAddressesRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
+        }
+
         public FetchServerAddressesRequest build() {
-            String id = UUID.randomUUID().toString().replace("-", "");
-            request.setId(id);
+            request.generateId();
 
             ByteBuffer byteBuffer = ByteBuffer.allocate(
                     Request.REQUEST_FLAG_BYTES +
                     Request.REQUEST_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES
+                    Request.requestIdBytes(request.getProtocolVersion())
             );
 
-            byteBuffer.putInt(Request.REQUEST_FLAG);
+            byteBuffer.putInt(Request.requestFlag(request.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES
+                    Request.requestIdBytes(request.getProtocolVersion())
             );
             byteBuffer.putInt(Request.FETCH_SERVER_ADDRESSES);
-            byteBuffer.put(id.getBytes());
+            request.writeId(byteBuffer);
             byteBuffer.flip();
 
             request.setData(byteBuffer);
@@ -57,31 +56,17 @@ public class FetchServerAddressesRequest extends Request {
         return data;
     }
 
-    public String getId() {
-        return id;
-    }
-
     private void setData(ByteBuffer data) {
         this.data = data;
     }
 
-    private void setId(String id) {
-        this.id = id;
-    }
-
     /**
      * 反序列化获取请求对象
      * @param buffer
      * @return
      */
     public static FetchServerAddressesRequest deserialize(ByteBuffer buffer) {
-        // 解析请求id
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         FetchServerAddressesRequest request = new FetchServerAddressesRequest();
-        request.setId(requestId);
 
         return request;
     }
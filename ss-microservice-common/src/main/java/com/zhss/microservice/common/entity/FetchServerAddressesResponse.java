@@ -16,10 +16,6 @@ public class FetchServerAddressesResponse extends Response {
 
     }
 
-    /**
-     * 请求id
-     */
-    private String requestId;
     /**
      * server地址列表
      */
@@ -37,8 +33,8 @@ public class FetchServerAddressesResponse extends Response {
         private FetchServerAddressesResponse response =
                 new FetchServerAddressesResponse();
 
-        public FetchServerAddressesResponse.Builder requestId(String requestId) {
-            this.response.setRequestId(requestId);
+        public FetchServerAddressesResponse.Builder request(Request request) {
+            this.response.setRequest(request);
             return this;
         }
 
@@ -56,20 +52,20 @@ public class FetchServerAddressesResponse extends Response {
                     RESPONSE_FLAG_BYTES +
                     RESPONSE_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     JSON_LENGTH_BYTES +
                     jsonBytes.length
             );
 
-            byteBuffer.putInt(RESPONSE_FLAG);
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     JSON_LENGTH_BYTES +
                     jsonBytes.length
             );
             byteBuffer.putInt(Request.FETCH_SERVER_ADDRESSES);
-            byteBuffer.put(response.getRequestId().getBytes());
+            response.writeRequestId(byteBuffer);
             byteBuffer.putInt(jsonBytes.length);
             byteBuffer.put(jsonBytes);
             byteBuffer.flip();
@@ -87,10 +83,6 @@ public class FetchServerAddressesResponse extends Response {
      * @return
      */
     public static FetchServerAddressesResponse deserialize(ByteBuffer buffer) {
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         int jsonLength = buffer.getInt();
         byte[] jsonBytes = new byte[jsonLength];
         buffer.get(jsonBytes);
@@ -99,20 +91,11 @@ public class FetchServerAddressesResponse extends Response {
         List<String> serverAddresses = JSONObject.parseObject(json, List.class);
 
         FetchServerAddressesResponse response = new FetchServerAddressesResponse();
-        response.setRequestId(requestId);
         response.setServerAddresses(serverAddresses);
 
         return response;
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    private void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public List<String> getServerAddresses() {
         return serverAddresses;
     }
@@ -11,7 +11,6 @@ public class FetchServerNodeIdResponse extends Response {
 
     }
 
-    private String requestId;
     private Integer serverNodeId;
     private ByteBuffer data;
 
@@ -20,8 +19,8 @@ public class FetchServerNodeIdResponse extends Response {
         private FetchServerNodeIdResponse response =
                 new FetchServerNodeIdResponse();
 
-        public FetchServerNodeIdResponse.Builder requestId(String requestId) {
-            this.response.setRequestId(requestId);
+        public FetchServerNodeIdResponse.Builder request(Request request) {
+            this.response.setRequest(request);
             return this;
         }
 
@@ -36,18 +35,18 @@ public class FetchServerNodeIdResponse extends Response {
                     RESPONSE_FLAG_BYTES +
                     RESPONSE_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
 
-            byteBuffer.putInt(RESPONSE_FLAG);
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
             byteBuffer.putInt(Request.FETCH_SERVER_NODE_ID);
-            byteBuffer.put(response.getRequestId().getBytes());
+            response.writeRequestId(byteBuffer);
             byteBuffer.putInt(response.getServerNodeId());
             byteBuffer.flip();
 
@@ -59,27 +58,14 @@ public class FetchServerNodeIdResponse extends Response {
     }
 
     public static FetchServerNodeIdResponse deserialize(ByteBuffer buffer) {
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         Integer serverNodeId = buffer.getInt();
 
         FetchServerNodeIdResponse response = new FetchServerNodeIdResponse();
-        response.setRequestId(requestId);
         response.setServerNodeId(serverNodeId);
 
         return response;
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    private void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public Integer getServerNodeId() {
         return serverNodeId;
     }
@@ -1,7 +1,6 @@
 package com.zhss.microservice.common.entity;
 
 import java.nio.ByteBuffer;
-import java.util.UUID;
 
 /**
  * 拉取slots分配数据请求
@@ -12,10 +11,6 @@ public class FetchSlotsAllocationRequest extends Request {
 
     }
 
-    /**
-     * 请求id
-     */
-    private String id;
     /**
      * 请求数据
      */
@@ -26,24 +21,28 @@ public class FetchSlotsAllocationRequest extends Request {
         private FetchSlotsAllocationRequest fetchSlotsAllocationRequest =
                 new FetchSlotsAllocationRequest();
 
+        public FetchSlotsAllocationRequest.Builder protocolVersion(int protocolVersion) {
+            this.fetchSlotsAllocationRequest.setProtocolVersion(protocolVersion);
+            return this;
+        }
+
         public FetchSlotsAllocationRequest build() {
-            String id = UUID.randomUUID().toString().replace("-", "");
-            fetchSlotsAllocationRequest.setId(id);
+            fetchSlotsAllocationRequest.generateId();
 
             ByteBuffer byteBuffer = ByteBuffer.allocate(
                     Request.REQUEST_FLAG_BYTES +
                     Request.REQUEST_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES
+                    Request.requestIdBytes(fetchSlotsAllocationRequest.getProtocolVersion())
             );
 
-            byteBuffer.putInt(Request.REQUEST_FLAG);
+            byteBuffer.putInt(Request.requestFlag(fetchSlotsAllocationRequest.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES
+                    Request.requestIdBytes(fetchSlotsAllocationRequest.getProtocolVersion())
             );
             byteBuffer.putInt(Request.FETCH_SLOTS_ALLOCATION);
-            byteBuffer.put(id.getBytes());
+            fetchSlotsAllocationRequest.writeId(byteBuffer);
             byteBuffer.flip();
 
             fetchSlotsAllocationRequest.setData(byteBuffer);
@@ -57,31 +56,17 @@ public class FetchSlotsAllocationRequest extends Request {
         return data;
     }
 
-    public String getId() {
-        return id;
-    }
-
     private void setData(ByteBuffer data) {
         this.data = data;
     }
 
-    private void setId(String id) {
-        this.id = id;
-    }
-
     /**
      * 反序列化获取请求对象
      * @param buffer
      * @return
      */
     public static FetchSlotsAllocationRequest deserialize(ByteBuffer buffer) {
-        // 解析请求id
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         FetchSlotsAllocationRequest request = new FetchSlotsAllocationRequest();
-        request.setId(requestId);
 
         return request;
     }
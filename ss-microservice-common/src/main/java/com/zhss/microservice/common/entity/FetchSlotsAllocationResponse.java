@@ -16,10 +16,6 @@ public class FetchSlotsAllocationResponse extends Response {
 
     }
 
-    /**
-     * 请求id
-     */
-    private String requestId;
     /**
      * slots槽位分配数据
      */
@@ -37,8 +33,8 @@ public class FetchSlotsAllocationResponse extends Response {
         private FetchSlotsAllocationResponse fetchSlotsAllocationResponse =
                 new FetchSlotsAllocationResponse();
 
-        public FetchSlotsAllocationResponse.Builder requestId(String requestId) {
-            this.fetchSlotsAllocationResponse.setRequestId(requestId);
+        public FetchSlotsAllocationResponse.Builder request(Request request) {
+            this.fetchSlotsAllocationResponse.setRequest(request);
             return this;
         }
 
@@ -57,20 +53,20 @@ public class FetchSlotsAllocationResponse extends Response {
                     RESPONSE_FLAG_BYTES +
                             RESPONSE_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(fetchSlotsAllocationResponse.getProtocolVersion()) +
                             JSON_LENGTH_BYTES +
                     slotsAllocationJSONBytes.length
             );
 
-            byteBuffer.putInt(RESPONSE_FLAG);
+            byteBuffer.putInt(Response.responseFlag(fetchSlotsAllocationResponse.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(fetchSlotsAllocationResponse.getProtocolVersion()) +
                             JSON_LENGTH_BYTES +
                     slotsAllocationJSONBytes.length
             );
             byteBuffer.putInt(Request.FETCH_SLOTS_ALLOCATION);
-            byteBuffer.put(fetchSlotsAllocationResponse.getRequestId().getBytes());
+            fetchSlotsAllocationResponse.writeRequestId(byteBuffer);
             byteBuffer.putInt(slotsAllocationJSONBytes.length);
             byteBuffer.put(slotsAllocationJSONBytes);
             byteBuffer.flip();
@@ -88,10 +84,6 @@ public class FetchSlotsAllocationResponse extends Response {
      * @return
      */
     public static FetchSlotsAllocationResponse deserialize(ByteBuffer buffer) {
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         int slotsAllocationJSONLength = buffer.getInt();
         byte[] slotsAllocationJSONBytes = new byte[slotsAllocationJSONLength];
         buffer.get(slotsAllocationJSONBytes);
@@ -100,20 +92,11 @@ public class FetchSlotsAllocationResponse extends Response {
         Map<Integer, List<String>> slotsAllocation = JSONObject.parseObject(slotsAllocationJSON, HashMap.class);
 
         FetchSlotsAllocationResponse response = new FetchSlotsAllocationResponse();
-        response.setRequestId(requestId);
         response.setSlotsAllocation(slotsAllocation);
 
         return response;
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    private void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public Map<Integer, List<String>> getSlotsAllocation() {
         return slotsAllocation;
     }
@@ -1,7 +1,9 @@
 package com.zhss.microservice.common.entity;
 
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+
 import java.nio.ByteBuffer;
-import java.util.UUID;
 
 /**
  * 心跳请求
@@ -16,14 +18,18 @@ public class HeartbeatRequest extends Request {
     // 请求头，key: value
     // 请求体，json数据
 
-    /**
-     * 请求id
-     */
-    private String id;
     /**
      * 服务名称
      */
     private String serviceName;
+    /**
+     * 服务名称字典分配的id，不是解码出来的请求是NO_ID
+     */
+    private int serviceNameId = ServiceNameDictionary.NO_ID;
+    /**
+     * 服务路由到的槽位，0表示还没有算过
+     */
+    private int serviceSlot = 0;
     /**
      * 服务实例的ip地址
      */
@@ -42,9 +48,12 @@ public class HeartbeatRequest extends Request {
         private HeartbeatRequest request = new HeartbeatRequest();
 
         public Builder() {
-            String id = UUID.randomUUID().toString().replace(
-                    "-", "");
-            request.setId(id);
+            request.generateId();
+        }
+
+        public HeartbeatRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
         }
 
         public HeartbeatRequest.Builder serviceName(String serviceName) {
@@ -67,7 +76,7 @@ public class HeartbeatRequest extends Request {
                     Request.REQUEST_FLAG_BYTES +
                     Request.REQUEST_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(this.request.getProtocolVersion()) +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
                     this.request.getServiceName().length() +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
@@ -75,10 +84,10 @@ public class HeartbeatRequest extends Request {
                     Request.REQUEST_INTEGER_FIELD_BYTES
             );
 
-            byteBuffer.putInt(Request.REQUEST_FLAG);
+            byteBuffer.putInt(Request.requestFlag(this.request.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(this.request.getProtocolVersion()) +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
                     this.request.getServiceName().length() +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
@@ -86,7 +95,7 @@ public class HeartbeatRequest extends Request {
                     Request.REQUEST_INTEGER_FIELD_BYTES
             );
             byteBuffer.putInt(Request.HEARTBEAT);
-            byteBuffer.put(this.request.getId().getBytes());
+            this.request.writeId(byteBuffer);
             byteBuffer.putInt(this.request.getServiceName().length());
             byteBuffer.put(this.request.getServiceName().getBytes());
             byteBuffer.putInt(this.request.getServiceInstanceIp().length());
@@ -105,18 +114,10 @@ public class HeartbeatRequest extends Request {
         return data;
     }
 
-    public String getId() {
-        return id;
-    }
-
     private void setData(ByteBuffer data) {
         this.data = data;
     }
 
-    private void setId(String id) {
-        this.id = id;
-    }
-
     public String getServiceName() {
         return serviceName;
     }
@@ -125,6 +126,21 @@ public class HeartbeatRequest extends Request {
         this.serviceName = serviceName;
     }
 
+    /**
+     * 获取服务路由到的槽位，解码出来的请求直接用服务名称字典里缓存的槽位
+     * @return
+     */
+    public int getServiceSlot() {
+        if(serviceSlot == 0) {
+            serviceSlot = SlotRoutingTable.routeSlot(serviceName);
+        }
+        return serviceSlot;
+    }
+
+    public int getServiceNameId() {
+        return serviceNameId;
+    }
+
     public String getServiceInstanceIp() {
         return serviceInstanceIp;
     }
@@ -147,16 +163,10 @@ public class HeartbeatRequest extends Request {
      * @return
      */
     public static HeartbeatRequest deserialize(ByteBuffer buffer) {
-        // 解析请求id
-        byte[] idBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(idBytes);
-        String id = new String(idBytes);
-
         // 解析服务名称
         Integer serviceNameLength = buffer.getInt();
-        byte[] serviceNameBytes = new byte[serviceNameLength];
-        buffer.get(serviceNameBytes);
-        String serviceName = new String(serviceNameBytes);
+        ServiceNameDictionary.Entry serviceName = ServiceNameDictionary.getInstance()
+                .read(buffer, serviceNameLength);
 
         // 解析服务实例ip地址
         Integer serviceInstanceIpLength = buffer.getInt();
@@ -169,8 +179,9 @@ public class HeartbeatRequest extends Request {
 
         // 构建服务注册请求对象
         HeartbeatRequest request = new HeartbeatRequest();
-        request.setId(id);
-        request.setServiceName(serviceName);
+        request.setServiceName(serviceName.getServiceName());
+        request.serviceNameId = serviceName.getId();
+        request.serviceSlot = serviceName.getSlot();
         request.setServiceInstanceIp(serviceInstanceIp);
         request.setServiceInstancePort(serviceInstancePort);
 
@@ -180,7 +191,7 @@ public class HeartbeatRequest extends Request {
     @Override
     public String toString() {
         return "HeartbeatRequest{" +
-                "id='" + id + '\'' +
+                "id=" + getId() +
                 ", serviceName='" + serviceName + '\'' +
                 ", serviceInstanceIp='" + serviceInstanceIp + '\'' +
                 ", serviceInstancePort=" + serviceInstancePort +
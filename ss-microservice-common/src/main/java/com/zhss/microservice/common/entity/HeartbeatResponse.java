@@ -14,10 +14,6 @@ public class HeartbeatResponse extends Response {
 
     }
 
-    /**
-     * 请求id
-     */
-    private String requestId;
     /**
      * 响应结果
      */
@@ -31,8 +27,8 @@ public class HeartbeatResponse extends Response {
 
         private HeartbeatResponse response = new HeartbeatResponse();
 
-        public HeartbeatResponse.Builder requestId(String requestId) {
-            this.response.setRequestId(requestId);
+        public HeartbeatResponse.Builder request(Request request) {
+            this.response.setRequest(request);
             return this;
         }
 
@@ -46,18 +42,18 @@ public class HeartbeatResponse extends Response {
                     RESPONSE_FLAG_BYTES +
                     RESPONSE_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
 
-            byteBuffer.putInt(RESPONSE_FLAG);
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
             byteBuffer.putInt(Request.HEARTBEAT);
-            byteBuffer.put(response.getRequestId().getBytes());
+            response.writeRequestId(byteBuffer);
             byteBuffer.putInt(response.getResult());
             byteBuffer.flip();
 
@@ -74,27 +70,14 @@ public class HeartbeatResponse extends Response {
      * @return
      */
     public static HeartbeatResponse deserialize(ByteBuffer buffer) {
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         Integer result = buffer.getInt();
 
         HeartbeatResponse response = new HeartbeatResponse();
-        response.setRequestId(requestId);
         response.setResult(result);
 
         return response;
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    private void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public Integer getResult() {
         return result;
     }
@@ -9,4 +9,21 @@ public interface Message {
 
     ByteBuffer getData();
 
+    /**
+     * 发送的时候这条消息由几段数据组成，大部分消息只有一段
+     * @return
+     */
+    default int getBufferCount() {
+        return 1;
+    }
+
+    /**
+     * 获取发送的时候的第几段数据，同一条消息每次都要返回同一个buffer，发送到哪里了记录在buffer的position上
+     * @param index
+     * @return
+     */
+    default ByteBuffer getBuffer(int index) {
+        return getData();
+    }
+
 }
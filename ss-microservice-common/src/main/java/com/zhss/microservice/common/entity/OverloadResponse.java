@@ -0,0 +1,104 @@
+package com.zhss.microservice.common.entity;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 服务端过载响应
+ *
+ * 服务端的业务线程池处理不过来的时候，不会阻塞网络IO线程，而是直接返回这个响应
+ * 请求处理的时候出现异常也返回这个响应，让客户端马上失败
+ */
+public class OverloadResponse extends Response {
+
+    private OverloadResponse() {
+
+    }
+
+    /**
+     * 被拒绝的请求的类型
+     */
+    private Integer rejectedRequestType;
+    /**
+     * 二进制字节数据
+     */
+    private ByteBuffer data;
+
+    public static class Builder {
+
+        private OverloadResponse response = new OverloadResponse();
+
+        public OverloadResponse.Builder request(Request request) {
+            this.response.setRequest(request);
+            return this;
+        }
+
+        public OverloadResponse.Builder rejectedRequestType(Integer rejectedRequestType) {
+            this.response.setRejectedRequestType(rejectedRequestType);
+            return this;
+        }
+
+        public OverloadResponse build() {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(
+                    RESPONSE_FLAG_BYTES +
+                    RESPONSE_LENGTH_BYTES +
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES
+            );
+
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
+            byteBuffer.putInt(
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES
+            );
+            byteBuffer.putInt(Request.OVERLOAD);
+            response.writeRequestId(byteBuffer);
+            byteBuffer.putInt(response.getRejectedRequestType());
+            byteBuffer.flip();
+
+            response.setData(byteBuffer);
+
+            return response;
+        }
+
+    }
+
+    /**
+     * 反序列化获取响应对象
+     * @param buffer
+     * @return
+     */
+    public static OverloadResponse deserialize(ByteBuffer buffer) {
+        Integer rejectedRequestType = buffer.getInt();
+
+        OverloadResponse response = new OverloadResponse();
+        response.setRejectedRequestType(rejectedRequestType);
+
+        return response;
+    }
+
+    public Integer getRejectedRequestType() {
+        return rejectedRequestType;
+    }
+
+    private void setRejectedRequestType(Integer rejectedRequestType) {
+        this.rejectedRequestType = rejectedRequestType;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    private void setData(ByteBuffer data) {
+        this.data = data;
+    }
+
+    @Override
+    public String toString() {
+        return "OverloadResponse{" +
+                "requestId=" + getRequestId() +
+                ", rejectedRequestType=" + rejectedRequestType +
+                '}';
+    }
+}
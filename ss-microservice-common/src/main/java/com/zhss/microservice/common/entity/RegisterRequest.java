@@ -1,7 +1,9 @@
 package com.zhss.microservice.common.entity;
 
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+
 import java.nio.ByteBuffer;
-import java.util.UUID;
 
 /**
  * 服务注册请求
@@ -12,14 +14,14 @@ public class RegisterRequest extends Request {
 
     }
 
-    /**
-     * 请求id
-     */
-    private String id;
     /**
      * 服务名称
      */
     private String serviceName;
+    /**
+     * 服务路由到的槽位，0表示还没有算过
+     */
+    private int serviceSlot = 0;
     /**
      * 服务实例的ip地址
      */
@@ -38,9 +40,12 @@ public class RegisterRequest extends Request {
         private RegisterRequest request = new RegisterRequest();
 
         public Builder() {
-            String id = UUID.randomUUID().toString().replace(
-                    "-", "");
-            request.setId(id);
+            request.generateId();
+        }
+
+        public RegisterRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
         }
 
         public RegisterRequest.Builder serviceName(String serviceName) {
@@ -63,7 +68,7 @@ public class RegisterRequest extends Request {
                     Request.REQUEST_FLAG_BYTES +
                     Request.REQUEST_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(this.request.getProtocolVersion()) +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
                     this.request.getServiceName().length() +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
@@ -71,10 +76,10 @@ public class RegisterRequest extends Request {
                     Request.REQUEST_INTEGER_FIELD_BYTES
             );
 
-            byteBuffer.putInt(Request.REQUEST_FLAG);
+            byteBuffer.putInt(Request.requestFlag(this.request.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(this.request.getProtocolVersion()) +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
                     this.request.getServiceName().length() +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
@@ -82,7 +87,7 @@ public class RegisterRequest extends Request {
                     Request.REQUEST_INTEGER_FIELD_BYTES
             );
             byteBuffer.putInt(Request.REGISTER);
-            byteBuffer.put(this.request.getId().getBytes());
+            this.request.writeId(byteBuffer);
             byteBuffer.putInt(this.request.getServiceName().length());
             byteBuffer.put(this.request.getServiceName().getBytes());
             byteBuffer.putInt(this.request.getServiceInstanceIp().length());
@@ -101,18 +106,10 @@ public class RegisterRequest extends Request {
         return data;
     }
 
-    public String getId() {
-        return id;
-    }
-
     private void setData(ByteBuffer data) {
         this.data = data;
     }
 
-    private void setId(String id) {
-        this.id = id;
-    }
-
     public String getServiceName() {
         return serviceName;
     }
@@ -121,6 +118,17 @@ public class RegisterRequest extends Request {
         this.serviceName = serviceName;
     }
 
+    /**
+     * 获取服务路由到的槽位，解码出来的请求直接用服务名称字典里缓存的槽位
+     * @return
+     */
+    public int getServiceSlot() {
+        if(serviceSlot == 0) {
+            serviceSlot = SlotRoutingTable.routeSlot(serviceName);
+        }
+        return serviceSlot;
+    }
+
     public String getServiceInstanceIp() {
         return serviceInstanceIp;
     }
@@ -143,16 +151,10 @@ public class RegisterRequest extends Request {
      * @return
      */
     public static RegisterRequest deserialize(ByteBuffer buffer) {
-        // 解析请求id
-        byte[] idBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(idBytes);
-        String id = new String(idBytes);
-
         // 解析服务名称
         Integer serviceNameLength = buffer.getInt();
-        byte[] serviceNameBytes = new byte[serviceNameLength];
-        buffer.get(serviceNameBytes);
-        String serviceName = new String(serviceNameBytes);
+        ServiceNameDictionary.Entry serviceName = ServiceNameDictionary.getInstance()
+                .read(buffer, serviceNameLength);
 
         // 解析服务实例ip地址
         Integer serviceInstanceIpLength = buffer.getInt();
@@ -165,8 +167,8 @@ public class RegisterRequest extends Request {
 
         // 构建服务注册请求对象
         RegisterRequest request = new RegisterRequest();
-        request.setId(id);
-        request.setServiceName(serviceName);
+        request.setServiceName(serviceName.getServiceName());
+        request.serviceSlot = serviceName.getSlot();
         request.setServiceInstanceIp(serviceInstanceIp);
         request.setServiceInstancePort(serviceInstancePort);
 
@@ -176,7 +178,7 @@ public class RegisterRequest extends Request {
     @Override
     public String toString() {
         return "RegisterRequest{" +
-                "id='" + id + '\'' +
+                "id=" + getId() +
                 ", serviceName='" + serviceName + '\'' +
                 ", serviceInstanceIp='" + serviceInstanceIp + '\'' +
                 ", serviceInstancePort=" + serviceInstancePort +
@@ -18,10 +18,6 @@ public class RegisterResponse extends Response {
 
     }
 
-    /**
-     * 请求id
-     */
-    private String requestId;
     /**
      * 服务注册响应结果
      */
@@ -35,8 +31,8 @@ public class RegisterResponse extends Response {
 
         private RegisterResponse response = new RegisterResponse();
 
-        public RegisterResponse.Builder requestId(String requestId) {
-            this.response.setRequestId(requestId);
+        public RegisterResponse.Builder request(Request request) {
+            this.response.setRequest(request);
             return this;
         }
 
@@ -50,18 +46,18 @@ public class RegisterResponse extends Response {
                     RESPONSE_FLAG_BYTES +
                     RESPONSE_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
 
-            byteBuffer.putInt(RESPONSE_FLAG);
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
             byteBuffer.putInt(Request.REGISTER);
-            byteBuffer.put(response.getRequestId().getBytes());
+            response.writeRequestId(byteBuffer);
             byteBuffer.putInt(response.getResult());
             byteBuffer.flip();
 
@@ -78,27 +74,14 @@ public class RegisterResponse extends Response {
      * @return
      */
     public static RegisterResponse deserialize(ByteBuffer buffer) {
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         Integer result = buffer.getInt();
 
         RegisterResponse response = new RegisterResponse();
-        response.setRequestId(requestId);
         response.setResult(result);
 
         return response;
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    private void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public Integer getResult() {
         return result;
     }
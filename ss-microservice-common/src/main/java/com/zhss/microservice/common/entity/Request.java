@@ -1,6 +1,7 @@
 package com.zhss.microservice.common.entity;
 
 import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 请求接口
@@ -11,6 +12,19 @@ public abstract class Request implements Message {
      * 请求标识
      */
     public static final Integer REQUEST_FLAG = 1;
+    /**
+     * 请求标识，第二版协议
+     */
+    public static final Integer REQUEST_FLAG_V2 = 3;
+
+    /**
+     * 第一版协议，请求id是32个字符的uuid
+     */
+    public static final int PROTOCOL_VERSION_1 = 1;
+    /**
+     * 第二版协议，请求id是8个字节的long
+     */
+    public static final int PROTOCOL_VERSION_2 = 2;
 
     /**
      * 拉取slots分配数据请求
@@ -40,6 +54,18 @@ public abstract class Request implements Message {
      * 服务实例变动
      */
     public static final Integer SERVICE_CHANGED = 7;
+    /**
+     * 服务端过载，只会出现在服务端返回的响应里
+     */
+    public static final Integer OVERLOAD = 8;
+    /**
+     * 批量心跳请求
+     */
+    public static final Integer BATCH_HEARTBEAT = 9;
+    /**
+     * 服务实例增量变动
+     */
+    public static final Integer SERVICE_CHANGED_DELTA = 10;
 
     /**
      * 请求标识字节数
@@ -57,6 +83,10 @@ public abstract class Request implements Message {
      * 请求ID的字节数
      */
     public static final Integer REQUEST_ID_BYTES = 32;
+    /**
+     * 第二版协议请求ID的字节数
+     */
+    public static final Integer REQUEST_ID_V2_BYTES = 8;
     /**
      * 字符串类型的请求字段的长度的字节数
      */
@@ -65,14 +95,166 @@ public abstract class Request implements Message {
      * 整数类型的请求字段的字节数
      */
     public static final Integer REQUEST_INTEGER_FIELD_BYTES = 4;
+    /**
+     * long类型字段的字节数
+     */
+    public static final Integer REQUEST_LONG_FIELD_BYTES = 8;
+    /**
+     * 服务版本号未知，比如对方还是老版本的server
+     */
+    public static final long UNKNOWN_SERVICE_VERSION = -1L;
+
+    /**
+     * 请求id的序列号，同一个连接上发出去的请求id也是单调递增的
+     */
+    private static final AtomicLong REQUEST_ID_SEQUENCE = new AtomicLong(0);
+
+    /**
+     * 请求类型，反序列化的时候设置
+     */
+    private Integer requestType;
+    /**
+     * 请求id
+     */
+    private long id;
+    /**
+     * 请求id的高64位，只有第一版协议的uuid会用到
+     */
+    private long idHigh;
+    /**
+     * 协议版本
+     */
+    private int protocolVersion = PROTOCOL_VERSION_2;
 
     /**
      * 获取请求id
      * @return
      */
-    public abstract String getId();
+    public long getId() {
+        return id;
+    }
+
+    public long getIdHigh() {
+        return idHigh;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    void setProtocolVersion(int protocolVersion) {
+        if(protocolVersion != PROTOCOL_VERSION_1 && protocolVersion != PROTOCOL_VERSION_2) {
+            throw new IllegalArgumentException("不支持的协议版本：" + protocolVersion);
+        }
+        this.protocolVersion = protocolVersion;
+    }
+
+    /**
+     * 生成请求id
+     */
+    void generateId() {
+        this.id = REQUEST_ID_SEQUENCE.incrementAndGet();
+        this.idHigh = 0L;
+    }
+
+    /**
+     * 把请求id写入buffer
+     * @param buffer
+     */
+    void writeId(ByteBuffer buffer) {
+        putId(buffer, protocolVersion, idHigh, id);
+    }
+
+    /**
+     * 获取请求类型
+     * @return
+     */
+    public Integer getRequestType() {
+        return requestType;
+    }
+
+    /**
+     * 获取协议版本对应的请求标识
+     * @param protocolVersion
+     * @return
+     */
+    public static Integer requestFlag(int protocolVersion) {
+        return protocolVersion == PROTOCOL_VERSION_1 ? REQUEST_FLAG : REQUEST_FLAG_V2;
+    }
+
+    /**
+     * 根据请求标识获取协议版本
+     * @param requestFlag
+     * @return
+     */
+    public static int protocolVersionOf(Integer requestFlag) {
+        return REQUEST_FLAG.equals(requestFlag) ? PROTOCOL_VERSION_1 : PROTOCOL_VERSION_2;
+    }
+
+    /**
+     * 获取协议版本对应的请求id字节数
+     * @param protocolVersion
+     * @return
+     */
+    public static Integer requestIdBytes(int protocolVersion) {
+        return protocolVersion == PROTOCOL_VERSION_1 ? REQUEST_ID_BYTES : REQUEST_ID_V2_BYTES;
+    }
+
+    /**
+     * 按照协议版本写入请求id
+     *
+     * 第一版协议写成32个十六进制字符，老版本的对端原样回传就可以了
+     */
+    static void putId(ByteBuffer buffer, int protocolVersion, long idHigh, long id) {
+        if(protocolVersion == PROTOCOL_VERSION_1) {
+            putHexLong(buffer, idHigh);
+            putHexLong(buffer, id);
+        } else {
+            buffer.putLong(id);
+        }
+    }
+
+    /**
+     * 按照协议版本读取请求id的高64位，第二版协议没有高64位
+     */
+    static long readIdHigh(int protocolVersion, ByteBuffer buffer) {
+        return protocolVersion == PROTOCOL_VERSION_1 ? readHexLong(buffer) : 0L;
+    }
+
+    /**
+     * 按照协议版本读取请求id的低64位
+     */
+    static long readId(int protocolVersion, ByteBuffer buffer) {
+        return protocolVersion == PROTOCOL_VERSION_1 ? readHexLong(buffer) : buffer.getLong();
+    }
+
+    private static void putHexLong(ByteBuffer buffer, long value) {
+        for(int shift = 60; shift >= 0; shift -= 4) {
+            int digit = (int) (value >>> shift) & 0xF;
+            buffer.put((byte) (digit < 10 ? '0' + digit : 'a' + digit - 10));
+        }
+    }
+
+    private static long readHexLong(ByteBuffer buffer) {
+        long value = 0L;
+        for(int i = 0; i < 16; i++) {
+            value = (value << 4) | Character.digit((char) buffer.get(), 16) & 0xFL;
+        }
+        return value;
+    }
+
+    /**
+     * 反序列化请求
+     * @param protocolVersion
+     * @param requestType
+     * @param messageBuffer
+     * @return
+     */
+    public static Request deserialize(int protocolVersion, Integer requestType, ByteBuffer messageBuffer) {
+        // 请求id在所有请求字段的前面
+        long idHigh = readIdHigh(protocolVersion, messageBuffer);
+        long id = readId(protocolVersion, messageBuffer);
 
-    public static Request deserialize(Integer requestType, ByteBuffer messageBuffer) {
         Request request = null;
 
         if(requestType.equals(Request.FETCH_SLOTS_ALLOCATION)) {
@@ -89,6 +271,17 @@ public abstract class Request implements Message {
             request = SubscribeRequest.deserialize(messageBuffer);
         } else if(requestType.equals(Request.SERVICE_CHANGED)) {
             request = ServiceChangedRequest.deserialize(messageBuffer);
+        } else if(requestType.equals(Request.BATCH_HEARTBEAT)) {
+            request = BatchHeartbeatRequest.deserialize(messageBuffer);
+        } else if(requestType.equals(Request.SERVICE_CHANGED_DELTA)) {
+            request = ServiceChangedDeltaRequest.deserialize(messageBuffer);
+        }
+
+        if(request != null) {
+            request.requestType = requestType;
+            request.protocolVersion = protocolVersion;
+            request.idHigh = idHigh;
+            request.id = id;
         }
 
         return request;
@@ -11,6 +11,10 @@ public abstract class Response implements Message {
      * 响应标识
      */
     public static final Integer RESPONSE_FLAG = 2;
+    /**
+     * 响应标识，第二版协议
+     */
+    public static final Integer RESPONSE_FLAG_V2 = 4;
 
     /**
      * 响应标识符字节数
@@ -29,19 +33,74 @@ public abstract class Response implements Message {
      */
     public static final Integer RESPONSE_INTEGER_FIELD_BYTES = 4;
 
+    /**
+     * 请求id
+     */
+    private long requestId;
+    /**
+     * 请求id的高64位，只有第一版协议的uuid会用到
+     */
+    private long requestIdHigh;
+    /**
+     * 协议版本，跟请求的协议版本保持一致
+     */
+    private int protocolVersion = Request.PROTOCOL_VERSION_2;
+
     /**
      * 获取请求id
      * @return
      */
-    public abstract String getRequestId();
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public long getRequestIdHigh() {
+        return requestIdHigh;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    /**
+     * 设置响应对应的请求，请求id和协议版本都用请求里的
+     * @param request
+     */
+    void setRequest(Request request) {
+        this.requestId = request.getId();
+        this.requestIdHigh = request.getIdHigh();
+        this.protocolVersion = request.getProtocolVersion();
+    }
+
+    /**
+     * 把请求id写入buffer
+     * @param buffer
+     */
+    void writeRequestId(ByteBuffer buffer) {
+        Request.putId(buffer, protocolVersion, requestIdHigh, requestId);
+    }
+
+    /**
+     * 获取协议版本对应的响应标识
+     * @param protocolVersion
+     * @return
+     */
+    public static Integer responseFlag(int protocolVersion) {
+        return protocolVersion == Request.PROTOCOL_VERSION_1 ? RESPONSE_FLAG : RESPONSE_FLAG_V2;
+    }
 
     /**
      * 反序列化响应
+     * @param protocolVersion
      * @param requestType
      * @param messageBuffer
      * @return
      */
-    public static Response deserialize(Integer requestType, ByteBuffer messageBuffer) {
+    public static Response deserialize(int protocolVersion, Integer requestType, ByteBuffer messageBuffer) {
+        // 请求id在所有响应字段的前面
+        long requestIdHigh = Request.readIdHigh(protocolVersion, messageBuffer);
+        long requestId = Request.readId(protocolVersion, messageBuffer);
+
         Response response = null;
 
         if(requestType.equals(Request.FETCH_SLOTS_ALLOCATION)) {
@@ -58,6 +117,18 @@ public abstract class Response implements Message {
             response = SubscribeResponse.deserialize(messageBuffer);
         } else if(requestType.equals(Request.SERVICE_CHANGED)) {
             response = ServiceChangedResponse.deserialize(messageBuffer);
+        } else if(requestType.equals(Request.OVERLOAD)) {
+            response = OverloadResponse.deserialize(messageBuffer);
+        } else if(requestType.equals(Request.BATCH_HEARTBEAT)) {
+            response = BatchHeartbeatResponse.deserialize(messageBuffer);
+        } else if(requestType.equals(Request.SERVICE_CHANGED_DELTA)) {
+            response = ServiceChangedDeltaResponse.deserialize(messageBuffer);
+        }
+
+        if(response != null) {
+            response.protocolVersion = protocolVersion;
+            response.requestIdHigh = requestIdHigh;
+            response.requestId = requestId;
         }
 
         return response;
@@ -0,0 +1,251 @@
+package com.zhss.microservice.common.entity;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 服务实例增量变动请求
+ *
+ * 只推送从fromVersion到toVersion之间新增和摘除的服务实例地址
+ * 客户端缓存的版本号不是fromVersion的时候，说明中间漏掉了变动，需要重新拉取完整的地址列表
+ */
+public class ServiceChangedDeltaRequest extends Request {
+
+    private ServiceChangedDeltaRequest() {
+
+    }
+
+    /**
+     * 服务名称
+     */
+    private String serviceName;
+    /**
+     * 变动之前的服务版本号
+     */
+    private long fromVersion;
+    /**
+     * 变动之后的服务版本号
+     */
+    private long toVersion;
+    /**
+     * 新增的服务实例地址
+     */
+    private List<String> addedAddresses = new ArrayList<>();
+    /**
+     * 摘除的服务实例地址
+     */
+    private List<String> removedAddresses = new ArrayList<>();
+    /**
+     * 请求字节数据
+     */
+    private ByteBuffer data;
+
+    public static class Builder {
+
+        private ServiceChangedDeltaRequest request = new ServiceChangedDeltaRequest();
+
+        public Builder() {
+            request.generateId();
+        }
+
+        public ServiceChangedDeltaRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
+        }
+
+        public ServiceChangedDeltaRequest.Builder serviceName(String serviceName) {
+            this.request.serviceName = serviceName;
+            return this;
+        }
+
+        public ServiceChangedDeltaRequest.Builder fromVersion(long fromVersion) {
+            this.request.fromVersion = fromVersion;
+            return this;
+        }
+
+        public ServiceChangedDeltaRequest.Builder toVersion(long toVersion) {
+            this.request.toVersion = toVersion;
+            return this;
+        }
+
+        public ServiceChangedDeltaRequest.Builder addedAddresses(List<String> addedAddresses) {
+            this.request.addedAddresses = addedAddresses;
+            return this;
+        }
+
+        public ServiceChangedDeltaRequest.Builder removedAddresses(List<String> removedAddresses) {
+            this.request.removedAddresses = removedAddresses;
+            return this;
+        }
+
+        public ServiceChangedDeltaRequest build() {
+            ByteBuffer body = encodeBody(request.serviceName, request.fromVersion, request.toVersion,
+                    request.addedAddresses, request.removedAddresses);
+
+            int bodyLength = Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(request.getProtocolVersion()) +
+                    body.remaining();
+            ByteBuffer byteBuffer = ByteBuffer.allocate(
+                    Request.REQUEST_FLAG_BYTES +
+                    Request.REQUEST_LENGTH_BYTES +
+                    bodyLength
+            );
+
+            byteBuffer.putInt(Request.requestFlag(request.getProtocolVersion()));
+            byteBuffer.putInt(bodyLength);
+            byteBuffer.putInt(Request.SERVICE_CHANGED_DELTA);
+            request.writeId(byteBuffer);
+            byteBuffer.put(body);
+            byteBuffer.flip();
+
+            request.setData(byteBuffer);
+
+            return request;
+        }
+
+    }
+
+    /**
+     * 构建所有已经推送到同一个版本的订阅者共用的请求体
+     * @param serviceName
+     * @param fromVersion
+     * @param toVersion
+     * @param addedAddresses
+     * @param removedAddresses
+     * @return
+     */
+    public static SharedRequestBody sharedBody(String serviceName,
+                                               long fromVersion,
+                                               long toVersion,
+                                               List<String> addedAddresses,
+                                               List<String> removedAddresses) {
+        return new SharedRequestBody(Request.SERVICE_CHANGED_DELTA,
+                encodeBody(serviceName, fromVersion, toVersion, addedAddresses, removedAddresses));
+    }
+
+    /**
+     * 编码请求id后面的所有字段
+     */
+    private static ByteBuffer encodeBody(String serviceName,
+                                         long fromVersion,
+                                         long toVersion,
+                                         List<String> addedAddresses,
+                                         List<String> removedAddresses) {
+        byte[] serviceNameBytes = serviceName.getBytes();
+        List<byte[]> addedBytes = toBytes(addedAddresses);
+        List<byte[]> removedBytes = toBytes(removedAddresses);
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(
+                Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
+                serviceNameBytes.length +
+                Request.REQUEST_LONG_FIELD_BYTES +
+                Request.REQUEST_LONG_FIELD_BYTES +
+                addressesLength(addedBytes) +
+                addressesLength(removedBytes)
+        );
+        byteBuffer.putInt(serviceNameBytes.length);
+        byteBuffer.put(serviceNameBytes);
+        byteBuffer.putLong(fromVersion);
+        byteBuffer.putLong(toVersion);
+        putAddresses(byteBuffer, addedBytes);
+        putAddresses(byteBuffer, removedBytes);
+        byteBuffer.flip();
+        return byteBuffer;
+    }
+
+    private static List<byte[]> toBytes(List<String> addresses) {
+        List<byte[]> addressBytes = new ArrayList<>(addresses.size());
+        for(String address : addresses) {
+            addressBytes.add(address.getBytes());
+        }
+        return addressBytes;
+    }
+
+    private static int addressesLength(List<byte[]> addressBytes) {
+        int length = Request.REQUEST_INTEGER_FIELD_BYTES;
+        for(byte[] bytes : addressBytes) {
+            length += Request.REQUEST_STRING_FIELD_LENGTH_BYTES + bytes.length;
+        }
+        return length;
+    }
+
+    private static void putAddresses(ByteBuffer byteBuffer, List<byte[]> addressBytes) {
+        byteBuffer.putInt(addressBytes.size());
+        for(byte[] bytes : addressBytes) {
+            byteBuffer.putInt(bytes.length);
+            byteBuffer.put(bytes);
+        }
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    private void setData(ByteBuffer data) {
+        this.data = data;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    public List<String> getAddedAddresses() {
+        return addedAddresses;
+    }
+
+    public List<String> getRemovedAddresses() {
+        return removedAddresses;
+    }
+
+    /**
+     * 反序列化获取请求对象
+     * @param buffer
+     * @return
+     */
+    public static ServiceChangedDeltaRequest deserialize(ByteBuffer buffer) {
+        ServiceChangedDeltaRequest request = new ServiceChangedDeltaRequest();
+
+        byte[] serviceNameBytes = new byte[buffer.getInt()];
+        buffer.get(serviceNameBytes);
+        request.serviceName = new String(serviceNameBytes);
+        request.fromVersion = buffer.getLong();
+        request.toVersion = buffer.getLong();
+        request.addedAddresses = readAddresses(buffer);
+        request.removedAddresses = readAddresses(buffer);
+
+        return request;
+    }
+
+    private static List<String> readAddresses(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        List<String> addresses = new ArrayList<>(count);
+        for(int i = 0; i < count; i++) {
+            byte[] addressBytes = new byte[buffer.getInt()];
+            buffer.get(addressBytes);
+            addresses.add(new String(addressBytes));
+        }
+        return addresses;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceChangedDeltaRequest{" +
+                "id=" + getId() +
+                ", serviceName='" + serviceName + '\'' +
+                ", fromVersion=" + fromVersion +
+                ", toVersion=" + toVersion +
+                ", addedAddresses=" + addedAddresses +
+                ", removedAddresses=" + removedAddresses +
+                '}';
+    }
+
+}
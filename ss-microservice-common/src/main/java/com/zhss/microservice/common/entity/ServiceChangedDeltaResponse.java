@@ -0,0 +1,89 @@
+package com.zhss.microservice.common.entity;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 服务实例增量变动响应
+ */
+public class ServiceChangedDeltaResponse extends Response {
+
+    public static final Integer SUCCESS = 1;
+    public static final Integer FAILURE = 2;
+    /**
+     * 客户端发现版本号不连续，会重新订阅拉取完整的地址列表
+     */
+    public static final Integer RESYNC = 3;
+
+    private ServiceChangedDeltaResponse() {
+
+    }
+
+    private Integer result;
+    private ByteBuffer data;
+
+    public static class Builder {
+
+        private ServiceChangedDeltaResponse response = new ServiceChangedDeltaResponse();
+
+        public ServiceChangedDeltaResponse.Builder request(Request request) {
+            this.response.setRequest(request);
+            return this;
+        }
+
+        public ServiceChangedDeltaResponse.Builder result(Integer result) {
+            this.response.setResult(result);
+            return this;
+        }
+
+        public ServiceChangedDeltaResponse build() {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(
+                    RESPONSE_FLAG_BYTES +
+                    RESPONSE_LENGTH_BYTES +
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES
+            );
+
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
+            byteBuffer.putInt(
+                    Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
+                    Response.RESPONSE_INTEGER_FIELD_BYTES
+            );
+            byteBuffer.putInt(Request.SERVICE_CHANGED_DELTA);
+            response.writeRequestId(byteBuffer);
+            byteBuffer.putInt(response.getResult());
+            byteBuffer.flip();
+
+            response.setData(byteBuffer);
+
+            return response;
+        }
+
+    }
+
+    public static ServiceChangedDeltaResponse deserialize(ByteBuffer buffer) {
+        Integer result = buffer.getInt();
+
+        ServiceChangedDeltaResponse response = new ServiceChangedDeltaResponse();
+        response.setResult(result);
+
+        return response;
+    }
+
+    public Integer getResult() {
+        return result;
+    }
+
+    public void setResult(Integer result) {
+        this.result = result;
+    }
+
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    private void setData(ByteBuffer data) {
+        this.data = data;
+    }
+}
@@ -4,7 +4,6 @@ import com.alibaba.fastjson.JSONObject;
 
 import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.UUID;
 
 public class ServiceChangedRequest extends Request {
 
@@ -12,9 +11,12 @@ public class ServiceChangedRequest extends Request {
 
     }
 
-    private String id;
     private String serviceName;
     private List<String> serviceInstanceAddresses;
+    /**
+     * 地址列表对应的服务版本号，第二版协议才会带上
+     */
+    private long serviceVersion = Request.UNKNOWN_SERVICE_VERSION;
     private ByteBuffer data;
 
     public static class Builder {
@@ -22,9 +24,12 @@ public class ServiceChangedRequest extends Request {
         private ServiceChangedRequest request = new ServiceChangedRequest();
 
         public Builder() {
-            String id = UUID.randomUUID().toString().replace(
-                    "-", "");
-            request.setId(id);
+            request.generateId();
+        }
+
+        public ServiceChangedRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
         }
 
         public ServiceChangedRequest.Builder serviceName(String serviceName) {
@@ -37,36 +42,31 @@ public class ServiceChangedRequest extends Request {
             return this;
         }
 
-        public ServiceChangedRequest build() {
-            byte[] serviceInstancesAddressesBytes = JSONObject.toJSONString(
-                    request.getServiceInstanceAddresses()).getBytes();
+        public ServiceChangedRequest.Builder serviceVersion(long serviceVersion) {
+            this.request.serviceVersion = serviceVersion;
+            return this;
+        }
 
+        public ServiceChangedRequest build() {
+            ByteBuffer body = encodeBody(this.request.getProtocolVersion(),
+                    this.request.getServiceName(),
+                    this.request.getServiceInstanceAddresses(),
+                    this.request.serviceVersion);
+
+            int bodyLength = Request.REQUEST_TYPE_BYTES +
+                    Request.requestIdBytes(this.request.getProtocolVersion()) +
+                    body.remaining();
             ByteBuffer byteBuffer = ByteBuffer.allocate(
                     Request.REQUEST_FLAG_BYTES +
                     Request.REQUEST_LENGTH_BYTES +
-                    Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
-                    Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
-                    this.request.getServiceName().length() +
-                    Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
-                    serviceInstancesAddressesBytes.length
+                    bodyLength
             );
 
-            byteBuffer.putInt(Request.REQUEST_FLAG);
-            byteBuffer.putInt(
-                    Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
-                    Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
-                    this.request.getServiceName().length() +
-                    Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
-                    serviceInstancesAddressesBytes.length
-            );
+            byteBuffer.putInt(Request.requestFlag(this.request.getProtocolVersion()));
+            byteBuffer.putInt(bodyLength);
             byteBuffer.putInt(Request.SERVICE_CHANGED);
-            byteBuffer.put(this.request.getId().getBytes());
-            byteBuffer.putInt(this.request.getServiceName().length());
-            byteBuffer.put(this.request.getServiceName().getBytes());
-            byteBuffer.putInt(serviceInstancesAddressesBytes.length);
-            byteBuffer.put(serviceInstancesAddressesBytes);
+            this.request.writeId(byteBuffer);
+            byteBuffer.put(body);
             byteBuffer.flip();
 
             request.setData(byteBuffer);
@@ -76,20 +76,60 @@ public class ServiceChangedRequest extends Request {
 
     }
 
-    public ByteBuffer getData() {
-        return data;
+    /**
+     * 构建所有订阅者共用的请求体，同一个协议版本的订阅者只需要编码一次
+     * @param protocolVersion
+     * @param serviceName
+     * @param serviceInstanceAddresses
+     * @param serviceVersion
+     * @return
+     */
+    public static SharedRequestBody sharedBody(int protocolVersion,
+                                               String serviceName,
+                                               List<String> serviceInstanceAddresses,
+                                               long serviceVersion) {
+        return new SharedRequestBody(Request.SERVICE_CHANGED,
+                encodeBody(protocolVersion, serviceName, serviceInstanceAddresses, serviceVersion));
     }
 
-    public String getId() {
-        return id;
+    /**
+     * 编码请求id后面的所有字段
+     */
+    private static ByteBuffer encodeBody(int protocolVersion,
+                                         String serviceName,
+                                         List<String> serviceInstanceAddresses,
+                                         long serviceVersion) {
+        byte[] serviceNameBytes = serviceName.getBytes();
+        byte[] serviceInstancesAddressesBytes = JSONObject.toJSONString(
+                serviceInstanceAddresses).getBytes();
+        // 服务版本号追加在最后面，第一版协议的客户端不认识，就不发送了
+        int serviceVersionBytes = protocolVersion == Request.PROTOCOL_VERSION_1 ?
+                0 : Request.REQUEST_LONG_FIELD_BYTES;
+
+        ByteBuffer byteBuffer = ByteBuffer.allocate(
+                Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
+                serviceNameBytes.length +
+                Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
+                serviceInstancesAddressesBytes.length +
+                serviceVersionBytes
+        );
+        byteBuffer.putInt(serviceNameBytes.length);
+        byteBuffer.put(serviceNameBytes);
+        byteBuffer.putInt(serviceInstancesAddressesBytes.length);
+        byteBuffer.put(serviceInstancesAddressesBytes);
+        if(serviceVersionBytes > 0) {
+            byteBuffer.putLong(serviceVersion);
+        }
+        byteBuffer.flip();
+        return byteBuffer;
     }
 
-    private void setData(ByteBuffer data) {
-        this.data = data;
+    public ByteBuffer getData() {
+        return data;
     }
 
-    private void setId(String id) {
-        this.id = id;
+    private void setData(ByteBuffer data) {
+        this.data = data;
     }
 
     public String getServiceName() {
@@ -108,11 +148,11 @@ public class ServiceChangedRequest extends Request {
         this.serviceInstanceAddresses = serviceInstanceAddresses;
     }
 
-    public static ServiceChangedRequest deserialize(ByteBuffer buffer) {
-        byte[] idBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(idBytes);
-        String id = new String(idBytes);
+    public long getServiceVersion() {
+        return serviceVersion;
+    }
 
+    public static ServiceChangedRequest deserialize(ByteBuffer buffer) {
         Integer serviceNameLength = buffer.getInt();
         byte[] serviceNameBytes = new byte[serviceNameLength];
         buffer.get(serviceNameBytes);
@@ -125,9 +165,12 @@ public class ServiceChangedRequest extends Request {
                 new String(serviceInstanceAddressesBytes), List.class);
 
         ServiceChangedRequest request = new ServiceChangedRequest();
-        request.setId(id);
         request.setServiceName(serviceName);
         request.setServiceInstanceAddresses(serviceInstanceAddresses);
+        // 老版本的server不会带上服务版本号
+        if(buffer.remaining() >= Request.REQUEST_LONG_FIELD_BYTES) {
+            request.serviceVersion = buffer.getLong();
+        }
 
         return request;
     }
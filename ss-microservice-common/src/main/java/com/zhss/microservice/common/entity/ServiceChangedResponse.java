@@ -11,7 +11,6 @@ public class ServiceChangedResponse extends Response {
 
     }
 
-    private String requestId;
     private Integer result;
     private ByteBuffer data;
 
@@ -19,8 +18,8 @@ public class ServiceChangedResponse extends Response {
 
         private ServiceChangedResponse response = new ServiceChangedResponse();
 
-        public ServiceChangedResponse.Builder requestId(String requestId) {
-            this.response.setRequestId(requestId);
+        public ServiceChangedResponse.Builder request(Request request) {
+            this.response.setRequest(request);
             return this;
         }
 
@@ -34,18 +33,18 @@ public class ServiceChangedResponse extends Response {
                     RESPONSE_FLAG_BYTES +
                     RESPONSE_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
 
-            byteBuffer.putInt(RESPONSE_FLAG);
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.RESPONSE_INTEGER_FIELD_BYTES
             );
             byteBuffer.putInt(Request.SERVICE_CHANGED);
-            byteBuffer.put(response.getRequestId().getBytes());
+            response.writeRequestId(byteBuffer);
             byteBuffer.putInt(response.getResult());
             byteBuffer.flip();
 
@@ -57,27 +56,14 @@ public class ServiceChangedResponse extends Response {
     }
 
     public static ServiceChangedResponse deserialize(ByteBuffer buffer) {
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         Integer result = buffer.getInt();
 
         ServiceChangedResponse response = new ServiceChangedResponse();
-        response.setRequestId(requestId);
         response.setResult(result);
 
         return response;
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    private void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public Integer getResult() {
         return result;
     }
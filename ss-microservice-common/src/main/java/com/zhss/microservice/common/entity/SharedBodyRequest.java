@@ -0,0 +1,117 @@
+package com.zhss.microservice.common.entity;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 请求体是多个连接共用的请求
+ *
+ * 发送的时候由两段数据组成：这个连接自己的请求头（标识、长度、类型、请求id）和共用的请求体
+ * 线上格式跟直接构建的请求完全一样，对端按照请求类型正常解析
+ */
+public class SharedBodyRequest extends Request {
+
+    private SharedBodyRequest() {
+
+    }
+
+    /**
+     * 共用的请求体
+     */
+    private SharedRequestBody sharedBody;
+    /**
+     * 这个连接自己的请求头
+     */
+    private ByteBuffer header;
+    /**
+     * 请求体视图，记录这个连接发送到哪里了
+     */
+    private ByteBuffer body;
+    /**
+     * 合并成一整块的数据，只有调用getData()的时候才生成
+     */
+    private ByteBuffer data;
+
+    public static class Builder {
+
+        private SharedBodyRequest request = new SharedBodyRequest();
+
+        public Builder() {
+            request.generateId();
+        }
+
+        public SharedBodyRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
+        }
+
+        public SharedBodyRequest.Builder sharedBody(SharedRequestBody sharedBody) {
+            this.request.sharedBody = sharedBody;
+            return this;
+        }
+
+        public SharedBodyRequest build() {
+            int idBytes = Request.requestIdBytes(request.getProtocolVersion());
+
+            ByteBuffer header = ByteBuffer.allocate(
+                    Request.REQUEST_FLAG_BYTES +
+                    Request.REQUEST_LENGTH_BYTES +
+                    Request.REQUEST_TYPE_BYTES +
+                    idBytes
+            );
+            header.putInt(Request.requestFlag(request.getProtocolVersion()));
+            header.putInt(Request.REQUEST_TYPE_BYTES + idBytes + request.sharedBody.length());
+            header.putInt(request.sharedBody.getRequestType());
+            request.writeId(header);
+            header.flip();
+
+            request.header = header;
+            request.body = request.sharedBody.duplicate();
+
+            return request;
+        }
+
+    }
+
+    @Override
+    public int getBufferCount() {
+        return 2;
+    }
+
+    @Override
+    public ByteBuffer getBuffer(int index) {
+        return index == 0 ? header : body;
+    }
+
+    /**
+     * 把请求头和请求体复制成一整块数据，发送的时候不会用到
+     * @return
+     */
+    @Override
+    public synchronized ByteBuffer getData() {
+        if(data == null) {
+            ByteBuffer buffer = ByteBuffer.allocate(header.limit() + sharedBody.length());
+            ByteBuffer headerData = header.duplicate();
+            headerData.rewind();
+            buffer.put(headerData);
+            buffer.put(sharedBody.duplicate());
+            buffer.flip();
+            data = buffer;
+        }
+        return data;
+    }
+
+    @Override
+    public Integer getRequestType() {
+        return sharedBody.getRequestType();
+    }
+
+    @Override
+    public String toString() {
+        return "SharedBodyRequest{" +
+                "id=" + getId() +
+                ", requestType=" + sharedBody.getRequestType() +
+                ", bodyLength=" + sharedBody.length() +
+                '}';
+    }
+
+}
@@ -0,0 +1,43 @@
+package com.zhss.microservice.common.entity;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 多个连接共用的请求体
+ *
+ * 请求体只编码一次，之后只读，每个连接的请求拿到一个duplicate()出来的视图，各自记录发送的位置
+ * 请求标识、长度、类型和请求id放在每个连接自己的请求头里，见SharedBodyRequest
+ */
+public class SharedRequestBody {
+
+    /**
+     * 请求类型
+     */
+    private final Integer requestType;
+    /**
+     * 只读的请求体
+     */
+    private final ByteBuffer body;
+
+    public SharedRequestBody(Integer requestType, ByteBuffer body) {
+        this.requestType = requestType;
+        this.body = body.asReadOnlyBuffer();
+    }
+
+    public Integer getRequestType() {
+        return requestType;
+    }
+
+    /**
+     * 获取一个新的请求体视图，共用底层的数据
+     * @return
+     */
+    public ByteBuffer duplicate() {
+        return body.duplicate();
+    }
+
+    public int length() {
+        return body.remaining();
+    }
+
+}
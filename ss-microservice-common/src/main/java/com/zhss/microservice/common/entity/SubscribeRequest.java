@@ -1,7 +1,9 @@
 package com.zhss.microservice.common.entity;
 
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+
 import java.nio.ByteBuffer;
-import java.util.UUID;
 
 public class SubscribeRequest extends Request {
 
@@ -9,8 +11,11 @@ public class SubscribeRequest extends Request {
 
     }
 
-    private String id;
     private String serviceName;
+    /**
+     * 服务路由到的槽位，0表示还没有算过
+     */
+    private int serviceSlot = 0;
     private ByteBuffer data;
 
     public static class Builder {
@@ -18,9 +23,12 @@ public class SubscribeRequest extends Request {
         private SubscribeRequest request = new SubscribeRequest();
 
         public Builder() {
-            String id = UUID.randomUUID().toString().replace(
-                    "-", "");
-            request.setId(id);
+            request.generateId();
+        }
+
+        public SubscribeRequest.Builder protocolVersion(int protocolVersion) {
+            this.request.setProtocolVersion(protocolVersion);
+            return this;
         }
 
         public SubscribeRequest.Builder serviceName(String serviceName) {
@@ -33,20 +41,20 @@ public class SubscribeRequest extends Request {
                     Request.REQUEST_FLAG_BYTES +
                     Request.REQUEST_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(this.request.getProtocolVersion()) +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
                     this.request.getServiceName().length()
             );
 
-            byteBuffer.putInt(Request.REQUEST_FLAG);
+            byteBuffer.putInt(Request.requestFlag(this.request.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(this.request.getProtocolVersion()) +
                     Request.REQUEST_STRING_FIELD_LENGTH_BYTES +
                     this.request.getServiceName().length()
             );
             byteBuffer.putInt(Request.SUBSCRIBE);
-            byteBuffer.put(this.request.getId().getBytes());
+            this.request.writeId(byteBuffer);
             byteBuffer.putInt(this.request.getServiceName().length());
             byteBuffer.put(this.request.getServiceName().getBytes());
             byteBuffer.flip();
@@ -62,18 +70,10 @@ public class SubscribeRequest extends Request {
         return data;
     }
 
-    public String getId() {
-        return id;
-    }
-
     private void setData(ByteBuffer data) {
         this.data = data;
     }
 
-    private void setId(String id) {
-        this.id = id;
-    }
-
     public String getServiceName() {
         return serviceName;
     }
@@ -82,19 +82,25 @@ public class SubscribeRequest extends Request {
         this.serviceName = serviceName;
     }
 
-    public static SubscribeRequest deserialize(ByteBuffer buffer) {
-        byte[] idBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(idBytes);
-        String id = new String(idBytes);
+    /**
+     * 获取服务路由到的槽位，解码出来的请求直接用服务名称字典里缓存的槽位
+     * @return
+     */
+    public int getServiceSlot() {
+        if(serviceSlot == 0) {
+            serviceSlot = SlotRoutingTable.routeSlot(serviceName);
+        }
+        return serviceSlot;
+    }
 
+    public static SubscribeRequest deserialize(ByteBuffer buffer) {
         Integer serviceNameLength = buffer.getInt();
-        byte[] serviceNameBytes = new byte[serviceNameLength];
-        buffer.get(serviceNameBytes);
-        String serviceName = new String(serviceNameBytes);
+        ServiceNameDictionary.Entry serviceName = ServiceNameDictionary.getInstance()
+                .read(buffer, serviceNameLength);
 
         SubscribeRequest request = new SubscribeRequest();
-        request.setId(id);
-        request.setServiceName(serviceName);
+        request.setServiceName(serviceName.getServiceName());
+        request.serviceSlot = serviceName.getSlot();
 
         return request;
     }
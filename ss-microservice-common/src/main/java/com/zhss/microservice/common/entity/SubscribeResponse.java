@@ -11,16 +11,19 @@ public class SubscribeResponse extends Response {
 
     }
 
-    private String requestId;
     private List<String> serviceInstanceAddresses;
+    /**
+     * 地址列表对应的服务版本号，第二版协议才会带上
+     */
+    private long serviceVersion = Request.UNKNOWN_SERVICE_VERSION;
     private ByteBuffer data;
 
     public static class Builder {
 
         private SubscribeResponse response = new SubscribeResponse();
 
-        public SubscribeResponse.Builder requestId(String requestId) {
-            this.response.setRequestId(requestId);
+        public SubscribeResponse.Builder request(Request request) {
+            this.response.setRequest(request);
             return this;
         }
 
@@ -30,31 +33,44 @@ public class SubscribeResponse extends Response {
             return this;
         }
 
+        public SubscribeResponse.Builder serviceVersion(long serviceVersion) {
+            this.response.serviceVersion = serviceVersion;
+            return this;
+        }
+
         public SubscribeResponse build() {
             String serviceInstanceAddressesJson =
                     JSONObject.toJSONString(this.response.getServiceInstanceAddresses());
             byte[] serviceInstanceAddressesBytes = serviceInstanceAddressesJson.getBytes();
+            // 服务版本号追加在最后面，第一版协议的客户端不认识，就不发送了
+            int serviceVersionBytes = response.getProtocolVersion() == Request.PROTOCOL_VERSION_1 ?
+                    0 : Request.REQUEST_LONG_FIELD_BYTES;
 
             ByteBuffer byteBuffer = ByteBuffer.allocate(
                     RESPONSE_FLAG_BYTES +
                     RESPONSE_LENGTH_BYTES +
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.JSON_LENGTH_BYTES +
-                    serviceInstanceAddressesBytes.length
+                    serviceInstanceAddressesBytes.length +
+                    serviceVersionBytes
             );
 
-            byteBuffer.putInt(RESPONSE_FLAG);
+            byteBuffer.putInt(Response.responseFlag(response.getProtocolVersion()));
             byteBuffer.putInt(
                     Request.REQUEST_TYPE_BYTES +
-                    Request.REQUEST_ID_BYTES +
+                    Request.requestIdBytes(response.getProtocolVersion()) +
                     Response.JSON_LENGTH_BYTES +
-                    serviceInstanceAddressesBytes.length
+                    serviceInstanceAddressesBytes.length +
+                    serviceVersionBytes
             );
             byteBuffer.putInt(Request.SUBSCRIBE);
-            byteBuffer.put(response.getRequestId().getBytes());
+            response.writeRequestId(byteBuffer);
             byteBuffer.putInt(serviceInstanceAddressesBytes.length);
             byteBuffer.put(serviceInstanceAddressesBytes);
+            if(serviceVersionBytes > 0) {
+                byteBuffer.putLong(response.serviceVersion);
+            }
             byteBuffer.flip();
 
             response.setData(byteBuffer);
@@ -65,10 +81,6 @@ public class SubscribeResponse extends Response {
     }
 
     public static SubscribeResponse deserialize(ByteBuffer buffer) {
-        byte[] requestIdBytes = new byte[Request.REQUEST_ID_BYTES];
-        buffer.get(requestIdBytes);
-        String requestId = new String(requestIdBytes);
-
         byte[] serviceInstanceAddressesBytes = new byte[buffer.getInt()];
         buffer.get(serviceInstanceAddressesBytes);
         String serviceInstanceAddressesJson = new String(serviceInstanceAddressesBytes);
@@ -76,20 +88,15 @@ public class SubscribeResponse extends Response {
                 serviceInstanceAddressesJson, List.class);
 
         SubscribeResponse response = new SubscribeResponse();
-        response.setRequestId(requestId);
         response.setServiceInstanceAddresses(serviceInstanceAddresses);
+        // 老版本的server不会带上服务版本号
+        if(buffer.remaining() >= Request.REQUEST_LONG_FIELD_BYTES) {
+            response.serviceVersion = buffer.getLong();
+        }
 
         return response;
     }
 
-    public String getRequestId() {
-        return requestId;
-    }
-
-    private void setRequestId(String requestId) {
-        this.requestId = requestId;
-    }
-
     public List<String> getServiceInstanceAddresses() {
         return serviceInstanceAddresses;
     }
@@ -98,6 +105,10 @@ public class SubscribeResponse extends Response {
         this.serviceInstanceAddresses = serviceInstanceAddresses;
     }
 
+    public long getServiceVersion() {
+        return serviceVersion;
+    }
+
     public ByteBuffer getData() {
         return data;
     }
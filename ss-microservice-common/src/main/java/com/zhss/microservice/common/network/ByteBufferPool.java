@@ -0,0 +1,132 @@
+package com.zhss.microservice.common.network;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 读取消息用的buffer池
+ *
+ * 按照2的幂次划分成多个大小规格，申请的时候从能放下的最小规格里拿一个复用
+ * 超过最大规格的buffer直接分配，用完了也不放回池子
+ * 每个IO线程持有一个自己的实例，不是线程安全的
+ */
+public class ByteBufferPool {
+
+    /**
+     * 最小规格buffer大小的位数，也就是64字节
+     */
+    private static final int MIN_SIZE_CLASS_SHIFT = 6;
+
+    /**
+     * 各个规格空闲的buffer
+     */
+    private final List<ArrayDeque<ByteBuffer>> freeBuffers;
+    /**
+     * 池子里最大规格的buffer大小
+     */
+    private final int maxPooledSize;
+    /**
+     * 每个规格最多缓存多少个空闲buffer
+     */
+    private final int maxFreeBuffersPerSizeClass;
+    /**
+     * 是否使用堆外内存
+     */
+    private final boolean direct;
+    /**
+     * 新分配buffer的次数
+     */
+    private long allocateCount = 0;
+    /**
+     * 复用池子里buffer的次数
+     */
+    private long reuseCount = 0;
+
+    public ByteBufferPool(int maxPooledSize, int maxFreeBuffersPerSizeClass, boolean direct) {
+        int sizeClasses = sizeClassIndex(maxPooledSize) + 1;
+        this.freeBuffers = new ArrayList<>(sizeClasses);
+        for(int i = 0; i < sizeClasses; i++) {
+            this.freeBuffers.add(new ArrayDeque<>());
+        }
+        this.maxPooledSize = sizeClassCapacity(sizeClasses - 1);
+        this.maxFreeBuffersPerSizeClass = maxFreeBuffersPerSizeClass;
+        this.direct = direct;
+    }
+
+    /**
+     * 申请一个能放下指定字节数的buffer，limit就是申请的字节数
+     * @param size
+     * @return
+     */
+    public ByteBuffer allocate(int size) {
+        if(size > maxPooledSize) {
+            allocateCount++;
+            return newBuffer(size);
+        }
+
+        int index = sizeClassIndex(size);
+        ByteBuffer buffer = freeBuffers.get(index).pollLast();
+        if(buffer == null) {
+            allocateCount++;
+            buffer = newBuffer(sizeClassCapacity(index));
+        } else {
+            reuseCount++;
+            buffer.clear();
+        }
+
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * 把用完的buffer放回池子
+     * @param buffer
+     */
+    public void release(ByteBuffer buffer) {
+        if(buffer == null || buffer.isDirect() != direct) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+        if(capacity > maxPooledSize || Integer.bitCount(capacity) != 1
+                || capacity < sizeClassCapacity(0)) {
+            return;
+        }
+
+        ArrayDeque<ByteBuffer> sizeClassBuffers = freeBuffers.get(sizeClassIndex(capacity));
+        if(sizeClassBuffers.size() < maxFreeBuffersPerSizeClass) {
+            sizeClassBuffers.offerLast(buffer);
+        }
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * 计算能放下指定字节数的最小规格
+     * @param size
+     * @return
+     */
+    private static int sizeClassIndex(int size) {
+        if(size <= (1 << MIN_SIZE_CLASS_SHIFT)) {
+            return 0;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_SIZE_CLASS_SHIFT;
+    }
+
+    private static int sizeClassCapacity(int index) {
+        return 1 << (index + MIN_SIZE_CLASS_SHIFT);
+    }
+
+    public long getAllocateCount() {
+        return allocateCount;
+    }
+
+    public long getReuseCount() {
+        return reuseCount;
+    }
+
+}
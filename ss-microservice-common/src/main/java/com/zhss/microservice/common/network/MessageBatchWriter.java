@@ -0,0 +1,122 @@
+package com.zhss.microservice.common.network;
+
+import com.zhss.microservice.common.entity.Message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Queue;
+
+/**
+ * 批量发送消息的组件
+ *
+ * 把一个连接的消息队列里排队的多条消息凑成一批，通过一次write(ByteBuffer[])发送出去
+ * 一条消息可以由多段数据组成，比如每个连接自己的请求头加上所有订阅者共用的请求体
+ * 每个IO线程持有一个自己的实例，不是线程安全的
+ */
+public class MessageBatchWriter {
+
+    /**
+     * 一批最多发送多少条消息
+     */
+    private final int maxBatchMessages;
+    /**
+     * 一批最多发送多少字节，至少会发送一条消息
+     */
+    private final int maxBatchBytes;
+    /**
+     * 一批消息的数据，反复使用，消息的数据段比较多的时候会扩容
+     */
+    private ByteBuffer[] batchBuffers;
+    /**
+     * 一批消息里每条消息的最后一段数据在batchBuffers里的下标加1
+     */
+    private final int[] messageBufferEnds;
+    /**
+     * 调用write的次数
+     */
+    private long writeCount = 0;
+    /**
+     * 发送完毕的消息数量
+     */
+    private long writtenMessageCount = 0;
+
+    public MessageBatchWriter(int maxBatchMessages, int maxBatchBytes) {
+        this.maxBatchMessages = maxBatchMessages;
+        this.maxBatchBytes = maxBatchBytes;
+        this.batchBuffers = new ByteBuffer[maxBatchMessages];
+        this.messageBufferEnds = new int[maxBatchMessages];
+    }
+
+    /**
+     * 尽可能多的发送队列里的消息，直到队列空了或者socket写缓冲满了
+     *
+     * 一批消息里没写完的那条消息会留在队列头部，他的buffer记录了写到的位置，下次接着写
+     * 只能由消费这个队列的IO线程调用，写完的消息会从队列里删除
+     * @param channel
+     * @param messageQueue
+     * @return 队列里的消息是否全部写完了
+     */
+    public boolean write(GatheringByteChannel channel, Queue<Message> messageQueue) throws IOException {
+        while(true) {
+            int batchSize = 0;
+            int bufferCount = 0;
+            long batchBytes = 0;
+
+            Iterator<Message> messageIterator = messageQueue.iterator();
+            while(messageIterator.hasNext() && batchSize < maxBatchMessages
+                    && batchBytes < maxBatchBytes) {
+                Message message = messageIterator.next();
+                int messageBufferCount = message.getBufferCount();
+                ensureCapacity(bufferCount + messageBufferCount);
+                for(int i = 0; i < messageBufferCount; i++) {
+                    ByteBuffer data = message.getBuffer(i);
+                    batchBuffers[bufferCount++] = data;
+                    batchBytes += data.remaining();
+                }
+                messageBufferEnds[batchSize++] = bufferCount;
+            }
+
+            if(batchSize == 0) {
+                return true;
+            }
+
+            try {
+                channel.write(batchBuffers, 0, bufferCount);
+                writeCount++;
+
+                // 一条消息的最后一段数据写完了，这条消息才算写完
+                int writtenSize = 0;
+                while(writtenSize < batchSize
+                        && !batchBuffers[messageBufferEnds[writtenSize] - 1].hasRemaining()) {
+                    messageQueue.poll();
+                    writtenSize++;
+                }
+                writtenMessageCount += writtenSize;
+
+                if(writtenSize < batchSize) {
+                    return false;
+                }
+            } finally {
+                Arrays.fill(batchBuffers, 0, bufferCount, null);
+            }
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if(capacity > batchBuffers.length) {
+            batchBuffers = Arrays.copyOf(batchBuffers, Math.max(capacity, batchBuffers.length * 2));
+        }
+    }
+
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    public long getWrittenMessageCount() {
+        return writtenMessageCount;
+    }
+
+}
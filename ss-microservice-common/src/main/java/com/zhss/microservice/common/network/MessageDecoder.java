@@ -0,0 +1,215 @@
+package com.zhss.microservice.common.network;
+
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.entity.Request;
+import com.zhss.microservice.common.entity.Response;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.List;
+
+/**
+ * 从一个连接里读取和解析消息的组件
+ *
+ * 每次可读的时候把socket里的数据读到一个累积buffer里，然后循环解析出所有完整的消息
+ * 一次可读事件最多读取固定的字节数，剩下的数据等下次select再读，不让一个连接一直占着IO线程
+ * 不完整的消息会留在累积buffer里等下次读到更多数据再解析，这样拆包和粘包都能正确处理
+ * 累积buffer从IO线程的buffer池里申请，里面没有剩余数据的时候就放回池子
+ * 每个连接持有一个自己的实例，只能在连接所属的IO线程里使用
+ */
+public class MessageDecoder {
+
+    /**
+     * 消息头的字节数：消息标识 + 消息长度
+     */
+    private static final int MESSAGE_HEADER_BYTES =
+            Request.REQUEST_FLAG_BYTES + Request.REQUEST_LENGTH_BYTES;
+    /**
+     * 累积buffer的初始大小
+     */
+    private static final int INITIAL_READ_BUFFER_SIZE = 4 * 1024;
+    /**
+     * 单条消息最大的字节数，超过了说明数据有问题
+     */
+    private static final int MAX_MESSAGE_BYTES = 64 * 1024 * 1024;
+    /**
+     * 一次可读事件默认最多读取的字节数
+     */
+    public static final int DEFAULT_MAX_READ_BYTES_PER_EVENT = 256 * 1024;
+
+    /**
+     * 读取消息用的buffer池
+     */
+    private final ByteBufferPool readBufferPool;
+    /**
+     * 一次可读事件最多读取的字节数
+     */
+    private final int maxReadBytesPerEvent;
+    /**
+     * 累积读取到的数据，处于写模式
+     */
+    private ByteBuffer readBuffer;
+
+    public MessageDecoder(ByteBufferPool readBufferPool) {
+        this(readBufferPool, DEFAULT_MAX_READ_BYTES_PER_EVENT);
+    }
+
+    public MessageDecoder(ByteBufferPool readBufferPool, int maxReadBytesPerEvent) {
+        this.readBufferPool = readBufferPool;
+        this.maxReadBytesPerEvent = maxReadBytesPerEvent;
+    }
+
+    /**
+     * 读取连接里当前能读到的数据，解析出所有完整的消息
+     *
+     * 读到的数据超过上限就先返回，selector是水平触发的，没读完的数据下次select还会通知可读
+     * @param channel
+     * @param messages 解析出来的消息会按顺序放到这里
+     * @return 连接是否还没有被对方关闭
+     * @throws IOException
+     */
+    public boolean read(ReadableByteChannel channel, List<Message> messages) throws IOException {
+        boolean endOfStream = false;
+        int totalReadBytes = 0;
+
+        while(true) {
+            ensureWritable();
+
+            int readBytes = channel.read(readBuffer);
+            if(readBytes < 0) {
+                endOfStream = true;
+                break;
+            }
+            totalReadBytes += readBytes;
+            // buffer没有读满，说明socket里的数据已经读完了
+            if(readBuffer.hasRemaining()) {
+                break;
+            }
+            // buffer读满了，先解析一下腾出空间再接着读
+            decode(messages);
+            // 这次可读事件已经读得够多了，把IO线程让给其他连接
+            if(totalReadBytes >= maxReadBytesPerEvent) {
+                break;
+            }
+        }
+
+        decode(messages);
+
+        if(readBuffer.position() == 0) {
+            readBufferPool.release(readBuffer);
+            readBuffer = null;
+        }
+
+        return !endOfStream;
+    }
+
+    /**
+     * 释放累积buffer，连接关闭的时候调用
+     */
+    public void release() {
+        if(readBuffer != null) {
+            readBufferPool.release(readBuffer);
+            readBuffer = null;
+        }
+    }
+
+    /**
+     * 解析累积buffer里所有完整的消息
+     * @param messages
+     * @throws IOException
+     */
+    private void decode(List<Message> messages) throws IOException {
+        readBuffer.flip();
+
+        try {
+            while(readBuffer.remaining() >= MESSAGE_HEADER_BYTES) {
+                int messageStart = readBuffer.position();
+                int messageFlag = readBuffer.getInt(messageStart);
+                int messageLength = readBuffer.getInt(messageStart + Request.REQUEST_FLAG_BYTES);
+                if(messageLength < Request.REQUEST_TYPE_BYTES || messageLength > MAX_MESSAGE_BYTES) {
+                    throw new IOException("消息长度不合法：" + messageLength);
+                }
+
+                // 消息还没有读完整，等下次读到更多数据
+                if(readBuffer.remaining() < MESSAGE_HEADER_BYTES + messageLength) {
+                    break;
+                }
+
+                int messageEnd = messageStart + MESSAGE_HEADER_BYTES + messageLength;
+                int limit = readBuffer.limit();
+                readBuffer.position(messageStart + MESSAGE_HEADER_BYTES);
+                readBuffer.limit(messageEnd);
+
+                Message message;
+                try {
+                    message = deserialize(messageFlag, readBuffer);
+                } finally {
+                    readBuffer.limit(limit);
+                    readBuffer.position(messageEnd);
+                }
+
+                if(message != null) {
+                    messages.add(message);
+                }
+            }
+        } finally {
+            readBuffer.compact();
+        }
+    }
+
+    /**
+     * 把一条消息的数据反序列化成请求/响应对象
+     * @param messageFlag
+     * @param messageBuffer 从请求类型开始的消息数据
+     * @return 不认识的消息返回null
+     */
+    private Message deserialize(int messageFlag, ByteBuffer messageBuffer) {
+        Integer requestType = messageBuffer.getInt();
+
+        // 两个版本的协议只有请求id的格式不一样，按照消息标识区分
+        if(Request.REQUEST_FLAG_V2.equals(messageFlag)) {
+            return Request.deserialize(Request.PROTOCOL_VERSION_2, requestType, messageBuffer);
+        } else if(Response.RESPONSE_FLAG_V2.equals(messageFlag)) {
+            return Response.deserialize(Request.PROTOCOL_VERSION_2, requestType, messageBuffer);
+        } else if(Request.REQUEST_FLAG.equals(messageFlag)) {
+            return Request.deserialize(Request.PROTOCOL_VERSION_1, requestType, messageBuffer);
+        } else if(Response.RESPONSE_FLAG.equals(messageFlag)) {
+            return Response.deserialize(Request.PROTOCOL_VERSION_1, requestType, messageBuffer);
+        }
+        return null;
+    }
+
+    /**
+     * 保证累积buffer还有空间可以读数据，不够的时候换一个更大的
+     */
+    private void ensureWritable() {
+        if(readBuffer == null) {
+            readBuffer = allocate(INITIAL_READ_BUFFER_SIZE);
+            return;
+        }
+        if(readBuffer.hasRemaining()) {
+            return;
+        }
+
+        // 至少要放得下当前这条没读完的消息
+        int requiredCapacity = readBuffer.capacity() * 2;
+        if(readBuffer.position() >= MESSAGE_HEADER_BYTES) {
+            int messageLength = readBuffer.getInt(Request.REQUEST_FLAG_BYTES);
+            requiredCapacity = Math.max(requiredCapacity, MESSAGE_HEADER_BYTES + messageLength);
+        }
+
+        ByteBuffer newReadBuffer = allocate(requiredCapacity);
+        readBuffer.flip();
+        newReadBuffer.put(readBuffer);
+        readBufferPool.release(readBuffer);
+        readBuffer = newReadBuffer;
+    }
+
+    private ByteBuffer allocate(int size) {
+        ByteBuffer buffer = readBufferPool.allocate(size);
+        buffer.limit(buffer.capacity());
+        return buffer;
+    }
+
+}
@@ -0,0 +1,181 @@
+package com.zhss.microservice.common.utils;
+
+import java.util.Arrays;
+
+/**
+ * key是long的哈希表
+ *
+ * 开放寻址 + 线性探测，key直接存在long数组里，不用装箱成Long，也没有Entry对象
+ * 删除的时候把后面同一个探测链上的元素往前挪，不留墓碑
+ * 不是线程安全的，使用方自己加锁
+ * @param <V>
+ */
+public class LongObjectHashMap<V> {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+    /**
+     * 最大负载因子
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+
+    /**
+     * 所有的key
+     */
+    private long[] keys;
+    /**
+     * 所有的value，value为null的槽位就是空的
+     */
+    private Object[] values;
+    /**
+     * 槽位数量减1，槽位数量是2的幂次
+     */
+    private int mask;
+    /**
+     * 元素数量
+     */
+    private int size = 0;
+    /**
+     * 元素数量超过这个值就扩容
+     */
+    private int resizeThreshold;
+
+    public LongObjectHashMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public LongObjectHashMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max((int) (expectedSize / LOAD_FACTOR) - 1, 1)) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * 放入一个元素
+     * @param key
+     * @param value 不能是null
+     * @return 这个key之前对应的value
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if(value == null) {
+            throw new IllegalArgumentException("value不能是null");
+        }
+
+        int index = indexOf(key);
+        while(values[index] != null) {
+            if(keys[index] == key) {
+                V oldValue = (V) values[index];
+                values[index] = value;
+                return oldValue;
+            }
+            index = (index + 1) & mask;
+        }
+
+        keys[index] = key;
+        values[index] = value;
+        if(++size > resizeThreshold) {
+            resize();
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        while(values[index] != null) {
+            if(keys[index] == key) {
+                return (V) values[index];
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    /**
+     * 删除一个元素
+     * @param key
+     * @return 被删除的value，没有这个key就返回null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+        while(values[index] != null) {
+            if(keys[index] == key) {
+                V oldValue = (V) values[index];
+                values[index] = null;
+                size--;
+                shiftBack(index);
+                return oldValue;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * 删除一个元素之后，把后面探测链上的元素挪到空出来的位置
+     */
+    private void shiftBack(int emptyIndex) {
+        int index = (emptyIndex + 1) & mask;
+        while(values[index] != null) {
+            int idealIndex = indexOf(keys[index]);
+            // 理想位置不在(emptyIndex, index]这个区间里的元素，才能挪到空位上去
+            if(((index - idealIndex) & mask) >= ((index - emptyIndex) & mask)) {
+                keys[emptyIndex] = keys[index];
+                values[emptyIndex] = values[index];
+                values[index] = null;
+                emptyIndex = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length << 1);
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldValues[i] == null) {
+                continue;
+            }
+            int index = indexOf(oldKeys[i]);
+            while(values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * 请求id这种连续递增的key也要打散开，避免挤在一起
+     */
+    private int indexOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+}
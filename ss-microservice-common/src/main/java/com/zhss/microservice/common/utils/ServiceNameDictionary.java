@@ -0,0 +1,205 @@
+package com.zhss.microservice.common.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 服务名称字典：服务名称 -> 紧凑的int id和服务路由到的槽位
+ *
+ * 请求里的服务名称反复出现的就那么几个，解码的时候直接拿请求里的字节去字典里查，
+ * 已经见过的名称不用再new一个String，槽位也不用每次都重新算
+ * 开放寻址 + 线性探测，查找不加锁，只有第一次见到一个名称的时候加锁放进字典
+ * 字典满了以后新名称不再放进来，每次照常解码，避免乱七八糟的名称把内存撑爆
+ */
+public class ServiceNameDictionary {
+
+    /**
+     * 没有放进字典的服务名称的id
+     */
+    public static final int NO_ID = -1;
+    /**
+     * 字典里最多放多少个服务名称
+     */
+    private static final int MAX_SIZE = 65536;
+    /**
+     * 初始槽位数量
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private ServiceNameDictionary() {
+
+    }
+
+    static class Singleton {
+        static ServiceNameDictionary instance = new ServiceNameDictionary();
+    }
+
+    public static ServiceNameDictionary getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 哈希表，槽位数量是2的幂次，扩容的时候整个替换掉
+     */
+    private volatile Entry[] table = new Entry[INITIAL_CAPACITY];
+    /**
+     * 字典里的服务名称数量，也是下一个分配的id
+     */
+    private volatile int size = 0;
+
+    /**
+     * 从请求字节里读出一个服务名称，读完以后buffer的position移到名称后面
+     * @param buffer
+     * @param length 服务名称的字节数
+     * @return
+     */
+    public Entry read(ByteBuffer buffer, int length) {
+        int position = buffer.position();
+        int hash = hash(buffer, position, length);
+
+        Entry entry = find(table, hash, buffer, position, length);
+        if(entry != null) {
+            buffer.position(position + length);
+            return entry;
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return add(hash, bytes);
+    }
+
+    /**
+     * 把一个服务名称放进字典
+     * @param serviceName
+     * @return
+     */
+    public Entry intern(String serviceName) {
+        byte[] bytes = serviceName.getBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        int hash = hash(buffer, 0, bytes.length);
+
+        Entry entry = find(table, hash, buffer, 0, bytes.length);
+        if(entry == null) {
+            entry = add(hash, bytes);
+        }
+        return entry;
+    }
+
+    private static Entry find(Entry[] table, int hash, ByteBuffer buffer, int position, int length) {
+        int mask = table.length - 1;
+        int index = hash & mask;
+        Entry entry;
+        while((entry = table[index]) != null) {
+            if(entry.hash == hash && entry.matches(buffer, position, length)) {
+                return entry;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    private synchronized Entry add(int hash, byte[] bytes) {
+        // 加锁之前可能已经有别的线程放进来了
+        Entry entry = find(table, hash, ByteBuffer.wrap(bytes), 0, bytes.length);
+        if(entry != null) {
+            return entry;
+        }
+
+        String serviceName = new String(bytes);
+        if(size >= MAX_SIZE) {
+            return new Entry(NO_ID, serviceName, bytes, hash);
+        }
+
+        Entry[] newTable = table;
+        if((size + 1) * 2 > newTable.length) {
+            newTable = resize(newTable);
+        }
+        entry = new Entry(size, serviceName, bytes, hash);
+        insert(newTable, entry);
+        table = newTable;
+        size++;
+        return entry;
+    }
+
+    private static Entry[] resize(Entry[] oldTable) {
+        Entry[] newTable = new Entry[oldTable.length << 1];
+        for(Entry entry : oldTable) {
+            if(entry != null) {
+                insert(newTable, entry);
+            }
+        }
+        return newTable;
+    }
+
+    private static void insert(Entry[] table, Entry entry) {
+        int mask = table.length - 1;
+        int index = entry.hash & mask;
+        while(table[index] != null) {
+            index = (index + 1) & mask;
+        }
+        table[index] = entry;
+    }
+
+    private static int hash(ByteBuffer buffer, int position, int length) {
+        int hash = 0;
+        for(int i = 0; i < length; i++) {
+            hash = 31 * hash + buffer.get(position + i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 字典里的一个服务名称
+     */
+    public static class Entry {
+
+        /**
+         * 服务名称id，没有放进字典的是NO_ID
+         */
+        private final int id;
+        private final String serviceName;
+        /**
+         * 服务路由到的槽位
+         */
+        private final int slot;
+        private final byte[] bytes;
+        private final int hash;
+
+        Entry(int id, String serviceName, byte[] bytes, int hash) {
+            this.id = id;
+            this.serviceName = serviceName;
+            this.slot = SlotRoutingTable.routeSlot(serviceName);
+            this.bytes = bytes;
+            this.hash = hash;
+        }
+
+        private boolean matches(ByteBuffer buffer, int position, int length) {
+            if(bytes.length != length) {
+                return false;
+            }
+            for(int i = 0; i < length; i++) {
+                if(bytes[i] != buffer.get(position + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getServiceName() {
+            return serviceName;
+        }
+
+        public int getSlot() {
+            return slot;
+        }
+
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.zhss.microservice.common.utils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 槽位路由表：槽位 -> 负责这个槽位的server节点id
+ *
+ * 槽位分配数据里的槽位范围是"起始槽位,结束槽位"这样的字符串，每次路由都去解析太浪费了
+ * 槽位分配变动的时候一次性展开成一个数组，之后路由一个服务只需要算一次hash、读一次数组
+ * 路由表构建好以后不会再修改，槽位分配变动的时候整个替换掉
+ */
+public class SlotRoutingTable {
+
+    /**
+     * 槽位数量
+     */
+    public static final int SLOT_COUNT = 16384;
+    /**
+     * 按照槽位编号下标的数组大小，槽位编号是1~16384，下标0不用
+     */
+    public static final int SLOT_TABLE_SIZE = SLOT_COUNT + 1;
+    /**
+     * 槽位没有分配给任何节点
+     */
+    public static final int UNASSIGNED = -1;
+
+    /**
+     * 槽位编号 -> server节点id
+     */
+    private final int[] slotNodeIds;
+
+    private SlotRoutingTable(int[] slotNodeIds) {
+        this.slotNodeIds = slotNodeIds;
+    }
+
+    /**
+     * 根据槽位分配数据构建路由表
+     * @param slotsAllocation server节点id -> 槽位范围列表
+     * @return
+     */
+    public static SlotRoutingTable build(Map<Integer, List<String>> slotsAllocation) {
+        int[] slotNodeIds = new int[SLOT_TABLE_SIZE];
+        Arrays.fill(slotNodeIds, UNASSIGNED);
+
+        for(Map.Entry<Integer, List<String>> entry : slotsAllocation.entrySet()) {
+            for(String slotScope : entry.getValue()) {
+                int startSlot = parseStartSlot(slotScope);
+                int endSlot = parseEndSlot(slotScope);
+                Arrays.fill(slotNodeIds, startSlot, endSlot + 1, entry.getKey());
+            }
+        }
+
+        return new SlotRoutingTable(slotNodeIds);
+    }
+
+    /**
+     * 获取负责某个槽位的server节点id
+     * @param slot
+     * @return 没有分配的时候返回UNASSIGNED
+     */
+    public int getNodeId(int slot) {
+        return slotNodeIds[slot];
+    }
+
+    /**
+     * 获取负责某个服务的server节点id
+     * @param serviceName
+     * @return 没有分配的时候返回UNASSIGNED
+     */
+    public int getNodeId(String serviceName) {
+        return slotNodeIds[routeSlot(serviceName)];
+    }
+
+    /**
+     * 将服务路由到slot
+     * @param serviceName
+     * @return
+     */
+    public static int routeSlot(String serviceName) {
+        int hashCode = serviceName.hashCode() & Integer.MAX_VALUE;
+        int slot = hashCode % SLOT_COUNT;
+
+        if(slot == 0) {
+            slot = slot + 1;
+        }
+
+        return slot;
+    }
+
+    /**
+     * 解析槽位范围的起始槽位
+     * @param slotScope "起始槽位,结束槽位"
+     * @return
+     */
+    public static int parseStartSlot(String slotScope) {
+        return Integer.parseInt(slotScope.substring(0, slotScope.indexOf(',')).trim());
+    }
+
+    /**
+     * 解析槽位范围的结束槽位
+     * @param slotScope "起始槽位,结束槽位"
+     * @return
+     */
+    public static int parseEndSlot(String slotScope) {
+        return Integer.parseInt(slotScope.substring(slotScope.indexOf(',') + 1).trim());
+    }
+
+}
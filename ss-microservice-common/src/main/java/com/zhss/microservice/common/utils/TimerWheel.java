@@ -0,0 +1,136 @@
+package com.zhss.microservice.common.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 时间轮
+ *
+ * 把到期时间按照tick的粒度散列到一圈固定数量的槽里，推进时间的时候只检查走过的槽
+ * 到期时间超过一圈的任务会一直留在槽里，直到某一圈真正到期
+ * 任务不支持主动取消，使用方在到期回调里自己判断任务是否还有效就可以了
+ * @param <T>
+ */
+public class TimerWheel<T> {
+
+    /**
+     * 每个tick的毫秒数
+     */
+    private final long tickMillis;
+    /**
+     * 槽位数量减1，槽位数量是2的幂次
+     */
+    private final int mask;
+    /**
+     * 每个槽里的任务
+     */
+    private final List<ArrayDeque<Timeout<T>>> buckets;
+    /**
+     * 已经推进到的tick
+     */
+    private long currentTick;
+    /**
+     * 时间轮里的任务数量
+     */
+    private int size = 0;
+
+    public TimerWheel(long tickMillis, int wheelSize, long nowMillis) {
+        int bucketCount = Integer.highestOneBit(Math.max(wheelSize - 1, 1)) << 1;
+        this.tickMillis = tickMillis;
+        this.mask = bucketCount - 1;
+        this.buckets = new ArrayList<>(bucketCount);
+        for(int i = 0; i < bucketCount; i++) {
+            this.buckets.add(new ArrayDeque<>());
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * 添加一个任务
+     * @param task
+     * @param deadlineMillis 到期时间
+     */
+    public synchronized void add(T task, long deadlineMillis) {
+        // 已经过期的任务放到下一个tick里去
+        long deadlineTick = Math.max(ceilTick(deadlineMillis), currentTick + 1);
+        buckets.get((int) (deadlineTick & mask)).offerLast(new Timeout<>(task, deadlineTick));
+        size++;
+    }
+
+    /**
+     * 把时间推进到当前时间，取出所有到期的任务交给回调处理
+     *
+     * 回调是在释放锁之后执行的，回调里可以再往时间轮里添加任务
+     * @param nowMillis
+     * @param expiredHandler
+     * @return 到期任务的数量
+     */
+    public int advance(long nowMillis, Consumer<T> expiredHandler) {
+        List<T> expiredTasks = new ArrayList<>();
+
+        synchronized(this) {
+            long targetTick = nowMillis / tickMillis;
+            if(targetTick <= currentTick) {
+                return 0;
+            }
+
+            // 走过的tick超过一圈的时候，每个槽检查一次就可以了
+            long ticks = Math.min(targetTick - currentTick, buckets.size());
+            for(long i = 1; i <= ticks; i++) {
+                expire(buckets.get((int) ((currentTick + i) & mask)), targetTick, expiredTasks);
+            }
+            currentTick = targetTick;
+            size -= expiredTasks.size();
+        }
+
+        for(T task : expiredTasks) {
+            expiredHandler.accept(task);
+        }
+        return expiredTasks.size();
+    }
+
+    /**
+     * 取出一个槽里所有到期的任务
+     */
+    private void expire(ArrayDeque<Timeout<T>> bucket, long targetTick, List<T> expiredTasks) {
+        for(int i = bucket.size(); i > 0; i--) {
+            Timeout<T> timeout = bucket.pollFirst();
+            if(timeout.deadlineTick <= targetTick) {
+                expiredTasks.add(timeout.task);
+            } else {
+                bucket.offerLast(timeout);
+            }
+        }
+    }
+
+    private long ceilTick(long millis) {
+        return (millis + tickMillis - 1) / tickMillis;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    /**
+     * 时间轮里的一个任务
+     * @param <T>
+     */
+    static class Timeout<T> {
+
+        final T task;
+        final long deadlineTick;
+
+        Timeout(T task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+    }
+
+}
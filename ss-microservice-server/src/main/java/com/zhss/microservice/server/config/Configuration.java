@@ -64,6 +64,102 @@ public class Configuration {
      * 判定服务实例出现故障的心跳超时时间
      */
     public static final String HEARTBEAT_TIMEOUT_PERIOD = "heartbeat.timeout.period";
+    /**
+     * 面向客户端的NIO服务器的IO线程（reactor）数量
+     */
+    public static final String CLIENT_REACTOR_THREADS = "client.reactor.threads";
+    /**
+     * 处理客户端请求的业务线程数量
+     */
+    public static final String CLIENT_REQUEST_THREADS = "client.request.threads";
+    /**
+     * 等待业务线程处理的客户端请求的最大数量
+     */
+    public static final String CLIENT_REQUEST_QUEUE_SIZE = "client.request.queue.size";
+    /**
+     * 业务线程处理不过来时的拒绝策略：overload（返回过载响应）、caller_runs（在IO线程里直接处理）
+     */
+    public static final String CLIENT_REQUEST_REJECTION_POLICY = "client.request.rejection.policy";
+    /**
+     * 在jdk支持的情况下，是否使用虚拟线程处理客户端请求
+     */
+    public static final String CLIENT_REQUEST_VIRTUAL_THREADS = "client.request.virtual.threads";
+    /**
+     * 给客户端发送消息时，一次批量写最多发送的消息数量
+     */
+    public static final String CLIENT_WRITE_BATCH_MESSAGES = "client.write.batch.messages";
+    /**
+     * 给客户端发送消息时，一次批量写最多发送的字节数
+     */
+    public static final String CLIENT_WRITE_BATCH_BYTES = "client.write.batch.bytes";
+    /**
+     * 读取客户端消息的buffer池是否使用堆外内存
+     */
+    public static final String CLIENT_READ_BUFFER_DIRECT = "client.read.buffer.direct";
+    /**
+     * 心跳超时检查的线程数量
+     */
+    public static final String HEARTBEAT_EXPIRY_THREADS = "heartbeat.expiry.threads";
+    /**
+     * 多少个连续的槽位共用一个服务注册表分片
+     */
+    public static final String SLOT_REGISTRY_GROUP_SIZE = "slot.registry.group.size";
+    /**
+     * 服务实例列表快照最多多少毫秒发布一次，0表示每次读取都拿到最新的快照
+     */
+    public static final String REGISTRY_SNAPSHOT_PUBLISH_INTERVAL = "registry.snapshot.publish.interval";
+    /**
+     * 每个服务最多保留多少条最近的服务实例变动记录
+     */
+    public static final String REGISTRY_DELTA_LOG_SIZE = "registry.delta.log.size";
+    /**
+     * 同一个服务的变动通知最多多少毫秒推送一次，窗口内的多次变动合并成一次推送，0表示每次变动都立即推送
+     */
+    public static final String SERVICE_CHANGED_NOTIFY_WINDOW = "service.changed.notify.window";
+    /**
+     * 距离上次推送已经超过一个合并窗口的变动是否立即推送
+     */
+    public static final String SERVICE_CHANGED_NOTIFY_IMMEDIATE = "service.changed.notify.immediate";
+    /**
+     * 每个客户端连接的发送队列最多排队多少条消息，超过以后服务变动推送按照服务合并成最新的一次
+     */
+    public static final String CLIENT_OUTBOUND_QUEUE_MAX_MESSAGES = "client.outbound.queue.max.messages";
+    /**
+     * 每个客户端连接的发送队列最多排队多少字节，超过以后服务变动推送按照服务合并成最新的一次
+     */
+    public static final String CLIENT_OUTBOUND_QUEUE_MAX_BYTES = "client.outbound.queue.max.bytes";
+    /**
+     * 客户端连接的发送队列持续超过上限多少毫秒以后断开这个连接
+     */
+    public static final String CLIENT_SLOW_CONSUMER_TIMEOUT = "client.slow.consumer.timeout";
+    /**
+     * 是否把可以打包成long的服务实例的索引和心跳时间放在基本类型数组里
+     */
+    public static final String REGISTRY_PRIMITIVE_INSTANCE_TABLE = "registry.primitive.instance.table";
+    /**
+     * 是否把注册表的变动写到预写日志里
+     */
+    public static final String REGISTRY_WAL_ENABLED = "registry.wal.enabled";
+    /**
+     * 注册表预写日志的刷盘策略
+     */
+    public static final String REGISTRY_WAL_SYNC_POLICY = "registry.wal.sync.policy";
+    /**
+     * 按时间间隔刷盘的时候，注册表预写日志多少毫秒刷一次盘
+     */
+    public static final String REGISTRY_WAL_SYNC_INTERVAL = "registry.wal.sync.interval";
+    /**
+     * 每多少次心跳往注册表预写日志里写一次，0表示不写心跳
+     */
+    public static final String REGISTRY_WAL_HEARTBEAT_SAMPLE_RATE = "registry.wal.heartbeat.sample.rate";
+    /**
+     * 是否定期把注册表快照持久化到磁盘
+     */
+    public static final String REGISTRY_SNAPSHOT_PERSIST_ENABLED = "registry.snapshot.persist.enabled";
+    /**
+     * 注册表快照持久化的时间间隔，单位是秒
+     */
+    public static final String REGISTRY_SNAPSHOT_PERSIST_INTERVAL = "registry.snapshot.persist.interval";
 
     /**
      * 心跳检查时间间隔的默认值
@@ -73,6 +169,112 @@ public class Configuration {
      * 心跳超时时间的默认值
      */
     public static final Integer DEFAULT_HEARTBEAT_TIMEOUT_PERIOD = 5;
+    /**
+     * 面向客户端的IO线程数量的默认值，默认跟cpu核数保持一致
+     */
+    public static final Integer DEFAULT_CLIENT_REACTOR_THREADS =
+            Runtime.getRuntime().availableProcessors();
+    /**
+     * 处理客户端请求的业务线程数量的默认值
+     */
+    public static final Integer DEFAULT_CLIENT_REQUEST_THREADS =
+            Runtime.getRuntime().availableProcessors() * 2;
+    /**
+     * 等待业务线程处理的客户端请求最大数量的默认值
+     */
+    public static final Integer DEFAULT_CLIENT_REQUEST_QUEUE_SIZE = 10000;
+    /**
+     * 拒绝策略：返回过载响应
+     */
+    public static final String REJECTION_POLICY_OVERLOAD = "overload";
+    /**
+     * 拒绝策略：在IO线程里直接处理
+     */
+    public static final String REJECTION_POLICY_CALLER_RUNS = "caller_runs";
+    /**
+     * 一次批量写最多发送的消息数量的默认值
+     */
+    public static final Integer DEFAULT_CLIENT_WRITE_BATCH_MESSAGES = 64;
+    /**
+     * 一次批量写最多发送的字节数的默认值
+     */
+    public static final Integer DEFAULT_CLIENT_WRITE_BATCH_BYTES = 256 * 1024;
+    /**
+     * 读取客户端消息的buffer池是否使用堆外内存的默认值
+     */
+    public static final Boolean DEFAULT_CLIENT_READ_BUFFER_DIRECT = false;
+    /**
+     * 心跳超时检查线程数量的默认值
+     */
+    public static final Integer DEFAULT_HEARTBEAT_EXPIRY_THREADS = 1;
+    /**
+     * 多少个连续的槽位共用一个服务注册表分片的默认值
+     */
+    public static final Integer DEFAULT_SLOT_REGISTRY_GROUP_SIZE = 16;
+    /**
+     * 服务实例列表快照发布间隔的默认值
+     */
+    public static final Integer DEFAULT_REGISTRY_SNAPSHOT_PUBLISH_INTERVAL = 0;
+    /**
+     * 每个服务保留的服务实例变动记录数量的默认值
+     */
+    public static final Integer DEFAULT_REGISTRY_DELTA_LOG_SIZE = 256;
+    /**
+     * 服务变动通知合并窗口的默认值
+     */
+    public static final Integer DEFAULT_SERVICE_CHANGED_NOTIFY_WINDOW = 100;
+    /**
+     * 服务变动是否立即推送第一次变动的默认值
+     */
+    public static final Boolean DEFAULT_SERVICE_CHANGED_NOTIFY_IMMEDIATE = true;
+    /**
+     * 客户端连接发送队列最多排队的消息数量的默认值
+     */
+    public static final Integer DEFAULT_CLIENT_OUTBOUND_QUEUE_MAX_MESSAGES = 10000;
+    /**
+     * 客户端连接发送队列最多排队的字节数的默认值
+     */
+    public static final Integer DEFAULT_CLIENT_OUTBOUND_QUEUE_MAX_BYTES = 16 * 1024 * 1024;
+    /**
+     * 慢客户端断开时间的默认值
+     */
+    public static final Integer DEFAULT_CLIENT_SLOW_CONSUMER_TIMEOUT = 30000;
+    /**
+     * 默认不使用基本类型数组的服务实例表
+     */
+    public static final Boolean DEFAULT_REGISTRY_PRIMITIVE_INSTANCE_TABLE = false;
+    /**
+     * 默认不写注册表预写日志
+     */
+    public static final Boolean DEFAULT_REGISTRY_WAL_ENABLED = false;
+    /**
+     * 刷盘策略：每批日志写完都刷盘，写日志的线程等到刷盘以后才返回
+     */
+    public static final String WAL_SYNC_POLICY_BATCH = "batch";
+    /**
+     * 刷盘策略：按照时间间隔刷盘，写日志的线程不等待
+     */
+    public static final String WAL_SYNC_POLICY_INTERVAL = "interval";
+    /**
+     * 刷盘策略：不主动刷盘，交给操作系统
+     */
+    public static final String WAL_SYNC_POLICY_NONE = "none";
+    /**
+     * 注册表预写日志刷盘间隔的默认值
+     */
+    public static final Integer DEFAULT_REGISTRY_WAL_SYNC_INTERVAL = 1000;
+    /**
+     * 默认不把心跳写到注册表预写日志里
+     */
+    public static final Integer DEFAULT_REGISTRY_WAL_HEARTBEAT_SAMPLE_RATE = 0;
+    /**
+     * 默认不持久化注册表快照
+     */
+    public static final Boolean DEFAULT_REGISTRY_SNAPSHOT_PERSIST_ENABLED = false;
+    /**
+     * 默认每隔300秒持久化一次注册表快照
+     */
+    public static final Integer DEFAULT_REGISTRY_SNAPSHOT_PERSIST_INTERVAL = 300;
 
     /**
      * 单例
@@ -135,6 +337,102 @@ public class Configuration {
      * 心跳超时时间
      */
     private Integer heartbeatTimeoutPeriod;
+    /**
+     * 面向客户端的IO线程数量
+     */
+    private Integer clientReactorThreads;
+    /**
+     * 处理客户端请求的业务线程数量
+     */
+    private Integer clientRequestThreads;
+    /**
+     * 等待业务线程处理的客户端请求的最大数量
+     */
+    private Integer clientRequestQueueSize;
+    /**
+     * 业务线程处理不过来时的拒绝策略
+     */
+    private String clientRequestRejectionPolicy = REJECTION_POLICY_OVERLOAD;
+    /**
+     * 是否使用虚拟线程处理客户端请求
+     */
+    private Boolean clientRequestVirtualThreads = true;
+    /**
+     * 给客户端发送消息时，一次批量写最多发送的消息数量
+     */
+    private Integer clientWriteBatchMessages;
+    /**
+     * 给客户端发送消息时，一次批量写最多发送的字节数
+     */
+    private Integer clientWriteBatchBytes;
+    /**
+     * 读取客户端消息的buffer池是否使用堆外内存
+     */
+    private Boolean clientReadBufferDirect;
+    /**
+     * 心跳超时检查的线程数量
+     */
+    private Integer heartbeatExpiryThreads;
+    /**
+     * 多少个连续的槽位共用一个服务注册表分片
+     */
+    private Integer slotRegistryGroupSize;
+    /**
+     * 服务实例列表快照最多多少毫秒发布一次，0表示每次读取都拿到最新的快照
+     */
+    private Integer registrySnapshotPublishInterval;
+    /**
+     * 每个服务最多保留多少条最近的服务实例变动记录
+     */
+    private Integer registryDeltaLogSize;
+    /**
+     * 同一个服务的变动通知最多多少毫秒推送一次，窗口内的多次变动合并成一次推送，0表示每次变动都立即推送
+     */
+    private Integer serviceChangedNotifyWindow;
+    /**
+     * 距离上次推送已经超过一个合并窗口的变动是否立即推送
+     */
+    private Boolean serviceChangedNotifyImmediate;
+    /**
+     * 每个客户端连接的发送队列最多排队多少条消息，超过以后服务变动推送按照服务合并成最新的一次
+     */
+    private Integer clientOutboundQueueMaxMessages;
+    /**
+     * 每个客户端连接的发送队列最多排队多少字节，超过以后服务变动推送按照服务合并成最新的一次
+     */
+    private Integer clientOutboundQueueMaxBytes;
+    /**
+     * 客户端连接的发送队列持续超过上限多少毫秒以后断开这个连接
+     */
+    private Integer clientSlowConsumerTimeout;
+    /**
+     * 是否把可以打包成long的服务实例的索引和心跳时间放在基本类型数组里
+     */
+    private Boolean registryPrimitiveInstanceTable;
+    /**
+     * 是否把注册表的变动写到预写日志里
+     */
+    private Boolean registryWalEnabled;
+    /**
+     * 注册表预写日志的刷盘策略
+     */
+    private String registryWalSyncPolicy = WAL_SYNC_POLICY_BATCH;
+    /**
+     * 按时间间隔刷盘的时候，注册表预写日志多少毫秒刷一次盘
+     */
+    private Integer registryWalSyncInterval;
+    /**
+     * 每多少次心跳往注册表预写日志里写一次，0表示不写心跳
+     */
+    private Integer registryWalHeartbeatSampleRate;
+    /**
+     * 是否定期把注册表快照持久化到磁盘
+     */
+    private Boolean registrySnapshotPersistEnabled;
+    /**
+     * 注册表快照持久化的时间间隔，单位是秒
+     */
+    private Integer registrySnapshotPersistInterval;
 
     /**
      * 解析配置文件
@@ -199,6 +497,150 @@ public class Configuration {
                 this.controllerCandidateServers = controllerCandidateServers;
                 LOGGER.debug("debug模式: controller.candidate.servers=" + controllerCandidateServers);
             }
+
+            String clientReactorThreads = configProperties.getProperty(CLIENT_REACTOR_THREADS);
+            if(validatePositiveNumber(CLIENT_REACTOR_THREADS, clientReactorThreads)) {
+                this.clientReactorThreads = Integer.valueOf(clientReactorThreads);
+                LOGGER.debug("debug模式: client.reactor.threads=" + clientReactorThreads);
+            }
+
+            String clientRequestThreads = configProperties.getProperty(CLIENT_REQUEST_THREADS);
+            if(validatePositiveNumber(CLIENT_REQUEST_THREADS, clientRequestThreads)) {
+                this.clientRequestThreads = Integer.valueOf(clientRequestThreads);
+                LOGGER.debug("debug模式: client.request.threads=" + clientRequestThreads);
+            }
+
+            String clientRequestQueueSize = configProperties.getProperty(CLIENT_REQUEST_QUEUE_SIZE);
+            if(validatePositiveNumber(CLIENT_REQUEST_QUEUE_SIZE, clientRequestQueueSize)) {
+                this.clientRequestQueueSize = Integer.valueOf(clientRequestQueueSize);
+                LOGGER.debug("debug模式: client.request.queue.size=" + clientRequestQueueSize);
+            }
+
+            String clientRequestRejectionPolicy = configProperties.getProperty(CLIENT_REQUEST_REJECTION_POLICY);
+            if(validateClientRequestRejectionPolicy(clientRequestRejectionPolicy)) {
+                this.clientRequestRejectionPolicy = clientRequestRejectionPolicy;
+                LOGGER.debug("debug模式: client.request.rejection.policy=" + clientRequestRejectionPolicy);
+            }
+
+            String clientRequestVirtualThreads = configProperties.getProperty(CLIENT_REQUEST_VIRTUAL_THREADS);
+            if(validateBoolean(CLIENT_REQUEST_VIRTUAL_THREADS, clientRequestVirtualThreads)) {
+                this.clientRequestVirtualThreads = Boolean.valueOf(clientRequestVirtualThreads);
+                LOGGER.debug("debug模式: client.request.virtual.threads=" + clientRequestVirtualThreads);
+            }
+
+            String clientWriteBatchMessages = configProperties.getProperty(CLIENT_WRITE_BATCH_MESSAGES);
+            if(validatePositiveNumber(CLIENT_WRITE_BATCH_MESSAGES, clientWriteBatchMessages)) {
+                this.clientWriteBatchMessages = Integer.valueOf(clientWriteBatchMessages);
+                LOGGER.debug("debug模式: client.write.batch.messages=" + clientWriteBatchMessages);
+            }
+
+            String clientWriteBatchBytes = configProperties.getProperty(CLIENT_WRITE_BATCH_BYTES);
+            if(validatePositiveNumber(CLIENT_WRITE_BATCH_BYTES, clientWriteBatchBytes)) {
+                this.clientWriteBatchBytes = Integer.valueOf(clientWriteBatchBytes);
+                LOGGER.debug("debug模式: client.write.batch.bytes=" + clientWriteBatchBytes);
+            }
+
+            String clientReadBufferDirect = configProperties.getProperty(CLIENT_READ_BUFFER_DIRECT);
+            if(validateBoolean(CLIENT_READ_BUFFER_DIRECT, clientReadBufferDirect)) {
+                this.clientReadBufferDirect = Boolean.valueOf(clientReadBufferDirect);
+                LOGGER.debug("debug模式: client.read.buffer.direct=" + clientReadBufferDirect);
+            }
+
+            String heartbeatExpiryThreads = configProperties.getProperty(HEARTBEAT_EXPIRY_THREADS);
+            if(validatePositiveNumber(HEARTBEAT_EXPIRY_THREADS, heartbeatExpiryThreads)) {
+                this.heartbeatExpiryThreads = Integer.valueOf(heartbeatExpiryThreads);
+                LOGGER.debug("debug模式: heartbeat.expiry.threads=" + heartbeatExpiryThreads);
+            }
+
+            String slotRegistryGroupSize = configProperties.getProperty(SLOT_REGISTRY_GROUP_SIZE);
+            if(validatePositiveNumber(SLOT_REGISTRY_GROUP_SIZE, slotRegistryGroupSize)) {
+                this.slotRegistryGroupSize = Integer.valueOf(slotRegistryGroupSize);
+                LOGGER.debug("debug模式: slot.registry.group.size=" + slotRegistryGroupSize);
+            }
+
+            String registrySnapshotPublishInterval = configProperties.getProperty(REGISTRY_SNAPSHOT_PUBLISH_INTERVAL);
+            if(validateNonNegativeNumber(REGISTRY_SNAPSHOT_PUBLISH_INTERVAL, registrySnapshotPublishInterval)) {
+                this.registrySnapshotPublishInterval = Integer.valueOf(registrySnapshotPublishInterval);
+                LOGGER.debug("debug模式: registry.snapshot.publish.interval=" + registrySnapshotPublishInterval);
+            }
+
+            String registryDeltaLogSize = configProperties.getProperty(REGISTRY_DELTA_LOG_SIZE);
+            if(validatePositiveNumber(REGISTRY_DELTA_LOG_SIZE, registryDeltaLogSize)) {
+                this.registryDeltaLogSize = Integer.valueOf(registryDeltaLogSize);
+                LOGGER.debug("debug模式: registry.delta.log.size=" + registryDeltaLogSize);
+            }
+
+            String serviceChangedNotifyWindow = configProperties.getProperty(SERVICE_CHANGED_NOTIFY_WINDOW);
+            if(validateNonNegativeNumber(SERVICE_CHANGED_NOTIFY_WINDOW, serviceChangedNotifyWindow)) {
+                this.serviceChangedNotifyWindow = Integer.valueOf(serviceChangedNotifyWindow);
+                LOGGER.debug("debug模式: service.changed.notify.window=" + serviceChangedNotifyWindow);
+            }
+
+            String serviceChangedNotifyImmediate = configProperties.getProperty(SERVICE_CHANGED_NOTIFY_IMMEDIATE);
+            if(validateBoolean(SERVICE_CHANGED_NOTIFY_IMMEDIATE, serviceChangedNotifyImmediate)) {
+                this.serviceChangedNotifyImmediate = Boolean.valueOf(serviceChangedNotifyImmediate);
+                LOGGER.debug("debug模式: service.changed.notify.immediate=" + serviceChangedNotifyImmediate);
+            }
+
+            String clientOutboundQueueMaxMessages = configProperties.getProperty(CLIENT_OUTBOUND_QUEUE_MAX_MESSAGES);
+            if(validatePositiveNumber(CLIENT_OUTBOUND_QUEUE_MAX_MESSAGES, clientOutboundQueueMaxMessages)) {
+                this.clientOutboundQueueMaxMessages = Integer.valueOf(clientOutboundQueueMaxMessages);
+                LOGGER.debug("debug模式: client.outbound.queue.max.messages=" + clientOutboundQueueMaxMessages);
+            }
+
+            String clientOutboundQueueMaxBytes = configProperties.getProperty(CLIENT_OUTBOUND_QUEUE_MAX_BYTES);
+            if(validatePositiveNumber(CLIENT_OUTBOUND_QUEUE_MAX_BYTES, clientOutboundQueueMaxBytes)) {
+                this.clientOutboundQueueMaxBytes = Integer.valueOf(clientOutboundQueueMaxBytes);
+                LOGGER.debug("debug模式: client.outbound.queue.max.bytes=" + clientOutboundQueueMaxBytes);
+            }
+
+            String clientSlowConsumerTimeout = configProperties.getProperty(CLIENT_SLOW_CONSUMER_TIMEOUT);
+            if(validatePositiveNumber(CLIENT_SLOW_CONSUMER_TIMEOUT, clientSlowConsumerTimeout)) {
+                this.clientSlowConsumerTimeout = Integer.valueOf(clientSlowConsumerTimeout);
+                LOGGER.debug("debug模式: client.slow.consumer.timeout=" + clientSlowConsumerTimeout);
+            }
+
+            String registryPrimitiveInstanceTable = configProperties.getProperty(REGISTRY_PRIMITIVE_INSTANCE_TABLE);
+            if(validateBoolean(REGISTRY_PRIMITIVE_INSTANCE_TABLE, registryPrimitiveInstanceTable)) {
+                this.registryPrimitiveInstanceTable = Boolean.valueOf(registryPrimitiveInstanceTable);
+                LOGGER.debug("debug模式: registry.primitive.instance.table=" + registryPrimitiveInstanceTable);
+            }
+
+            String registryWalEnabled = configProperties.getProperty(REGISTRY_WAL_ENABLED);
+            if(validateBoolean(REGISTRY_WAL_ENABLED, registryWalEnabled)) {
+                this.registryWalEnabled = Boolean.valueOf(registryWalEnabled);
+                LOGGER.debug("debug模式: registry.wal.enabled=" + registryWalEnabled);
+            }
+
+            String registryWalSyncPolicy = configProperties.getProperty(REGISTRY_WAL_SYNC_POLICY);
+            if(validateRegistryWalSyncPolicy(registryWalSyncPolicy)) {
+                this.registryWalSyncPolicy = registryWalSyncPolicy;
+                LOGGER.debug("debug模式: registry.wal.sync.policy=" + registryWalSyncPolicy);
+            }
+
+            String registryWalSyncInterval = configProperties.getProperty(REGISTRY_WAL_SYNC_INTERVAL);
+            if(validatePositiveNumber(REGISTRY_WAL_SYNC_INTERVAL, registryWalSyncInterval)) {
+                this.registryWalSyncInterval = Integer.valueOf(registryWalSyncInterval);
+                LOGGER.debug("debug模式: registry.wal.sync.interval=" + registryWalSyncInterval);
+            }
+
+            String registryWalHeartbeatSampleRate = configProperties.getProperty(REGISTRY_WAL_HEARTBEAT_SAMPLE_RATE);
+            if(validateNonNegativeNumber(REGISTRY_WAL_HEARTBEAT_SAMPLE_RATE, registryWalHeartbeatSampleRate)) {
+                this.registryWalHeartbeatSampleRate = Integer.valueOf(registryWalHeartbeatSampleRate);
+                LOGGER.debug("debug模式: registry.wal.heartbeat.sample.rate=" + registryWalHeartbeatSampleRate);
+            }
+
+            String registrySnapshotPersistEnabled = configProperties.getProperty(REGISTRY_SNAPSHOT_PERSIST_ENABLED);
+            if(validateBoolean(REGISTRY_SNAPSHOT_PERSIST_ENABLED, registrySnapshotPersistEnabled)) {
+                this.registrySnapshotPersistEnabled = Boolean.valueOf(registrySnapshotPersistEnabled);
+                LOGGER.debug("debug模式: registry.snapshot.persist.enabled=" + registrySnapshotPersistEnabled);
+            }
+
+            String registrySnapshotPersistInterval = configProperties.getProperty(REGISTRY_SNAPSHOT_PERSIST_INTERVAL);
+            if(validatePositiveNumber(REGISTRY_SNAPSHOT_PERSIST_INTERVAL, registrySnapshotPersistInterval)) {
+                this.registrySnapshotPersistInterval = Integer.valueOf(registrySnapshotPersistInterval);
+                LOGGER.debug("debug模式: registry.snapshot.persist.interval=" + registrySnapshotPersistInterval);
+            }
         } catch(IllegalArgumentException e) {
             throw new ConfigurationException("解析配置文件出现异常！！！", e);
         } catch (FileNotFoundException e) {
@@ -407,6 +849,95 @@ public class Configuration {
         return true;
     }
 
+    /**
+     * 校验可选的正整数配置项，没有配置的时候返回false，使用默认值
+     * @param name 配置项名称
+     * @param value 配置项的值
+     * @return 是否配置了该参数
+     */
+    private Boolean validatePositiveNumber(String name, String value) {
+        if(StringUtils.isEmpty(value)) {
+            return false;
+        }
+
+        final String regex = "(\\d+)";
+        Boolean isMatch = Pattern.matches(regex, value);
+        if(!isMatch || Integer.valueOf(value) <= 0) {
+            throw new IllegalArgumentException(name + "参数必须为正整数！！！");
+        }
+
+        return true;
+    }
+
+    /**
+     * 校验可选的非负整数配置项，没有配置的时候返回false，使用默认值
+     * @param name 配置项名称
+     * @param value 配置项的值
+     * @return 是否配置了该参数
+     */
+    private Boolean validateNonNegativeNumber(String name, String value) {
+        if(StringUtils.isEmpty(value)) {
+            return false;
+        }
+
+        final String regex = "(\\d+)";
+        Boolean isMatch = Pattern.matches(regex, value);
+        if(!isMatch) {
+            throw new IllegalArgumentException(name + "参数必须为非负整数！！！");
+        }
+
+        return true;
+    }
+
+    /**
+     * 校验可选的布尔类型配置项，没有配置的时候返回false，使用默认值
+     * @param name 配置项名称
+     * @param value 配置项的值
+     * @return 是否配置了该参数
+     */
+    private Boolean validateBoolean(String name, String value) {
+        if(StringUtils.isEmpty(value)) {
+            return false;
+        }
+        if(value.equals("true") || value.equals("false")) {
+            return true;
+        }
+        throw new IllegalArgumentException(name + "参数的值必须为true或者false！！！");
+    }
+
+    /**
+     * 校验业务线程处理不过来时的拒绝策略
+     * @param rejectionPolicy
+     * @return 是否配置了该参数
+     */
+    private Boolean validateClientRequestRejectionPolicy(String rejectionPolicy) {
+        if(StringUtils.isEmpty(rejectionPolicy)) {
+            return false;
+        }
+        if(REJECTION_POLICY_OVERLOAD.equals(rejectionPolicy) ||
+                REJECTION_POLICY_CALLER_RUNS.equals(rejectionPolicy)) {
+            return true;
+        }
+        throw new IllegalArgumentException("client.request.rejection.policy参数的值必须为overload或者caller_runs！！！");
+    }
+
+    /**
+     * 校验注册表预写日志的刷盘策略
+     * @param syncPolicy
+     * @return 是否配置了该参数
+     */
+    private Boolean validateRegistryWalSyncPolicy(String syncPolicy) {
+        if(StringUtils.isEmpty(syncPolicy)) {
+            return false;
+        }
+        if(WAL_SYNC_POLICY_BATCH.equals(syncPolicy) ||
+                WAL_SYNC_POLICY_INTERVAL.equals(syncPolicy) ||
+                WAL_SYNC_POLICY_NONE.equals(syncPolicy)) {
+            return true;
+        }
+        throw new IllegalArgumentException("registry.wal.sync.policy参数的值必须为batch、interval或者none！！！");
+    }
+
     public Boolean isControllerCandidate() {
         return isControllerCandidate;
     }
@@ -522,4 +1053,247 @@ public class Configuration {
         return heartbeatTimeoutPeriod;
     }
 
+    /**
+     * 获取面向客户端的IO线程数量
+     * @return
+     */
+    public Integer getClientReactorThreads() {
+        if(clientReactorThreads == null) {
+            return DEFAULT_CLIENT_REACTOR_THREADS;
+        }
+        return clientReactorThreads;
+    }
+
+    /**
+     * 获取处理客户端请求的业务线程数量
+     * @return
+     */
+    public Integer getClientRequestThreads() {
+        if(clientRequestThreads == null) {
+            return DEFAULT_CLIENT_REQUEST_THREADS;
+        }
+        return clientRequestThreads;
+    }
+
+    /**
+     * 获取等待业务线程处理的客户端请求的最大数量
+     * @return
+     */
+    public Integer getClientRequestQueueSize() {
+        if(clientRequestQueueSize == null) {
+            return DEFAULT_CLIENT_REQUEST_QUEUE_SIZE;
+        }
+        return clientRequestQueueSize;
+    }
+
+    public String getClientRequestRejectionPolicy() {
+        return clientRequestRejectionPolicy;
+    }
+
+    public Boolean isClientRequestVirtualThreads() {
+        return clientRequestVirtualThreads;
+    }
+
+    /**
+     * 获取一次批量写最多发送的消息数量
+     * @return
+     */
+    public Integer getClientWriteBatchMessages() {
+        if(clientWriteBatchMessages == null) {
+            return DEFAULT_CLIENT_WRITE_BATCH_MESSAGES;
+        }
+        return clientWriteBatchMessages;
+    }
+
+    /**
+     * 获取一次批量写最多发送的字节数
+     * @return
+     */
+    public Integer getClientWriteBatchBytes() {
+        if(clientWriteBatchBytes == null) {
+            return DEFAULT_CLIENT_WRITE_BATCH_BYTES;
+        }
+        return clientWriteBatchBytes;
+    }
+
+    /**
+     * 获取读取客户端消息的buffer池是否使用堆外内存
+     * @return
+     */
+    public Boolean isClientReadBufferDirect() {
+        if(clientReadBufferDirect == null) {
+            return DEFAULT_CLIENT_READ_BUFFER_DIRECT;
+        }
+        return clientReadBufferDirect;
+    }
+
+    /**
+     * 获取心跳超时检查的线程数量
+     * @return
+     */
+    public Integer getHeartbeatExpiryThreads() {
+        if(heartbeatExpiryThreads == null) {
+            return DEFAULT_HEARTBEAT_EXPIRY_THREADS;
+        }
+        return heartbeatExpiryThreads;
+    }
+
+    /**
+     * 获取多少个连续的槽位共用一个服务注册表分片
+     * @return
+     */
+    public Integer getSlotRegistryGroupSize() {
+        if(slotRegistryGroupSize == null) {
+            return DEFAULT_SLOT_REGISTRY_GROUP_SIZE;
+        }
+        return slotRegistryGroupSize;
+    }
+
+    /**
+     * 获取服务实例列表快照的发布间隔，单位是毫秒
+     * @return
+     */
+    public Integer getRegistrySnapshotPublishInterval() {
+        if(registrySnapshotPublishInterval == null) {
+            return DEFAULT_REGISTRY_SNAPSHOT_PUBLISH_INTERVAL;
+        }
+        return registrySnapshotPublishInterval;
+    }
+
+    /**
+     * 获取每个服务最多保留多少条最近的服务实例变动记录
+     * @return
+     */
+    public Integer getRegistryDeltaLogSize() {
+        if(registryDeltaLogSize == null) {
+            return DEFAULT_REGISTRY_DELTA_LOG_SIZE;
+        }
+        return registryDeltaLogSize;
+    }
+
+    /**
+     * 获取服务变动通知的合并窗口
+     * @return
+     */
+    public Integer getServiceChangedNotifyWindow() {
+        if(serviceChangedNotifyWindow == null) {
+            return DEFAULT_SERVICE_CHANGED_NOTIFY_WINDOW;
+        }
+        return serviceChangedNotifyWindow;
+    }
+
+    /**
+     * 获取是否立即推送合并窗口里的第一次变动
+     * @return
+     */
+    public Boolean getServiceChangedNotifyImmediate() {
+        if(serviceChangedNotifyImmediate == null) {
+            return DEFAULT_SERVICE_CHANGED_NOTIFY_IMMEDIATE;
+        }
+        return serviceChangedNotifyImmediate;
+    }
+
+    /**
+     * 获取客户端连接发送队列最多排队的消息数量
+     * @return
+     */
+    public Integer getClientOutboundQueueMaxMessages() {
+        if(clientOutboundQueueMaxMessages == null) {
+            return DEFAULT_CLIENT_OUTBOUND_QUEUE_MAX_MESSAGES;
+        }
+        return clientOutboundQueueMaxMessages;
+    }
+
+    /**
+     * 获取客户端连接发送队列最多排队的字节数
+     * @return
+     */
+    public Integer getClientOutboundQueueMaxBytes() {
+        if(clientOutboundQueueMaxBytes == null) {
+            return DEFAULT_CLIENT_OUTBOUND_QUEUE_MAX_BYTES;
+        }
+        return clientOutboundQueueMaxBytes;
+    }
+
+    /**
+     * 获取慢客户端的断开时间
+     * @return
+     */
+    public Integer getClientSlowConsumerTimeout() {
+        if(clientSlowConsumerTimeout == null) {
+            return DEFAULT_CLIENT_SLOW_CONSUMER_TIMEOUT;
+        }
+        return clientSlowConsumerTimeout;
+    }
+
+    /**
+     * 获取是否使用基本类型数组的服务实例表
+     * @return
+     */
+    public Boolean getRegistryPrimitiveInstanceTable() {
+        if(registryPrimitiveInstanceTable == null) {
+            return DEFAULT_REGISTRY_PRIMITIVE_INSTANCE_TABLE;
+        }
+        return registryPrimitiveInstanceTable;
+    }
+
+    /**
+     * 获取是否写注册表预写日志
+     * @return
+     */
+    public Boolean getRegistryWalEnabled() {
+        if(registryWalEnabled == null) {
+            return DEFAULT_REGISTRY_WAL_ENABLED;
+        }
+        return registryWalEnabled;
+    }
+
+    public String getRegistryWalSyncPolicy() {
+        return registryWalSyncPolicy;
+    }
+
+    /**
+     * 获取注册表预写日志的刷盘间隔
+     * @return
+     */
+    public Integer getRegistryWalSyncInterval() {
+        if(registryWalSyncInterval == null) {
+            return DEFAULT_REGISTRY_WAL_SYNC_INTERVAL;
+        }
+        return registryWalSyncInterval;
+    }
+
+    /**
+     * 获取每多少次心跳写一次注册表预写日志
+     * @return
+     */
+    public Integer getRegistryWalHeartbeatSampleRate() {
+        if(registryWalHeartbeatSampleRate == null) {
+            return DEFAULT_REGISTRY_WAL_HEARTBEAT_SAMPLE_RATE;
+        }
+        return registryWalHeartbeatSampleRate;
+    }
+
+    /**
+     * 获取是否定期持久化注册表快照
+     * @return
+     */
+    public Boolean getRegistrySnapshotPersistEnabled() {
+        if(registrySnapshotPersistEnabled == null) {
+            return DEFAULT_REGISTRY_SNAPSHOT_PERSIST_ENABLED;
+        }
+        return registrySnapshotPersistEnabled;
+    }
+
+    /**
+     * 获取注册表快照持久化的时间间隔
+     * @return
+     */
+    public Integer getRegistrySnapshotPersistInterval() {
+        if(registrySnapshotPersistInterval == null) {
+            return DEFAULT_REGISTRY_SNAPSHOT_PERSIST_INTERVAL;
+        }
+        return registrySnapshotPersistInterval;
+    }
+
 }
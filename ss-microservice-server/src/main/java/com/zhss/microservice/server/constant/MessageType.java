@@ -49,5 +49,9 @@ public class MessageType {
      * 副本节点id
      */
     public static final Integer CONTROLLER_NODE_ID = 10;
+    /**
+     * 批量心跳请求转发副本
+     */
+    public static final Integer REPLICA_BATCH_HEARTBEAT = 11;
 
 }
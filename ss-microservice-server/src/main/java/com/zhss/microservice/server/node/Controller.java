@@ -1,7 +1,6 @@
 package com.zhss.microservice.server.node;
 
 import com.alibaba.fastjson.JSONObject;
-import com.sun.xml.internal.bind.v2.TODO;
 import com.zhss.microservice.server.constant.NodeStatus;
 import com.zhss.microservice.server.node.network.RemoteServerNode;
 import com.zhss.microservice.server.node.network.RemoteServerNodeManager;
@@ -13,11 +12,14 @@ import com.zhss.microservice.server.config.Configuration;
 import com.zhss.microservice.server.constant.MessageType;
 import com.zhss.microservice.server.node.persist.FilePersistUtils;
 
+import java.io.File;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
@@ -40,6 +42,11 @@ public class Controller {
      */
     private static final String SLOTS_REPLICA_ALLOCATION_FILENAME = "slots_replica_allocation";
     private static final String REPLICA_NODE_IDS_FILENAME = "replica_node_ids";
+    /**
+     * 老版本的controller候选节点用的文件名，升级以后新的文件还没写过的时候从这里恢复
+     */
+    private static final String LEGACY_SLOTS_ALLOCATION_FILENAME = "slot_allocation";
+    private static final String LEGACY_SLOTS_REPLICA_ALLOCATION_FILENAME = "slot_replica_allocation";
     /**
      * 槽位分配存储文件的名字
      */
@@ -75,27 +82,31 @@ public class Controller {
      * 分配slot槽位给所有的master机器
      */
     public void allocateSlots() {
-        // 计算槽位分配数据
-        executeSlotsAllocation();
-
-        // 针对每个节点负责的槽位范围，去把这个槽位范围的副本计算好分配给哪个其他的节点
-        // 比如说假设你有4个节点，每个节点都分摊了一个槽位范围
-        // 此时针对节点1，他的槽位范围副本就在另外3个节点里随机挑选一个，节点234以此类推
-        // 槽位范围副本分配，计算完毕之后，同样在本地磁盘持久化，同步给其他master候选节点
-        executeSlotsReplicaAllocation();
-
-        // 将槽位分配数据写入本地磁盘文件
-        if(!persistSlotsAllocation()) {
-            NodeStatus.fatal();
-            return;
-        }
-        if(!persistSlotsReplicaAllocation()) {
-            NodeStatus.fatal();
-            return;
-        }
-        if(!persistReplicaNodeIds()) {
-            NodeStatus.fatal();
-            return;
+        // 重启的时候集群成员没有变化，就沿用磁盘上的槽位分配数据，不重新分配
+        // 这样每个节点负责的槽位跟重启之前一样，注册表快照和预写日志也能恢复到原来的槽位上
+        if(!restoreSlotsAllocation()) {
+            // 计算槽位分配数据
+            executeSlotsAllocation();
+
+            // 针对每个节点负责的槽位范围，去把这个槽位范围的副本计算好分配给哪个其他的节点
+            // 比如说假设你有4个节点，每个节点都分摊了一个槽位范围
+            // 此时针对节点1，他的槽位范围副本就在另外3个节点里随机挑选一个，节点234以此类推
+            // 槽位范围副本分配，计算完毕之后，同样在本地磁盘持久化，同步给其他master候选节点
+            executeSlotsReplicaAllocation();
+
+            // 将槽位分配数据写入本地磁盘文件
+            if(!persistSlotsAllocation()) {
+                NodeStatus.fatal();
+                return;
+            }
+            if(!persistSlotsReplicaAllocation()) {
+                NodeStatus.fatal();
+                return;
+            }
+            if(!persistReplicaNodeIds()) {
+                NodeStatus.fatal();
+                return;
+            }
         }
 
         // 槽位已经分配好了，在Controller自己的内存里和磁盘里都持久化了一份
@@ -146,6 +157,62 @@ public class Controller {
         slotManager.initReplicaNodeId(replicaNodeId);
     }
 
+    /**
+     * 从本地磁盘恢复槽位分配数据、槽位副本分配数据和副本节点id
+     * @return 磁盘上的数据完整，而且分配时的集群成员跟现在一样的时候才恢复
+     */
+    private boolean restoreSlotsAllocation() {
+        Map<Integer, List<String>> persistedSlotsAllocation =
+                loadSlotsAllocation(SLOTS_ALLOCATION_FILENAME, LEGACY_SLOTS_ALLOCATION_FILENAME);
+        Map<Integer, List<String>> persistedSlotsReplicaAllocation =
+                loadSlotsAllocation(SLOTS_REPLICA_ALLOCATION_FILENAME, LEGACY_SLOTS_REPLICA_ALLOCATION_FILENAME);
+        Map<Integer, Integer> persistedReplicaNodeIds =
+                FilePersistUtils.loadReplicaNodeIds(REPLICA_NODE_IDS_FILENAME);
+        if(persistedSlotsAllocation == null || persistedSlotsReplicaAllocation == null ||
+                persistedReplicaNodeIds == null) {
+            return false;
+        }
+
+        // 集群里所有节点的id
+        Set<Integer> nodeIds = new HashSet<Integer>();
+        nodeIds.add(Configuration.getInstance().getNodeId());
+        for(RemoteServerNode remoteServerNode : RemoteServerNodeManager.getInstance().getRemoteServerNodes()) {
+            nodeIds.add(remoteServerNode.getNodeId());
+        }
+
+        if(!persistedSlotsAllocation.keySet().equals(nodeIds) ||
+                !persistedReplicaNodeIds.keySet().equals(nodeIds) ||
+                !nodeIds.containsAll(persistedReplicaNodeIds.values()) ||
+                !nodeIds.containsAll(persistedSlotsReplicaAllocation.keySet())) {
+            LOGGER.info("集群成员发生了变化，重新分配槽位：" + nodeIds + "，磁盘上的槽位分配数据：" + persistedSlotsAllocation);
+            return false;
+        }
+
+        slotsAllocation.putAll(persistedSlotsAllocation);
+        slotsReplicaAllocation.putAll(persistedSlotsReplicaAllocation);
+        replicaNodeIds.putAll(persistedReplicaNodeIds);
+        LOGGER.info("集群成员没有变化，沿用磁盘上的槽位分配数据：" + slotsAllocation +
+                "，槽位副本分配数据：" + slotsReplicaAllocation);
+        return true;
+    }
+
+    /**
+     * 加载槽位分配数据，新的文件不存在的时候加载老版本文件名下的数据
+     * @param filename
+     * @param legacyFilename
+     * @return
+     */
+    private Map<Integer, List<String>> loadSlotsAllocation(String filename, String legacyFilename) {
+        if(new File(Configuration.getInstance().getDataDir(), filename).exists()) {
+            return FilePersistUtils.loadSlotsAllocation(filename);
+        }
+        Map<Integer, List<String>> persistedSlotsAllocation = FilePersistUtils.loadSlotsAllocation(legacyFilename);
+        if(persistedSlotsAllocation != null) {
+            LOGGER.info("从老版本的文件恢复槽位分配数据：" + legacyFilename);
+        }
+        return persistedSlotsAllocation;
+    }
+
     /**
      * 对槽位分配数据做一个计算
      */
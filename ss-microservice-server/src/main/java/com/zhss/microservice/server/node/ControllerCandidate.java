@@ -26,10 +26,10 @@ public class ControllerCandidate {
     private static final Logger LOGGER = LoggerFactory.getLogger(ControllerCandidate.class);
 
     /**
-     * 槽位分配存储文件的名字
+     * 槽位分配存储文件的名字，跟Controller用的一样，候选节点重启以后当选Controller也能恢复槽位分配数据
      */
-    private static final String SLOTS_ALLOCATION_FILENAME = "slot_allocation";
-    private static final String SLOTS_REPLICA_ALLOCATION_FILENAME = "slot_replica_allocation";
+    private static final String SLOTS_ALLOCATION_FILENAME = "slots_allocation";
+    private static final String SLOTS_REPLICA_ALLOCATION_FILENAME = "slots_replica_allocation";
     private static final String REPLICA_NODE_IDS_FILENAME = "replica_node_ids";
     /**
      * 等待所有master节点连接过来的检查间隔
@@ -1,6 +1,8 @@
 package com.zhss.microservice.server.node;
 
 import com.zhss.microservice.server.node.network.*;
+import com.zhss.microservice.server.node.persist.RegistrySnapshotPersister;
+import com.zhss.microservice.server.node.persist.RegistryWriteAheadLog;
 import com.zhss.microservice.server.replica.ReplicationManager;
 import com.zhss.microservice.server.slot.SlotManager;
 import org.slf4j.Logger;
@@ -58,6 +60,7 @@ public class ServerNode {
             if(serverNodeRole == ServerNodeRole.CONTROLLER) {
                 isController = true;
                 Controller controller = Controller.getInstance();
+                // 集群成员跟重启之前一样的时候，直接用磁盘上的槽位分配数据
                 controller.allocateSlots();
                 controller.initControllerNode();
                 controller.sendControllerNodeId();
@@ -81,6 +84,23 @@ public class ServerNode {
 
         ServerNodeRole.setRole(serverNodeRole);
 
+        // 槽位初始化好以后，从注册表快照和预写日志里恢复注册表
+        // 开启了注册表预写日志的话，要在接收注册请求之前启动
+        Boolean registryWalEnabled = configuration.getRegistryWalEnabled();
+        Boolean registrySnapshotPersistEnabled = configuration.getRegistrySnapshotPersistEnabled();
+        long registrySnapshotLsn = 0;
+        if(registryWalEnabled || registrySnapshotPersistEnabled) {
+            registrySnapshotLsn = RegistrySnapshotPersister.getInstance().recover();
+        }
+        if(registryWalEnabled) {
+            if(!RegistryWriteAheadLog.getInstance().start(registrySnapshotLsn)) {
+                return;
+            }
+        }
+        if(registrySnapshotPersistEnabled) {
+            RegistrySnapshotPersister.getInstance().start();
+        }
+
         // 启动副本复制组件
         ReplicationManager replicationManager = ReplicationManager.getInstance();
         replicationManager.start();
@@ -1,14 +1,17 @@
 package com.zhss.microservice.server.node.network;
 
-import com.zhss.microservice.common.entity.*;
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.entity.Request;
+import com.zhss.microservice.common.network.MessageDecoder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 代表了跟一个客户端建立的长连接
@@ -17,11 +20,6 @@ public class ClientConnection {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(ClientConnection.class);
 
-    /**
-     * 消息标识字节数
-     */
-    private static final Integer MESSAGE_FLAG_BYTES = 4;
-
     /**
      * 代表跟客户端之间的长连接的SocketChannel
      */
@@ -31,143 +29,60 @@ public class ClientConnection {
      */
     private SelectionKey selectionKey;
     /**
-     * 是否读取完毕消息标识（请求/响应）
-     */
-    private Boolean hasReadMessageFlag = false;
-    /**
-     * 消息标识buffer
-     */
-    private ByteBuffer messageFlagBuffer =
-            ByteBuffer.allocate(MESSAGE_FLAG_BYTES);
-    /**
-     * 消息标识
+     * 从连接里读取和解析消息的组件
      */
-    private Integer messageFlag = null;
+   private MessageDecoder messageDecoder;
     /**
-     * 是否读取完毕请求长度
-     */
-    private Boolean hasReadMessageLength = false;
-    /**
-     * 请求长度buffer
+     * 客户端连接ID
      */
-    private ByteBuffer messageLengthBuffer =
-            ByteBuffer.allocate(Request.REQUEST_LENGTH_BYTES);
+   private String connectionId;
     /**
-     * 是否读取完毕请求数据
+     * 负责这个连接读写的IO线程
      */
-    private Boolean hasReadMessage = false;
+   private ClientNetworkIOThread networkIOThread;
     /**
-     * 请求数据buffer
+     * 是否已经通知过IO线程来发送这个连接的消息
      */
-   private ByteBuffer messageBuffer = null;
+   private AtomicBoolean writeScheduled = new AtomicBoolean(false);
     /**
-     * 客户端连接ID
+     * 客户端使用的协议版本，按照客户端最近发过来的请求确定，推送给客户端的请求也用这个版本
      */
-   private String connectionId;
+   private volatile int protocolVersion = Request.PROTOCOL_VERSION_1;
 
-    public ClientConnection(SocketChannel socketChannel, SelectionKey selectionKey) {
+    public ClientConnection(SocketChannel socketChannel,
+                            SelectionKey selectionKey,
+                            ClientNetworkIOThread networkIOThread) {
         this.socketChannel = socketChannel;
         this.selectionKey = selectionKey;
+        this.networkIOThread = networkIOThread;
+        this.messageDecoder = new MessageDecoder(networkIOThread.getReadBufferPool());
         this.connectionId = UUID.randomUUID().toString().replace(
                 "-", "");
     }
 
     /**
-     * 读取消息标识
-     * @return
+     * 读取客户端发送过来的所有完整的请求/响应
+     * @param messages 解析出来的消息会按顺序放到这里
+     * @return 连接是否还没有被客户端关闭
+     * @throws IOException
      */
-    public Integer readMessageFlag() {
-        try {
-            if(!hasReadMessageFlag) {
-                socketChannel.read(messageFlagBuffer);
-
-                if(messageFlagBuffer.hasRemaining()) {
-                    return null;
-                }
-
-                hasReadMessageFlag = true;
-
-                messageFlagBuffer.flip();
-                messageFlag = messageFlagBuffer.getInt();
-                return messageFlag;
-            } else {
-                return messageFlag;
-            }
-        } catch(Exception e) {
-            LOGGER.error("read flag error......", e);
-        }
-
-        return null;
+    public boolean readMessages(List<Message> messages) throws IOException {
+        return messageDecoder.read(socketChannel, messages);
     }
 
     /**
-     * 执行读IO操作
+     * 关闭连接
      */
-    public Message readMessage() {
+    public void close() {
+        messageDecoder.release();
+        if(selectionKey != null) {
+            selectionKey.cancel();
+        }
         try {
-            // 读取请求长度
-            if(!hasReadMessageLength) {
-                socketChannel.read(messageLengthBuffer);
-
-                if(messageLengthBuffer.hasRemaining()) {
-                    return null;
-                }
-
-                hasReadMessageLength = true;
-            }
-
-            // 请求长度读取完毕，构建请求体buffer
-            if(messageBuffer == null) {
-                messageLengthBuffer.flip();
-                Integer messageLength = messageLengthBuffer.getInt();
-                messageBuffer = ByteBuffer.allocate(messageLength);
-            }
-
-            // 读取请求数据
-            if(!hasReadMessage) {
-                socketChannel.read(messageBuffer);
-
-                if(messageBuffer.hasRemaining()) {
-                    return null;
-                }
-
-                // 请求数据读取完毕了
-                hasReadMessage = true;
-
-                // 把请求数据进行反序列化，得到一个Request对象
-                messageBuffer.flip();
-                Integer requestType = messageBuffer.getInt();
-
-                Message message = null;
-                if(messageFlag.equals(Request.REQUEST_FLAG)) {
-                    message = Request.deserialize(requestType, messageBuffer);
-                } else if(messageFlag.equals(Response.RESPONSE_FLAG)) {
-                    message = Response.deserialize(requestType, messageBuffer);
-                }
-
-                // 再对buffer数据做一个清空
-                resetMessage();
-
-                // 返回解析到的请求对象
-                return message;
-            }
+            socketChannel.close();
         } catch(IOException e) {
-            LOGGER.error("do read io error......", e);
+            LOGGER.error("close client connection error......", e);
         }
-        return null;
-    }
-
-    /**
-     * 重置读取的请求数据
-     */
-    private void resetMessage() {
-        hasReadMessageFlag = false;
-        messageFlagBuffer = ByteBuffer.allocate(MESSAGE_FLAG_BYTES);
-        messageFlag = null;
-        hasReadMessageLength = false;
-        messageLengthBuffer = ByteBuffer.allocate(Request.REQUEST_LENGTH_BYTES);
-        hasReadMessage = false;
-        messageBuffer = null;
     }
 
     public SocketChannel getSocketChannel() {
@@ -190,4 +105,20 @@ public class ClientConnection {
         return connectionId;
     }
 
+    public ClientNetworkIOThread getNetworkIOThread() {
+        return networkIOThread;
+    }
+
+    public AtomicBoolean getWriteScheduled() {
+        return writeScheduled;
+    }
+
+    public int getProtocolVersion() {
+        return protocolVersion;
+    }
+
+    public void setProtocolVersion(int protocolVersion) {
+        this.protocolVersion = protocolVersion;
+    }
+
 }
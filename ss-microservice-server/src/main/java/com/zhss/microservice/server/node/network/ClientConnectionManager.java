@@ -1,7 +1,6 @@
 package com.zhss.microservice.server.node.network;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 客户端连接管理组件
@@ -20,16 +19,33 @@ public class ClientConnectionManager {
         return Singleton.instance;
     }
 
-    // 跟所有客户端建立的连接
-    private List<ClientConnection> clientConnections =
-            new ArrayList<ClientConnection>();
+    // 跟所有客户端建立的连接，多个IO线程会并发的添加连接
+    private ConcurrentHashMap<String, ClientConnection> clientConnections =
+            new ConcurrentHashMap<String, ClientConnection>();
 
     /**
      * 添加一个客户端连接
      * @param clientConnection
      */
     public void addClientConnection(ClientConnection clientConnection) {
-        this.clientConnections.add(clientConnection);
+        this.clientConnections.put(clientConnection.getConnectionId(), clientConnection);
+    }
+
+    /**
+     * 获取一个客户端连接
+     * @param clientConnectionId
+     * @return
+     */
+    public ClientConnection getClientConnection(String clientConnectionId) {
+        return this.clientConnections.get(clientConnectionId);
+    }
+
+    /**
+     * 删除一个客户端连接
+     * @param clientConnectionId
+     */
+    public void removeClientConnection(String clientConnectionId) {
+        this.clientConnections.remove(clientConnectionId);
     }
 
 }
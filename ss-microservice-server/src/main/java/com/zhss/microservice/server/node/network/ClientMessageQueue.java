@@ -0,0 +1,201 @@
+package com.zhss.microservice.server.node.network;
+
+import com.zhss.microservice.common.entity.Message;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 一个客户端连接的发送队列
+ *
+ * 按照消息数量和字节数统计队列深度，超过上限以后服务变动推送不再进入队列，
+ * 而是按照服务暂存起来，同一个服务只保留最新的一次推送，等队列降到上限以下再放进队列
+ * 业务线程放入消息，连接所属的IO线程取出消息发送
+ */
+public class ClientMessageQueue extends AbstractQueue<Message> {
+
+    /**
+     * 排队的消息
+     */
+    private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<>();
+    /**
+     * 排队的消息数量
+     */
+    private final AtomicInteger messageCount = new AtomicInteger();
+    /**
+     * 排队的字节数
+     */
+    private final AtomicLong messageBytes = new AtomicLong();
+    /**
+     * 队列超过上限的时候暂存的服务变动推送：服务名称 -> 最新的推送
+     */
+    private final Map<String, Message> pendingServiceChanges = new LinkedHashMap<>();
+    /**
+     * 被更新的推送替换掉的服务变动推送数量
+     */
+    private final AtomicLong collapsedCount = new AtomicLong();
+    /**
+     * 最多排队的消息数量
+     */
+    private final int maxMessages;
+    /**
+     * 最多排队的字节数
+     */
+    private final long maxBytes;
+    /**
+     * 队列开始超过上限的时间，没有超过上限的时候是0，只有IO线程会更新
+     */
+    private volatile long overLimitSince = 0;
+
+    public ClientMessageQueue(int maxMessages, long maxBytes) {
+        this.maxMessages = maxMessages;
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean offer(Message message) {
+        messages.offer(message);
+        messageCount.incrementAndGet();
+        messageBytes.addAndGet(sizeOf(message));
+        return true;
+    }
+
+    @Override
+    public Message poll() {
+        Message message = messages.poll();
+        if(message != null) {
+            messageCount.decrementAndGet();
+            messageBytes.addAndGet(-sizeOf(message));
+        }
+        return message;
+    }
+
+    @Override
+    public Message peek() {
+        return messages.peek();
+    }
+
+    /**
+     * 只能用来遍历，不能通过迭代器删除消息
+     * @return
+     */
+    @Override
+    public Iterator<Message> iterator() {
+        return messages.iterator();
+    }
+
+    @Override
+    public int size() {
+        return messageCount.get();
+    }
+
+    /**
+     * 消息的字节数，按照buffer的limit计算，跟已经发送到哪里了没有关系
+     */
+    private static long sizeOf(Message message) {
+        long size = 0;
+        for(int i = 0; i < message.getBufferCount(); i++) {
+            size += message.getBuffer(i).limit();
+        }
+        return size;
+    }
+
+    /**
+     * 放入一个服务变动推送
+     *
+     * 队列超过上限或者已经有暂存的推送的时候，暂存起来，替换掉这个服务之前暂存的推送
+     * 有暂存的推送的时候后来的推送也要暂存，保证同一个服务的推送按照顺序发送
+     * @param serviceName
+     * @param message
+     * @return 直接进入队列返回true，暂存起来返回false
+     */
+    public synchronized boolean offerServiceChanged(String serviceName, Message message) {
+        if(pendingServiceChanges.isEmpty() && !isOverLimit()) {
+            return offer(message);
+        }
+        if(pendingServiceChanges.put(serviceName, message) != null) {
+            collapsedCount.incrementAndGet();
+        }
+        return false;
+    }
+
+    /**
+     * 队列降到上限以下以后，把暂存的推送按照顺序放进队列，由IO线程在发送之后调用
+     * @return 是否有暂存的推送放进了队列
+     */
+    public synchronized boolean drainPendingServiceChanges() {
+        boolean drained = false;
+        Iterator<Message> iterator = pendingServiceChanges.values().iterator();
+        while(iterator.hasNext() && !isOverLimit()) {
+            offer(iterator.next());
+            iterator.remove();
+            drained = true;
+        }
+        return drained;
+    }
+
+    /**
+     * 是否拥塞：超过上限或者还有暂存的推送
+     *
+     * 拥塞的时候服务变动推送可能会被替换掉，应该推送完整的地址列表而不是增量
+     * @return
+     */
+    public synchronized boolean isCongested() {
+        return !pendingServiceChanges.isEmpty() || isOverLimit();
+    }
+
+    private boolean isOverLimit() {
+        return messageCount.get() >= maxMessages || messageBytes.get() >= maxBytes;
+    }
+
+    /**
+     * 检查是否是一直处理不过来的慢客户端，由IO线程在发送之后和定时检查的时候调用
+     * @param now
+     * @param timeoutMillis 持续超过上限多久算慢客户端
+     * @return
+     */
+    public boolean checkSlowConsumer(long now, long timeoutMillis) {
+        if(!isCongested()) {
+            overLimitSince = 0;
+            return false;
+        }
+        if(overLimitSince == 0) {
+            overLimitSince = now;
+            return false;
+        }
+        return now - overLimitSince > timeoutMillis;
+    }
+
+    public long getMessageBytes() {
+        return messageBytes.get();
+    }
+
+    public synchronized int getPendingServiceChangeCount() {
+        return pendingServiceChanges.size();
+    }
+
+    public long getCollapsedCount() {
+        return collapsedCount.get();
+    }
+
+    public long getOverLimitSince() {
+        return overLimitSince;
+    }
+
+    @Override
+    public String toString() {
+        return "ClientMessageQueue{" +
+                "messages=" + size() +
+                ", bytes=" + getMessageBytes() +
+                ", pendingServiceChanges=" + getPendingServiceChangeCount() +
+                ", collapsed=" + getCollapsedCount() +
+                ", overLimitSince=" + overLimitSince +
+                '}';
+    }
+
+}
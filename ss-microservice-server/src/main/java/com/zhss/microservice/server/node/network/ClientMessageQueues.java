@@ -1,17 +1,23 @@
 package com.zhss.microservice.server.node.network;
 
 import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.server.config.Configuration;
 
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * 针对客户端的双向消息队列：请求 or 响应
+ *
+ * 每个连接的发送队列都有消息数量和字节数的上限，超过上限以后服务变动推送按照服务合并
  */
 public class ClientMessageQueues {
 
     private ClientMessageQueues() {
-
+        Configuration configuration = Configuration.getInstance();
+        this.maxMessages = configuration.getClientOutboundQueueMaxMessages();
+        this.maxBytes = configuration.getClientOutboundQueueMaxBytes();
     }
 
     private static class Singleton {
@@ -24,20 +30,84 @@ public class ClientMessageQueues {
         return Singleton.instance;
     }
 
-    private ConcurrentHashMap<String, LinkedBlockingQueue<Message>> messageQueues =
+    /**
+     * 每个连接最多排队的消息数量
+     */
+    private final int maxMessages;
+    /**
+     * 每个连接最多排队的字节数
+     */
+    private final long maxBytes;
+
+    private ConcurrentHashMap<String, ClientMessageQueue> messageQueues =
             new ConcurrentHashMap<>();
 
     public void initMessageQueue(String clientConnectionId) {
-        messageQueues.put(clientConnectionId, new LinkedBlockingQueue<>());
+        messageQueues.put(clientConnectionId, new ClientMessageQueue(maxMessages, maxBytes));
     }
 
     public void offerMessage(String clientConnectionId, Message message) {
-        LinkedBlockingQueue<Message> messageQueue = messageQueues.get(clientConnectionId);
+        ClientMessageQueue messageQueue = messageQueues.get(clientConnectionId);
+        // 连接已经关闭了
+        if(messageQueue == null) {
+            return;
+        }
         messageQueue.offer(message);
+        scheduleWrite(clientConnectionId);
+    }
+
+    /**
+     * 放入一个服务变动推送，队列超过上限的时候同一个服务只保留最新的一次推送
+     * @param clientConnectionId
+     * @param serviceName
+     * @param message
+     */
+    public void offerServiceChanged(String clientConnectionId, String serviceName, Message message) {
+        ClientMessageQueue messageQueue = messageQueues.get(clientConnectionId);
+        // 连接已经关闭了
+        if(messageQueue == null) {
+            return;
+        }
+        messageQueue.offerServiceChanged(serviceName, message);
+        // 暂存起来的推送也要通知IO线程，IO线程发送之后会检查是不是慢客户端
+        scheduleWrite(clientConnectionId);
+    }
+
+    /**
+     * 连接的发送队列是否拥塞
+     * @param clientConnectionId
+     * @return
+     */
+    public boolean isCongested(String clientConnectionId) {
+        ClientMessageQueue messageQueue = messageQueues.get(clientConnectionId);
+        return messageQueue != null && messageQueue.isCongested();
     }
 
-    public LinkedBlockingQueue<Message> getMessageQueue(String clientConnectionId) {
+    /**
+     * 消息可能是业务线程放进来的，需要通知连接所属的IO线程去发送
+     */
+    private void scheduleWrite(String clientConnectionId) {
+        ClientConnectionManager clientConnectionManager = ClientConnectionManager.getInstance();
+        ClientConnection clientConnection = clientConnectionManager.getClientConnection(clientConnectionId);
+        if(clientConnection != null) {
+            clientConnection.getNetworkIOThread().scheduleWrite(clientConnection);
+        }
+    }
+
+    public ClientMessageQueue getMessageQueue(String clientConnectionId) {
         return messageQueues.get(clientConnectionId);
     }
 
+    /**
+     * 获取所有连接的发送队列，用来查看每个连接的队列深度
+     * @return 客户端连接标识 -> 发送队列
+     */
+    public Map<String, ClientMessageQueue> getMessageQueues() {
+        return Collections.unmodifiableMap(messageQueues);
+    }
+
+    public void removeMessageQueue(String clientConnectionId) {
+        messageQueues.remove(clientConnectionId);
+    }
+
 }
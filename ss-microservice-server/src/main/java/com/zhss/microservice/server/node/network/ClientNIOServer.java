@@ -1,25 +1,25 @@
 package com.zhss.microservice.server.node.network;
 
-import com.zhss.microservice.common.entity.Message;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import com.zhss.microservice.common.entity.Request;
-import com.zhss.microservice.common.entity.Response;
 import com.zhss.microservice.server.config.Configuration;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
 
 /**
  * master节点的NIO服务器
  * 他主要是用于跟客户端建立连接，进行网络通信的
+ *
+ * 采用多reactor的线程模型：
+ * 1、一个acceptor线程专门负责跟客户端完成三次握手建立连接
+ * 2、建立好的连接按照round-robin的方式交给N个IO线程，每个IO线程有自己独立的Selector
+ * 3、每个客户端连接后续所有的读写都只会在自己所属的那个IO线程里执行
  */
 public class ClientNIOServer {
 
@@ -42,13 +42,21 @@ public class ClientNIOServer {
     }
 
     /**
-     * NIO的多路复用组件
+     * acceptor线程使用的多路复用组件
      */
     private Selector selector;
     /**
      * NIO的Server端网络通信组件
      */
     private ServerSocketChannel serverSocketChannel;
+    /**
+     * 负责客户端连接读写的IO线程
+     */
+    private ClientNetworkIOThread[] networkIOThreads;
+    /**
+     * 下一个分配连接的IO线程
+     */
+    private int nextNetworkIOThread = 0;
 
     /**
      * 启动NIO服务器
@@ -68,17 +76,38 @@ public class ClientNIOServer {
 
             LOGGER.info("NIO server binding to port[" + clientNetworkPort + "]......");
 
-            // 启动NIO服务器的网络IO线程
-            NetworkIOThread networkIOThread = new NetworkIOThread();
-            networkIOThread.setDaemon(true);
-            networkIOThread.start();
+            // 启动负责客户端连接读写的IO线程
+            int reactorThreads = configuration.getClientReactorThreads();
+            networkIOThreads = new ClientNetworkIOThread[reactorThreads];
+            for(int i = 0; i < reactorThreads; i++) {
+                networkIOThreads[i] = new ClientNetworkIOThread(i, serverSocketChannel);
+                networkIOThreads[i].setDaemon(true);
+                networkIOThreads[i].start();
+            }
+
+            LOGGER.info("NIO server started " + reactorThreads + " network IO threads......");
+
+            // 启动NIO服务器的acceptor线程
+            AcceptorThread acceptorThread = new AcceptorThread();
+            acceptorThread.setDaemon(true);
+            acceptorThread.start();
         } catch (IOException e) {
             LOGGER.error("start NIO server error.......", e);
         }
     }
 
     /**
-     * 网络IO线程
+     * 按照round-robin的方式挑选一个IO线程
+     * @return
+     */
+    private ClientNetworkIOThread chooseNetworkIOThread() {
+        ClientNetworkIOThread networkIOThread = networkIOThreads[nextNetworkIOThread];
+        nextNetworkIOThread = (nextNetworkIOThread + 1) % networkIOThreads.length;
+        return networkIOThread;
+    }
+
+    /**
+     * acceptor线程
      *
      * 实现一个线程，到底是用Runnable接口，还是Thread类
      * 如果说你要封装的是线程的执行逻辑，那么就继承自Runnable接口就可以了
@@ -86,11 +115,11 @@ public class ClientNIOServer {
      * 但是如果你封装的直接就代表了一个线程，那么就用Thread类就可以了
      *
      */
-    class NetworkIOThread extends Thread {
+    class AcceptorThread extends Thread {
 
         public void run() {
             // 只要ServerSocketChannel还没有关闭
-            // 此时就无限循环去处理各种各样的连接和请求
+            // 此时就无限循环去跟客户端建立连接
             while(!serverSocketChannel.socket().isClosed()) {
                 try {
                     selector.select(1000);
@@ -104,99 +133,27 @@ public class ClientNIOServer {
 
                     while(selectionKeyIterator.hasNext()) {
                         SelectionKey selectionKey = selectionKeyIterator.next();
+                        selectionKeyIterator.remove();
 
-                        // 这里的SelectionKey代表的是ServerSocketChannel
-                        if ((selectionKey.readyOps() & SelectionKey.OP_ACCEPT) != 0) {
-                            // 跟客户端完成三次握手建立TCP长连接
-                            ServerSocketChannel serverSocketChannel =
-                                    (ServerSocketChannel)selectionKey.channel();
-                            SocketChannel socketChannel = serverSocketChannel.accept();
-
-                            socketChannel.configureBlocking(false);
-
-                            // 把跟客户端建立好的连接SocketChannel注册到Selector里去
-                            SelectionKey clientSelectionKey = socketChannel.register(
-                                    selector, SelectionKey.OP_READ | SelectionKey.OP_WRITE);
-
-                            // 维护好客户端连接数据
-                            ClientConnection clientConnection = new ClientConnection(
-                                    socketChannel, clientSelectionKey);
-
-                            ClientConnectionManager clientConnectionManager = ClientConnectionManager.getInstance();
-                            clientConnectionManager.addClientConnection(clientConnection);
-
-                            ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
-                            clientMessageQueues.initMessageQueue(clientConnection.getConnectionId());
+                        if(!selectionKey.isValid() || !selectionKey.isAcceptable()) {
+                            continue;
+                        }
 
-                            clientSelectionKey.attach(clientConnection);
+                        // 跟客户端完成三次握手建立TCP长连接
+                        SocketChannel socketChannel = serverSocketChannel.accept();
+                        if(socketChannel == null) {
+                            continue;
+                        }
+                        socketChannel.configureBlocking(false);
 
-                            LOGGER.info("跟客户端建立连接: " +
-                                    socketChannel.socket().getRemoteSocketAddress());
+                        // 把连接交给一个IO线程，由他注册到自己的Selector上去
+                        chooseNetworkIOThread().register(socketChannel);
 
-                            selectionKeyIterator.remove();
-                        }
-                        // 处理客户端连接的请求/响应
-                        else if ((selectionKey.readyOps() & SelectionKey.OP_READ) != 0) {
-                            if(selectionKey.isReadable()) {
-                                ClientConnection clientConnection = (ClientConnection) selectionKey.attachment();
-
-                                Integer messageFlag = clientConnection.readMessageFlag();
-
-                                if(messageFlag != null) {
-                                    if(messageFlag.equals(Request.REQUEST_FLAG)) {
-                                        Message message = clientConnection.readMessage();
-
-                                        if (message != null) {
-                                            if(message instanceof Request) {
-                                                Request request = (Request) message;
-                                                ClientRequestProcessor clientRequestProcessor = ClientRequestProcessor.getInstance();
-                                                Response response = clientRequestProcessor.process(
-                                                        clientConnection.getConnectionId(), request);
-                                                ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
-                                                clientMessageQueues.offerMessage(clientConnection.getConnectionId(), response);
-                                            } else if(message instanceof  Response) {
-                                                Response response = (Response) message;
-                                                System.out.println("服务端推送的请求收到响应，requestId=" + response.getRequestId());
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                        }
-                        // 返回响应给客户端 / 发送请求给客户端
-                        else if((selectionKey.readyOps() & SelectionKey.OP_WRITE) != 0) {
-                            if(selectionKey.isWritable()) {
-                                ClientConnection clientConnection = (ClientConnection) selectionKey.attachment();
-                                if(clientConnection == null) {
-                                    continue;
-                                }
-
-                                // 处理需要返回给客户端的响应
-                                ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
-                                LinkedBlockingQueue<Message> messageQueue = clientMessageQueues.getMessageQueue(
-                                        clientConnection.getConnectionId());
-                                if(messageQueue.isEmpty()) {
-                                    continue;
-                                }
-
-                                Message message = messageQueue.peek();
-                                if(message == null) {
-                                    continue;
-                                }
-
-                                ByteBuffer data = message.getData();
-
-                                SocketChannel socketChannel = clientConnection.getSocketChannel();
-                                socketChannel.write(data);
-
-                                if(!data.hasRemaining()) {
-                                    messageQueue.poll();
-                                }
-                            }
-                        }
+                        LOGGER.info("跟客户端建立连接: " +
+                                socketChannel.socket().getRemoteSocketAddress());
                     }
                 } catch (IOException e) {
-                    LOGGER.error("network IO error......", e);
+                    LOGGER.error("accept client connection error......", e);
                 }
             }
         }
@@ -0,0 +1,385 @@
+package com.zhss.microservice.server.node.network;
+
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.entity.Request;
+import com.zhss.microservice.common.entity.Response;
+import com.zhss.microservice.common.network.ByteBufferPool;
+import com.zhss.microservice.common.network.MessageBatchWriter;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.slot.registry.SubscriptionIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 负责客户端连接读写的网络IO线程（reactor）
+ *
+ * 每个IO线程都有一个自己独立的Selector，acceptor线程建立好的连接会交给他
+ * 由他注册到自己的Selector上去，此后这个连接的读写请求都由这个线程来处理
+ *
+ * 连接平时只关注OP_READ事件，有消息要发送的时候由生产者通知IO线程直接去写
+ * 只有socket写缓冲满了写不完的时候才关注OP_WRITE事件，写完了再取消关注
+ *
+ * 客户端不读数据的时候永远等不到OP_WRITE事件，所以发送队列超过上限的连接
+ * 还会在每次select之后定时检查一遍，持续超过上限太久的慢客户端直接断开
+ */
+public class ClientNetworkIOThread extends Thread {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientNetworkIOThread.class);
+
+    /**
+     * select操作的超时时间
+     */
+    private static final long SELECT_TIMEOUT = 1000L;
+    /**
+     * buffer池里最大规格的buffer大小
+     */
+    private static final int MAX_POOLED_READ_BUFFER_SIZE = 64 * 1024;
+    /**
+     * buffer池里每个规格最多缓存的空闲buffer数量
+     */
+    private static final int MAX_FREE_READ_BUFFERS_PER_SIZE_CLASS = 32;
+
+    /**
+     * NIO的多路复用组件
+     */
+    private Selector selector;
+    /**
+     * NIO的Server端网络通信组件
+     */
+    private ServerSocketChannel serverSocketChannel;
+    /**
+     * 等待注册到Selector上的客户端连接
+     */
+    private ConcurrentLinkedQueue<SocketChannel> pendingSocketChannels =
+            new ConcurrentLinkedQueue<>();
+    /**
+     * 有消息等待发送的客户端连接
+     */
+    private ConcurrentLinkedQueue<ClientConnection> pendingWriteConnections =
+            new ConcurrentLinkedQueue<>();
+    /**
+     * 把排队的多条消息合并成一次write发送出去
+     */
+    private MessageBatchWriter messageBatchWriter;
+    /**
+     * 这个IO线程上所有连接读取消息共用的buffer池
+     */
+    private ByteBufferPool readBufferPool;
+    /**
+     * 一次读取解析出来的消息，反复使用
+     */
+    private List<Message> readMessages = new ArrayList<>();
+    /**
+     * 发送队列持续超过上限多久以后断开连接
+     */
+    private long slowConsumerTimeout;
+    /**
+     * 发送队列超过上限的连接，只有这个IO线程会访问
+     */
+    private Set<ClientConnection> overLimitConnections = new HashSet<>();
+    /**
+     * 上一次定时检查慢客户端的时间
+     */
+    private long lastSlowConsumerCheckTime = System.currentTimeMillis();
+
+    public ClientNetworkIOThread(int index, ServerSocketChannel serverSocketChannel) throws IOException {
+        super("client-network-io-" + index);
+        this.selector = Selector.open();
+        this.serverSocketChannel = serverSocketChannel;
+
+        Configuration configuration = Configuration.getInstance();
+        this.messageBatchWriter = new MessageBatchWriter(
+                configuration.getClientWriteBatchMessages(),
+                configuration.getClientWriteBatchBytes());
+        this.readBufferPool = new ByteBufferPool(
+                MAX_POOLED_READ_BUFFER_SIZE,
+                MAX_FREE_READ_BUFFERS_PER_SIZE_CLASS,
+                configuration.isClientReadBufferDirect());
+        this.slowConsumerTimeout = configuration.getClientSlowConsumerTimeout();
+    }
+
+    /**
+     * 接收acceptor线程交过来的客户端连接
+     * @param socketChannel
+     */
+    public void register(SocketChannel socketChannel) {
+        pendingSocketChannels.offer(socketChannel);
+        selector.wakeup();
+    }
+
+    /**
+     * 获取读取消息用的buffer池，只能在这个IO线程里使用
+     * @return
+     */
+    public ByteBufferPool getReadBufferPool() {
+        return readBufferPool;
+    }
+
+    /**
+     * 唤醒阻塞在select上的IO线程
+     */
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    /**
+     * 通知IO线程去发送某个连接的消息
+     *
+     * 一个连接在被IO线程处理之前，不管放进来多少条消息都只会通知一次
+     * @param clientConnection
+     */
+    public void scheduleWrite(ClientConnection clientConnection) {
+        if(clientConnection.getWriteScheduled().compareAndSet(false, true)) {
+            pendingWriteConnections.offer(clientConnection);
+            selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run() {
+        // 只要ServerSocketChannel还没有关闭
+        // 此时就无限循环去处理各种各样的请求
+        while(!serverSocketChannel.socket().isClosed()) {
+            try {
+                selector.select(SELECT_TIMEOUT);
+
+                registerPendingSocketChannels();
+                flushPendingWriteConnections();
+                checkSlowConsumers();
+
+                Set<SelectionKey> selectionKeys = selector.selectedKeys();
+                if(selectionKeys == null || selectionKeys.size() == 0) {
+                    continue;
+                }
+
+                Iterator<SelectionKey> selectionKeyIterator = selectionKeys.iterator();
+
+                while(selectionKeyIterator.hasNext()) {
+                    SelectionKey selectionKey = selectionKeyIterator.next();
+                    selectionKeyIterator.remove();
+
+                    if(!selectionKey.isValid()) {
+                        continue;
+                    }
+
+                    ClientConnection clientConnection = (ClientConnection) selectionKey.attachment();
+                    if(clientConnection == null) {
+                        continue;
+                    }
+
+                    // 处理客户端连接的请求/响应
+                    if(selectionKey.isReadable()) {
+                        readMessages(clientConnection);
+                    }
+                    // socket写缓冲又有空间了，继续发送没写完的消息
+                    if(selectionKey.isValid() && selectionKey.isWritable()) {
+                        writeMessages(clientConnection);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.error("network IO error......", e);
+            }
+        }
+    }
+
+    /**
+     * 把acceptor线程交过来的连接注册到自己的Selector上去
+     */
+    private void registerPendingSocketChannels() throws IOException {
+        SocketChannel socketChannel;
+        while((socketChannel = pendingSocketChannels.poll()) != null) {
+            // 把跟客户端建立好的连接SocketChannel注册到Selector里去
+            SelectionKey clientSelectionKey = socketChannel.register(
+                    selector, SelectionKey.OP_READ);
+
+            // 维护好客户端连接数据
+            ClientConnection clientConnection = new ClientConnection(
+                    socketChannel, clientSelectionKey, this);
+
+            ClientConnectionManager clientConnectionManager = ClientConnectionManager.getInstance();
+            clientConnectionManager.addClientConnection(clientConnection);
+
+            ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+            clientMessageQueues.initMessageQueue(clientConnection.getConnectionId());
+
+            clientSelectionKey.attach(clientConnection);
+        }
+    }
+
+    /**
+     * 发送所有有消息等待发送的连接的消息
+     */
+    private void flushPendingWriteConnections() throws IOException {
+        ClientConnection clientConnection;
+        while((clientConnection = pendingWriteConnections.poll()) != null) {
+            // 先清理标记再发送，发送期间新放进来的消息会重新通知IO线程
+            clientConnection.getWriteScheduled().set(false);
+
+            if(!clientConnection.getSelectionKey().isValid()) {
+                continue;
+            }
+            writeMessages(clientConnection);
+        }
+    }
+
+    /**
+     * 定时检查发送队列超过上限的连接，断开持续超过上限太久的慢客户端
+     *
+     * 每个select超时时间最多检查一次，只遍历超过上限的连接
+     */
+    private void checkSlowConsumers() {
+        long now = System.currentTimeMillis();
+        if(overLimitConnections.isEmpty() || now - lastSlowConsumerCheckTime < SELECT_TIMEOUT) {
+            return;
+        }
+        lastSlowConsumerCheckTime = now;
+
+        ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+        List<ClientConnection> slowConsumers = new ArrayList<>();
+        Iterator<ClientConnection> iterator = overLimitConnections.iterator();
+        while(iterator.hasNext()) {
+            ClientConnection clientConnection = iterator.next();
+            ClientMessageQueue messageQueue = clientMessageQueues.getMessageQueue(
+                    clientConnection.getConnectionId());
+            if(messageQueue == null) {
+                iterator.remove();
+            } else if(messageQueue.checkSlowConsumer(now, slowConsumerTimeout)) {
+                LOGGER.warn("客户端连接的发送队列超过上限" + slowConsumerTimeout + "ms，断开这个慢客户端："
+                        + clientConnection.getConnectionId() + "，" + messageQueue);
+                slowConsumers.add(clientConnection);
+            } else if(messageQueue.getOverLimitSince() == 0) {
+                iterator.remove();
+            }
+        }
+
+        for(ClientConnection clientConnection : slowConsumers) {
+            closeClientConnection(clientConnection);
+        }
+    }
+
+    /**
+     * 读取客户端发送过来的请求/响应
+     *
+     * 一次把socket里能读到的数据都读出来，解析出所有完整的消息再回到select
+     * @param clientConnection
+     */
+    private void readMessages(ClientConnection clientConnection) {
+        try {
+            boolean connected = clientConnection.readMessages(readMessages);
+
+            for(Message message : readMessages) {
+                if(message instanceof Request) {
+                    Request request = (Request) message;
+                    clientConnection.setProtocolVersion(request.getProtocolVersion());
+
+                    // 请求交给业务线程去处理，不在IO线程里执行业务逻辑
+                    ClientRequestExecutor clientRequestExecutor = ClientRequestExecutor.getInstance();
+                    clientRequestExecutor.execute(clientConnection, request);
+                } else if(message instanceof Response) {
+                    Response response = (Response) message;
+                    LOGGER.debug("服务端推送的请求收到响应，requestId=" + response.getRequestId());
+                }
+            }
+
+            if(!connected) {
+                LOGGER.info("客户端关闭了连接：" + clientConnection.getConnectionId());
+                closeClientConnection(clientConnection);
+            }
+        } catch(Exception e) {
+            LOGGER.error("read client message error, close connection：" + clientConnection.getConnectionId(), e);
+            closeClientConnection(clientConnection);
+        } finally {
+            readMessages.clear();
+        }
+    }
+
+    /**
+     * 关闭客户端连接，清理连接相关的数据
+     * @param clientConnection
+     */
+    private void closeClientConnection(ClientConnection clientConnection) {
+        clientConnection.close();
+        overLimitConnections.remove(clientConnection);
+
+        ClientConnectionManager clientConnectionManager = ClientConnectionManager.getInstance();
+        clientConnectionManager.removeClientConnection(clientConnection.getConnectionId());
+
+        ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+        clientMessageQueues.removeMessageQueue(clientConnection.getConnectionId());
+
+        // 取消这个连接的所有订阅，只处理它订阅过的服务
+        SubscriptionIndex subscriptionIndex = SubscriptionIndex.getInstance();
+        int subscriptions = subscriptionIndex.removeConnection(clientConnection.getConnectionId());
+        if(subscriptions > 0) {
+            LOGGER.info("客户端连接关闭，取消了" + subscriptions + "个服务订阅：" + clientConnection.getConnectionId());
+        }
+    }
+
+    /**
+     * 发送响应/请求给客户端
+     *
+     * 尽可能多的发送队列里的消息，直到队列空了或者socket写缓冲满了
+     * 排队的多条消息会凑成一批，通过一次write(ByteBuffer[])发送出去
+     * @param clientConnection
+     */
+    private void writeMessages(ClientConnection clientConnection) {
+        ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+        ClientMessageQueue messageQueue = clientMessageQueues.getMessageQueue(
+                clientConnection.getConnectionId());
+        if(messageQueue == null) {
+            return;
+        }
+
+        boolean writeCompleted;
+        try {
+            writeCompleted = messageBatchWriter.write(
+                    clientConnection.getSocketChannel(), messageQueue);
+            // 队列降下来了，把暂存的服务变动推送放进队列接着发送
+            while(messageQueue.drainPendingServiceChanges() && writeCompleted) {
+                writeCompleted = messageBatchWriter.write(
+                        clientConnection.getSocketChannel(), messageQueue);
+            }
+        } catch(IOException e) {
+            // 对端已经断开了，跟读取失败一样关闭连接、清理连接相关的数据
+            LOGGER.error("write client message error, close connection：" + clientConnection.getConnectionId(), e);
+            closeClientConnection(clientConnection);
+            return;
+        }
+
+        if(messageQueue.checkSlowConsumer(System.currentTimeMillis(), slowConsumerTimeout)) {
+            LOGGER.warn("客户端连接的发送队列超过上限" + slowConsumerTimeout + "ms，断开这个慢客户端："
+                    + clientConnection.getConnectionId() + "，" + messageQueue);
+            closeClientConnection(clientConnection);
+            return;
+        }
+        // 超过上限的连接交给定时检查，客户端不读数据的时候也能被断开
+        if(messageQueue.getOverLimitSince() != 0) {
+            overLimitConnections.add(clientConnection);
+        } else {
+            overLimitConnections.remove(clientConnection);
+        }
+        // 写不完的时候关注OP_WRITE事件，等写缓冲有空间了再继续写
+        SelectionKey selectionKey = clientConnection.getSelectionKey();
+        int interestOps = selectionKey.interestOps();
+        if(writeCompleted) {
+            if((interestOps & SelectionKey.OP_WRITE) != 0) {
+                selectionKey.interestOps(interestOps & ~SelectionKey.OP_WRITE);
+            }
+        } else if((interestOps & SelectionKey.OP_WRITE) == 0) {
+            selectionKey.interestOps(interestOps | SelectionKey.OP_WRITE);
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+package com.zhss.microservice.server.node.network;
+
+import com.zhss.microservice.common.entity.OverloadResponse;
+import com.zhss.microservice.common.entity.Request;
+import com.zhss.microservice.common.entity.Response;
+import com.zhss.microservice.server.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端请求的业务处理线程池
+ *
+ * IO线程只负责解析出请求，然后把请求交给这里的业务线程去处理
+ * 处理完毕的响应会放回这个连接的消息队列，同时唤醒连接所属的IO线程
+ * 这样某个请求处理的很慢（比如服务变动通知、转发副本请求阻塞住了），也不会卡住同一个IO线程上的其他客户端
+ */
+public class ClientRequestExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ClientRequestExecutor.class);
+
+    private ClientRequestExecutor() {
+        Configuration configuration = Configuration.getInstance();
+        int threads = configuration.getClientRequestThreads();
+        int queueSize = configuration.getClientRequestQueueSize();
+        this.callerRunsWhenRejected = Configuration.REJECTION_POLICY_CALLER_RUNS.equals(
+                configuration.getClientRequestRejectionPolicy());
+
+        ExecutorService virtualThreadExecutor = null;
+        if(configuration.isClientRequestVirtualThreads()) {
+            virtualThreadExecutor = newVirtualThreadExecutor();
+        }
+
+        if(virtualThreadExecutor != null) {
+            // 虚拟线程本身不需要池化，用信号量来限制同时在处理的请求数量
+            this.executor = virtualThreadExecutor;
+            this.permits = new Semaphore(threads + queueSize);
+            LOGGER.info("客户端请求使用虚拟线程处理，最多同时处理" + (threads + queueSize) + "个请求......");
+        } else {
+            this.executor = new ThreadPoolExecutor(
+                    threads,
+                    threads,
+                    0L,
+                    TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<Runnable>(queueSize),
+                    new ClientRequestThreadFactory(),
+                    new ThreadPoolExecutor.AbortPolicy());
+            this.permits = null;
+            LOGGER.info("客户端请求使用" + threads + "个业务线程处理，队列大小为" + queueSize + "......");
+        }
+    }
+
+    static class Singleton {
+        static ClientRequestExecutor instance = new ClientRequestExecutor();
+    }
+
+    public static ClientRequestExecutor getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 处理客户端请求的线程池
+     */
+    private final ExecutorService executor;
+    /**
+     * 使用虚拟线程的时候，限制同时在处理的请求数量
+     */
+    private final Semaphore permits;
+    /**
+     * 被拒绝的请求是否直接在IO线程里处理
+     */
+    private final boolean callerRunsWhenRejected;
+
+    /**
+     * 提交一个客户端请求
+     * @param clientConnection
+     * @param request
+     */
+    public void execute(ClientConnection clientConnection, Request request) {
+        if(permits != null && !permits.tryAcquire()) {
+            reject(clientConnection, request);
+            return;
+        }
+
+        try {
+            executor.execute(new ClientRequestTask(clientConnection, request));
+        } catch(RejectedExecutionException e) {
+            if(permits != null) {
+                permits.release();
+            }
+            reject(clientConnection, request);
+        }
+    }
+
+    /**
+     * 业务线程处理不过来的时候，按照拒绝策略处理请求
+     * @param clientConnection
+     * @param request
+     */
+    private void reject(ClientConnection clientConnection, Request request) {
+        if(callerRunsWhenRejected) {
+            process(clientConnection, request);
+            return;
+        }
+
+        LOGGER.warn("业务线程处理不过来，拒绝客户端【" + clientConnection.getConnectionId() + "】的请求：" + request.getId());
+
+        offerOverloadResponse(clientConnection, request);
+    }
+
+    /**
+     * 请求没有正常处理完的时候返回过载响应，客户端收到以后马上失败，不用一直等到超时
+     * @param clientConnection
+     * @param request
+     */
+    private void offerOverloadResponse(ClientConnection clientConnection, Request request) {
+        Response response = new OverloadResponse.Builder()
+                .request(request)
+                .rejectedRequestType(request.getRequestType())
+                .build();
+        ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+        clientMessageQueues.offerMessage(clientConnection.getConnectionId(), response);
+    }
+
+    /**
+     * 处理请求，把响应放回连接的消息队列
+     * @param clientConnection
+     * @param request
+     */
+    private void process(ClientConnection clientConnection, Request request) {
+        try {
+            ClientRequestProcessor clientRequestProcessor = ClientRequestProcessor.getInstance();
+            Response response = clientRequestProcessor.process(
+                    clientConnection.getConnectionId(), request);
+            if(response == null) {
+                return;
+            }
+
+            ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+            clientMessageQueues.offerMessage(clientConnection.getConnectionId(), response);
+        } catch(Exception e) {
+            LOGGER.error("处理客户端请求出现异常：" + request, e);
+            offerOverloadResponse(clientConnection, request);
+        }
+    }
+
+    /**
+     * 在jdk支持的情况下创建一个虚拟线程的线程池
+     * @return 不支持虚拟线程的时候返回null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch(Exception e) {
+            LOGGER.info("当前jdk不支持虚拟线程，使用固定大小的业务线程池......");
+            return null;
+        }
+    }
+
+    /**
+     * 客户端请求处理任务
+     */
+    class ClientRequestTask implements Runnable {
+
+        private ClientConnection clientConnection;
+        private Request request;
+
+        ClientRequestTask(ClientConnection clientConnection, Request request) {
+            this.clientConnection = clientConnection;
+            this.request = request;
+        }
+
+        @Override
+        public void run() {
+            try {
+                process(clientConnection, request);
+            } finally {
+                if(permits != null) {
+                    permits.release();
+                }
+            }
+        }
+
+    }
+
+    /**
+     * 业务线程工厂
+     */
+    static class ClientRequestThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "client-request-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -10,11 +10,15 @@ import com.zhss.microservice.server.slot.Slot;
 import com.zhss.microservice.server.slot.SlotManager;
 import com.zhss.microservice.server.slot.registry.ServiceInstance;
 import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+import com.zhss.microservice.server.slot.registry.ServiceSnapshot;
+import com.zhss.microservice.server.slot.registry.SubscriptionIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -54,6 +58,8 @@ public class ClientRequestProcessor {
             return fetchServerNodeId((FetchServerNodeIdRequest)request);
         } else if(request instanceof  SubscribeRequest) {
             return subscribe(clientConnectionId, (SubscribeRequest)request);
+        } else if(request instanceof BatchHeartbeatRequest) {
+            return batchHeartbeat((BatchHeartbeatRequest) request);
         }
 
         return null;
@@ -68,29 +74,26 @@ public class ClientRequestProcessor {
         String serviceName = request.getServiceName();
 
         SlotManager slotManager = SlotManager.getInstance();
-        Slot slot = slotManager.getSlot(serviceName);
+        Slot slot = slotManager.getSlot(request.getServiceSlot());
         ServiceRegistry serviceRegistry = slot.getServiceRegistry();
 
         // 设计模式：门面模式
         // 不同的槽位slot，就负责一部分请求的处理，逻辑单元
-        List<ServiceInstance> serviceInstances = serviceRegistry.subscribe(
-                clientConnectionId, serviceName);
+        ServiceSnapshot snapshot = serviceRegistry.subscribe(clientConnectionId, serviceName);
 
-        List<String> serviceInstanceAddresses = new ArrayList<String>();
-
-        for(ServiceInstance serviceInstance : serviceInstances) {
-            serviceInstanceAddresses.add(
-                    serviceInstance.getServiceName() + "," +
-                    serviceInstance.getServiceInstanceIp() + "," +
-                    serviceInstance.getServiceInstancePort()
-            );
+        // 订阅请求处理完之前连接就断开了，断开时的清理可能已经做过了，这里再清理一次
+        if(ClientConnectionManager.getInstance().getClientConnection(clientConnectionId) == null) {
+            SubscriptionIndex.getInstance().removeConnection(clientConnectionId);
+            return null;
         }
+        List<String> serviceInstanceAddresses = snapshot.getServiceInstanceAddresses();
 
         LOGGER.info("客户端【" + clientConnectionId + "】订阅服务【" + serviceName + "】：" + serviceInstanceAddresses);
 
         SubscribeResponse response = new SubscribeResponse.Builder()
-                .requestId(request.getId())
+                .request(request)
                 .serviceInstanceAddresses(serviceInstanceAddresses)
+                .serviceVersion(snapshot.getVersion())
                 .build();
 
         return response;
@@ -106,7 +109,7 @@ public class ClientRequestProcessor {
         Integer serverNodeId = configuration.getNodeId();
 
         FetchServerNodeIdResponse response = new FetchServerNodeIdResponse.Builder()
-                .requestId(request.getId())
+                .request(request)
                 .serverNodeId(serverNodeId)
                 .build();
 
@@ -126,9 +129,16 @@ public class ClientRequestProcessor {
 
         // 在本节点完成服务实例的心跳
         SlotManager slotManager = SlotManager.getInstance();
-        Slot slot = slotManager.getSlot(serviceName);
+        Slot slot = slotManager.getSlot(request.getServiceSlot());
         ServiceRegistry serviceRegistry = slot.getServiceRegistry();
-        serviceRegistry.heartbeat(serviceName, serviceInstanceIp, serviceInstancePort);
+        if(!serviceRegistry.heartbeat(request.getServiceNameId(), serviceName,
+                serviceInstanceIp, serviceInstancePort, System.currentTimeMillis())) {
+            LOGGER.warn("心跳的服务实例没有注册：" + request);
+            return new HeartbeatResponse.Builder()
+                    .request(request)
+                    .result(HeartbeatResponse.FAILURE)
+                    .build();
+        }
 
         // 就要获取到你的副本节点id，转发注册请求过去给他
         Integer replicaNodeId = slotManager.getReplicaNodeId();
@@ -152,13 +162,77 @@ public class ClientRequestProcessor {
         // 返回响应给服务实例
         HeartbeatResponse.Builder builder = new HeartbeatResponse.Builder();
         HeartbeatResponse response = builder
-                .requestId(request.getId())
+                .request(request)
                 .result(RegisterResponse.SUCCESS)
                 .build();
 
         return response;
     }
 
+    /**
+     * 批量心跳
+     *
+     * 按照槽位分组，每个槽位的注册表只处理一次，整批心跳只给副本节点转发一个请求
+     * @param request
+     * @return
+     */
+    private Response batchHeartbeat(BatchHeartbeatRequest request) {
+        List<BatchHeartbeatRequest.Entry> entries = request.getEntries();
+
+        SlotManager slotManager = SlotManager.getInstance();
+        Map<Slot, List<Integer>> entryIndexesBySlot = new HashMap<>();
+        List<Integer> failedEntries = new ArrayList<>();
+        for(int i = 0; i < entries.size(); i++) {
+            Slot slot = slotManager.getSlot(entries.get(i).getServiceSlot());
+            // 服务没有路由到本节点的槽位上
+            if(slot == null) {
+                failedEntries.add(i);
+                continue;
+            }
+            entryIndexesBySlot.computeIfAbsent(slot, key -> new ArrayList<>()).add(i);
+        }
+
+        // 在本节点完成服务实例的心跳
+        for(Map.Entry<Slot, List<Integer>> slotEntries : entryIndexesBySlot.entrySet()) {
+            ServiceRegistry serviceRegistry = slotEntries.getKey().getServiceRegistry();
+            serviceRegistry.heartbeat(entries, slotEntries.getValue(), failedEntries);
+        }
+        Collections.sort(failedEntries);
+
+        // 心跳成功的服务实例合并成一个批量心跳，转发给副本节点
+        if(failedEntries.size() < entries.size()) {
+            BatchHeartbeatRequest.Builder replicaRequestBuilder = new BatchHeartbeatRequest.Builder()
+                    .protocolVersion(request.getProtocolVersion());
+            int failedIndex = 0;
+            for(int i = 0; i < entries.size(); i++) {
+                if(failedIndex < failedEntries.size() && failedEntries.get(failedIndex) == i) {
+                    failedIndex++;
+                    continue;
+                }
+                BatchHeartbeatRequest.Entry entry = entries.get(i);
+                replicaRequestBuilder.heartbeat(entry.getServiceName(),
+                        entry.getServiceInstanceIp(), entry.getServiceInstancePort());
+            }
+            byte[] replicaRequestBytes = replicaRequestBuilder.build().getData().array();
+
+            ByteBuffer replicaRequestBuffer = ByteBuffer.allocate(4 + replicaRequestBytes.length);
+            replicaRequestBuffer.putInt(MessageType.REPLICA_BATCH_HEARTBEAT);
+            replicaRequestBuffer.put(replicaRequestBytes);
+
+            ServerNetworkManager serverNetworkManager = ServerNetworkManager.getInstance();
+            serverNetworkManager.sendMessage(slotManager.getReplicaNodeId(), replicaRequestBuffer);
+        }
+
+        if(!failedEntries.isEmpty()) {
+            LOGGER.warn("批量心跳里有服务实例没有注册：" + request);
+        }
+
+        return new BatchHeartbeatResponse.Builder()
+                .request(request)
+                .failedEntries(failedEntries)
+                .build();
+    }
+
     /**
      * 服务注册
      * @param request
@@ -178,7 +252,7 @@ public class ClientRequestProcessor {
 
         // 在本节点完成服务注册的功能
         SlotManager slotManager = SlotManager.getInstance();
-        Slot slot = slotManager.getSlot(serviceName);
+        Slot slot = slotManager.getSlot(request.getServiceSlot());
         ServiceRegistry serviceRegistry = slot.getServiceRegistry();
         serviceRegistry.register(serviceInstance);
         LOGGER.info("完成服务实例【" + serviceInstance + "】的注册......");
@@ -204,7 +278,7 @@ public class ClientRequestProcessor {
 
         RegisterResponse.Builder builder = new RegisterResponse.Builder();
         RegisterResponse response = builder
-                .requestId(request.getId())
+                .request(request)
                 .result(RegisterResponse.SUCCESS)
                 .build();
 
@@ -217,8 +291,6 @@ public class ClientRequestProcessor {
      */
     private FetchSlotsAllocationResponse fetchSlotsAllocation(
             FetchSlotsAllocationRequest fetchSlotsAllocationRequest) {
-        String requestId = fetchSlotsAllocationRequest.getId();
-
         Map<Integer, List<String>> slotsAllocation = null;
 
         if(ServerNodeRole.isCandidate()) {
@@ -232,7 +304,7 @@ public class ClientRequestProcessor {
         FetchSlotsAllocationResponse.Builder builder =
                 new FetchSlotsAllocationResponse.Builder();
         FetchSlotsAllocationResponse fetchSlotsAllocationResponse = builder
-                .requestId(requestId)
+                .request(fetchSlotsAllocationRequest)
                 .slotsAllocation(slotsAllocation)
                 .build();
 
@@ -245,7 +317,6 @@ public class ClientRequestProcessor {
      */
     private FetchServerAddressesResponse fetchServerAddresses(
             FetchServerAddressesRequest request) {
-        String requestId = request.getId();
         List<String> serverAddresses = null;
 
         if(ServerNodeRole.isCandidate()) {
@@ -259,7 +330,7 @@ public class ClientRequestProcessor {
         FetchServerAddressesResponse.Builder builder =
                 new FetchServerAddressesResponse.Builder();
         FetchServerAddressesResponse response = builder
-                .requestId(requestId)
+                .request(request)
                 .serverAddresses(serverAddresses)
                 .build();
 
@@ -1,6 +1,8 @@
 package com.zhss.microservice.server.node.network;
 
 import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
+import com.zhss.microservice.common.entity.BatchHeartbeatRequest;
 import com.zhss.microservice.common.entity.HeartbeatRequest;
 import com.zhss.microservice.common.entity.RegisterRequest;
 import com.zhss.microservice.common.entity.Request;
@@ -11,7 +13,6 @@ import org.slf4j.LoggerFactory;
 import com.zhss.microservice.server.constant.MessageType;
 
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -95,7 +96,7 @@ public class ServerMessageReceiver extends Thread {
 
                     String slotsAllocationJSON = new String(bytes);
                     ConcurrentHashMap<Integer, List<String>> slotsAllocation = JSONObject.parseObject(
-                            slotsAllocationJSON, ConcurrentHashMap.class);
+                            slotsAllocationJSON, new TypeReference<ConcurrentHashMap<Integer, List<String>>>() {});
                     slotsAllocationReceiveQueue.put(slotsAllocation);
 
                     LOGGER.info("收到槽位分配数据: " + slotsAllocation);
@@ -107,7 +108,7 @@ public class ServerMessageReceiver extends Thread {
                     message.get(bytes);
 
                     String slotsListJSON = new String(bytes);
-                    List<String> slotsList = JSONObject.parseObject(slotsListJSON, ArrayList.class);
+                    List<String> slotsList = JSONObject.parseObject(slotsListJSON, new TypeReference<List<String>>() {});
                     nodeSlotsQueue.put(slotsList);
 
                     LOGGER.info("收到本节点负责的槽位范围: " + slotsList);
@@ -119,7 +120,7 @@ public class ServerMessageReceiver extends Thread {
 
                     String slotsReplicaAllocationJson = new String(bytes);
                     ConcurrentHashMap<Integer, List<String>> slotsReplicaAllocation = JSONObject.parseObject(
-                            slotsReplicaAllocationJson, ConcurrentHashMap.class);
+                            slotsReplicaAllocationJson, new TypeReference<ConcurrentHashMap<Integer, List<String>>>() {});
                     slotsReplicaAllocationReceiveQueue.put(slotsReplicaAllocation);
 
                     LOGGER.info("收到槽位副本分配数据: " + slotsReplicaAllocation);
@@ -128,7 +129,7 @@ public class ServerMessageReceiver extends Thread {
                     byte[] bytes = new byte[remaining];
                     message.get(bytes);
 
-                    List<String> slotsReplicas = JSONObject.parseObject(new String(bytes), List.class);
+                    List<String> slotsReplicas = JSONObject.parseObject(new String(bytes), new TypeReference<List<String>>() {});
                     nodeSlotsReplicasQueue.put(slotsReplicas);
 
                     LOGGER.info("收到本节点负责的槽位副本集合: " + slotsReplicas);
@@ -141,8 +142,8 @@ public class ServerMessageReceiver extends Thread {
                     Integer messageBodyLength = message.getInt();
                     Integer requestType = message.getInt();
 
-                    RegisterRequest registerRequest =
-                            RegisterRequest.deserialize(message);
+                    RegisterRequest registerRequest = (RegisterRequest) Request.deserialize(
+                            Request.protocolVersionOf(messageFlag), requestType, message);
 
                     replicaRequestQueue.put(registerRequest);
 
@@ -152,12 +153,23 @@ public class ServerMessageReceiver extends Thread {
                     Integer messageBodyLength = message.getInt();
                     Integer requestType = message.getInt();
 
-                    HeartbeatRequest heartbeatRequest =
-                            HeartbeatRequest.deserialize(message);
+                    HeartbeatRequest heartbeatRequest = (HeartbeatRequest) Request.deserialize(
+                            Request.protocolVersionOf(messageFlag), requestType, message);
 
                     replicaRequestQueue.put(heartbeatRequest);
 
                     LOGGER.info("收到给副本转发的服务心跳请求: " + heartbeatRequest);
+                } else if(messageType == MessageType.REPLICA_BATCH_HEARTBEAT) {
+                    Integer messageFlag = message.getInt();
+                    Integer messageBodyLength = message.getInt();
+                    Integer requestType = message.getInt();
+
+                    BatchHeartbeatRequest batchHeartbeatRequest = (BatchHeartbeatRequest) Request.deserialize(
+                            Request.protocolVersionOf(messageFlag), requestType, message);
+
+                    replicaRequestQueue.put(batchHeartbeatRequest);
+
+                    LOGGER.debug("收到给副本转发的批量心跳请求: " + batchHeartbeatRequest);
                 }
                 else if(messageType == MessageType.REPLICA_NODE_IDS) {
                     int remaining = message.remaining();
@@ -165,7 +177,7 @@ public class ServerMessageReceiver extends Thread {
                     message.get(bytes);
 
                     ConcurrentHashMap<Integer, Integer> replicaNodeIds = JSONObject.parseObject(
-                            new String(bytes), ConcurrentHashMap.class);
+                            new String(bytes), new TypeReference<ConcurrentHashMap<Integer, Integer>>() {});
                     replicaNodeIdsQueue.put(replicaNodeIds);
 
                     LOGGER.info("收到副本节点id集合: " + replicaNodeIds);
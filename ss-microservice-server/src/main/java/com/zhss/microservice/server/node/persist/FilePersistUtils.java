@@ -1,5 +1,7 @@
 package com.zhss.microservice.server.node.persist;
 
+import com.alibaba.fastjson.JSONObject;
+import com.alibaba.fastjson.TypeReference;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import com.zhss.microservice.server.config.Configuration;
@@ -8,54 +10,192 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.Adler32;
 import java.util.zip.Checksum;
 
+/**
+ * 元数据文件的持久化和加载
+ *
+ * 文件格式：Adler32校验和 + 数据长度 + 数据
+ * 写的时候先写临时文件并刷盘，再原子地改名替换原来的文件，最后对目录刷盘，
+ * 任何时候宕机，磁盘上要么是完整的旧文件，要么是完整的新文件
+ */
 public class FilePersistUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(FilePersistUtils.class);
 
+    /**
+     * 临时文件的后缀
+     */
+    private static final String TMP_FILE_SUFFIX = ".tmp";
+    /**
+     * 校验和 + 数据长度
+     */
+    private static final int HEADER_BYTES = 8 + 4;
+
     /**
      * 持久化槽位分配数据到本地磁盘
      */
     public static Boolean persist(byte[] bytes, String filename) {
+        return persist(getDataDir(), bytes, filename);
+    }
+
+    /**
+     * 持久化数据到数据存储目录下的文件里
+     * @param dataDir
+     * @param bytes
+     * @param filename
+     * @return 是否持久化成功
+     */
+    public static Boolean persist(File dataDir, byte[] bytes, String filename) {
         try {
-            // 获取到数据存储目录
-            Configuration configuration = Configuration.getInstance();
-            File dataDir = new File(configuration.getDataDir());
             if(!dataDir.exists()) {
                 dataDir.mkdirs();
             }
 
-            // 获取针对磁盘文件的一系列的输出流
-            File slotAllocationFile = new File(dataDir, filename);
-            FileOutputStream fileOutputStream = new FileOutputStream(slotAllocationFile);
-            BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(fileOutputStream);
-            DataOutputStream dataOutputStream = new DataOutputStream(bufferedOutputStream);
+            File file = new File(dataDir, filename);
+            File tmpFile = new File(dataDir, filename + TMP_FILE_SUFFIX);
+            try(FileOutputStream fileOutputStream = new FileOutputStream(tmpFile)) {
+                DataOutputStream dataOutputStream = new DataOutputStream(
+                        new BufferedOutputStream(fileOutputStream));
 
-            // 在磁盘文件里写入一份checksum校验和
-            Checksum checksum = new Adler32();
-            checksum.update(bytes, 0, bytes.length);
-            long checksumValue = checksum.getValue();
-            dataOutputStream.writeLong(checksumValue);
-            // 写入槽位分配数据的长度
-            dataOutputStream.writeInt(bytes.length);
-            // 写入槽位分配数据
-            dataOutputStream.write(bytes);
-
-            // 对输出流进行一系列的flush，保证数据落地磁盘
-            // 之前用DataOutputStream输出的数据都是进入了BufferedOutputStream的缓冲区
-            // 所以在这里进行一次flush，数据就是进入底层的FileOutputStream
-            bufferedOutputStream.flush();
-            // 再对FileOutputStream进行一次flush，保证数据进入os cache里
-            fileOutputStream.flush();
-            // 再次基于FileChannel进行强制性flush，保证数据落地到磁盘上去
-            fileOutputStream.getChannel().force(false);
+                // 在磁盘文件里写入一份checksum校验和
+                Checksum checksum = new Adler32();
+                checksum.update(bytes, 0, bytes.length);
+                dataOutputStream.writeLong(checksum.getValue());
+                // 写入数据的长度
+                dataOutputStream.writeInt(bytes.length);
+                // 写入数据
+                dataOutputStream.write(bytes);
+
+                // 把缓冲区里的数据写进os cache，再强制刷到磁盘上去
+                dataOutputStream.flush();
+                fileOutputStream.getChannel().force(true);
+            }
+
+            replace(tmpFile, file);
         } catch(Exception e) {
-            LOGGER.error("persist slots allocation error......", e);
+            LOGGER.error("persist file error: " + filename, e);
             return false;
         }
         return true;
     }
 
+    /**
+     * 用已经刷过盘的临时文件原子地替换目标文件，再对目录刷盘，保证改名本身也落地到磁盘上
+     * @param tmpFile
+     * @param file
+     * @throws IOException
+     */
+    public static void replace(File tmpFile, File file) throws IOException {
+        Files.move(tmpFile.toPath(), file.toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        try(FileChannel directory = FileChannel.open(file.getAbsoluteFile().getParentFile().toPath(),
+                StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+    }
+
+    /**
+     * 从本地磁盘加载数据
+     * @param filename
+     * @return 文件不存在、不完整或者校验和对不上的时候返回null
+     */
+    public static byte[] load(String filename) {
+        return load(getDataDir(), filename);
+    }
+
+    /**
+     * 从数据存储目录下的文件里加载数据，通过内存映射读取
+     * @param dataDir
+     * @param filename
+     * @return 文件不存在、不完整或者校验和对不上的时候返回null
+     */
+    public static byte[] load(File dataDir, String filename) {
+        File file = new File(dataDir, filename);
+        if(!file.exists()) {
+            return null;
+        }
+
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if(size < HEADER_BYTES) {
+                LOGGER.error("file is incomplete: " + file);
+                return null;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            long expectedChecksum = buffer.getLong();
+            int length = buffer.getInt();
+            if(length < 0 || length != size - HEADER_BYTES) {
+                LOGGER.error("file length mismatch: " + file);
+                return null;
+            }
+
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            Checksum checksum = new Adler32();
+            checksum.update(bytes, 0, bytes.length);
+            if(checksum.getValue() != expectedChecksum) {
+                LOGGER.error("file checksum mismatch: " + file);
+                return null;
+            }
+            return bytes;
+        } catch(Exception e) {
+            LOGGER.error("load file error: " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * 加载槽位分配数据、槽位副本分配数据：节点id -> 槽位范围列表
+     * @param filename
+     * @return
+     */
+    public static ConcurrentHashMap<Integer, List<String>> loadSlotsAllocation(String filename) {
+        return loadJSON(filename, new TypeReference<ConcurrentHashMap<Integer, List<String>>>() {});
+    }
+
+    /**
+     * 加载副本节点id数据：节点id -> 这个节点的槽位副本所在的节点id
+     * @param filename
+     * @return
+     */
+    public static ConcurrentHashMap<Integer, Integer> loadReplicaNodeIds(String filename) {
+        return loadJSON(filename, new TypeReference<ConcurrentHashMap<Integer, Integer>>() {});
+    }
+
+    /**
+     * 加载本节点负责的槽位范围、槽位副本范围列表
+     * @param filename
+     * @return
+     */
+    public static List<String> loadSlotScopes(String filename) {
+        return loadJSON(filename, new TypeReference<List<String>>() {});
+    }
+
+    private static <T> T loadJSON(String filename, TypeReference<T> type) {
+        byte[] bytes = load(filename);
+        if(bytes == null) {
+            return null;
+        }
+        try {
+            return JSONObject.parseObject(new String(bytes), type);
+        } catch(Exception e) {
+            LOGGER.error("parse file error: " + filename, e);
+            return null;
+        }
+    }
+
+    private static File getDataDir() {
+        return new File(Configuration.getInstance().getDataDir());
+    }
+
 }
@@ -0,0 +1,188 @@
+package com.zhss.microservice.server.node.persist;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Adler32;
+
+/**
+ * 注册表预写日志里的一条变动记录
+ *
+ * 磁盘上的格式：记录长度 + Adler32校验和 + 记录内容
+ * 记录内容：日志序号、变动类型、是否是副本、时间戳、服务名称、服务实例ip地址、服务实例端口号
+ */
+public class RegistryMutation {
+
+    /**
+     * 注册服务实例
+     */
+    public static final byte REGISTER = 1;
+    /**
+     * 摘除服务实例
+     */
+    public static final byte REMOVE = 2;
+    /**
+     * 服务实例心跳
+     */
+    public static final byte HEARTBEAT = 3;
+
+    /**
+     * 记录长度 + 校验和
+     */
+    static final int HEADER_BYTES = 4 + 4;
+
+    /**
+     * 日志序号，从1开始连续递增
+     */
+    private final long lsn;
+    private final byte type;
+    /**
+     * 是不是槽位副本上的变动
+     */
+    private final boolean replica;
+    /**
+     * 变动发生的时间，注册和心跳就是服务实例的心跳时间
+     */
+    private final long timestamp;
+    private final String serviceName;
+    private final String serviceInstanceIp;
+    private final int serviceInstancePort;
+
+    public RegistryMutation(long lsn,
+                            byte type,
+                            boolean replica,
+                            long timestamp,
+                            String serviceName,
+                            String serviceInstanceIp,
+                            int serviceInstancePort) {
+        this.lsn = lsn;
+        this.type = type;
+        this.replica = replica;
+        this.timestamp = timestamp;
+        this.serviceName = serviceName;
+        this.serviceInstanceIp = serviceInstanceIp;
+        this.serviceInstancePort = serviceInstancePort;
+    }
+
+    /**
+     * 把一条记录追加到buffer里，buffer必须是堆内存的
+     * @param buffer
+     * @param checksum 复用的校验和对象
+     */
+    static void encode(ByteBuffer buffer,
+                       Adler32 checksum,
+                       long lsn,
+                       byte type,
+                       boolean replica,
+                       long timestamp,
+                       byte[] serviceName,
+                       byte[] serviceInstanceIp,
+                       int serviceInstancePort) {
+        int start = buffer.position();
+        buffer.position(start + HEADER_BYTES);
+        buffer.putLong(lsn);
+        buffer.put(type);
+        buffer.put(replica ? (byte) 1 : (byte) 0);
+        buffer.putLong(timestamp);
+        buffer.putInt(serviceName.length);
+        buffer.put(serviceName);
+        buffer.putInt(serviceInstanceIp.length);
+        buffer.put(serviceInstanceIp);
+        buffer.putInt(serviceInstancePort);
+
+        int length = buffer.position() - start - HEADER_BYTES;
+        checksum.reset();
+        checksum.update(buffer.array(), buffer.arrayOffset() + start + HEADER_BYTES, length);
+        buffer.putInt(start, length);
+        buffer.putInt(start + 4, (int) checksum.getValue());
+    }
+
+    /**
+     * 一条记录编码以后的字节数
+     */
+    static int encodedLength(byte[] serviceName, byte[] serviceInstanceIp) {
+        return HEADER_BYTES + 8 + 1 + 1 + 8 + 4 + serviceName.length + 4 + serviceInstanceIp.length + 4;
+    }
+
+    /**
+     * 从buffer里解码一条记录
+     * @param buffer
+     * @param checksum 复用的校验和对象
+     * @return 剩下的字节不够一条完整的记录，或者校验和对不上的时候返回null，buffer的position不变
+     */
+    static RegistryMutation decode(ByteBuffer buffer, Adler32 checksum) {
+        int start = buffer.position();
+        if(buffer.remaining() < HEADER_BYTES) {
+            return null;
+        }
+        int length = buffer.getInt(start);
+        int expectedChecksum = buffer.getInt(start + 4);
+        if(length <= 0 || buffer.remaining() - HEADER_BYTES < length) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        buffer.position(start + HEADER_BYTES);
+        buffer.get(payload);
+        checksum.reset();
+        checksum.update(payload, 0, length);
+        if((int) checksum.getValue() != expectedChecksum) {
+            buffer.position(start);
+            return null;
+        }
+
+        ByteBuffer payloadBuffer = ByteBuffer.wrap(payload);
+        long lsn = payloadBuffer.getLong();
+        byte type = payloadBuffer.get();
+        boolean replica = payloadBuffer.get() == 1;
+        long timestamp = payloadBuffer.getLong();
+        byte[] serviceName = new byte[payloadBuffer.getInt()];
+        payloadBuffer.get(serviceName);
+        byte[] serviceInstanceIp = new byte[payloadBuffer.getInt()];
+        payloadBuffer.get(serviceInstanceIp);
+        int serviceInstancePort = payloadBuffer.getInt();
+
+        return new RegistryMutation(lsn, type, replica, timestamp,
+                new String(serviceName), new String(serviceInstanceIp), serviceInstancePort);
+    }
+
+    public long getLsn() {
+        return lsn;
+    }
+
+    public byte getType() {
+        return type;
+    }
+
+    public boolean isReplica() {
+        return replica;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getServiceInstanceIp() {
+        return serviceInstanceIp;
+    }
+
+    public int getServiceInstancePort() {
+        return serviceInstancePort;
+    }
+
+    @Override
+    public String toString() {
+        return "RegistryMutation{" +
+                "lsn=" + lsn +
+                ", type=" + type +
+                ", replica=" + replica +
+                ", timestamp=" + timestamp +
+                ", serviceName='" + serviceName + '\'' +
+                ", serviceInstanceIp='" + serviceInstanceIp + '\'' +
+                ", serviceInstancePort=" + serviceInstancePort +
+                '}';
+    }
+
+}
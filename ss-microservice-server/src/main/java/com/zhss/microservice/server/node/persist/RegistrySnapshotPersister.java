@@ -0,0 +1,351 @@
+package com.zhss.microservice.server.node.persist;
+
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.slot.Slot;
+import com.zhss.microservice.server.slot.SlotManager;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceInstances;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+import com.zhss.microservice.server.slot.registry.ServiceSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Adler32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 注册表快照持久化组件
+ *
+ * 后台线程定期把本节点所有服务注册表分片写成一份二进制快照，读取的是每个服务不可变的快照，不阻塞注册和心跳
+ * 快照里记录了写快照之前预写日志的日志序号，写完以后就可以截掉预写日志里这个序号之前的记录
+ * 重启的时候先把最新的快照映射到内存里加载，再重放预写日志里快照之后的记录
+ *
+ * 文件格式：魔数、格式版本、日志序号、创建时间，
+ * 然后是每个服务一组：是否是副本、服务名称、服务实例数量、每个服务实例的ip地址和端口号，
+ * 最后是结束标记和前面所有内容的Adler32校验和
+ */
+public class RegistrySnapshotPersister {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RegistrySnapshotPersister.class);
+
+    /**
+     * 注册表快照文件名
+     */
+    public static final String FILE_NAME = "registry.snapshot";
+    private static final int MAGIC = 0x53535253;
+    private static final int FORMAT_VERSION = 1;
+    /**
+     * 服务分组的开始标记和整个快照的结束标记
+     */
+    private static final byte SERVICE_MARKER = 1;
+    private static final byte END_MARKER = 0;
+
+    private RegistrySnapshotPersister() {
+
+    }
+
+    static class Singleton {
+        static RegistrySnapshotPersister instance = new RegistrySnapshotPersister();
+    }
+
+    public static RegistrySnapshotPersister getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 把服务名称路由到本节点负责这个服务的服务注册表分片
+     */
+    public interface Router {
+
+        /**
+         * @param replica 是否是槽位副本
+         * @param serviceName
+         * @return 本节点不负责这个服务的时候返回null
+         */
+        ServiceRegistry route(boolean replica, String serviceName);
+
+    }
+
+    /**
+     * 定期持久化快照的线程
+     */
+    private ScheduledExecutorService executor;
+
+    /**
+     * 启动定期持久化注册表快照
+     */
+    public synchronized void start() {
+        if(executor != null) {
+            return;
+        }
+        long intervalSeconds = Configuration.getInstance().getRegistrySnapshotPersistInterval();
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "registry-snapshot-persister");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(this::persist, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        LOGGER.info("注册表快照每" + intervalSeconds + "秒持久化一次......");
+    }
+
+    /**
+     * 持久化一份本节点所有服务注册表分片的快照，然后截掉预写日志里快照之前的记录
+     * @return 是否持久化成功
+     */
+    public boolean persist() {
+        File dataDir = new File(Configuration.getInstance().getDataDir());
+        RegistryWriteAheadLog writeAheadLog = RegistryWriteAheadLog.getInstance();
+        // 先取日志序号再读取注册表，这个序号之前的变动都已经在注册表里了，快照之后重放的记录最多重复，不会缺失
+        long lsn = writeAheadLog.getLastLsn();
+        try {
+            long start = System.currentTimeMillis();
+            long serviceInstanceCount = write(dataDir, lsn, getServiceRegistries());
+            LOGGER.info("持久化注册表快照完毕，日志序号：" + lsn + "，服务实例数量：" + serviceInstanceCount +
+                    "，耗时：" + (System.currentTimeMillis() - start) + "ms");
+        } catch(IOException e) {
+            LOGGER.error("持久化注册表快照出错......", e);
+            return false;
+        }
+        writeAheadLog.truncate(lsn);
+        return true;
+    }
+
+    /**
+     * 获取本节点所有的服务注册表分片，槽位和槽位副本都算
+     */
+    private Collection<ServiceRegistry> getServiceRegistries() {
+        SlotManager slotManager = SlotManager.getInstance();
+        Set<ServiceRegistry> serviceRegistries = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(int slotNo = 1; slotNo < SlotRoutingTable.SLOT_TABLE_SIZE; slotNo++) {
+            Slot slot = slotManager.getSlot(slotNo);
+            if(slot != null) {
+                serviceRegistries.add(slot.getServiceRegistry());
+            }
+            Slot slotReplica = slotManager.getSlotReplica(slotNo);
+            if(slotReplica != null) {
+                serviceRegistries.add(slotReplica.getServiceRegistry());
+            }
+        }
+        return serviceRegistries;
+    }
+
+    /**
+     * 把服务注册表分片写成一份快照：先写临时文件并刷盘，再原子地替换掉原来的快照
+     * @param dataDir
+     * @param lsn 写快照之前预写日志的日志序号
+     * @param serviceRegistries
+     * @return 服务实例数量
+     * @throws IOException
+     */
+    public static long write(File dataDir, long lsn, Collection<ServiceRegistry> serviceRegistries) throws IOException {
+        if(!dataDir.exists()) {
+            dataDir.mkdirs();
+        }
+        File file = new File(dataDir, FILE_NAME);
+        File tmpFile = new File(dataDir, FILE_NAME + ".tmp");
+        long now = System.currentTimeMillis();
+        long serviceInstanceCount = 0;
+
+        Adler32 checksum = new Adler32();
+        try(FileOutputStream fileOutputStream = new FileOutputStream(tmpFile)) {
+            DataOutputStream outputStream = new DataOutputStream(new CheckedOutputStream(
+                    new BufferedOutputStream(fileOutputStream, 64 * 1024), checksum));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(FORMAT_VERSION);
+            outputStream.writeLong(lsn);
+            outputStream.writeLong(now);
+
+            for(ServiceRegistry serviceRegistry : serviceRegistries) {
+                for(ServiceInstances serviceInstances : serviceRegistry.getAllServiceInstances()) {
+                    ServiceSnapshot snapshot = serviceInstances.getLatestSnapshot(now);
+                    List<ServiceInstance> instances = snapshot.getServiceInstances();
+                    if(instances.isEmpty()) {
+                        continue;
+                    }
+                    outputStream.writeByte(SERVICE_MARKER);
+                    outputStream.writeBoolean(serviceRegistry.isReplica());
+                    writeString(outputStream, serviceInstances.getServiceName());
+                    outputStream.writeInt(instances.size());
+                    for(ServiceInstance serviceInstance : instances) {
+                        writeString(outputStream, serviceInstance.getServiceInstanceIp());
+                        outputStream.writeInt(serviceInstance.getServiceInstancePort());
+                    }
+                    serviceInstanceCount += instances.size();
+                }
+            }
+            outputStream.writeByte(END_MARKER);
+            outputStream.flush();
+            // 校验和本身不算在校验的内容里
+            new DataOutputStream(fileOutputStream).writeInt((int) checksum.getValue());
+            fileOutputStream.getChannel().force(true);
+        }
+
+        FilePersistUtils.replace(tmpFile, file);
+        return serviceInstanceCount;
+    }
+
+    private static void writeString(DataOutputStream outputStream, String value) throws IOException {
+        byte[] bytes = value.getBytes();
+        outputStream.writeShort(bytes.length);
+        outputStream.write(bytes);
+    }
+
+    /**
+     * 按照配置文件恢复本节点负责的槽位和槽位副本的注册表
+     * @return 快照的日志序号，启动预写日志的时候从这个序号往后分配
+     */
+    public long recover() {
+        Configuration configuration = Configuration.getInstance();
+        SlotManager slotManager = SlotManager.getInstance();
+        return recover(new File(configuration.getDataDir()), configuration.getRegistryWalEnabled(),
+                (replica, serviceName) -> {
+                    Slot slot = replica ? slotManager.getSlotReplica(serviceName) : slotManager.getSlot(serviceName);
+                    return slot == null ? null : slot.getServiceRegistry();
+                });
+    }
+
+    /**
+     * 加载最新的注册表快照，再重放预写日志里快照之后的记录
+     *
+     * 恢复出来的服务实例的心跳时间设置成恢复开始的时间再往后一个心跳超时时间，
+     * 服务实例很多的时候恢复本身要花几秒，不能让先恢复的服务实例在恢复过程中就被判定心跳超时，
+     * 节点开始提供服务以后客户端也还有一个完整的心跳超时时间重新连上来心跳
+     * 槽位重新分配过，本节点已经不负责的服务直接跳过
+     * @param dataDir
+     * @param replayWriteAheadLog 是否重放预写日志
+     * @param router
+     * @return 快照的日志序号，没有快照的时候返回0
+     */
+    public static long recover(File dataDir, boolean replayWriteAheadLog, Router router) {
+        long start = System.currentTimeMillis();
+        long heartbeatTime = start + Configuration.getInstance().getHeartbeatTimeoutPeriod() * 1000L;
+        long snapshotLsn = 0;
+        long restored = 0;
+        try {
+            File file = new File(dataDir, FILE_NAME);
+            if(file.exists()) {
+                long[] result = load(file, heartbeatTime, router);
+                snapshotLsn = result[0];
+                restored = result[1];
+            }
+        } catch(IOException | RuntimeException e) {
+            LOGGER.error("加载注册表快照出错，只重放预写日志......", e);
+        }
+
+        AtomicLong replayed = new AtomicLong();
+        if(replayWriteAheadLog) {
+            long lsn = snapshotLsn;
+            try {
+                RegistryWriteAheadLog.read(new File(dataDir, RegistryWriteAheadLog.FILE_NAME), mutation -> {
+                    if(mutation.getLsn() <= lsn) {
+                        return;
+                    }
+                    ServiceRegistry serviceRegistry = router.route(mutation.isReplica(), mutation.getServiceName());
+                    if(serviceRegistry == null) {
+                        return;
+                    }
+                    if(mutation.getType() == RegistryMutation.REGISTER) {
+                        ServiceInstance serviceInstance = new ServiceInstance(mutation.getServiceName(),
+                                mutation.getServiceInstanceIp(), mutation.getServiceInstancePort());
+                        serviceInstance.setLatestHeartbeatTime(heartbeatTime);
+                        serviceRegistry.register(serviceInstance);
+                    } else if(mutation.getType() == RegistryMutation.REMOVE) {
+                        serviceRegistry.remove(mutation.getServiceName(),
+                                mutation.getServiceInstanceIp(), mutation.getServiceInstancePort());
+                    }
+                    replayed.incrementAndGet();
+                });
+            } catch(IOException e) {
+                LOGGER.error("重放注册表预写日志出错......", e);
+            }
+        }
+
+        LOGGER.info("恢复注册表完毕，快照日志序号：" + snapshotLsn + "，从快照恢复" + restored +
+                "个服务实例，重放" + replayed.get() + "条预写日志，耗时：" + (System.currentTimeMillis() - start) + "ms");
+        return snapshotLsn;
+    }
+
+    /**
+     * 把快照文件映射到内存里，校验完整以后注册里面的服务实例
+     * @return 快照的日志序号和恢复的服务实例数量
+     */
+    private static long[] load(File file, long heartbeatTime, Router router) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int contentLength = buffer.limit() - 4;
+            if(contentLength < 4 + 4 + 8 + 8 + 1) {
+                throw new IOException("注册表快照文件不完整：" + file);
+            }
+            Adler32 checksum = new Adler32();
+            buffer.limit(contentLength);
+            checksum.update(buffer);
+            buffer.limit(contentLength + 4);
+            if((int) checksum.getValue() != buffer.getInt(contentLength)) {
+                throw new IOException("注册表快照文件校验和不对：" + file);
+            }
+
+            buffer.position(0);
+            if(buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("不认识的注册表快照格式：" + file);
+            }
+            long lsn = buffer.getLong();
+            buffer.getLong();
+
+            long restored = 0;
+            while(buffer.get() == SERVICE_MARKER) {
+                boolean replica = buffer.get() != 0;
+                String serviceName = readString(buffer);
+                int count = buffer.getInt();
+                ServiceRegistry serviceRegistry = router.route(replica, serviceName);
+                for(int i = 0; i < count; i++) {
+                    String serviceInstanceIp = readString(buffer);
+                    int serviceInstancePort = buffer.getInt();
+                    if(serviceRegistry == null) {
+                        continue;
+                    }
+                    ServiceInstance serviceInstance = new ServiceInstance(
+                            serviceName, serviceInstanceIp, serviceInstancePort);
+                    serviceInstance.setLatestHeartbeatTime(heartbeatTime);
+                    serviceRegistry.register(serviceInstance);
+                    restored++;
+                }
+            }
+            return new long[] {lsn, restored};
+        }
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes);
+    }
+
+    /**
+     * 停止定期持久化注册表快照
+     */
+    public synchronized void shutdown() {
+        if(executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+}
@@ -0,0 +1,561 @@
+package com.zhss.microservice.server.node.persist;
+
+import com.zhss.microservice.server.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.Adler32;
+
+/**
+ * 注册表的预写日志
+ *
+ * 注册、摘除服务实例（可以抽样记录心跳）的时候，业务线程把变动记录追加到内存缓冲区里，
+ * 一个后台线程把攒下来的一批记录一次写进文件，按照刷盘策略决定要不要force()：
+ * batch：每批都刷盘，业务线程等到自己的记录刷盘以后才返回，多个线程的记录共用一次刷盘
+ * interval：按照时间间隔刷盘，业务线程不等待
+ * none：不主动刷盘，交给操作系统
+ *
+ * 持久化了一份注册表快照以后，快照之前的记录就没用了，由后台线程把它们从文件里截掉
+ */
+public class RegistryWriteAheadLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RegistryWriteAheadLog.class);
+
+    /**
+     * 预写日志文件名
+     */
+    public static final String FILE_NAME = "registry.wal";
+    /**
+     * 缓冲区的初始大小
+     */
+    private static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
+    private RegistryWriteAheadLog() {
+
+    }
+
+    static class Singleton {
+        static RegistryWriteAheadLog instance = new RegistryWriteAheadLog();
+    }
+
+    public static RegistryWriteAheadLog getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 是否已经启动，没有启动的时候追加记录什么都不做
+     */
+    private volatile boolean started = false;
+    /**
+     * 预写日志文件
+     */
+    private File file;
+    private FileChannel channel;
+    private boolean syncEveryBatch;
+    private boolean syncByInterval;
+    private long syncIntervalMillis;
+    /**
+     * 每多少次心跳记录一次，0表示不记录心跳
+     */
+    private int heartbeatSampleRate;
+    private final AtomicLong heartbeatCount = new AtomicLong();
+
+    /**
+     * 保护下面这些字段
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    /**
+     * 有新的记录追加进来了
+     */
+    private final Condition appended = lock.newCondition();
+    /**
+     * 有一批记录写完或者刷盘了
+     */
+    private final Condition written = lock.newCondition();
+    /**
+     * 业务线程往这个缓冲区里追加记录
+     */
+    private ByteBuffer appendBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    /**
+     * 后台线程把这个缓冲区写到文件里，写完以后跟appendBuffer交换
+     */
+    private ByteBuffer writeBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private final Adler32 checksum = new Adler32();
+    /**
+     * 最后一条追加的记录的日志序号
+     */
+    private long lastLsn = 0;
+    /**
+     * 已经写进文件的日志序号
+     */
+    private long writtenLsn = 0;
+    /**
+     * 已经刷盘的日志序号
+     */
+    private long durableLsn = 0;
+    /**
+     * 写文件出错了，之后不再记录
+     */
+    private boolean failed = false;
+    private boolean closing = false;
+    /**
+     * 要截掉的记录的最大日志序号，0表示没有截断请求
+     */
+    private long truncateLsn = 0;
+    private Thread writerThread;
+
+    /**
+     * 写了多少批
+     */
+    private long batchCount = 0;
+    /**
+     * 刷了多少次盘
+     */
+    private long forceCount = 0;
+
+    /**
+     * 按照配置文件启动预写日志
+     * @param baseLsn 已经持久化的注册表快照的日志序号
+     * @return 是否启动成功
+     */
+    public boolean start(long baseLsn) {
+        Configuration configuration = Configuration.getInstance();
+        return start(new File(configuration.getDataDir()),
+                configuration.getRegistryWalSyncPolicy(),
+                configuration.getRegistryWalSyncInterval(),
+                configuration.getRegistryWalHeartbeatSampleRate(),
+                baseLsn);
+    }
+
+    /**
+     * 启动预写日志：截掉文件末尾没有写完整的记录，从最后一条记录的日志序号往后继续追加
+     *
+     * 快照之前的记录都截掉以后文件可能是空的，日志序号要从快照的日志序号往后接着分配
+     * @param dataDir 数据存储目录
+     * @param syncPolicy 刷盘策略
+     * @param syncIntervalMillis 按照时间间隔刷盘的间隔
+     * @param heartbeatSampleRate 每多少次心跳记录一次，0表示不记录心跳
+     * @param baseLsn 已经持久化的注册表快照的日志序号
+     * @return 是否启动成功
+     */
+    public synchronized boolean start(File dataDir,
+                                      String syncPolicy,
+                                      long syncIntervalMillis,
+                                      int heartbeatSampleRate,
+                                      long baseLsn) {
+        if(started) {
+            return true;
+        }
+        try {
+            if(!dataDir.exists()) {
+                dataDir.mkdirs();
+            }
+            File file = new File(dataDir, FILE_NAME);
+
+            AtomicLong recoveredLsn = new AtomicLong();
+            long validLength = read(file, mutation -> recoveredLsn.set(mutation.getLsn()));
+
+            FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            if(channel.size() > validLength) {
+                LOGGER.warn("预写日志末尾有" + (channel.size() - validLength) + "字节不完整的记录，截掉");
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+            channel.position(validLength);
+
+            this.file = file;
+            this.channel = channel;
+            this.syncEveryBatch = Configuration.WAL_SYNC_POLICY_BATCH.equals(syncPolicy);
+            this.syncByInterval = Configuration.WAL_SYNC_POLICY_INTERVAL.equals(syncPolicy);
+            this.syncIntervalMillis = syncIntervalMillis;
+            this.heartbeatSampleRate = heartbeatSampleRate;
+            this.lastLsn = Math.max(recoveredLsn.get(), baseLsn);
+            this.writtenLsn = lastLsn;
+            this.durableLsn = lastLsn;
+            this.failed = false;
+            this.closing = false;
+            this.truncateLsn = 0;
+            this.batchCount = 0;
+            this.forceCount = 0;
+
+            this.writerThread = new Thread(this::runWriter, "registry-wal-writer");
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+            this.started = true;
+
+            LOGGER.info("注册表预写日志启动完毕：" + file + "，刷盘策略：" + syncPolicy + "，最后的日志序号：" + lastLsn);
+            return true;
+        } catch(IOException e) {
+            LOGGER.error("注册表预写日志启动失败......", e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取预写日志文件里所有完整的记录
+     * @param file
+     * @param consumer
+     * @return 最后一条完整的记录在文件里的结束位置
+     * @throws IOException
+     */
+    public static long read(File file, Consumer<RegistryMutation> consumer) throws IOException {
+        if(!file.exists()) {
+            return 0;
+        }
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() == 0) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Adler32 checksum = new Adler32();
+            RegistryMutation mutation;
+            while((mutation = RegistryMutation.decode(buffer, checksum)) != null) {
+                consumer.accept(mutation);
+            }
+            return buffer.position();
+        }
+    }
+
+    /**
+     * 找到第一条日志序号大于lsn的记录在文件里的位置
+     * @param file
+     * @param lsn
+     * @return 没有这样的记录的时候返回最后一条完整的记录的结束位置
+     * @throws IOException
+     */
+    static long positionAfter(File file, long lsn) throws IOException {
+        try(FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if(channel.size() == 0) {
+                return 0;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Adler32 checksum = new Adler32();
+            int position = buffer.position();
+            RegistryMutation mutation;
+            while((mutation = RegistryMutation.decode(buffer, checksum)) != null) {
+                if(mutation.getLsn() > lsn) {
+                    return position;
+                }
+                position = buffer.position();
+            }
+            return position;
+        }
+    }
+
+    /**
+     * 注册表快照持久化以后，请求截掉快照之前的记录，由后台线程异步执行
+     * @param lsn 快照的日志序号
+     */
+    public void truncate(long lsn) {
+        if(!started) {
+            return;
+        }
+        lock.lock();
+        try {
+            truncateLsn = Math.max(truncateLsn, lsn);
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录注册服务实例
+     * @return 日志序号，传给awaitDurable()等待刷盘
+     */
+    public long appendRegister(boolean replica,
+                               String serviceName,
+                               String serviceInstanceIp,
+                               int serviceInstancePort,
+                               long heartbeatTime) {
+        return append(RegistryMutation.REGISTER, replica, heartbeatTime,
+                serviceName, serviceInstanceIp, serviceInstancePort);
+    }
+
+    /**
+     * 记录摘除服务实例
+     * @return 日志序号
+     */
+    public long appendRemove(boolean replica,
+                             String serviceName,
+                             String serviceInstanceIp,
+                             int serviceInstancePort,
+                             long now) {
+        return append(RegistryMutation.REMOVE, replica, now,
+                serviceName, serviceInstanceIp, serviceInstancePort);
+    }
+
+    /**
+     * 按照抽样比例记录服务实例心跳，不等待刷盘
+     *
+     * 没有开启心跳记录的时候什么都不做，不会分配内存
+     */
+    public void appendHeartbeat(boolean replica,
+                                String serviceName,
+                                String serviceInstanceIp,
+                                int serviceInstancePort,
+                                long heartbeatTime) {
+        if(!started || heartbeatSampleRate <= 0 ||
+                heartbeatCount.incrementAndGet() % heartbeatSampleRate != 0) {
+            return;
+        }
+        append(RegistryMutation.HEARTBEAT, replica, heartbeatTime,
+                serviceName, serviceInstanceIp, serviceInstancePort);
+    }
+
+    private long append(byte type,
+                        boolean replica,
+                        long timestamp,
+                        String serviceName,
+                        String serviceInstanceIp,
+                        int serviceInstancePort) {
+        if(!started) {
+            return 0;
+        }
+        byte[] serviceNameBytes = serviceName.getBytes();
+        byte[] serviceInstanceIpBytes = serviceInstanceIp.getBytes();
+        int length = RegistryMutation.encodedLength(serviceNameBytes, serviceInstanceIpBytes);
+
+        lock.lock();
+        try {
+            if(failed || closing) {
+                return 0;
+            }
+            if(appendBuffer.remaining() < length) {
+                ByteBuffer buffer = ByteBuffer.allocate(
+                        Math.max(appendBuffer.capacity() * 2, appendBuffer.position() + length));
+                appendBuffer.flip();
+                buffer.put(appendBuffer);
+                appendBuffer = buffer;
+            }
+            long lsn = ++lastLsn;
+            RegistryMutation.encode(appendBuffer, checksum, lsn, type, replica, timestamp,
+                    serviceNameBytes, serviceInstanceIpBytes, serviceInstancePort);
+            appended.signal();
+            return lsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * batch刷盘策略下等待一条记录刷盘，其他刷盘策略直接返回
+     * @param lsn
+     */
+    public void awaitDurable(long lsn) {
+        if(!syncEveryBatch || lsn <= 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            while(durableLsn < lsn && !failed) {
+                written.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 后台线程：把攒下来的一批记录写进文件，按照刷盘策略刷盘
+     */
+    private void runWriter() {
+        long lastForceTime = System.currentTimeMillis();
+
+        while(true) {
+            long batchLsn;
+            boolean exit;
+            long truncateBefore;
+            lock.lock();
+            try {
+                while(appendBuffer.position() == 0 && !closing && truncateLsn == 0) {
+                    if(syncByInterval && writtenLsn > durableLsn) {
+                        long waitMillis = lastForceTime + syncIntervalMillis - System.currentTimeMillis();
+                        if(waitMillis <= 0) {
+                            break;
+                        }
+                        appended.await(waitMillis, TimeUnit.MILLISECONDS);
+                    } else {
+                        appended.await();
+                    }
+                }
+                ByteBuffer buffer = appendBuffer;
+                appendBuffer = writeBuffer;
+                writeBuffer = buffer;
+                batchLsn = lastLsn;
+                exit = closing;
+                truncateBefore = truncateLsn;
+                truncateLsn = 0;
+            } catch(InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean wrote;
+            boolean force;
+            try {
+                writeBuffer.flip();
+                wrote = writeBuffer.hasRemaining();
+                while(writeBuffer.hasRemaining()) {
+                    channel.write(writeBuffer);
+                }
+                writeBuffer.clear();
+
+                long now = System.currentTimeMillis();
+                force = (syncEveryBatch && wrote) ||
+                        (syncByInterval && (exit || now - lastForceTime >= syncIntervalMillis));
+                if(force) {
+                    channel.force(false);
+                    lastForceTime = now;
+                }
+                if(truncateBefore > 0) {
+                    truncateBefore(truncateBefore);
+                }
+            } catch(IOException e) {
+                LOGGER.error("写注册表预写日志出错，之后不再记录注册表变动......", e);
+                lock.lock();
+                try {
+                    failed = true;
+                    written.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                if(wrote) {
+                    batchCount++;
+                }
+                writtenLsn = batchLsn;
+                if(force) {
+                    forceCount++;
+                    durableLsn = batchLsn;
+                }
+                written.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            if(exit) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 把日志序号大于lsn的记录复制到一个新文件里，刷盘以后原子地替换掉原来的文件
+     *
+     * 只在后台线程里执行，这个时候没有别的线程在写文件，业务线程的记录先攒在缓冲区里
+     * @param lsn
+     * @throws IOException
+     */
+    private void truncateBefore(long lsn) throws IOException {
+        channel.force(false);
+        long position = positionAfter(file, lsn);
+        if(position == 0) {
+            return;
+        }
+
+        File truncatedFile = new File(file.getParentFile(), FILE_NAME + ".tmp");
+        try(FileChannel source = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            FileChannel target = FileChannel.open(truncatedFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = source.size();
+            long transferred = 0;
+            while(position + transferred < size) {
+                transferred += source.transferTo(position + transferred, size - position - transferred, target);
+            }
+            target.force(true);
+        }
+
+        channel.close();
+        FilePersistUtils.replace(truncatedFile, file);
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE);
+        channel.position(channel.size());
+        LOGGER.info("截掉了注册表预写日志里日志序号" + lsn + "之前的" + position + "字节");
+    }
+
+    /**
+     * 关闭预写日志，把还没有写的记录写完，除了none策略都会刷一次盘
+     */
+    public synchronized void close() {
+        if(!started) {
+            return;
+        }
+        started = false;
+        lock.lock();
+        try {
+            closing = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join();
+            channel.close();
+        } catch(InterruptedException | IOException e) {
+            LOGGER.error("关闭注册表预写日志出错......", e);
+        }
+        LOGGER.info("注册表预写日志已经关闭，最后的日志序号：" + lastLsn);
+    }
+
+    public boolean isStarted() {
+        return started;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public long getLastLsn() {
+        lock.lock();
+        try {
+            return lastLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDurableLsn() {
+        lock.lock();
+        try {
+            return durableLsn;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getBatchCount() {
+        lock.lock();
+        try {
+            return batchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getForceCount() {
+        lock.lock();
+        try {
+            return forceCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+}
@@ -1,5 +1,6 @@
 package com.zhss.microservice.server.replica;
 
+import com.zhss.microservice.common.entity.BatchHeartbeatRequest;
 import com.zhss.microservice.common.entity.HeartbeatRequest;
 import com.zhss.microservice.common.entity.RegisterRequest;
 import com.zhss.microservice.common.entity.Request;
@@ -10,6 +11,11 @@ import com.zhss.microservice.server.slot.SlotManager;
 import com.zhss.microservice.server.slot.registry.ServiceInstance;
 import com.zhss.microservice.server.slot.registry.ServiceRegistry;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * 副本复制的组件
  */
@@ -53,7 +59,7 @@ public class ReplicationManager {
                             serviceInstancePort
                     );
 
-                    Slot slotReplica = slotManager.getSlotReplica(serviceName);
+                    Slot slotReplica = slotManager.getSlotReplica(registerRequest.getServiceSlot());
                     ServiceRegistry serviceRegistry = slotReplica.getServiceRegistry();
                     serviceRegistry.register(serviceInstance);
                 } else if(replicaRequest instanceof HeartbeatRequest) {
@@ -63,13 +69,35 @@ public class ReplicationManager {
                     String serviceInstanceIp = heartbeatRequest.getServiceInstanceIp();
                     Integer serviceInstancePort = heartbeatRequest.getServiceInstancePort();
 
-                    Slot slotReplica = slotManager.getSlotReplica(serviceName);
+                    Slot slotReplica = slotManager.getSlotReplica(heartbeatRequest.getServiceSlot());
                     ServiceRegistry serviceRegistry = slotReplica.getServiceRegistry();
-                    serviceRegistry.heartbeat(serviceName, serviceInstanceIp, serviceInstancePort);
+                    serviceRegistry.heartbeat(heartbeatRequest.getServiceNameId(), serviceName,
+                            serviceInstanceIp, serviceInstancePort, System.currentTimeMillis());
+                } else if(replicaRequest instanceof BatchHeartbeatRequest) {
+                    batchHeartbeat(slotManager, (BatchHeartbeatRequest) replicaRequest);
                 }
             }
         }
 
+        /**
+         * 批量心跳按照槽位副本分组，每个槽位副本的注册表只处理一次
+         */
+        private void batchHeartbeat(SlotManager slotManager, BatchHeartbeatRequest batchHeartbeatRequest) {
+            List<BatchHeartbeatRequest.Entry> entries = batchHeartbeatRequest.getEntries();
+
+            Map<Slot, List<Integer>> entryIndexesBySlot = new HashMap<>();
+            for(int i = 0; i < entries.size(); i++) {
+                Slot slotReplica = slotManager.getSlotReplica(entries.get(i).getServiceSlot());
+                entryIndexesBySlot.computeIfAbsent(slotReplica, key -> new ArrayList<>()).add(i);
+            }
+
+            List<Integer> failedEntries = new ArrayList<>();
+            for(Map.Entry<Slot, List<Integer>> slotEntries : entryIndexesBySlot.entrySet()) {
+                ServiceRegistry serviceRegistry = slotEntries.getKey().getServiceRegistry();
+                serviceRegistry.heartbeat(entries, slotEntries.getValue(), failedEntries);
+            }
+        }
+
     }
 
 }
@@ -12,17 +12,17 @@ public class Slot {
      */
     private Integer slotNo;
     /**
-     * 服务注册表
+     * 服务注册表分片，同一组槽位共用一个分片
      */
     private ServiceRegistry serviceRegistry;
 
     /**
      * 构造函数
      * @param slotNo
+     * @param serviceRegistry 这个槽位所在分组的服务注册表分片
      */
     public Slot(Integer slotNo, ServiceRegistry serviceRegistry) {
         this.slotNo = slotNo;
-        // TODO: 不能是单例的，必须是独立的数据实例
         this.serviceRegistry = serviceRegistry;
     }
 
@@ -1,6 +1,7 @@
 package com.zhss.microservice.server.slot;
 
 import com.alibaba.fastjson.JSONObject;
+import com.zhss.microservice.common.utils.SlotRoutingTable;
 import com.zhss.microservice.server.node.network.ServerMessageReceiver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +23,6 @@ public class SlotManager {
      */
     private static final String NODE_SLOTS_FILENAME = "node_slots";
     private static final String NODE_SLOTS_REPLICAS_FILENAME = "node_slots_replicas";
-    private static final Integer SLOT_COUNT = 16384;
 
     private SlotManager() {
 
@@ -44,6 +44,10 @@ public class SlotManager {
      * 本节点负责管理的槽位副本集合
      */
     private Map<String, SlotsReplica> slotsReplicas = new ConcurrentHashMap<>();
+    /**
+     * 槽位编号 -> 本节点上这个槽位的副本，槽位副本变动的时候整个替换掉
+     */
+    private volatile Slot[] replicaSlots = new Slot[SlotRoutingTable.SLOT_TABLE_SIZE];
 
     /**
      * 初始化本节点负责的槽位集合
@@ -57,7 +61,14 @@ public class SlotManager {
         for(String slotScope : slotsList) {
             slots.init(slotScope);
         }
-        FilePersistUtils.persist(JSONObject.toJSONString(slotsList).getBytes(), NODE_SLOTS_FILENAME);
+
+        // 跟重启之前负责的槽位一样的话，注册表快照里的数据都能恢复到本节点的槽位上
+        List<String> persistedSlotsList = FilePersistUtils.loadSlotScopes(NODE_SLOTS_FILENAME);
+        if(slotsList.equals(persistedSlotsList)) {
+            LOGGER.info("本节点负责的槽位跟重启之前一样：" + slotsList);
+        } else {
+            FilePersistUtils.persist(JSONObject.toJSONString(slotsList).getBytes(), NODE_SLOTS_FILENAME);
+        }
 
         LOGGER.info("初始化本节点槽位数据完毕......");
     }
@@ -65,7 +76,7 @@ public class SlotManager {
     /**
      * 初始化本节点负责的槽位副本的集合
      */
-    public void initSlotsReplicas(List<String> slotScopes, boolean isController) {
+    public synchronized void initSlotsReplicas(List<String> slotScopes, boolean isController) {
         ServerMessageReceiver serverMessageReceiver = ServerMessageReceiver.getInstance();
         if(slotScopes == null && !isController) {
             slotScopes = serverMessageReceiver.takeNodeSlotsReplicas();
@@ -73,14 +84,29 @@ public class SlotManager {
             return;
         }
 
+        Slot[] newReplicaSlots = replicaSlots.clone();
         for(String slotScope : slotScopes) {
             SlotsReplica slotsReplica = new SlotsReplica();
             slotsReplica.init(slotScope);
             slotsReplicas.put(slotScope, slotsReplica);
-        }
 
-        byte[] bytes = JSONObject.toJSONString(slotScopes).getBytes();
-        FilePersistUtils.persist(bytes, NODE_SLOTS_REPLICAS_FILENAME);
+            int endSlot = SlotRoutingTable.parseEndSlot(slotScope);
+            for(int slotNo = SlotRoutingTable.parseStartSlot(slotScope); slotNo <= endSlot; slotNo++) {
+                newReplicaSlots[slotNo] = slotsReplica.getSlot(slotNo);
+            }
+        }
+        Slot[] oldReplicaSlots = replicaSlots;
+        replicaSlots = newReplicaSlots;
+        // 同一个范围的槽位副本重新初始化以后，旧的注册表分片不再检查心跳超时
+        Slots.deregisterReplacedServiceRegistries(oldReplicaSlots, newReplicaSlots);
+
+        // 跟重启之前负责的槽位副本一样的话，就不用再写一遍磁盘了
+        List<String> persistedSlotScopes = FilePersistUtils.loadSlotScopes(NODE_SLOTS_REPLICAS_FILENAME);
+        if(slotScopes.equals(persistedSlotScopes)) {
+            LOGGER.info("本节点负责的槽位副本跟重启之前一样：" + slotScopes);
+        } else {
+            FilePersistUtils.persist(JSONObject.toJSONString(slotScopes).getBytes(), NODE_SLOTS_REPLICAS_FILENAME);
+        }
         LOGGER.info("初始化本节点槽位副本数据完毕......");
     }
 
@@ -102,7 +128,16 @@ public class SlotManager {
      * @return
      */
     public Slot getSlot(String serviceName) {
-        return slots.getSlot(routeSlot(serviceName));
+        return getSlot(SlotRoutingTable.routeSlot(serviceName));
+    }
+
+    /**
+     * 根据服务路由到的槽位获取槽位
+     * @param slotNo
+     * @return
+     */
+    public Slot getSlot(int slotNo) {
+        return slots.getSlot(slotNo);
     }
 
     /**
@@ -111,37 +146,16 @@ public class SlotManager {
      * @return
      */
     public Slot getSlotReplica(String serviceName) {
-        Integer slotNo = routeSlot(serviceName);
-
-        SlotsReplica  slotsReplica = null;
-
-        for(String slotScope : slotsReplicas.keySet()) {
-            Integer startSlot = Integer.valueOf(slotScope.split(",")[0]);
-            Integer endSlot = Integer.valueOf(slotScope.split(",")[1]);
-
-            if(slotNo >= startSlot && slotNo <= endSlot) {
-                slotsReplica = slotsReplicas.get(slotScope);
-                break;
-            }
-        }
-
-        return slotsReplica.getSlot(slotNo);
+        return getSlotReplica(SlotRoutingTable.routeSlot(serviceName));
     }
 
     /**
-     * 将服务路由到slot
-     * @param serviceName
+     * 根据服务路由到的槽位获取槽位副本
+     * @param slotNo
      * @return
      */
-    private Integer routeSlot(String serviceName) {
-        int hashCode = serviceName.hashCode() & Integer.MAX_VALUE;
-        Integer slot = hashCode % SLOT_COUNT;
-
-        if(slot == 0) {
-            slot = slot + 1;
-        }
-
-        return slot;
+    public Slot getSlotReplica(int slotNo) {
+        return replicaSlots[slotNo];
     }
 
     public Integer getReplicaNodeId() {
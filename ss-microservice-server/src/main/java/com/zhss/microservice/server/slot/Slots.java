@@ -1,8 +1,13 @@
 package com.zhss.microservice.server.slot;
 
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.slot.registry.HeartbeatExpiryScheduler;
 import com.zhss.microservice.server.slot.registry.ServiceRegistry;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
 
 /**
  * 本节点负责的slot槽位的集合
@@ -10,10 +15,10 @@ import java.util.concurrent.ConcurrentHashMap;
 public class Slots {
 
     /**
-     * 节点本地内存里的槽位
+     * 节点本地内存里的槽位：槽位编号 -> 槽位，槽位里有它所在的服务注册表分片
+     * 初始化的时候复制一份新的数组填好以后整个替换掉，读取不需要加锁
      */
-    private ConcurrentHashMap<Integer, Slot> slots =
-            new ConcurrentHashMap<>();
+    private volatile Slot[] slots = new Slot[SlotRoutingTable.SLOT_TABLE_SIZE];
     /**
      * 该槽位集合的副本节点的id
      */
@@ -23,15 +28,52 @@ public class Slots {
      * 对槽位集合进行初始化
      * @param slotScope
      */
-    public void init(String slotScope) {
-        String[] slotScopeSplited = slotScope.split(",");
-        Integer startSlotNo = Integer.valueOf(slotScopeSplited[0]);
-        Integer endSlotNo = Integer.valueOf(slotScopeSplited[1]);
+    public synchronized void init(String slotScope) {
+        int startSlotNo = SlotRoutingTable.parseStartSlot(slotScope);
+        int endSlotNo = SlotRoutingTable.parseEndSlot(slotScope);
 
-        ServiceRegistry serviceRegistry = new ServiceRegistry(false);
+        // 按照槽位编号对齐分组，每组槽位共用一个独立的服务注册表分片
+        int groupSize = Configuration.getInstance().getSlotRegistryGroupSize();
+        ServiceRegistry serviceRegistry = null;
+        Slot[] newSlots = slots.clone();
 
-        for(Integer slotNo = startSlotNo; slotNo <= endSlotNo; slotNo++) {
-            slots.put(slotNo, new Slot(slotNo, serviceRegistry));
+        for(int slotNo = startSlotNo; slotNo <= endSlotNo; slotNo++) {
+            if(serviceRegistry == null || slotNo % groupSize == 0) {
+                int groupEndSlotNo = Math.min(endSlotNo, (slotNo / groupSize + 1) * groupSize - 1);
+                serviceRegistry = new ServiceRegistry("slots-" + slotNo + "-" + groupEndSlotNo, false);
+            }
+            newSlots[slotNo] = new Slot(slotNo, serviceRegistry);
+        }
+        Slot[] oldSlots = slots;
+        slots = newSlots;
+        deregisterReplacedServiceRegistries(oldSlots, newSlots);
+    }
+
+    /**
+     * 槽位数组整个替换掉以后，不再被任何槽位引用的注册表分片从心跳超时检查调度器里取消注册
+     * @param oldSlots
+     * @param newSlots
+     */
+    static void deregisterReplacedServiceRegistries(Slot[] oldSlots, Slot[] newSlots) {
+        Set<ServiceRegistry> replacedServiceRegistries = Collections.newSetFromMap(new IdentityHashMap<>());
+        for(int slotNo = 0; slotNo < oldSlots.length; slotNo++) {
+            if(oldSlots[slotNo] != null && oldSlots[slotNo] != newSlots[slotNo]) {
+                replacedServiceRegistries.add(oldSlots[slotNo].getServiceRegistry());
+            }
+        }
+        if(replacedServiceRegistries.isEmpty()) {
+            return;
+        }
+
+        // 一个分片可能只有一部分槽位被替换，其他槽位还在用的分片不能取消注册
+        for(Slot slot : newSlots) {
+            if(slot != null) {
+                replacedServiceRegistries.remove(slot.getServiceRegistry());
+            }
+        }
+        HeartbeatExpiryScheduler heartbeatExpiryScheduler = HeartbeatExpiryScheduler.getInstance();
+        for(ServiceRegistry serviceRegistry : replacedServiceRegistries) {
+            heartbeatExpiryScheduler.deregister(serviceRegistry);
         }
     }
 
@@ -43,8 +85,8 @@ public class Slots {
         this.replicaNodeId = replicaNodeId;
     }
 
-    public Slot getSlot(Integer slotNo) {
-        return slots.get(slotNo);
+    public Slot getSlot(int slotNo) {
+        return slots[slotNo];
     }
 
     public Integer getReplicaNodeId() {
@@ -1,34 +1,43 @@
 package com.zhss.microservice.server.slot;
 
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+import com.zhss.microservice.server.config.Configuration;
 import com.zhss.microservice.server.slot.registry.ServiceRegistry;
 
-import java.util.concurrent.ConcurrentHashMap;
-
 /**
  * 本节点负责的槽位副本
  */
 public class SlotsReplica {
 
     /**
-     * 槽位副本里的槽位
+     * 槽位副本里的槽位：槽位编号 -> 槽位，槽位里有它所在的服务注册表分片
+     * 初始化的时候复制一份新的数组填好以后整个替换掉，读取不需要加锁
      */
-    private ConcurrentHashMap<Integer, Slot> slots =
-            new ConcurrentHashMap<>();
-
-    public void init(String slotScope) {
-        String[] slotScopeSplited = slotScope.split(",");
-        Integer startSlotNo = Integer.valueOf(slotScopeSplited[0]);
-        Integer endSlotNo = Integer.valueOf(slotScopeSplited[1]);
-
-        ServiceRegistry serviceRegistry = new ServiceRegistry(true);
-
-        for(Integer slotNo = startSlotNo; slotNo <= endSlotNo; slotNo++) {
-            slots.put(slotNo, new Slot(slotNo, serviceRegistry));
+    private volatile Slot[] slots = new Slot[SlotRoutingTable.SLOT_TABLE_SIZE];
+
+    public synchronized void init(String slotScope) {
+        int startSlotNo = SlotRoutingTable.parseStartSlot(slotScope);
+        int endSlotNo = SlotRoutingTable.parseEndSlot(slotScope);
+
+        // 按照槽位编号对齐分组，每组槽位共用一个独立的服务注册表分片
+        int groupSize = Configuration.getInstance().getSlotRegistryGroupSize();
+        ServiceRegistry serviceRegistry = null;
+        Slot[] newSlots = slots.clone();
+
+        for(int slotNo = startSlotNo; slotNo <= endSlotNo; slotNo++) {
+            if(serviceRegistry == null || slotNo % groupSize == 0) {
+                int groupEndSlotNo = Math.min(endSlotNo, (slotNo / groupSize + 1) * groupSize - 1);
+                serviceRegistry = new ServiceRegistry("replica-" + slotNo + "-" + groupEndSlotNo, true);
+            }
+            newSlots[slotNo] = new Slot(slotNo, serviceRegistry);
         }
+        Slot[] oldSlots = slots;
+        slots = newSlots;
+        Slots.deregisterReplacedServiceRegistries(oldSlots, newSlots);
     }
 
-    public Slot getSlot(Integer slotNo) {
-        return slots.get(slotNo);
+    public Slot getSlot(int slotNo) {
+        return slots[slotNo];
     }
 
 }
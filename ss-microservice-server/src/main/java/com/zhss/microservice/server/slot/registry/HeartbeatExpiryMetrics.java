@@ -0,0 +1,95 @@
+package com.zhss.microservice.server.slot.registry;
+
+/**
+ * 一个服务注册表的心跳超时检查指标
+ *
+ * 摘除延迟是服务实例真正被摘除的时间减去它的心跳到期时间
+ * 只有负责这个注册表的检查线程会更新，其他线程只读
+ */
+public class HeartbeatExpiryMetrics {
+
+    /**
+     * 最近一次检查的时间
+     */
+    private volatile long lastCheckTime;
+    /**
+     * 累计检查次数
+     */
+    private volatile long checkCount;
+    /**
+     * 累计从时间轮里取出来检查过的服务实例数量
+     */
+    private volatile long visitedCount;
+    /**
+     * 累计摘除的服务实例数量
+     */
+    private volatile long expiredCount;
+    /**
+     * 最近一次摘除服务实例的摘除延迟
+     */
+    private volatile long lastLagMillis;
+    /**
+     * 最大的摘除延迟
+     */
+    private volatile long maxLagMillis;
+
+    /**
+     * 记录一次检查
+     * @param now
+     * @param visited 这次检查从时间轮里取出来的服务实例数量
+     */
+    void recordCheck(long now, int visited) {
+        lastCheckTime = now;
+        checkCount++;
+        visitedCount += visited;
+    }
+
+    /**
+     * 记录一个被摘除的服务实例
+     * @param lagMillis 摘除延迟
+     */
+    void recordExpired(long lagMillis) {
+        expiredCount++;
+        lastLagMillis = lagMillis;
+        if(lagMillis > maxLagMillis) {
+            maxLagMillis = lagMillis;
+        }
+    }
+
+    public long getLastCheckTime() {
+        return lastCheckTime;
+    }
+
+    public long getCheckCount() {
+        return checkCount;
+    }
+
+    public long getVisitedCount() {
+        return visitedCount;
+    }
+
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "HeartbeatExpiryMetrics{" +
+                "lastCheckTime=" + lastCheckTime +
+                ", checkCount=" + checkCount +
+                ", visitedCount=" + visitedCount +
+                ", expiredCount=" + expiredCount +
+                ", lastLagMillis=" + lastLagMillis +
+                ", maxLagMillis=" + maxLagMillis +
+                '}';
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.zhss.microservice.server.slot.registry;
+
+import com.zhss.microservice.server.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 心跳超时检查调度器
+ *
+ * 整个节点共用一个小的定时线程池，所有服务注册表都注册到这里
+ * 每个注册表固定分配给一个检查分组，同一个注册表的检查永远在同一个线程里串行执行
+ * 每次检查只推进注册表的心跳超时时间轮，工作量跟到期的服务实例数量成正比
+ */
+public class HeartbeatExpiryScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(HeartbeatExpiryScheduler.class);
+
+    private HeartbeatExpiryScheduler() {
+        Configuration configuration = Configuration.getInstance();
+        int threads = configuration.getHeartbeatExpiryThreads();
+        long checkIntervalMillis = configuration.getHeartbeatCheckInterval() * 1000L;
+
+        this.executor = new ScheduledThreadPoolExecutor(threads, new HeartbeatExpiryThreadFactory());
+        this.groups = new ExpiryGroup[threads];
+        for(int i = 0; i < threads; i++) {
+            groups[i] = new ExpiryGroup();
+            executor.scheduleWithFixedDelay(groups[i], checkIntervalMillis,
+                    checkIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+        LOGGER.info("心跳超时检查使用" + threads + "个线程，每" + checkIntervalMillis + "ms检查一次......");
+    }
+
+    static class Singleton {
+        static HeartbeatExpiryScheduler instance = new HeartbeatExpiryScheduler();
+    }
+
+    public static HeartbeatExpiryScheduler getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 执行心跳超时检查的定时线程池
+     */
+    private final ScheduledThreadPoolExecutor executor;
+    /**
+     * 检查分组，每个分组是线程池里的一个定时任务
+     */
+    private final ExpiryGroup[] groups;
+    /**
+     * 下一个注册表分配到的检查分组
+     */
+    private final AtomicInteger nextGroup = new AtomicInteger();
+    /**
+     * 所有注册过的服务注册表
+     */
+    private final List<ServiceRegistry> serviceRegistries = new CopyOnWriteArrayList<>();
+
+    /**
+     * 注册一个服务注册表，之后定时检查它的心跳超时
+     * @param serviceRegistry
+     */
+    public void register(ServiceRegistry serviceRegistry) {
+        int group = (nextGroup.getAndIncrement() & Integer.MAX_VALUE) % groups.length;
+        serviceRegistries.add(serviceRegistry);
+        groups[group].serviceRegistries.add(serviceRegistry);
+    }
+
+    /**
+     * 取消注册一个服务注册表，注册表分片被替换掉以后调用，之后不再检查它的心跳超时
+     * @param serviceRegistry
+     */
+    public void deregister(ServiceRegistry serviceRegistry) {
+        if(!serviceRegistries.remove(serviceRegistry)) {
+            return;
+        }
+        for(ExpiryGroup group : groups) {
+            if(group.serviceRegistries.remove(serviceRegistry)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 获取每个服务注册表的心跳超时检查指标
+     * @return 注册表名称 -> 指标
+     */
+    public Map<String, HeartbeatExpiryMetrics> getExpiryMetrics() {
+        Map<String, HeartbeatExpiryMetrics> metrics = new LinkedHashMap<>();
+        for(ServiceRegistry serviceRegistry : serviceRegistries) {
+            metrics.put(serviceRegistry.getName(), serviceRegistry.getExpiryMetrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * 一个检查分组，依次检查分到这个分组的所有注册表
+     */
+    static class ExpiryGroup implements Runnable {
+
+        private final List<ServiceRegistry> serviceRegistries = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void run() {
+            for(ServiceRegistry serviceRegistry : serviceRegistries) {
+                try {
+                    serviceRegistry.expireHeartbeatTimeouts(System.currentTimeMillis());
+                } catch(Exception e) {
+                    // 异常不能抛出去，否则这个定时任务以后都不会再执行了
+                    LOGGER.error("心跳超时检查失败：" + serviceRegistry.getName(), e);
+                }
+            }
+        }
+
+    }
+
+    /**
+     * 心跳超时检查线程工厂
+     */
+    static class HeartbeatExpiryThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "heartbeat-expiry-" + threadIndex.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+
+    }
+
+}
@@ -1,14 +1,17 @@
 package com.zhss.microservice.server.slot.registry;
 
 import com.zhss.microservice.common.entity.Request;
-import com.zhss.microservice.common.entity.ServiceChangedRequest;
+import com.zhss.microservice.common.entity.SharedBodyRequest;
+import com.zhss.microservice.common.entity.SharedRequestBody;
+import com.zhss.microservice.server.node.network.ClientConnection;
+import com.zhss.microservice.server.node.network.ClientConnectionManager;
 import com.zhss.microservice.server.node.network.ClientMessageQueues;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * 服务变动监听器
+ *
+ * 记录已经推送给这个订阅者的服务版本号，第二版协议的客户端只推送增量
+ * 变动记录不够补齐或者客户端是第一版协议的时候，推送完整的地址列表
  */
 public class ServiceChangedListener {
 
@@ -16,30 +19,66 @@ public class ServiceChangedListener {
      * 客户端连接标识
      */
     private String clientConnectionId;
+    /**
+     * 已经推送给客户端的服务版本号
+     */
+    private long pushedVersion;
 
-    public ServiceChangedListener(String clientConnectionId) {
+    public ServiceChangedListener(String clientConnectionId, long pushedVersion) {
         this.clientConnectionId = clientConnectionId;
+        this.pushedVersion = pushedVersion;
+    }
+
+    /**
+     * 客户端重新订阅的时候，会重新拿到完整的地址列表
+     * @param pushedVersion
+     */
+    public synchronized void resubscribe(long pushedVersion) {
+        this.pushedVersion = pushedVersion;
     }
 
     /**
      * 回调事件
-     * @param serviceInstances
+     *
+     * 加锁保证同一个订阅者的推送按照版本号的顺序放进连接的消息队列
+     * 请求体是所有订阅者共用的，这里只构建这个连接自己的请求头
+     * @param push 这次推送的服务变动
      */
-    public void onChange(String serviceName, List<ServiceInstance> serviceInstances) {
-        List<String> serviceInstanceAddresses = new ArrayList<String>();
-        for(ServiceInstance serviceInstance : serviceInstances) {
-            serviceInstanceAddresses.add(serviceInstance.getAddress());
+    public synchronized void onChange(ServiceChangedPush push) {
+        if(push.getVersion() <= pushedVersion) {
+            return;
         }
 
-        // 构建一个反向推送服务实例地址列表变动的请求
-        Request request = new ServiceChangedRequest.Builder()
-                .serviceName(serviceName)
-                .serviceInstanceAddresses(serviceInstanceAddresses)
+        // 连接已经关闭了
+        ClientConnectionManager clientConnectionManager = ClientConnectionManager.getInstance();
+        ClientConnection clientConnection = clientConnectionManager.getClientConnection(clientConnectionId);
+        if(clientConnection == null) {
+            return;
+        }
+
+        // 用客户端能识别的协议版本构建推送请求
+        // 发送队列拥塞的时候推送可能被同一个服务后来的推送替换掉，只能推送完整的地址列表
+        ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+        int protocolVersion = clientConnection.getProtocolVersion();
+        SharedRequestBody sharedBody = null;
+        if(protocolVersion != Request.PROTOCOL_VERSION_1 && !clientMessageQueues.isCongested(clientConnectionId)) {
+            sharedBody = push.getDeltaBody(pushedVersion);
+        }
+        if(sharedBody == null) {
+            sharedBody = push.getFullBody(protocolVersion);
+        }
+        Request request = new SharedBodyRequest.Builder()
+                .protocolVersion(protocolVersion)
+                .sharedBody(sharedBody)
                 .build();
+        pushedVersion = push.getVersion();
 
         // 把这个请求推送到客户端连接的请求队列里去
-        ClientMessageQueues clientRequestQueues = ClientMessageQueues.getInstance();
-        clientRequestQueues.offerMessage(clientConnectionId, request);
+        clientMessageQueues.offerServiceChanged(clientConnectionId, push.getServiceName(), request);
+    }
+
+    public String getClientConnectionId() {
+        return clientConnectionId;
     }
 
 }
@@ -0,0 +1,130 @@
+package com.zhss.microservice.server.slot.registry;
+
+import com.zhss.microservice.server.config.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 服务变动通知调度器
+ *
+ * 服务实例每次变动只是把服务标记成有变动，同一个服务在一个合并窗口里最多推送一次最新的快照
+ * 滚动发布的时候几百次变动会合并成少数几次推送，距离上次推送已经超过一个窗口的变动可以立即推送
+ */
+public class ServiceChangedNotifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceChangedNotifier.class);
+
+    private ServiceChangedNotifier() {
+        Configuration configuration = Configuration.getInstance();
+        this.windowMillis = configuration.getServiceChangedNotifyWindow();
+        this.immediate = configuration.getServiceChangedNotifyImmediate();
+
+        this.executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "service-changed-notifier");
+            thread.setDaemon(true);
+            return thread;
+        });
+        LOGGER.info("服务变动通知合并窗口为" + windowMillis + "ms，立即推送第一次变动：" + immediate);
+    }
+
+    static class Singleton {
+        static ServiceChangedNotifier instance = new ServiceChangedNotifier();
+    }
+
+    public static ServiceChangedNotifier getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 执行延迟推送的定时线程
+     */
+    private final ScheduledThreadPoolExecutor executor;
+    /**
+     * 合并窗口
+     */
+    private final long windowMillis;
+    /**
+     * 是否立即推送合并窗口里的第一次变动
+     */
+    private final boolean immediate;
+    /**
+     * 累计的服务变动次数
+     */
+    private final AtomicLong changedCount = new AtomicLong();
+    /**
+     * 累计的推送次数，每次推送给一个服务的所有订阅者算一次
+     */
+    private final AtomicLong pushCount = new AtomicLong();
+
+    /**
+     * 一个服务的服务实例发生了变动
+     * @param serviceRegistry 服务所在的注册表分片
+     * @param serviceInstances
+     */
+    public void serviceChanged(ServiceRegistry serviceRegistry, ServiceInstances serviceInstances) {
+        changedCount.incrementAndGet();
+
+        long now = System.currentTimeMillis();
+        long delay = serviceInstances.markChanged(now, windowMillis, immediate);
+        if(delay == 0) {
+            push(serviceRegistry, serviceInstances, now);
+        } else if(delay > 0) {
+            schedule(serviceRegistry, serviceInstances, delay);
+        }
+    }
+
+    private void schedule(ServiceRegistry serviceRegistry, ServiceInstances serviceInstances, long delayMillis) {
+        executor.schedule(() -> {
+            try {
+                long now = System.currentTimeMillis();
+                serviceInstances.notifyStarted(now);
+                push(serviceRegistry, serviceInstances, now);
+            } catch(Exception e) {
+                // 推送失败也要清掉延迟推送的标记，否则这个服务以后的变动都不会再推送了
+                serviceInstances.notifyStarted(System.currentTimeMillis());
+                LOGGER.error("推送服务变动失败：" + serviceInstances.getServiceName(), e);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 把最新的快照推送给服务的所有订阅者
+     *
+     * 快照发布被限流的时候，等到可以发布的时候再推送
+     */
+    private void push(ServiceRegistry serviceRegistry, ServiceInstances serviceInstances, long now) {
+        ServiceSnapshot snapshot = serviceInstances.getSnapshot(now);
+        if(snapshot.getVersion() != serviceInstances.getVersion()) {
+            if(serviceInstances.scheduleNotify()) {
+                schedule(serviceRegistry, serviceInstances,
+                        Math.max(1, serviceInstances.getPublishDelay(now)));
+            }
+            return;
+        }
+
+        pushCount.incrementAndGet();
+        serviceRegistry.pushServiceChanged(serviceInstances, snapshot);
+    }
+
+    public long getChangedCount() {
+        return changedCount.get();
+    }
+
+    public long getPushCount() {
+        return pushCount.get();
+    }
+
+    /**
+     * 平均每次推送合并了多少次变动
+     * @return
+     */
+    public double getCoalescingRatio() {
+        long pushes = pushCount.get();
+        return pushes == 0 ? 0 : (double) changedCount.get() / pushes;
+    }
+
+}
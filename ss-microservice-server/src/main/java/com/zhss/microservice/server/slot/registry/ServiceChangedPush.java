@@ -0,0 +1,130 @@
+package com.zhss.microservice.server.slot.registry;
+
+import com.zhss.microservice.common.entity.Request;
+import com.zhss.microservice.common.entity.ServiceChangedDeltaRequest;
+import com.zhss.microservice.common.entity.ServiceChangedRequest;
+import com.zhss.microservice.common.entity.SharedRequestBody;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 一次推送给一个服务所有订阅者的服务变动
+ *
+ * 请求体按需编码，之后所有订阅者共用：完整的地址列表每个协议版本只编码一次，
+ * 增量按照订阅者已经推送到的版本号各编码一次，通常所有订阅者都在同一个版本上
+ * 只在推送的线程里使用，不是线程安全的
+ */
+public class ServiceChangedPush {
+
+    /**
+     * 服务实例，用来获取增量变动
+     */
+    private final ServiceInstances serviceInstances;
+    /**
+     * 这次推送的快照
+     */
+    private final ServiceSnapshot snapshot;
+    /**
+     * 第一版协议的完整地址列表请求体
+     */
+    private SharedRequestBody fullBodyV1;
+    /**
+     * 第二版协议的完整地址列表请求体
+     */
+    private SharedRequestBody fullBodyV2;
+    /**
+     * 已经推送到的版本号 -> 增量请求体，变动记录不够补齐的版本对应null
+     */
+    private final Map<Long, SharedRequestBody> deltaBodies = new HashMap<>();
+
+    public ServiceChangedPush(ServiceInstances serviceInstances, ServiceSnapshot snapshot) {
+        this.serviceInstances = serviceInstances;
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * 获取完整地址列表的请求体
+     * @param protocolVersion
+     * @return
+     */
+    public SharedRequestBody getFullBody(int protocolVersion) {
+        if(protocolVersion == Request.PROTOCOL_VERSION_1) {
+            if(fullBodyV1 == null) {
+                fullBodyV1 = encodeFullBody(protocolVersion);
+            }
+            return fullBodyV1;
+        }
+        if(fullBodyV2 == null) {
+            fullBodyV2 = encodeFullBody(protocolVersion);
+        }
+        return fullBodyV2;
+    }
+
+    private SharedRequestBody encodeFullBody(int protocolVersion) {
+        return ServiceChangedRequest.sharedBody(protocolVersion,
+                serviceInstances.getServiceName(),
+                snapshot.getServiceInstanceAddresses(),
+                snapshot.getVersion());
+    }
+
+    /**
+     * 获取从某个版本到快照版本的增量请求体
+     * @param fromVersion 订阅者已经推送到的版本号
+     * @return 变动记录不够补齐的时候返回null，需要推送完整的地址列表
+     */
+    public SharedRequestBody getDeltaBody(long fromVersion) {
+        if(deltaBodies.containsKey(fromVersion)) {
+            return deltaBodies.get(fromVersion);
+        }
+        SharedRequestBody deltaBody = encodeDeltaBody(fromVersion);
+        deltaBodies.put(fromVersion, deltaBody);
+        return deltaBody;
+    }
+
+    /**
+     * 把已经推送的版本到快照版本之间的变动合并成一个增量
+     */
+    private SharedRequestBody encodeDeltaBody(long fromVersion) {
+        List<ServiceDelta> deltas = serviceInstances.getDeltasSince(fromVersion);
+        if(deltas == null) {
+            return null;
+        }
+
+        // 先加后减、先减后加的同一个地址互相抵消
+        Set<String> addedAddresses = new LinkedHashSet<>();
+        Set<String> removedAddresses = new LinkedHashSet<>();
+        for(ServiceDelta delta : deltas) {
+            if(delta.getVersion() > snapshot.getVersion()) {
+                break;
+            }
+            String address = delta.getServiceInstanceAddress();
+            if(delta.getType() == ServiceDelta.ADDED) {
+                if(!removedAddresses.remove(address)) {
+                    addedAddresses.add(address);
+                }
+            } else if(!addedAddresses.remove(address)) {
+                removedAddresses.add(address);
+            }
+        }
+
+        return ServiceChangedDeltaRequest.sharedBody(serviceInstances.getServiceName(),
+                fromVersion,
+                snapshot.getVersion(),
+                new ArrayList<>(addedAddresses),
+                new ArrayList<>(removedAddresses));
+    }
+
+    public String getServiceName() {
+        return serviceInstances.getServiceName();
+    }
+
+    public long getVersion() {
+        return snapshot.getVersion();
+    }
+
+}
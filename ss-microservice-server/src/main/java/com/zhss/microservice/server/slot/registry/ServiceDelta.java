@@ -0,0 +1,57 @@
+package com.zhss.microservice.server.slot.registry;
+
+/**
+ * 一个服务的一次服务实例变动
+ */
+public class ServiceDelta {
+
+    /**
+     * 新增了一个服务实例
+     */
+    public static final int ADDED = 1;
+    /**
+     * 摘除了一个服务实例
+     */
+    public static final int REMOVED = 2;
+
+    /**
+     * 这次变动之后服务的版本号
+     */
+    private final long version;
+    /**
+     * 变动类型
+     */
+    private final int type;
+    /**
+     * 变动的服务实例地址
+     */
+    private final String serviceInstanceAddress;
+
+    ServiceDelta(long version, int type, String serviceInstanceAddress) {
+        this.version = version;
+        this.type = type;
+        this.serviceInstanceAddress = serviceInstanceAddress;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public String getServiceInstanceAddress() {
+        return serviceInstanceAddress;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceDelta{" +
+                "version=" + version +
+                ", type=" + (type == ADDED ? "ADDED" : "REMOVED") +
+                ", serviceInstanceAddress='" + serviceInstanceAddress + '\'' +
+                '}';
+    }
+
+}
@@ -1,5 +1,7 @@
 package com.zhss.microservice.server.slot.registry;
 
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+
 import java.util.Objects;
 
 /**
@@ -7,10 +9,22 @@ import java.util.Objects;
  */
 public class ServiceInstance {
 
+    /**
+     * 没法打包成long的服务实例，比如服务名称不在字典里、不是IPv4地址
+     */
+    public static final long NO_KEY = -1L;
+
     private String serviceName;
     private String serviceInstanceIp;
     private Integer serviceInstancePort;
-    private volatile Long latestHeartbeatTime;
+    /**
+     * 最近一次心跳的时间，0表示还没有心跳过
+     */
+    private volatile long latestHeartbeatTime;
+    /**
+     * 缓存的服务实例地址，生成快照的时候不用每次都拼接字符串
+     */
+    private String address;
 
     public ServiceInstance(String serviceName, String serviceInstanceIp, Integer serviceInstancePort) {
         this.serviceName = serviceName;
@@ -24,6 +38,7 @@ public class ServiceInstance {
 
     public void setServiceName(String serviceName) {
         this.serviceName = serviceName;
+        this.address = null;
     }
 
     public String getServiceInstanceIp() {
@@ -32,6 +47,7 @@ public class ServiceInstance {
 
     public void setServiceInstanceIp(String serviceInstanceIp) {
         this.serviceInstanceIp = serviceInstanceIp;
+        this.address = null;
     }
 
     public Integer getServiceInstancePort() {
@@ -40,22 +56,39 @@ public class ServiceInstance {
 
     public void setServiceInstancePort(Integer serviceInstancePort) {
         this.serviceInstancePort = serviceInstancePort;
+        this.address = null;
     }
 
     public String getServiceInstanceId() {
         return serviceName + "_" + serviceInstanceIp + "_" + serviceInstancePort;
     }
 
-    public Long getLatestHeartbeatTime() {
+    public long getLatestHeartbeatTime() {
         return latestHeartbeatTime;
     }
 
-    public void setLatestHeartbeatTime(Long latestHeartbeatTime) {
+    public void setLatestHeartbeatTime(long latestHeartbeatTime) {
         this.latestHeartbeatTime = latestHeartbeatTime;
     }
 
+    /**
+     * 服务实例打包成的long
+     * @return 没法打包的时候返回NO_KEY
+     */
+    public long getServiceInstanceKey() {
+        return getServiceInstanceKey(
+                ServiceNameDictionary.getInstance().intern(serviceName).getId(),
+                serviceInstanceIp,
+                serviceInstancePort);
+    }
+
     public String getAddress() {
-        return serviceName + "," + serviceInstanceIp + "," + serviceInstancePort;
+        String address = this.address;
+        if(address == null) {
+            address = serviceName + "," + serviceInstanceIp + "," + serviceInstancePort;
+            this.address = address;
+        }
+        return address;
     }
 
     @Override
@@ -80,6 +113,63 @@ public class ServiceInstance {
         return serviceName + "_" + serviceInstanceIp + "_" + serviceInstancePort;
     }
 
+    /**
+     * 把服务实例打包成一个long：服务名称id占高16位，IPv4地址占中间32位，端口号占低16位
+     *
+     * 心跳的时候用它来找服务实例，不用拼接字符串
+     * @param serviceNameId 服务名称字典分配的id
+     * @param serviceInstanceIp
+     * @param serviceInstancePort
+     * @return 没法打包的时候返回NO_KEY
+     */
+    public static long getServiceInstanceKey(int serviceNameId,
+                                             String serviceInstanceIp,
+                                             int serviceInstancePort) {
+        if(serviceNameId < 0 || serviceNameId > 0xFFFF ||
+                serviceInstancePort < 0 || serviceInstancePort > 0xFFFF) {
+            return NO_KEY;
+        }
+        long ip = parseIpv4(serviceInstanceIp);
+        if(ip < 0) {
+            return NO_KEY;
+        }
+        return ((long) serviceNameId << 48) | (ip << 16) | serviceInstancePort;
+    }
+
+    /**
+     * 解析点分十进制的IPv4地址
+     * @param ip
+     * @return 不是IPv4地址的时候返回-1
+     */
+    private static long parseIpv4(String ip) {
+        long result = 0;
+        int part = 0;
+        int digits = 0;
+        int parts = 0;
+        for(int i = 0; i < ip.length(); i++) {
+            char c = ip.charAt(i);
+            if(c == '.') {
+                if(digits == 0 || ++parts > 3) {
+                    return -1;
+                }
+                result = (result << 8) | part;
+                part = 0;
+                digits = 0;
+            } else if(c >= '0' && c <= '9') {
+                part = part * 10 + (c - '0');
+                if(++digits > 3 || part > 255) {
+                    return -1;
+                }
+            } else {
+                return -1;
+            }
+        }
+        if(digits == 0 || parts != 3) {
+            return -1;
+        }
+        return (result << 8) | part;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,214 @@
+package com.zhss.microservice.server.slot.registry;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * 基本类型数组实现的服务实例表：服务实例打包成的long -> 最近一次心跳的时间
+ *
+ * 服务实例很多的时候，每个服务实例一个map节点、一个拼接出来的服务实例id会给GC带来很大压力
+ * 这里整张表只有两个数组：开放寻址 + 线性探测的key数组，和同样下标的心跳时间数组
+ * 服务名称在服务名称字典里，IPv4地址和端口号打包在key里，不需要再单独存放字符串
+ * 心跳只加读锁，原子地写心跳时间；放入、删除、扩容加写锁
+ */
+public class ServiceInstanceTable {
+
+    /**
+     * 默认容量
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+    /**
+     * 最大负载因子
+     */
+    private static final float LOAD_FACTOR = 0.5f;
+    /**
+     * 空槽位的key，跟没法打包的服务实例用的是同一个值，不会出现在表里
+     */
+    private static final long EMPTY = ServiceInstance.NO_KEY;
+
+    /**
+     * 所有的key
+     */
+    private long[] keys;
+    /**
+     * 每个key对应的最近一次心跳时间
+     */
+    private AtomicLongArray heartbeatTimes;
+    /**
+     * 槽位数量减1，槽位数量是2的幂次
+     */
+    private int mask;
+    /**
+     * 服务实例数量
+     */
+    private int size = 0;
+    /**
+     * 服务实例数量超过这个值就扩容
+     */
+    private int resizeThreshold;
+    /**
+     * 保护上面所有的字段
+     */
+    private final StampedLock lock = new StampedLock();
+
+    public ServiceInstanceTable() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * 放入一个服务实例，已经有的话覆盖心跳时间
+     * @param key
+     * @param heartbeatTime
+     */
+    public void put(long key, long heartbeatTime) {
+        long stamp = lock.writeLock();
+        try {
+            int index = indexOf(key);
+            while(keys[index] != EMPTY) {
+                if(keys[index] == key) {
+                    heartbeatTimes.set(index, heartbeatTime);
+                    return;
+                }
+                index = (index + 1) & mask;
+            }
+
+            keys[index] = key;
+            heartbeatTimes.set(index, heartbeatTime);
+            if(++size > resizeThreshold) {
+                resize();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 更新一个服务实例的心跳时间
+     * @param key
+     * @param heartbeatTime
+     * @return 服务实例在不在表里
+     */
+    public boolean heartbeat(long key, long heartbeatTime) {
+        long stamp = lock.readLock();
+        try {
+            int index = find(key);
+            if(index < 0) {
+                return false;
+            }
+            heartbeatTimes.set(index, heartbeatTime);
+            return true;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 获取一个服务实例最近一次心跳的时间
+     * @param key
+     * @return 服务实例不在表里的时候返回0
+     */
+    public long getHeartbeatTime(long key) {
+        long stamp = lock.readLock();
+        try {
+            int index = find(key);
+            return index < 0 ? 0 : heartbeatTimes.get(index);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 删除一个服务实例
+     * @param key
+     * @return 服务实例在不在表里
+     */
+    public boolean remove(long key) {
+        long stamp = lock.writeLock();
+        try {
+            int index = find(key);
+            if(index < 0) {
+                return false;
+            }
+            keys[index] = EMPTY;
+            size--;
+            shiftBack(index);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int find(long key) {
+        int index = indexOf(key);
+        while(keys[index] != EMPTY) {
+            if(keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 删除一个服务实例之后，把后面探测链上的服务实例挪到空出来的位置
+     */
+    private void shiftBack(int emptyIndex) {
+        int index = (emptyIndex + 1) & mask;
+        while(keys[index] != EMPTY) {
+            int idealIndex = indexOf(keys[index]);
+            // 理想位置不在(emptyIndex, index]这个区间里的服务实例，才能挪到空位上去
+            if(((index - idealIndex) & mask) >= ((index - emptyIndex) & mask)) {
+                keys[emptyIndex] = keys[index];
+                heartbeatTimes.set(emptyIndex, heartbeatTimes.get(index));
+                keys[index] = EMPTY;
+                emptyIndex = index;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        AtomicLongArray oldHeartbeatTimes = heartbeatTimes;
+        allocate(oldKeys.length << 1);
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] == EMPTY) {
+                continue;
+            }
+            int index = indexOf(oldKeys[i]);
+            while(keys[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            heartbeatTimes.set(index, oldHeartbeatTimes.get(i));
+        }
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        this.heartbeatTimes = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+    }
+
+    /**
+     * 同一个服务的服务实例key的高位都一样，要打散开
+     */
+    private int indexOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+}
@@ -0,0 +1,258 @@
+package com.zhss.microservice.server.slot.registry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 一个服务的所有服务实例
+ *
+ * 写入的时候只修改按照服务实例id索引的map，版本号加1，同时记录一条变动
+ * 读取的时候才按需发布一个不可变的快照，快照最多每隔一个发布间隔重新生成一次
+ * 这样注册、摘除一个服务实例不需要复制整个列表，没有人读取的服务（比如副本）也不会生成快照
+ */
+public class ServiceInstances {
+
+    /**
+     * 服务名称
+     */
+    private final String serviceName;
+    /**
+     * 服务实例id -> 服务实例
+     */
+    private final Map<String, ServiceInstance> serviceInstances = new LinkedHashMap<>();
+    /**
+     * 最近的服务实例变动记录
+     */
+    private final ArrayDeque<ServiceDelta> deltaLog = new ArrayDeque<>();
+    /**
+     * 最多保留的变动记录数量
+     */
+    private final int deltaLogSize;
+    /**
+     * 快照的发布间隔
+     */
+    private final long publishIntervalMillis;
+    /**
+     * 当前版本号，每次服务实例变动加1
+     */
+    private volatile long version = 0;
+    /**
+     * 最近发布的快照
+     */
+    private volatile ServiceSnapshot snapshot;
+    /**
+     * 最近一次发布快照的时间
+     */
+    private long lastPublishTime = 0;
+    /**
+     * 最近一次推送服务变动通知的时间
+     */
+    private long lastNotifyTime = 0;
+    /**
+     * 是否已经安排了一次延迟推送
+     */
+    private boolean notifyScheduled = false;
+
+    public ServiceInstances(String serviceName, int deltaLogSize, long publishIntervalMillis) {
+        this.serviceName = serviceName;
+        this.deltaLogSize = deltaLogSize;
+        this.publishIntervalMillis = publishIntervalMillis;
+        this.snapshot = new ServiceSnapshot(0, new ArrayList<ServiceInstance>());
+    }
+
+    /**
+     * 添加一个服务实例，同一个服务实例重复注册的时候替换成新的对象
+     * @param serviceInstance
+     * @return 服务实例列表是否发生了变化
+     */
+    public synchronized boolean add(ServiceInstance serviceInstance) {
+        ServiceInstance previous = serviceInstances.put(
+                serviceInstance.getServiceInstanceId(), serviceInstance);
+        if(previous != null) {
+            return false;
+        }
+        appendDelta(ServiceDelta.ADDED, serviceInstance);
+        return true;
+    }
+
+    /**
+     * 摘除一个服务实例，只有当前注册的就是这个对象的时候才摘除
+     * @param serviceInstance
+     * @return 服务实例列表是否发生了变化
+     */
+    public synchronized boolean remove(ServiceInstance serviceInstance) {
+        // ServiceInstance的equals()只比较地址，这里必须比较是不是同一个对象
+        String serviceInstanceId = serviceInstance.getServiceInstanceId();
+        if(serviceInstances.get(serviceInstanceId) != serviceInstance) {
+            return false;
+        }
+        serviceInstances.remove(serviceInstanceId);
+        appendDelta(ServiceDelta.REMOVED, serviceInstance);
+        return true;
+    }
+
+    /**
+     * 当前注册的是不是这个对象
+     * @param serviceInstance
+     * @return
+     */
+    public synchronized boolean contains(ServiceInstance serviceInstance) {
+        return serviceInstances.get(serviceInstance.getServiceInstanceId()) == serviceInstance;
+    }
+
+    /**
+     * 按照服务实例id获取当前注册的服务实例
+     * @param serviceInstanceId
+     * @return
+     */
+    public synchronized ServiceInstance get(String serviceInstanceId) {
+        return serviceInstances.get(serviceInstanceId);
+    }
+
+    private void appendDelta(int type, ServiceInstance serviceInstance) {
+        version++;
+        deltaLog.offerLast(new ServiceDelta(version, type, serviceInstance.getAddress()));
+        while(deltaLog.size() > deltaLogSize) {
+            deltaLog.pollFirst();
+        }
+    }
+
+    /**
+     * 获取快照
+     *
+     * 距离上次发布还不到一个发布间隔的时候，返回的可能是旧版本的快照
+     * 调用方可以对比快照的版本号和getVersion()，再用getDeltasSince()补齐
+     * @param now
+     * @return
+     */
+    public ServiceSnapshot getSnapshot(long now) {
+        ServiceSnapshot current = snapshot;
+        if(current.getVersion() == version) {
+            return current;
+        }
+
+        synchronized(this) {
+            if(snapshot.getVersion() != version && now - lastPublishTime >= publishIntervalMillis) {
+                snapshot = new ServiceSnapshot(version, serviceInstances.values());
+                lastPublishTime = now;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 获取当前版本的快照，不受发布间隔的限制，持久化注册表快照的时候用
+     *
+     * 快照已经是最新版本的时候直接复用，不复制服务实例列表
+     * @param now
+     * @return
+     */
+    public ServiceSnapshot getLatestSnapshot(long now) {
+        ServiceSnapshot current = snapshot;
+        if(current.getVersion() == version) {
+            return current;
+        }
+
+        synchronized(this) {
+            if(snapshot.getVersion() != version) {
+                snapshot = new ServiceSnapshot(version, serviceInstances.values());
+                lastPublishTime = now;
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * 获取某个版本之后的所有变动
+     * @param fromVersion
+     * @return 变动列表，变动记录已经不够补齐这个版本的时候返回null，需要重新拉取完整快照
+     */
+    public synchronized List<ServiceDelta> getDeltasSince(long fromVersion) {
+        List<ServiceDelta> deltas = new ArrayList<>();
+        if(fromVersion >= version) {
+            return deltas;
+        }
+        if(deltaLog.isEmpty() || deltaLog.peekFirst().getVersion() > fromVersion + 1) {
+            return null;
+        }
+
+        Iterator<ServiceDelta> iterator = deltaLog.descendingIterator();
+        while(iterator.hasNext()) {
+            ServiceDelta delta = iterator.next();
+            if(delta.getVersion() <= fromVersion) {
+                break;
+            }
+            deltas.add(delta);
+        }
+        Collections.reverse(deltas);
+        return deltas;
+    }
+
+    /**
+     * 标记服务发生了变动，决定这次变动什么时候推送
+     * @param now
+     * @param windowMillis 合并窗口
+     * @param immediate 距离上次推送已经超过一个合并窗口的时候是否立即推送
+     * @return 0表示立即推送，大于0表示需要延迟这么多毫秒推送，小于0表示已经安排过延迟推送，合并到那一次
+     */
+    synchronized long markChanged(long now, long windowMillis, boolean immediate) {
+        if(notifyScheduled) {
+            return -1;
+        }
+        long delay = immediate ? lastNotifyTime + windowMillis - now : windowMillis;
+        if(delay <= 0) {
+            lastNotifyTime = now;
+            return 0;
+        }
+        notifyScheduled = true;
+        return delay;
+    }
+
+    /**
+     * 安排一次延迟推送
+     * @return 之前没有安排过，需要调用方真正去安排的时候返回true
+     */
+    synchronized boolean scheduleNotify() {
+        if(notifyScheduled) {
+            return false;
+        }
+        notifyScheduled = true;
+        return true;
+    }
+
+    /**
+     * 延迟推送开始执行，之后的变动重新安排推送
+     * @param now
+     */
+    synchronized void notifyStarted(long now) {
+        notifyScheduled = false;
+        lastNotifyTime = now;
+    }
+
+    /**
+     * 距离下一次可以发布快照的毫秒数
+     * @param now
+     * @return
+     */
+    synchronized long getPublishDelay(long now) {
+        return Math.max(0, lastPublishTime + publishIntervalMillis - now);
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public synchronized int size() {
+        return serviceInstances.size();
+    }
+
+}
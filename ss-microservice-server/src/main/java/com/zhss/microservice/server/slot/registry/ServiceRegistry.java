@@ -1,76 +1,217 @@
 package com.zhss.microservice.server.slot.registry;
 
+import com.zhss.microservice.common.entity.BatchHeartbeatRequest;
+import com.zhss.microservice.common.utils.LongObjectHashMap;
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.common.utils.TimerWheel;
 import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.node.persist.RegistryWriteAheadLog;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.StampedLock;
 
 /**
- * 服务注册表
+ * 服务注册表分片
+ *
+ * 每组连续的槽位有一个独立的分片，有自己的数据和心跳超时时间轮
+ * 分片之间不共享任何锁，分片也是槽位迁移和快照的基本单位
  */
 public class ServiceRegistry {
 
+    /**
+     * 心跳超时时间轮每个tick的毫秒数
+     */
+    private static final long HEARTBEAT_TIMEOUT_TICK_MILLIS = 1000L;
+    /**
+     * 心跳超时时间轮的槽位数量
+     */
+    private static final int HEARTBEAT_TIMEOUT_WHEEL_SIZE = 64;
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ServiceRegistry.class);
+
     boolean isReplica;
 
-    public ServiceRegistry(boolean isReplica) {
+    public ServiceRegistry(String name, boolean isReplica) {
+        this.name = name;
         this.isReplica = isReplica;
-        new HeartbeatCheckThread().start();
+        Configuration configuration = Configuration.getInstance();
+        this.heartbeatTimeoutMillis = configuration.getHeartbeatTimeoutPeriod() * 1000L;
+        this.deltaLogSize = configuration.getRegistryDeltaLogSize();
+        this.snapshotPublishIntervalMillis = configuration.getRegistrySnapshotPublishInterval();
+        if(configuration.getRegistryPrimitiveInstanceTable()) {
+            this.serviceInstanceTable = new ServiceInstanceTable();
+        }
+        HeartbeatExpiryScheduler.getInstance().register(this);
     }
 
     /**
-     * 服务注册表数据结构
+     * 注册表名称，用于日志和指标
+     */
+    private String name;
+
+    /**
+     * 服务注册表数据结构：服务名称 -> 服务实例
      */
-    private ConcurrentHashMap<String, List<ServiceInstance>> serviceRegistryData =
+    private ConcurrentHashMap<String, ServiceInstances> serviceRegistryData =
             new ConcurrentHashMap<>();
     private ConcurrentHashMap<String, ServiceInstance> serviceInstanceData =
             new ConcurrentHashMap<>();
     /**
-     * 服务变动监听器
+     * 服务实例打包成的long -> 服务实例，心跳的时候用，能打包成long的服务实例才会放进来
      */
-    private ConcurrentHashMap<String, List<ServiceChangedListener>> serviceChangedListenerData =
+    private LongObjectHashMap<ServiceInstance> serviceInstanceKeyData = new LongObjectHashMap<>();
+    /**
+     * 保护serviceInstanceKeyData，心跳只加读锁
+     */
+    private StampedLock serviceInstanceKeyLock = new StampedLock();
+    /**
+     * 开启了基本类型数组的服务实例表的时候，能打包成long的服务实例不再放进上面两个map，
+     * 心跳时间也只记录在这张表里，服务实例对象上的心跳时间不再更新
+     */
+    private ServiceInstanceTable serviceInstanceTable;
+    /**
+     * 服务变动监听器：服务名称 -> 客户端连接 -> 监听器，同一个连接对同一个服务只有一个监听器
+     */
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, ServiceChangedListener>> serviceChangedListenerData =
             new ConcurrentHashMap<>();
+    /**
+     * 按照心跳到期时间给服务实例分桶的时间轮
+     */
+    private TimerWheel<ServiceInstance> heartbeatTimeoutWheel = new TimerWheel<>(
+            HEARTBEAT_TIMEOUT_TICK_MILLIS, HEARTBEAT_TIMEOUT_WHEEL_SIZE, System.currentTimeMillis());
+    /**
+     * 心跳超时时间
+     */
+    private long heartbeatTimeoutMillis;
+    /**
+     * 心跳超时检查指标
+     */
+    private HeartbeatExpiryMetrics expiryMetrics = new HeartbeatExpiryMetrics();
+    /**
+     * 每个服务保留的变动记录数量
+     */
+    private int deltaLogSize;
+    /**
+     * 服务实例列表快照的发布间隔
+     */
+    private long snapshotPublishIntervalMillis;
 
     /**
      * 注册服务实例
      * @param serviceInstance
      */
     public void register(ServiceInstance serviceInstance) {
+        // 注册也算一次心跳，从注册的时候开始计算心跳超时
+        if(serviceInstance.getLatestHeartbeatTime() == 0) {
+            serviceInstance.setLatestHeartbeatTime(System.currentTimeMillis());
+        }
+
         // 在注册表里添加这个服务实例
-        List<ServiceInstance> serviceInstances = serviceRegistryData.get(
-                serviceInstance.getServiceName());
-        if(serviceInstances == null) {
-            synchronized (this) {
-                if(serviceInstances == null) {
-                    serviceInstances = new CopyOnWriteArrayList<>();
-                    serviceRegistryData.put(serviceInstance.getServiceName(), serviceInstances);
-                }
+        ServiceInstances serviceInstances = getServiceInstances(serviceInstance.getServiceName());
+        long serviceInstanceKey = serviceInstance.getServiceInstanceKey();
+        boolean changed;
+        long lsn;
+        // 跟摘除服务实例互斥，避免摘除旧对象的时候把新注册的服务实例也删掉，
+        // 同一个服务的注册、摘除写进预写日志的顺序也跟修改注册表的顺序一致
+        synchronized(serviceInstances) {
+            changed = serviceInstances.add(serviceInstance);
+            if(serviceInstanceTable != null && serviceInstanceKey != ServiceInstance.NO_KEY) {
+                serviceInstanceTable.put(serviceInstanceKey, serviceInstance.getLatestHeartbeatTime());
+            } else {
+                putServiceInstance(serviceInstance, serviceInstanceKey);
             }
+            lsn = appendRegister(serviceInstance);
         }
-        serviceInstances.add(serviceInstance);
+        heartbeatTimeoutWheel.add(serviceInstance,
+                serviceInstance.getLatestHeartbeatTime() + heartbeatTimeoutMillis);
 
-        serviceInstanceData.put(serviceInstance.getServiceInstanceId(),
-                serviceInstance);
+        // 注册记录刷盘以后才算注册成功，同一批注册共用一次刷盘
+        RegistryWriteAheadLog.getInstance().awaitDurable(lsn);
 
         // 调用服务变动监听器，执行回调通知逻辑
-        if(!isReplica) {
-            List<ServiceChangedListener> serviceChangedListeners =
-                    serviceChangedListenerData.get(serviceInstance.getServiceName());
-
-            if(serviceChangedListeners == null) {
-                synchronized (this) {
-                    if (serviceChangedListeners == null) {
-                        serviceChangedListeners = new CopyOnWriteArrayList<>();
-                        serviceChangedListenerData.put(serviceInstance.getServiceName(), serviceChangedListeners);
-                    }
+        if(changed) {
+            notifyServiceChanged(serviceInstance.getServiceName());
+        }
+    }
+
+    /**
+     * 摘除服务实例，恢复注册表的时候重放预写日志里的摘除记录用
+     * @param serviceName
+     * @param serviceInstanceIp
+     * @param serviceInstancePort
+     * @return 服务实例有没有注册过
+     */
+    public boolean remove(String serviceName,
+                          String serviceInstanceIp,
+                          int serviceInstancePort) {
+        ServiceInstances serviceInstances = getServiceInstances(serviceName);
+        ServiceInstance serviceInstance = serviceInstances.get(
+                ServiceInstance.getServiceInstanceId(serviceName, serviceInstanceIp, serviceInstancePort));
+        if(serviceInstance == null) {
+            return false;
+        }
+
+        synchronized(serviceInstances) {
+            if(!serviceInstances.remove(serviceInstance)) {
+                return false;
+            }
+            removeServiceInstance(serviceInstance);
+            appendRemove(serviceInstance, System.currentTimeMillis());
+        }
+
+        // 时间轮里剩下的旧对象到期的时候会被跳过
+        notifyServiceChanged(serviceName);
+        return true;
+    }
+
+    /**
+     * 把已经从ServiceInstances里摘掉的服务实例从心跳用的索引里删掉，调用方要持有ServiceInstances的锁
+     * @param serviceInstance
+     */
+    private void removeServiceInstance(ServiceInstance serviceInstance) {
+        long serviceInstanceKey = serviceInstance.getServiceInstanceKey();
+        if(serviceInstanceTable != null && serviceInstanceKey != ServiceInstance.NO_KEY) {
+            serviceInstanceTable.remove(serviceInstanceKey);
+            return;
+        }
+
+        serviceInstanceData.remove(serviceInstance.getServiceInstanceId(), serviceInstance);
+        if(serviceInstanceKey != ServiceInstance.NO_KEY) {
+            long stamp = serviceInstanceKeyLock.writeLock();
+            try {
+                if(serviceInstanceKeyData.get(serviceInstanceKey) == serviceInstance) {
+                    serviceInstanceKeyData.remove(serviceInstanceKey);
                 }
+            } finally {
+                serviceInstanceKeyLock.unlockWrite(stamp);
             }
+        }
+    }
+
+    private long appendRegister(ServiceInstance serviceInstance) {
+        return RegistryWriteAheadLog.getInstance().appendRegister(isReplica,
+                serviceInstance.getServiceName(), serviceInstance.getServiceInstanceIp(),
+                serviceInstance.getServiceInstancePort(), serviceInstance.getLatestHeartbeatTime());
+    }
+
+    private void appendRemove(ServiceInstance serviceInstance, long now) {
+        RegistryWriteAheadLog.getInstance().appendRemove(isReplica,
+                serviceInstance.getServiceName(), serviceInstance.getServiceInstanceIp(),
+                serviceInstance.getServiceInstancePort(), now);
+    }
 
-            for(ServiceChangedListener serviceChangedListener : serviceChangedListeners) {
-                serviceChangedListener.onChange(serviceInstance.getServiceName(),
-                        serviceRegistryData.get(serviceInstance.getServiceName()));
+    private void putServiceInstance(ServiceInstance serviceInstance, long serviceInstanceKey) {
+        serviceInstanceData.put(serviceInstance.getServiceInstanceId(),
+                serviceInstance);
+        if(serviceInstanceKey != ServiceInstance.NO_KEY) {
+            long stamp = serviceInstanceKeyLock.writeLock();
+            try {
+                serviceInstanceKeyData.put(serviceInstanceKey, serviceInstance);
+            } finally {
+                serviceInstanceKeyLock.unlockWrite(stamp);
             }
         }
     }
@@ -81,96 +222,312 @@ public class ServiceRegistry {
      * @param serviceInstanceIp
      * @param serviceInstancePort
      */
-    public void heartbeat(String serviceName,
-                          String serviceInstanceIp,
-                          Integer serviceInstancePort) {
-        String serviceInstanceId = ServiceInstance.getServiceInstanceId(
-                serviceName, serviceInstanceIp, serviceInstancePort
-        );
-        ServiceInstance serviceInstance = serviceInstanceData.get(serviceInstanceId);
-        serviceInstance.setLatestHeartbeatTime(new Date().getTime());
-        System.out.println("收到" + serviceInstanceId + "的心跳......");
+    public boolean heartbeat(String serviceName,
+                             String serviceInstanceIp,
+                             Integer serviceInstancePort) {
+        return heartbeat(ServiceNameDictionary.getInstance().intern(serviceName).getId(),
+                serviceName, serviceInstanceIp, serviceInstancePort, System.currentTimeMillis());
     }
 
     /**
-     * 服务订阅
+     * 服务实例进行心跳
+     *
+     * 能打包成long的服务实例直接按照long去找，不拼接字符串、不装箱，整个过程不分配内存
+     * @param serviceNameId 服务名称字典分配的id，不在字典里的是NO_ID
      * @param serviceName
-     * @return
+     * @param serviceInstanceIp
+     * @param serviceInstancePort
+     * @param now
+     * @return 服务实例有没有注册过
      */
-    public List<ServiceInstance> subscribe(String clientConnectionId, String serviceName) {
-        List<ServiceChangedListener> serviceChangedListeners =
-                serviceChangedListenerData.get(serviceName);
+    public boolean heartbeat(int serviceNameId,
+                             String serviceName,
+                             String serviceInstanceIp,
+                             int serviceInstancePort,
+                             long now) {
+        // 不是解码出来的心跳，或者服务名称字典满了
+        if(serviceNameId == ServiceNameDictionary.NO_ID) {
+            serviceNameId = ServiceNameDictionary.getInstance().intern(serviceName).getId();
+        }
+        long serviceInstanceKey = ServiceInstance.getServiceInstanceKey(
+                serviceNameId, serviceInstanceIp, serviceInstancePort);
+        if(serviceInstanceTable != null && serviceInstanceKey != ServiceInstance.NO_KEY) {
+            if(!serviceInstanceTable.heartbeat(serviceInstanceKey, now)) {
+                return false;
+            }
+        } else {
+            ServiceInstance serviceInstance = getServiceInstance(
+                    serviceInstanceKey, serviceName, serviceInstanceIp, serviceInstancePort);
+            if(serviceInstance == null) {
+                return false;
+            }
+            serviceInstance.setLatestHeartbeatTime(now);
+        }
 
-        if(serviceChangedListeners == null) {
-            synchronized (this) {
-                if (serviceChangedListeners == null) {
-                    serviceChangedListeners = new CopyOnWriteArrayList<>();
-                    serviceChangedListenerData.put(serviceName, serviceChangedListeners);
-                }
+        // 心跳默认不记录预写日志，开启抽样以后也不等待刷盘
+        RegistryWriteAheadLog.getInstance().appendHeartbeat(isReplica,
+                serviceName, serviceInstanceIp, serviceInstancePort, now);
+        return true;
+    }
+
+    private ServiceInstance getServiceInstance(long serviceInstanceKey,
+                                               String serviceName,
+                                               String serviceInstanceIp,
+                                               int serviceInstancePort) {
+        if(serviceInstanceKey == ServiceInstance.NO_KEY) {
+            return serviceInstanceData.get(ServiceInstance.getServiceInstanceId(
+                    serviceName, serviceInstanceIp, serviceInstancePort));
+        }
+
+        long stamp = serviceInstanceKeyLock.readLock();
+        try {
+            return serviceInstanceKeyData.get(serviceInstanceKey);
+        } finally {
+            serviceInstanceKeyLock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 一批服务实例进行心跳，整批只取一次当前时间
+     * @param entries 批量心跳请求里的所有心跳
+     * @param entryIndexes 属于这个注册表的心跳在entries里的下标
+     * @param failedEntries 没有注册过的服务实例，把下标放到这里
+     */
+    public void heartbeat(List<BatchHeartbeatRequest.Entry> entries,
+                          List<Integer> entryIndexes,
+                          List<Integer> failedEntries) {
+        long now = System.currentTimeMillis();
+
+        for(Integer entryIndex : entryIndexes) {
+            BatchHeartbeatRequest.Entry entry = entries.get(entryIndex);
+            if(!heartbeat(entry.getServiceNameId(), entry.getServiceName(),
+                    entry.getServiceInstanceIp(), entry.getServiceInstancePort(), now)) {
+                failedEntries.add(entryIndex);
             }
         }
+    }
+
+    /**
+     * 服务订阅
+     * @param serviceName
+     * @return
+     */
+    public ServiceSnapshot subscribe(String clientConnectionId, String serviceName) {
+        Map<String, ServiceChangedListener> serviceChangedListeners = serviceChangedListenerData.computeIfAbsent(
+                serviceName, key -> new ConcurrentHashMap<>());
 
-        serviceChangedListeners.add(new ServiceChangedListener(clientConnectionId));
+        // 先挂上监听器再读取快照，读取快照之前的变动都不会推送给它
+        // 同一个连接重复订阅的时候复用原来的监听器
+        ServiceChangedListener serviceChangedListener = serviceChangedListeners.computeIfAbsent(
+                clientConnectionId, key -> new ServiceChangedListener(key, Long.MAX_VALUE));
+        serviceChangedListener.resubscribe(Long.MAX_VALUE);
+        SubscriptionIndex.getInstance().add(clientConnectionId, serviceName, this);
 
-        return serviceRegistryData.get(serviceName);
+        ServiceInstances serviceInstances = getServiceInstances(serviceName);
+        ServiceSnapshot snapshot = serviceInstances.getSnapshot(System.currentTimeMillis());
+        serviceChangedListener.resubscribe(snapshot.getVersion());
+
+        // 快照比最新版本旧，可能是快照发布被限流了，也可能是读取快照之后又有了变动，补推一次
+        if(snapshot.getVersion() != serviceInstances.getVersion()) {
+            notifyServiceChanged(serviceName);
+        }
+        return snapshot;
     }
 
     /**
-     * 心跳检查线程
+     * 取消一个客户端连接对一个服务的订阅
+     * @param clientConnectionId
+     * @param serviceName
      */
-    class HeartbeatCheckThread extends Thread {
+    void unsubscribe(String clientConnectionId, String serviceName) {
+        Map<String, ServiceChangedListener> serviceChangedListeners =
+                serviceChangedListenerData.get(serviceName);
+        if(serviceChangedListeners != null) {
+            serviceChangedListeners.remove(clientConnectionId);
+        }
+    }
 
-        private final Logger LOGGER = LoggerFactory.getLogger(HeartbeatCheckThread.class);
+    /**
+     * 获取一个服务的订阅者数量
+     * @param serviceName
+     * @return
+     */
+    public int getSubscriberCount(String serviceName) {
+        Map<String, ServiceChangedListener> serviceChangedListeners =
+                serviceChangedListenerData.get(serviceName);
+        return serviceChangedListeners == null ? 0 : serviceChangedListeners.size();
+    }
 
-        @Override
-        public void run() {
-            Configuration configuration = Configuration.getInstance();
-            Integer heartbeatCheckInterval = configuration.getHeartbeatCheckInterval();
-            Integer heartbeatTimeoutPeriod = configuration.getHeartbeatTimeoutPeriod();
+    /**
+     * 获取一个服务的所有服务实例
+     * @param serviceName
+     * @return
+     */
+    public ServiceInstances getServiceInstances(String serviceName) {
+        return serviceRegistryData.computeIfAbsent(serviceName,
+                key -> new ServiceInstances(key, deltaLogSize, snapshotPublishIntervalMillis));
+    }
 
-            while(true) {
-                long now = new Date().getTime();
+    /**
+     * 通知一个服务的所有订阅者服务实例列表变了
+     *
+     * 交给服务变动通知调度器合并，一个合并窗口里的多次变动只推送一次最新的快照
+     * @param serviceName
+     */
+    private void notifyServiceChanged(String serviceName) {
+        if(isReplica) {
+            return;
+        }
+        Map<String, ServiceChangedListener> serviceChangedListeners =
+                serviceChangedListenerData.get(serviceName);
+        if(serviceChangedListeners == null || serviceChangedListeners.isEmpty()) {
+            return;
+        }
+        ServiceChangedNotifier.getInstance().serviceChanged(this, getServiceInstances(serviceName));
+    }
 
-                List<String> removeServiceInstanceIds = new ArrayList<String>();
-                Set<String> changedServiceNames = new HashSet<String>();
+    /**
+     * 把一个服务的快照推送给它的所有订阅者，由服务变动通知调度器调用
+     * @param serviceInstances
+     * @param snapshot
+     */
+    void pushServiceChanged(ServiceInstances serviceInstances, ServiceSnapshot snapshot) {
+        Map<String, ServiceChangedListener> serviceChangedListeners =
+                serviceChangedListenerData.get(serviceInstances.getServiceName());
+        if(serviceChangedListeners == null) {
+            return;
+        }
+        ServiceChangedPush push = new ServiceChangedPush(serviceInstances, snapshot);
+        for(ServiceChangedListener serviceChangedListener : serviceChangedListeners.values()) {
+            serviceChangedListener.onChange(push);
+        }
+    }
 
-                for(ServiceInstance serviceInstance : serviceInstanceData.values()) {
-                    if(now - serviceInstance.getLatestHeartbeatTime() > heartbeatTimeoutPeriod * 1000L) {
-                        List<ServiceInstance> serviceInstances =
-                                serviceRegistryData.get(serviceInstance.getServiceName());
-                        serviceInstances.remove(serviceInstance);
-                        removeServiceInstanceIds.add(serviceInstance.getServiceInstanceId());
-                        LOGGER.info("服务实例超过5s没有上报心跳，已经被摘除：" + serviceInstance);
+    /**
+     * 检查一个时间轮到期的服务实例是否真的心跳超时了
+     *
+     * 收到心跳的时候不会去移动时间轮里的服务实例，到期的时候再按照最新的心跳时间放回时间轮
+     * 这样每次检查只需要处理到期的那些槽，不用扫描整个注册表
+     * @param serviceInstance
+     * @param now
+     * @param changedServiceNames 被摘除的服务实例的服务名称
+     * @return 服务实例是否被摘除
+     */
+    private boolean expireServiceInstance(ServiceInstance serviceInstance,
+                                          long now,
+                                          Set<String> changedServiceNames) {
+        if(serviceInstanceTable != null) {
+            long serviceInstanceKey = serviceInstance.getServiceInstanceKey();
+            if(serviceInstanceKey != ServiceInstance.NO_KEY) {
+                return expireServiceInstance(serviceInstance, serviceInstanceKey, now, changedServiceNames);
+            }
+        }
 
-                        changedServiceNames.add(serviceInstance.getServiceName());
-                    }
-                }
+        ServiceInstances serviceInstances = getServiceInstances(serviceInstance.getServiceName());
+        long deadline;
+        boolean removed = false;
+        // 跟注册互斥：检查是不是同一个对象和摘除必须是原子的，否则可能摘掉刚重新注册的服务实例，
+        // 还会在新的注册记录后面多写一条摘除记录，重放预写日志的时候把活着的服务实例丢掉
+        synchronized(serviceInstances) {
+            // 已经被摘除或者重新注册过的服务实例，时间轮里剩下的是旧的对象
+            if(!serviceInstances.contains(serviceInstance)) {
+                return false;
+            }
+            deadline = serviceInstance.getLatestHeartbeatTime() + heartbeatTimeoutMillis;
+            if(now > deadline && serviceInstances.remove(serviceInstance)) {
+                removeServiceInstance(serviceInstance);
+                appendRemove(serviceInstance, now);
+                removed = true;
+            }
+        }
 
-                for(String serviceInstanceId : removeServiceInstanceIds) {
-                    serviceInstanceData.remove(serviceInstanceId);
-                }
+        if(now <= deadline) {
+            heartbeatTimeoutWheel.add(serviceInstance, deadline);
+            return false;
+        }
+        if(!removed) {
+            return false;
+        }
+        changedServiceNames.add(serviceInstance.getServiceName());
+        expiryMetrics.recordExpired(now - deadline);
+        return true;
+    }
 
-                // 调用服务变动监听器，执行回调通知逻辑
-                if(!isReplica) {
-                    for(String serviceName : changedServiceNames) {
-                        List<ServiceChangedListener> serviceChangedListeners =
-                                serviceChangedListenerData.get(serviceName);
-                        for(ServiceChangedListener serviceChangedListener : serviceChangedListeners) {
-                            serviceChangedListener.onChange(serviceName, serviceRegistryData.get(serviceName));
-                        }
-                    }
-                }
+    /**
+     * 检查一个心跳时间记录在服务实例表里的服务实例是否真的心跳超时了
+     */
+    private boolean expireServiceInstance(ServiceInstance serviceInstance,
+                                          long serviceInstanceKey,
+                                          long now,
+                                          Set<String> changedServiceNames) {
+        ServiceInstances serviceInstances = getServiceInstances(serviceInstance.getServiceName());
+        long deadline;
+        boolean removed = false;
+        synchronized(serviceInstances) {
+            // 已经被摘除或者重新注册过的服务实例，时间轮里剩下的是旧的对象
+            if(!serviceInstances.contains(serviceInstance)) {
+                return false;
+            }
+            deadline = serviceInstanceTable.getHeartbeatTime(serviceInstanceKey) + heartbeatTimeoutMillis;
+            if(now > deadline && serviceInstances.remove(serviceInstance)) {
+                serviceInstanceTable.remove(serviceInstanceKey);
+                appendRemove(serviceInstance, now);
+                removed = true;
+            }
+        }
 
-                removeServiceInstanceIds.clear();
-                changedServiceNames.clear();
+        if(now <= deadline) {
+            heartbeatTimeoutWheel.add(serviceInstance, deadline);
+            return false;
+        }
+        if(!removed) {
+            return false;
+        }
+        changedServiceNames.add(serviceInstance.getServiceName());
+        expiryMetrics.recordExpired(now - deadline);
+        return true;
+    }
 
-                try {
-                    Thread.sleep(heartbeatCheckInterval * 1000L);
-                } catch(InterruptedException e) {
-                    LOGGER.error("心跳检查线程遇到强制中断异常！！！", e);
-                }
+    /**
+     * 摘除心跳超时的服务实例，由心跳超时检查调度器定时调用
+     *
+     * 只处理心跳到期时间已经过去的那些槽
+     * @param now
+     */
+    void expireHeartbeatTimeouts(long now) {
+        Set<String> changedServiceNames = new HashSet<String>();
+
+        int visited = heartbeatTimeoutWheel.advance(now, serviceInstance -> {
+            if(expireServiceInstance(serviceInstance, now, changedServiceNames)) {
+                LOGGER.info("服务实例超过" + heartbeatTimeoutMillis + "ms没有上报心跳，已经被摘除：" + serviceInstance);
             }
+        });
+        expiryMetrics.recordCheck(now, visited);
+
+        // 调用服务变动监听器，执行回调通知逻辑
+        for(String serviceName : changedServiceNames) {
+            notifyServiceChanged(serviceName);
         }
     }
 
+    public String getName() {
+        return name;
+    }
+
+    public boolean isReplica() {
+        return isReplica;
+    }
+
+    /**
+     * 获取所有服务的服务实例，持久化注册表快照的时候用
+     * @return
+     */
+    public Collection<ServiceInstances> getAllServiceInstances() {
+        return Collections.unmodifiableCollection(serviceRegistryData.values());
+    }
+
+    public HeartbeatExpiryMetrics getExpiryMetrics() {
+        return expiryMetrics;
+    }
+
 }
@@ -0,0 +1,60 @@
+package com.zhss.microservice.server.slot.registry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 一个服务在某个版本的服务实例列表快照
+ *
+ * 快照发布之后就不会再修改了，可以被任意多个线程共享读取
+ */
+public class ServiceSnapshot {
+
+    /**
+     * 快照对应的版本号
+     */
+    private final long version;
+    /**
+     * 服务实例列表
+     */
+    private final List<ServiceInstance> serviceInstances;
+    /**
+     * 服务实例地址列表，所有订阅者共用这一份
+     */
+    private final List<String> serviceInstanceAddresses;
+
+    ServiceSnapshot(long version, Collection<ServiceInstance> serviceInstances) {
+        List<ServiceInstance> instances = new ArrayList<>(serviceInstances);
+        List<String> addresses = new ArrayList<>(instances.size());
+        for(ServiceInstance serviceInstance : instances) {
+            addresses.add(serviceInstance.getAddress());
+        }
+
+        this.version = version;
+        this.serviceInstances = Collections.unmodifiableList(instances);
+        this.serviceInstanceAddresses = Collections.unmodifiableList(addresses);
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public List<ServiceInstance> getServiceInstances() {
+        return serviceInstances;
+    }
+
+    public List<String> getServiceInstanceAddresses() {
+        return serviceInstanceAddresses;
+    }
+
+    @Override
+    public String toString() {
+        return "ServiceSnapshot{" +
+                "version=" + version +
+                ", serviceInstanceAddresses=" + serviceInstanceAddresses +
+                '}';
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.zhss.microservice.server.slot.registry;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 订阅关系索引：客户端连接 -> 订阅的服务
+ *
+ * 服务 -> 订阅的客户端连接在每个服务注册表分片里，这里记录反向的索引和服务所在的分片
+ * 客户端断开连接的时候只需要清理这个连接订阅过的服务，不用扫描所有的分片
+ */
+public class SubscriptionIndex {
+
+    private SubscriptionIndex() {
+
+    }
+
+    static class Singleton {
+        static SubscriptionIndex instance = new SubscriptionIndex();
+    }
+
+    public static SubscriptionIndex getInstance() {
+        return Singleton.instance;
+    }
+
+    /**
+     * 客户端连接 -> 订阅的服务名称 -> 服务所在的服务注册表分片
+     */
+    private ConcurrentHashMap<String, Map<String, ServiceRegistry>> connectionSubscriptions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * 记录一个订阅关系，同一个连接重复订阅同一个服务只记录一次
+     * @param clientConnectionId
+     * @param serviceName
+     * @param serviceRegistry
+     */
+    void add(String clientConnectionId, String serviceName, ServiceRegistry serviceRegistry) {
+        // 在compute里修改，跟断开连接时的remove互斥，不会写进一个已经被摘掉的map
+        connectionSubscriptions.compute(clientConnectionId, (key, subscriptions) -> {
+            if(subscriptions == null) {
+                subscriptions = new HashMap<>();
+            }
+            subscriptions.put(serviceName, serviceRegistry);
+            return subscriptions;
+        });
+    }
+
+    /**
+     * 客户端连接断开了，取消它所有的订阅
+     * @param clientConnectionId
+     * @return 取消的订阅数量
+     */
+    public int removeConnection(String clientConnectionId) {
+        Map<String, ServiceRegistry> subscriptions = connectionSubscriptions.remove(clientConnectionId);
+        if(subscriptions == null) {
+            return 0;
+        }
+        for(Map.Entry<String, ServiceRegistry> subscription : subscriptions.entrySet()) {
+            subscription.getValue().unsubscribe(clientConnectionId, subscription.getKey());
+        }
+        return subscriptions.size();
+    }
+
+    /**
+     * 获取一个客户端连接订阅的服务数量
+     * @param clientConnectionId
+     * @return
+     */
+    public int getSubscriptionCount(String clientConnectionId) {
+        Map<String, ServiceRegistry> subscriptions = connectionSubscriptions.get(clientConnectionId);
+        return subscriptions == null ? 0 : subscriptions.size();
+    }
+
+    /**
+     * 获取有订阅的客户端连接数量
+     * @return
+     */
+    public int getConnectionCount() {
+        return connectionSubscriptions.size();
+    }
+
+}
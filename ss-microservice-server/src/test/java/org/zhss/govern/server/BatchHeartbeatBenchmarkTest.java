@@ -0,0 +1,96 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.BatchHeartbeatRequest;
+import com.zhss.microservice.common.entity.HeartbeatRequest;
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.network.ByteBufferPool;
+import com.zhss.microservice.common.network.MessageDecoder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量心跳的压测程序
+ *
+ * 用法：BatchHeartbeatBenchmarkTest [服务实例数量] [心跳周期数量]
+ * 对比一台机器上的多个服务实例每个周期逐个发送心跳和合并成一个批量心跳的帧数量、字节数、编解码耗时
+ */
+public class BatchHeartbeatBenchmarkTest {
+
+    private static int decodedEntries = 0;
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int intervals = args.length > 1 ? Integer.parseInt(args[1]) : 50000;
+
+        for(int round = 0; round < 3; round++) {
+            long singleBytes = 0;
+            long start = System.nanoTime();
+            for(int i = 0; i < intervals; i++) {
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                for(int j = 0; j < instances; j++) {
+                    HeartbeatRequest request = new HeartbeatRequest.Builder()
+                            .serviceName("SERVICE-" + j)
+                            .serviceInstanceIp("192.168.0.1")
+                            .serviceInstancePort(8080)
+                            .build();
+                    write(stream, request);
+                }
+                singleBytes += decode(stream, instances);
+            }
+            long singleElapsed = System.nanoTime() - start;
+
+            long batchBytes = 0;
+            start = System.nanoTime();
+            for(int i = 0; i < intervals; i++) {
+                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                BatchHeartbeatRequest.Builder requestBuilder = new BatchHeartbeatRequest.Builder();
+                for(int j = 0; j < instances; j++) {
+                    requestBuilder.heartbeat("SERVICE-" + j, "192.168.0.1", 8080);
+                }
+                write(stream, requestBuilder.build());
+                batchBytes += decode(stream, 1);
+                if(i == 0 && decodedEntries != instances) {
+                    throw new IllegalStateException("批量心跳解析出的服务实例数量不对：" + decodedEntries);
+                }
+            }
+            long batchElapsed = System.nanoTime() - start;
+
+            if(round == 0) {
+                continue;
+            }
+            System.out.printf("single: %d frames/interval, %d bytes/interval, %.1f us/interval%n",
+                    instances, singleBytes / intervals, singleElapsed / 1000.0 / intervals);
+            System.out.printf("batch:  1 frame/interval, %d bytes/interval, %.1f us/interval%n",
+                    batchBytes / intervals, batchElapsed / 1000.0 / intervals);
+        }
+    }
+
+    private static void write(ByteArrayOutputStream stream, Message message) {
+        ByteBuffer data = message.getData();
+        stream.write(data.array(), data.position(), data.remaining());
+    }
+
+    /**
+     * 解析一个心跳周期发送的所有数据
+     * @return 数据字节数
+     */
+    private static int decode(ByteArrayOutputStream stream, int expectedMessages) throws Exception {
+        byte[] bytes = stream.toByteArray();
+        MessageDecoder messageDecoder = new MessageDecoder(new ByteBufferPool(64 * 1024, 8, false));
+        List<Message> messages = new ArrayList<>();
+        messageDecoder.read(Channels.newChannel(new ByteArrayInputStream(bytes)), messages);
+        if(messages.size() != expectedMessages) {
+            throw new IllegalStateException("解析出的消息数量不对：" + messages.size());
+        }
+        if(messages.get(0) instanceof BatchHeartbeatRequest) {
+            decodedEntries = ((BatchHeartbeatRequest) messages.get(0)).getEntries().size();
+        }
+        return bytes.length;
+    }
+
+}
@@ -0,0 +1,105 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.HeartbeatRequest;
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.server.node.network.ClientConnection;
+import com.zhss.microservice.server.node.network.ClientNetworkIOThread;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端连接读取消息的内存分配压测程序
+ *
+ * 用法：ClientConnectionReadBenchmarkTest [心跳请求数量]
+ * 通过本地socket不停的发送心跳请求，统计读取线程平均每条消息分配了多少字节的内存
+ */
+public class ClientConnectionReadBenchmarkTest {
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+        ClientNetworkIOThread networkIOThread = new ClientNetworkIOThread(0, serverSocketChannel);
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        for(int round = 0; round < 2; round++) {
+            Socket socket = new Socket("127.0.0.1", serverSocketChannel.socket().getLocalPort());
+            SocketChannel socketChannel = serverSocketChannel.accept();
+            socketChannel.configureBlocking(false);
+            ClientConnection clientConnection = new ClientConnection(socketChannel, null, networkIOThread);
+            startWriteThread(socket, messages);
+
+            long startAllocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+
+            List<Message> readMessages = new ArrayList<>();
+            int readCount = 0;
+            while(readCount < messages) {
+                clientConnection.readMessages(readMessages);
+                readCount += readMessages.size();
+                readMessages.clear();
+            }
+
+            long elapsed = System.nanoTime() - start;
+            long allocated = threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - startAllocated;
+
+            socket.close();
+            socketChannel.close();
+
+            if(round == 0) {
+                continue;
+            }
+            System.out.printf("messages=%d, allocated=%.1f MB, %.0f bytes/msg, %.0f msg/s%n",
+                    messages,
+                    allocated / 1024.0 / 1024.0,
+                    allocated * 1.0 / messages,
+                    messages * 1000000000.0 / elapsed);
+        }
+
+        serverSocketChannel.close();
+    }
+
+    private static void startWriteThread(Socket socket, int messages) {
+        new Thread(() -> {
+            try {
+                ByteBuffer data = new HeartbeatRequest.Builder()
+                        .serviceName("ORDER-SERVICE")
+                        .serviceInstanceIp("192.168.0.1")
+                        .serviceInstancePort(8080)
+                        .build()
+                        .getData();
+                byte[] requestBytes = new byte[data.remaining()];
+                data.get(requestBytes);
+
+                int requestsPerWrite = 256;
+                byte[] batchBytes = new byte[requestBytes.length * requestsPerWrite];
+                for(int i = 0; i < requestsPerWrite; i++) {
+                    System.arraycopy(requestBytes, 0, batchBytes, i * requestBytes.length, requestBytes.length);
+                }
+
+                OutputStream outputStream = socket.getOutputStream();
+                int written = 0;
+                while(written < messages) {
+                    int count = Math.min(requestsPerWrite, messages - written);
+                    outputStream.write(batchBytes, 0, count * requestBytes.length);
+                    written += count;
+                }
+                outputStream.flush();
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        }).start();
+    }
+
+}
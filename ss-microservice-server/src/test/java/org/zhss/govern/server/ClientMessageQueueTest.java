@@ -0,0 +1,99 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.entity.ServiceChangedRequest;
+import com.zhss.microservice.common.entity.SharedBodyRequest;
+import com.zhss.microservice.common.entity.SharedRequestBody;
+import com.zhss.microservice.server.node.network.ClientMessageQueue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 客户端连接发送队列的测试程序
+ *
+ * 用法：ClientMessageQueueTest [推送次数] [服务数量]
+ * 先校验超过上限以后同一个服务的推送只保留最新的一次、队列降下来以后按顺序放回队列、慢客户端的判断
+ * 再模拟一个不读数据的客户端持续收到服务变动推送，对比没有上限的队列和有上限的队列堆积的字节数
+ */
+public class ClientMessageQueueTest {
+
+    public static void main(String[] args) {
+        int pushes = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int services = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        verify();
+
+        // 不读数据的客户端订阅了多个服务，每个服务2000个服务实例
+        List<SharedRequestBody> bodies = new ArrayList<>();
+        for(int i = 0; i < services; i++) {
+            bodies.add(body("SERVICE-" + i, 2000, i));
+        }
+        ClientMessageQueue unbounded = new ClientMessageQueue(Integer.MAX_VALUE, Long.MAX_VALUE);
+        ClientMessageQueue bounded = new ClientMessageQueue(10000, 16 * 1024 * 1024);
+        for(int i = 0; i < pushes; i++) {
+            int service = i % services;
+            unbounded.offerServiceChanged("SERVICE-" + service, push(bodies.get(service)));
+            bounded.offerServiceChanged("SERVICE-" + service, push(bodies.get(service)));
+        }
+        check(bounded.getMessageBytes() < 16 * 1024 * 1024 + bodies.get(0).length() + 64, "队列字节数不超过上限");
+        check(bounded.getPendingServiceChangeCount() <= services, "每个服务最多暂存一次推送");
+
+        System.out.println("pushes=" + pushes + " services=" + services);
+        System.out.println("unbounded: " + unbounded);
+        System.out.println("bounded:   " + bounded);
+    }
+
+    private static void verify() {
+        ClientMessageQueue queue = new ClientMessageQueue(4, Long.MAX_VALUE);
+        SharedRequestBody a = body("A", 3, 1);
+        SharedRequestBody b = body("B", 3, 1);
+
+        for(int i = 0; i < 4; i++) {
+            check(queue.offerServiceChanged("A", push(a)), "没有超过上限直接进入队列");
+        }
+        check(queue.isCongested(), "超过上限");
+
+        Message latestA = push(a);
+        check(!queue.offerServiceChanged("A", push(a)), "超过上限暂存");
+        check(!queue.offerServiceChanged("B", push(b)), "超过上限暂存");
+        check(!queue.offerServiceChanged("A", latestA), "超过上限暂存");
+        check(queue.getPendingServiceChangeCount() == 2 && queue.getCollapsedCount() == 1, "同一个服务只保留最新的一次");
+
+        check(!queue.checkSlowConsumer(1000, 500), "刚开始超过上限");
+        check(!queue.checkSlowConsumer(1400, 500), "还没有超过断开时间");
+        check(queue.checkSlowConsumer(1600, 500), "持续超过上限");
+
+        // 发送了两条消息，队列降下来了
+        queue.poll();
+        queue.poll();
+        check(queue.drainPendingServiceChanges(), "暂存的推送放回队列");
+        check(queue.size() == 4 && queue.getPendingServiceChangeCount() == 0, "按顺序放回队列");
+        queue.poll();
+        queue.poll();
+        check(queue.poll() == latestA, "放回的是最新的推送");
+        check(!queue.checkSlowConsumer(2000, 500), "降到上限以下");
+        check(queue.offerServiceChanged("A", push(a)), "不拥塞了直接进入队列");
+    }
+
+    private static SharedRequestBody body(String serviceName, int instances, long version) {
+        List<String> addresses = new ArrayList<>();
+        for(int i = 0; i < instances; i++) {
+            addresses.add(serviceName + ",10.0." + (i >> 8 & 255) + "." + (i & 255) + ",8080");
+        }
+        return ServiceChangedRequest.sharedBody(2, serviceName, addresses, version);
+    }
+
+    private static Message push(SharedRequestBody body) {
+        return new SharedBodyRequest.Builder()
+                .sharedBody(body)
+                .build();
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.FetchServerNodeIdRequest;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.node.network.ClientNIOServer;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 客户端NIO服务器的压测程序
+ *
+ * 用法：ClientNIOServerBenchmarkTest [reactor线程数] [客户端连接数] [压测秒数] [pipeline深度]
+ * 先让所有客户端连接空闲一段时间，统计服务端空闲时的cpu占用
+ * 然后每个客户端连接都会连续发送一批拉取server节点id的请求，再等待这一批请求的响应
+ */
+public class ClientNIOServerBenchmarkTest {
+
+    private static final int PORT = 19600;
+    private static final long IDLE_MILLIS = 3000L;
+
+    public static void main(String[] args) throws Exception {
+        int reactorThreads = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int clients = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int pipeline = args.length > 3 ? Integer.parseInt(args[3]) : 16;
+
+        Configuration configuration = Configuration.getInstance();
+        configuration.parse(writeConfig(reactorThreads).getAbsolutePath());
+        ClientNIOServer.getInstance().start();
+        Thread.sleep(500);
+
+        Socket[] sockets = new Socket[clients];
+        for(int i = 0; i < clients; i++) {
+            sockets[i] = new Socket("127.0.0.1", PORT);
+            sockets[i].setTcpNoDelay(true);
+        }
+        double idleCpu = measureIdleCpu();
+
+        AtomicLong completed = new AtomicLong();
+        long[][] latencies = new long[clients][];
+        CountDownLatch finished = new CountDownLatch(clients);
+        long deadline = System.nanoTime() + seconds * 1000_000_000L;
+
+        for(int i = 0; i < clients; i++) {
+            final int index = i;
+            new Thread(() -> {
+                try {
+                    latencies[index] = runClient(sockets[index], deadline, pipeline, completed);
+                } catch(Exception e) {
+                    e.printStackTrace();
+                    latencies[index] = new long[0];
+                } finally {
+                    finished.countDown();
+                }
+            }).start();
+        }
+
+        finished.await();
+
+        int total = 0;
+        for(long[] clientLatencies : latencies) {
+            total += clientLatencies.length;
+        }
+        long[] allLatencies = new long[total];
+        int offset = 0;
+        for(long[] clientLatencies : latencies) {
+            System.arraycopy(clientLatencies, 0, allLatencies, offset, clientLatencies.length);
+            offset += clientLatencies.length;
+        }
+        Arrays.sort(allLatencies);
+
+        System.out.println("reactors=" + reactorThreads + ", clients=" + clients + ", pipeline=" + pipeline);
+        System.out.printf("idle cpu=%.1f%% of one core%n", idleCpu);
+        System.out.println("throughput=" + (completed.get() / seconds) + " req/s");
+        if(allLatencies.length > 0) {
+            System.out.println("batch p50=" + allLatencies[allLatencies.length / 2] / 1000 + "us, p99=" +
+                    allLatencies[(int) (allLatencies.length * 0.99)] / 1000 + "us");
+        }
+        System.exit(0);
+    }
+
+    /**
+     * 统计所有客户端连接都空闲的时候，进程的cpu占用
+     * @return 占用一个cpu核的百分比
+     */
+    private static double measureIdleCpu() throws Exception {
+        com.sun.management.OperatingSystemMXBean operatingSystem =
+                (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long startCpu = operatingSystem.getProcessCpuTime();
+        long start = System.nanoTime();
+        Thread.sleep(IDLE_MILLIS);
+        return (operatingSystem.getProcessCpuTime() - startCpu) * 100.0 / (System.nanoTime() - start);
+    }
+
+    private static long[] runClient(Socket socket, long deadline, int pipeline, AtomicLong completed) throws Exception {
+        OutputStream outputStream = socket.getOutputStream();
+        DataInputStream inputStream = new DataInputStream(socket.getInputStream());
+
+        long[] latencies = new long[1024];
+        int count = 0;
+
+        while(System.nanoTime() < deadline) {
+            long start = System.nanoTime();
+            for(int i = 0; i < pipeline; i++) {
+                FetchServerNodeIdRequest request = new FetchServerNodeIdRequest.Builder().build();
+                outputStream.write(request.getData().array());
+            }
+            outputStream.flush();
+
+            for(int i = 0; i < pipeline; i++) {
+                inputStream.readInt();
+                byte[] body = new byte[inputStream.readInt()];
+                inputStream.readFully(body);
+            }
+            completed.addAndGet(pipeline);
+
+            if(count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = System.nanoTime() - start;
+        }
+
+        socket.close();
+        return Arrays.copyOf(latencies, count);
+    }
+
+    private static File writeConfig(int reactorThreads) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.NODE_ID, "1");
+        properties.setProperty(Configuration.NODE_IP, "127.0.0.1");
+        properties.setProperty(Configuration.NODE_INTERN_TCP_PORT, "19601");
+        properties.setProperty(Configuration.NODE_CLIENT_HTTP_PORT, "19602");
+        properties.setProperty(Configuration.NODE_CLIENT_TCP_PORT, String.valueOf(PORT));
+        properties.setProperty(Configuration.IS_CONTROLLER_CANDIDATE, "false");
+        properties.setProperty(Configuration.DATA_DIR,
+                new File(System.getProperty("java.io.tmpdir"), "ss-microservice-benchmark").getAbsolutePath());
+        properties.setProperty(Configuration.CONTROLLER_CANDIDATE_SERVERS, "127.0.0.1:19601");
+        properties.setProperty(Configuration.CLIENT_REACTOR_THREADS, String.valueOf(reactorThreads));
+
+        File configFile = File.createTempFile("ss-microservice-benchmark", ".properties");
+        configFile.deleteOnExit();
+        try(FileOutputStream outputStream = new FileOutputStream(configFile)) {
+            properties.store(outputStream, null);
+        }
+        return configFile;
+    }
+
+}
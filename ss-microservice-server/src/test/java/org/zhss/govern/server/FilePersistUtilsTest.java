@@ -0,0 +1,132 @@
+package org.zhss.govern.server;
+
+import com.alibaba.fastjson.JSONObject;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.node.persist.FilePersistUtils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 元数据文件持久化和加载的测试程序
+ *
+ * 用法：FilePersistUtilsTest [持久化次数]
+ * 校验持久化以后能原样加载、类型化加载出来的key是Integer、文件损坏和不完整的时候返回null、
+ * 宕机留下的临时文件不影响原来的文件，最后统计一次持久化（两次刷盘加一次改名）的平均耗时
+ */
+public class FilePersistUtilsTest {
+
+    public static void main(String[] args) throws Exception {
+        int persists = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+
+        File dataDir = new File(System.getProperty("java.io.tmpdir"),
+                "ss-microservice-metadata-" + System.nanoTime());
+        Configuration.getInstance().parse(writeConfig(dataDir).getAbsolutePath());
+
+        check(FilePersistUtils.load("slots_allocation") == null, "文件不存在");
+
+        ConcurrentHashMap<Integer, List<String>> slotsAllocation = new ConcurrentHashMap<>();
+        slotsAllocation.put(1, Arrays.asList("1,5461"));
+        slotsAllocation.put(2, Arrays.asList("5462,10922"));
+        slotsAllocation.put(3, Arrays.asList("10923,16384"));
+        check(FilePersistUtils.persist(JSONObject.toJSONString(slotsAllocation).getBytes(), "slots_allocation"), "持久化");
+        check(!new File(dataDir, "slots_allocation.tmp").exists(), "临时文件已经改名");
+
+        Map<Integer, List<String>> loaded = FilePersistUtils.loadSlotsAllocation("slots_allocation");
+        check(slotsAllocation.equals(loaded), "原样加载槽位分配数据");
+        check(loaded.get(2).get(0).equals("5462,10922"), "按照Integer类型的节点id获取");
+
+        ConcurrentHashMap<Integer, Integer> replicaNodeIds = new ConcurrentHashMap<>();
+        replicaNodeIds.put(1, 2);
+        replicaNodeIds.put(2, 3);
+        FilePersistUtils.persist(JSONObject.toJSONString(replicaNodeIds).getBytes(), "replica_node_ids");
+        check(replicaNodeIds.equals(FilePersistUtils.loadReplicaNodeIds("replica_node_ids")), "加载副本节点id");
+
+        List<String> nodeSlots = Arrays.asList("1,5461", "10923,16384");
+        FilePersistUtils.persist(JSONObject.toJSONString(nodeSlots).getBytes(), "node_slots");
+        check(nodeSlots.equals(FilePersistUtils.loadSlotScopes("node_slots")), "加载槽位范围列表");
+
+        // 宕机留下一个写了一半的临时文件，原来的文件不受影响，下一次持久化也能正常覆盖
+        try(FileOutputStream outputStream = new FileOutputStream(new File(dataDir, "node_slots.tmp"))) {
+            outputStream.write(new byte[] {1, 2, 3});
+        }
+        check(nodeSlots.equals(FilePersistUtils.loadSlotScopes("node_slots")), "临时文件不影响原来的文件");
+        List<String> newNodeSlots = Arrays.asList("1,8192");
+        check(FilePersistUtils.persist(JSONObject.toJSONString(newNodeSlots).getBytes(), "node_slots"), "覆盖临时文件");
+        check(newNodeSlots.equals(FilePersistUtils.loadSlotScopes("node_slots")), "加载新的数据");
+
+        // 数据被改了一个字节
+        File file = new File(dataDir, "slots_allocation");
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(randomAccessFile.length() - 2);
+            randomAccessFile.write('9');
+        }
+        check(FilePersistUtils.load("slots_allocation") == null, "校验和对不上");
+        check(FilePersistUtils.loadSlotsAllocation("slots_allocation") == null, "校验和对不上的时候类型化加载也返回null");
+
+        // 文件被截断了
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(20);
+        }
+        check(FilePersistUtils.load("slots_allocation") == null, "文件不完整");
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.setLength(5);
+        }
+        check(FilePersistUtils.load("slots_allocation") == null, "连文件头都不完整");
+
+        byte[] bytes = JSONObject.toJSONString(slotsAllocation).getBytes();
+        long start = System.nanoTime();
+        for(int i = 0; i < persists; i++) {
+            check(FilePersistUtils.persist(bytes, "slots_allocation"), "持久化");
+        }
+        long persistNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for(int i = 0; i < persists; i++) {
+            check(FilePersistUtils.loadSlotsAllocation("slots_allocation") != null, "加载");
+        }
+        long loadNanos = System.nanoTime() - start;
+
+        System.out.printf("persist %.3f ms/op, load %.3f ms/op (%d bytes)%n",
+                persistNanos / 1e6 / persists, loadNanos / 1e6 / persists, bytes.length);
+
+        File[] files = dataDir.listFiles();
+        if(files != null) {
+            for(File dataFile : files) {
+                dataFile.delete();
+            }
+        }
+        dataDir.delete();
+    }
+
+    private static File writeConfig(File dataDir) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.NODE_ID, "1");
+        properties.setProperty(Configuration.NODE_IP, "127.0.0.1");
+        properties.setProperty(Configuration.NODE_INTERN_TCP_PORT, "19601");
+        properties.setProperty(Configuration.NODE_CLIENT_HTTP_PORT, "19602");
+        properties.setProperty(Configuration.NODE_CLIENT_TCP_PORT, "19603");
+        properties.setProperty(Configuration.IS_CONTROLLER_CANDIDATE, "false");
+        properties.setProperty(Configuration.DATA_DIR, dataDir.getAbsolutePath());
+        properties.setProperty(Configuration.CONTROLLER_CANDIDATE_SERVERS, "127.0.0.1:19601");
+
+        File configFile = File.createTempFile("ss-microservice-metadata", ".properties");
+        configFile.deleteOnExit();
+        try(FileOutputStream outputStream = new FileOutputStream(configFile)) {
+            properties.store(outputStream, null);
+        }
+        return configFile;
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
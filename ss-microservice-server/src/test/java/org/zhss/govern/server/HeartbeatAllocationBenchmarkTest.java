@@ -0,0 +1,110 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 心跳处理分配内存的测试程序
+ *
+ * 用法：HeartbeatAllocationBenchmarkTest [服务实例数量] [心跳次数]
+ * 先校验按照long找服务实例、找不到服务实例、不是IPv4地址的服务实例都能正确处理心跳
+ * 再对比原来拼接服务实例id、new Date、装箱心跳时间的处理方式和现在的处理方式每次心跳分配的字节数
+ */
+public class HeartbeatAllocationBenchmarkTest {
+
+    private static final int SERVICES = 100;
+
+    public static void main(String[] args) {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int heartbeats = args.length > 1 ? Integer.parseInt(args[1]) : 5000000;
+
+        ServiceRegistry serviceRegistry = new ServiceRegistry("heartbeat-test", false);
+        ConcurrentHashMap<String, ServiceInstance> serviceInstanceData = new ConcurrentHashMap<>();
+        ConcurrentHashMap<String, Long> latestHeartbeatTimes = new ConcurrentHashMap<>();
+
+        String[] serviceNames = new String[instances];
+        int[] serviceNameIds = new int[instances];
+        String[] serviceInstanceIps = new String[instances];
+        ServiceInstance[] serviceInstances = new ServiceInstance[instances];
+        for(int i = 0; i < instances; i++) {
+            serviceNames[i] = "SERVICE-" + (i % SERVICES);
+            serviceNameIds[i] = ServiceNameDictionary.getInstance().intern(serviceNames[i]).getId();
+            serviceInstanceIps[i] = "10.0." + (i >> 8 & 255) + "." + (i & 255);
+            serviceInstances[i] = new ServiceInstance(serviceNames[i], serviceInstanceIps[i], 8080);
+            serviceRegistry.register(serviceInstances[i]);
+            serviceInstanceData.put(serviceInstances[i].getServiceInstanceId(), serviceInstances[i]);
+        }
+
+        verify(serviceRegistry, serviceNames[1], serviceNameIds[1], serviceInstanceIps[1], serviceInstances[1]);
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        for(int round = 0; round < 3; round++) {
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for(int i = 0; i < heartbeats; i++) {
+                int n = i % instances;
+                // 原来的处理方式，去掉了打印日志
+                String serviceInstanceId = ServiceInstance.getServiceInstanceId(
+                        serviceNames[n], serviceInstanceIps[n], 8080);
+                serviceInstanceData.get(serviceInstanceId);
+                latestHeartbeatTimes.put(serviceInstanceId, new Date().getTime());
+            }
+            long oldNanos = System.nanoTime() - start;
+            long oldBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            for(int i = 0; i < heartbeats; i++) {
+                int n = i % instances;
+                serviceRegistry.heartbeat(serviceNameIds[n], serviceNames[n],
+                        serviceInstanceIps[n], 8080, System.currentTimeMillis());
+            }
+            long newNanos = System.nanoTime() - start;
+            long newBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            System.out.printf("round %d: instances=%d, string id %.1f ns/op %.1f B/op, long key %.1f ns/op %.2f B/op%n",
+                    round, instances,
+                    (double) oldNanos / heartbeats, (double) oldBytes / heartbeats,
+                    (double) newNanos / heartbeats, (double) newBytes / heartbeats);
+        }
+    }
+
+    private static void verify(ServiceRegistry serviceRegistry,
+                               String serviceName,
+                               int serviceNameId,
+                               String serviceInstanceIp,
+                               ServiceInstance serviceInstance) {
+        check(ServiceInstance.getServiceInstanceKey(serviceNameId, "10.0.0.1", 8080) ==
+                ((long) serviceNameId << 48 | 0x0A000001L << 16 | 8080), "打包服务实例");
+        check(ServiceInstance.getServiceInstanceKey(serviceNameId, "10.0.0", 8080) == ServiceInstance.NO_KEY, "不完整的IPv4地址");
+        check(ServiceInstance.getServiceInstanceKey(serviceNameId, "10.0.0.256", 8080) == ServiceInstance.NO_KEY, "超过255");
+        check(ServiceInstance.getServiceInstanceKey(serviceNameId, "fe80::1", 8080) == ServiceInstance.NO_KEY, "IPv6地址");
+        check(ServiceInstance.getServiceInstanceKey(ServiceNameDictionary.NO_ID, "10.0.0.1", 8080) == ServiceInstance.NO_KEY, "服务名称不在字典里");
+
+        check(serviceRegistry.heartbeat(serviceNameId, serviceName, serviceInstanceIp, 8080, 123L), "按照long找到服务实例");
+        check(serviceInstance.getLatestHeartbeatTime() == 123L, "更新了心跳时间");
+        check(serviceRegistry.heartbeat(ServiceNameDictionary.NO_ID, serviceName, serviceInstanceIp, 8080, 456L), "按照服务实例id找到服务实例");
+        check(serviceInstance.getLatestHeartbeatTime() == 456L, "更新了心跳时间");
+        check(!serviceRegistry.heartbeat(serviceNameId, serviceName, serviceInstanceIp, 9090, 789L), "没有注册过的服务实例");
+
+        ServiceInstance ipv6Instance = new ServiceInstance(serviceName, "fe80::1", 8080);
+        serviceRegistry.register(ipv6Instance);
+        check(serviceRegistry.heartbeat(serviceNameId, serviceName, "fe80::1", 8080, 789L), "IPv6地址的服务实例");
+        check(ipv6Instance.getLatestHeartbeatTime() == 789L, "更新了心跳时间");
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.utils.TimerWheel;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 心跳超时检查的压测程序
+ *
+ * 用法：HeartbeatExpiryBenchmarkTest [检查次数]
+ * 用模拟的时钟，对比每次检查扫描整个注册表和只处理时间轮里到期的槽的耗时
+ * 服务实例的注册时间在一个心跳超时周期里均匀分布，每个服务实例每秒心跳一次，有1%的服务实例一直不发心跳
+ */
+public class HeartbeatExpiryBenchmarkTest {
+
+    private static final int[] INSTANCE_COUNTS = new int[] {10000, 100000, 1000000};
+    private static final long HEARTBEAT_TIMEOUT_MILLIS = 5000L;
+    private static final long CHECK_INTERVAL_MILLIS = 1000L;
+
+    public static void main(String[] args) {
+        int checks = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+
+        for(int instanceCount : INSTANCE_COUNTS) {
+            for(int round = 0; round < 2; round++) {
+                Result scan = scan(instanceCount, checks);
+                Result wheel = wheel(instanceCount, checks);
+                if(round == 0) {
+                    continue;
+                }
+                System.out.printf("instances=%d scan:  avg=%.2f ms, max=%.2f ms, visited/check=%d, expired=%d%n",
+                        instanceCount, scan.avgMillis(checks), scan.maxNanos / 1000000.0,
+                        scan.visited / checks, scan.expired);
+                System.out.printf("instances=%d wheel: avg=%.2f ms, max=%.2f ms, visited/check=%d, expired=%d%n",
+                        instanceCount, wheel.avgMillis(checks), wheel.maxNanos / 1000000.0,
+                        wheel.visited / checks, wheel.expired);
+            }
+        }
+    }
+
+    /**
+     * 每次检查扫描所有服务实例
+     */
+    private static Result scan(int instanceCount, int checks) {
+        long now = 0L;
+        ConcurrentHashMap<String, ServiceInstance> serviceInstanceData = new ConcurrentHashMap<>();
+        List<ServiceInstance> serviceInstances = createServiceInstances(instanceCount, now);
+        for(ServiceInstance serviceInstance : serviceInstances) {
+            serviceInstanceData.put(serviceInstance.getServiceInstanceId(), serviceInstance);
+        }
+
+        Result result = new Result();
+        for(int check = 1; check <= checks; check++) {
+            now += CHECK_INTERVAL_MILLIS;
+            heartbeat(serviceInstances, now);
+
+            long start = System.nanoTime();
+            List<String> removeServiceInstanceIds = new ArrayList<>();
+            for(ServiceInstance serviceInstance : serviceInstanceData.values()) {
+                result.visited++;
+                if(now - serviceInstance.getLatestHeartbeatTime() > HEARTBEAT_TIMEOUT_MILLIS) {
+                    removeServiceInstanceIds.add(serviceInstance.getServiceInstanceId());
+                }
+            }
+            for(String serviceInstanceId : removeServiceInstanceIds) {
+                serviceInstanceData.remove(serviceInstanceId);
+            }
+            result.record(System.nanoTime() - start, removeServiceInstanceIds.size());
+        }
+        return result;
+    }
+
+    /**
+     * 每次检查只处理时间轮里到期的槽，还有心跳的服务实例按照最新的心跳时间放回去
+     */
+    private static Result wheel(int instanceCount, int checks) {
+        long now = 0L;
+        ConcurrentHashMap<String, ServiceInstance> serviceInstanceData = new ConcurrentHashMap<>();
+        TimerWheel<ServiceInstance> heartbeatTimeoutWheel = new TimerWheel<>(1000L, 64, now);
+        List<ServiceInstance> serviceInstances = createServiceInstances(instanceCount, now);
+        for(ServiceInstance serviceInstance : serviceInstances) {
+            serviceInstanceData.put(serviceInstance.getServiceInstanceId(), serviceInstance);
+            heartbeatTimeoutWheel.add(serviceInstance,
+                    serviceInstance.getLatestHeartbeatTime() + HEARTBEAT_TIMEOUT_MILLIS);
+        }
+
+        Result result = new Result();
+        for(int check = 1; check <= checks; check++) {
+            now += CHECK_INTERVAL_MILLIS;
+            heartbeat(serviceInstances, now);
+
+            long start = System.nanoTime();
+            long checkTime = now;
+            int[] expired = new int[1];
+            result.visited += heartbeatTimeoutWheel.advance(checkTime, serviceInstance -> {
+                long deadline = serviceInstance.getLatestHeartbeatTime() + HEARTBEAT_TIMEOUT_MILLIS;
+                if(checkTime <= deadline) {
+                    heartbeatTimeoutWheel.add(serviceInstance, deadline);
+                    return;
+                }
+                serviceInstanceData.remove(serviceInstance.getServiceInstanceId());
+                expired[0]++;
+            });
+            result.record(System.nanoTime() - start, expired[0]);
+        }
+        return result;
+    }
+
+    private static List<ServiceInstance> createServiceInstances(int instanceCount, long now) {
+        List<ServiceInstance> serviceInstances = new ArrayList<>(instanceCount);
+        for(int i = 0; i < instanceCount; i++) {
+            ServiceInstance serviceInstance = new ServiceInstance(
+                    "SERVICE-" + (i % 1000), "10." + (i >> 16) + "." + (i >> 8 & 255) + "." + (i & 255), 8080);
+            // 服务实例是在一个心跳超时周期里陆续注册上来的
+            serviceInstance.setLatestHeartbeatTime(now - i % HEARTBEAT_TIMEOUT_MILLIS);
+            serviceInstances.add(serviceInstance);
+        }
+        return serviceInstances;
+    }
+
+    /**
+     * 模拟上一秒里所有服务实例的心跳，每100个服务实例里有一个一直不发心跳
+     */
+    private static void heartbeat(List<ServiceInstance> serviceInstances, long now) {
+        for(int i = 0; i < serviceInstances.size(); i++) {
+            if(i % 100 != 0) {
+                serviceInstances.get(i).setLatestHeartbeatTime(now - i % CHECK_INTERVAL_MILLIS);
+            }
+        }
+    }
+
+    static class Result {
+
+        long totalNanos = 0;
+        long maxNanos = 0;
+        long visited = 0;
+        long expired = 0;
+
+        void record(long nanos, int expiredCount) {
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            expired += expiredCount;
+        }
+
+        double avgMillis(int checks) {
+            return totalNanos / 1000000.0 / checks;
+        }
+
+    }
+
+}
@@ -0,0 +1,109 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.server.slot.Slots;
+import com.zhss.microservice.server.slot.SlotsReplica;
+import com.zhss.microservice.server.slot.registry.HeartbeatExpiryMetrics;
+import com.zhss.microservice.server.slot.registry.HeartbeatExpiryScheduler;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 心跳超时检查调度器的测试程序
+ *
+ * 创建多个服务注册表，确认它们共用一个调度器，并且心跳超时的服务实例都会被摘除
+ * 槽位重新初始化以后，被替换掉的注册表分片要从调度器里取消注册，槽位编号一直到16384都能初始化
+ */
+public class HeartbeatExpirySchedulerTest {
+
+    private static final int REGISTRIES = 8;
+    private static final int INSTANCES_PER_REGISTRY = 100;
+
+    public static void main(String[] args) throws Exception {
+        int threadsBefore = Thread.activeCount();
+
+        long now = System.currentTimeMillis();
+        List<ServiceRegistry> serviceRegistries = new ArrayList<>();
+        for(int i = 0; i < REGISTRIES; i++) {
+            ServiceRegistry serviceRegistry = new ServiceRegistry("test-" + i, i % 2 == 1);
+            for(int j = 0; j < INSTANCES_PER_REGISTRY; j++) {
+                ServiceInstance serviceInstance = new ServiceInstance("SERVICE-" + j, "10.0.0." + i, 8080);
+                // 一半的服务实例在注册之前就已经心跳超时了
+                serviceInstance.setLatestHeartbeatTime(j % 2 == 0 ? now - 60000L : now);
+                serviceRegistry.register(serviceInstance);
+            }
+            serviceRegistries.add(serviceRegistry);
+        }
+
+        int threadsAfter = Thread.activeCount();
+        if(threadsAfter - threadsBefore > 1) {
+            throw new IllegalStateException("注册表不应该各自启动检查线程，新增线程数量：" + (threadsAfter - threadsBefore));
+        }
+
+        Map<String, HeartbeatExpiryMetrics> metrics = null;
+        long deadline = System.currentTimeMillis() + 20000L;
+        while(System.currentTimeMillis() < deadline) {
+            Thread.sleep(500);
+            metrics = HeartbeatExpiryScheduler.getInstance().getExpiryMetrics();
+            long expired = 0;
+            for(HeartbeatExpiryMetrics registryMetrics : metrics.values()) {
+                expired += registryMetrics.getExpiredCount();
+            }
+            if(expired == REGISTRIES * INSTANCES_PER_REGISTRY / 2) {
+                break;
+            }
+        }
+
+        for(Map.Entry<String, HeartbeatExpiryMetrics> entry : metrics.entrySet()) {
+            System.out.println(entry.getKey() + ": " + entry.getValue());
+            if(entry.getValue().getExpiredCount() != INSTANCES_PER_REGISTRY / 2) {
+                throw new IllegalStateException("摘除的服务实例数量不对：" + entry.getKey());
+            }
+        }
+        System.out.println("registries=" + REGISTRIES + ", new threads=" + (threadsAfter - threadsBefore));
+
+        verifyDeregister();
+    }
+
+    private static void verifyDeregister() {
+        HeartbeatExpiryScheduler scheduler = HeartbeatExpiryScheduler.getInstance();
+        int registriesBefore = scheduler.getExpiryMetrics().size();
+
+        // 默认每16个槽位一个注册表分片
+        Slots slots = new Slots();
+        slots.init("0,1023");
+        check(scheduler.getExpiryMetrics().size() == registriesBefore + 64, "每个分片注册一次");
+
+        // 两个分片只被替换了一半，还有槽位在用，不能取消注册
+        slots.init("8,23");
+        check(scheduler.getExpiryMetrics().size() == registriesBefore + 66, "部分替换的分片还在检查");
+
+        slots.init("0,1023");
+        check(scheduler.getExpiryMetrics().size() == registriesBefore + 64, "替换掉的分片都取消注册了");
+        check(scheduler.getExpiryMetrics().containsKey("slots-0-15")
+                && slots.getSlot(0).getServiceRegistry() != slots.getSlot(512).getServiceRegistry(), "新的分片");
+
+        ServiceRegistry serviceRegistry = new ServiceRegistry("deregister-test", false);
+        scheduler.deregister(serviceRegistry);
+        scheduler.deregister(serviceRegistry);
+        check(!scheduler.getExpiryMetrics().containsKey("deregister-test"), "取消注册");
+        System.out.println("registries after re-init=" + (scheduler.getExpiryMetrics().size() - registriesBefore));
+
+        // Controller分配给自己的最后一段槽位以16384结束
+        Slots lastSlots = new Slots();
+        lastSlots.init("10923,16384");
+        SlotsReplica lastSlotsReplica = new SlotsReplica();
+        lastSlotsReplica.init("10923,16384");
+        check(lastSlots.getSlot(16384) != null && lastSlotsReplica.getSlot(16384) != null, "最后一个槽位");
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
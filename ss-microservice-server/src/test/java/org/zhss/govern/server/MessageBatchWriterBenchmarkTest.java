@@ -0,0 +1,112 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.entity.ServiceChangedRequest;
+import com.zhss.microservice.common.network.MessageBatchWriter;
+
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * 批量写的压测程序
+ *
+ * 用法：MessageBatchWriterBenchmarkTest [消息数量] [服务实例数量]
+ * 模拟服务变动风暴的时候一个连接上堆积了大量服务变动通知，对比一次写一条消息和批量写的write调用次数和耗时
+ */
+public class MessageBatchWriterBenchmarkTest {
+
+    private static final int[] BATCH_SIZES = new int[] {1, 8, 64};
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int instances = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+
+        List<String> serviceInstanceAddresses = new ArrayList<>();
+        for(int i = 0; i < instances; i++) {
+            serviceInstanceAddresses.add("ORDER-SERVICE,192.168.0." + i + ",8080");
+        }
+
+        ServerSocketChannel serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+
+        for(int round = 0; round < 2; round++) {
+            for(int batchSize : BATCH_SIZES) {
+                Queue<Message> messageQueue = new LinkedList<>();
+                long totalBytes = 0;
+                for(int i = 0; i < messages; i++) {
+                    Message message = new ServiceChangedRequest.Builder()
+                            .serviceName("ORDER-SERVICE")
+                            .serviceInstanceAddresses(serviceInstanceAddresses)
+                            .build();
+                    totalBytes += message.getData().remaining();
+                    messageQueue.offer(message);
+                }
+
+                SocketChannel socketChannel = SocketChannel.open(serverSocketChannel.socket().getLocalSocketAddress());
+                socketChannel.socket().setTcpNoDelay(true);
+                SocketChannel acceptedChannel = serverSocketChannel.accept();
+                Thread drainThread = startDrainThread(acceptedChannel.socket().getInputStream(), totalBytes);
+
+                socketChannel.configureBlocking(false);
+                Selector selector = Selector.open();
+                SelectionKey selectionKey = socketChannel.register(selector, SelectionKey.OP_WRITE);
+
+                MessageBatchWriter messageBatchWriter = new MessageBatchWriter(batchSize, Integer.MAX_VALUE);
+                long start = System.nanoTime();
+                while(!messageBatchWriter.write(socketChannel, messageQueue)) {
+                    selector.select();
+                    selector.selectedKeys().clear();
+                }
+                drainThread.join();
+                long elapsed = System.nanoTime() - start;
+
+                selectionKey.cancel();
+                selector.close();
+                socketChannel.close();
+                acceptedChannel.close();
+
+                if(round == 0) {
+                    continue;
+                }
+                System.out.printf("batch=%d: messages=%d, write calls=%d, messages/write=%.1f, %.1f ms, %.0f msg/s%n",
+                        batchSize,
+                        messageBatchWriter.getWrittenMessageCount(),
+                        messageBatchWriter.getWriteCount(),
+                        messageBatchWriter.getWrittenMessageCount() * 1.0 / messageBatchWriter.getWriteCount(),
+                        elapsed / 1000000.0,
+                        messages * 1000000000.0 / elapsed);
+            }
+        }
+
+        serverSocketChannel.close();
+    }
+
+    private static Thread startDrainThread(InputStream inputStream, long totalBytes) {
+        Thread thread = new Thread(() -> {
+            byte[] buffer = new byte[64 * 1024];
+            long remaining = totalBytes;
+            try {
+                while(remaining > 0) {
+                    int read = inputStream.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if(read < 0) {
+                        break;
+                    }
+                    remaining -= read;
+                }
+            } catch(Exception e) {
+                e.printStackTrace();
+            }
+        });
+        thread.start();
+        return thread;
+    }
+
+}
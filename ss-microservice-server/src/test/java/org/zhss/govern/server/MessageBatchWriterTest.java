@@ -0,0 +1,139 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.entity.ServiceChangedRequest;
+import com.zhss.microservice.common.entity.SharedBodyRequest;
+import com.zhss.microservice.common.entity.SharedRequestBody;
+import com.zhss.microservice.common.network.MessageBatchWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * 验证批量写对部分写入的处理
+ *
+ * 一整块数据的消息和请求头加共用请求体两段数据的消息混在一起，交给每次只能写进去几个字节的channel，
+ * 校验写出去的数据跟所有消息按顺序拼起来完全一样，并且每次写完以后只有完整写出去的消息才从队列里删除
+ */
+public class MessageBatchWriterTest {
+
+    /**
+     * channel每次最多接收的字节数，轮流使用，0表示socket写缓冲满了
+     */
+    private static final int[] WRITE_LIMITS = new int[] {1, 0, 3, 7, 64, 0, 1000, 5};
+
+    public static void main(String[] args) throws Exception {
+        List<String> addresses = new ArrayList<>();
+        for(int i = 0; i < 3; i++) {
+            addresses.add("ORDER-SERVICE,192.168.0." + i + ",8080");
+        }
+        SharedRequestBody sharedBody = ServiceChangedRequest.sharedBody(2, "ORDER-SERVICE", addresses, 1L);
+
+        for(int maxBatchMessages : new int[] {1, 4, 64}) {
+            Queue<Message> messageQueue = new LinkedList<>();
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            List<Integer> messageEnds = new ArrayList<>();
+            for(int i = 0; i < 100; i++) {
+                Message message;
+                if(i % 3 == 0) {
+                    message = new ServiceChangedRequest.Builder()
+                            .serviceName("SERVICE-" + i)
+                            .serviceInstanceAddresses(addresses)
+                            .build();
+                } else {
+                    // 多个请求共用同一个请求体，每个请求记录自己发送到哪里了
+                    message = new SharedBodyRequest.Builder()
+                            .protocolVersion(i % 2 == 0 ? 1 : 2)
+                            .sharedBody(sharedBody)
+                            .build();
+                }
+                check(message.getBufferCount() == (i % 3 == 0 ? 1 : 2), "消息的数据段数量");
+                ByteBuffer data = message.getData().duplicate();
+                expected.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                messageEnds.add(expected.size());
+                messageQueue.offer(message);
+            }
+
+            LimitedChannel channel = new LimitedChannel();
+            MessageBatchWriter messageBatchWriter = new MessageBatchWriter(maxBatchMessages, 256);
+            int writes = 0;
+            boolean writeCompleted = false;
+            while(!writeCompleted) {
+                check(++writes < 100000, "写不完");
+                writeCompleted = messageBatchWriter.write(channel, messageQueue);
+
+                // 结束位置已经写出去的消息都要从队列里删除，没写完的消息还留在队列里
+                int written = channel.output.size();
+                int completedMessages = 0;
+                while(completedMessages < messageEnds.size() && messageEnds.get(completedMessages) <= written) {
+                    completedMessages++;
+                }
+                check(messageQueue.size() == messageEnds.size() - completedMessages,
+                        "写出去" + written + "字节以后队列里剩下" + messageQueue.size() + "条消息");
+                check(writeCompleted == messageQueue.isEmpty(), "写完的时候队列是空的");
+            }
+
+            check(Arrays.equals(expected.toByteArray(), channel.output.toByteArray()), "写出去的数据跟消息按顺序拼起来一样");
+            check(messageBatchWriter.getWrittenMessageCount() == messageEnds.size(), "发送完毕的消息数量");
+            System.out.println("maxBatchMessages=" + maxBatchMessages + ": " + expected.size() + "字节，"
+                    + messageBatchWriter.getWriteCount() + "次write，数据正确");
+        }
+    }
+
+    /**
+     * 每次write最多只接收几个字节的channel
+     */
+    static class LimitedChannel implements GatheringByteChannel {
+
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+        private int writeIndex = 0;
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            int limit = WRITE_LIMITS[writeIndex++ % WRITE_LIMITS.length];
+            long written = 0;
+            for(int i = offset; i < offset + length && written < limit; i++) {
+                ByteBuffer src = srcs[i];
+                int bytes = (int) Math.min(src.remaining(), limit - written);
+                for(int j = 0; j < bytes; j++) {
+                    output.write(src.get());
+                }
+                written += bytes;
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[] {src}, 0, 1);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
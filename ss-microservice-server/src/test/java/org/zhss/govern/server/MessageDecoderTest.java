@@ -0,0 +1,146 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.HeartbeatRequest;
+import com.zhss.microservice.common.entity.Message;
+import com.zhss.microservice.common.entity.RegisterRequest;
+import com.zhss.microservice.common.entity.Request;
+import com.zhss.microservice.common.network.ByteBufferPool;
+import com.zhss.microservice.common.network.MessageDecoder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 验证消息解析组件对拆包和粘包的处理
+ *
+ * 把多条消息拼在一起，然后按照不同的分片大小一点一点的喂给解析组件，检查解析出来的消息是否完整、有序
+ * 两个版本的协议混在一起发送，请求id和协议版本都要能正确解析出来
+ * 最后校验socket里的数据很多的时候，一次可读事件只读取有限的字节数，分多次读完
+ */
+public class MessageDecoderTest {
+
+    public static void main(String[] args) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        List<Request> expectedRequests = new ArrayList<>();
+        for(int i = 0; i < 100; i++) {
+            Request request;
+            if(i % 2 == 0) {
+                request = new HeartbeatRequest.Builder()
+                        .protocolVersion(i % 4 == 0 ? Request.PROTOCOL_VERSION_1 : Request.PROTOCOL_VERSION_2)
+                        .serviceName("ORDER-SERVICE")
+                        .serviceInstanceIp("192.168.0." + i)
+                        .serviceInstancePort(8080)
+                        .build();
+            } else {
+                // 服务名称足够长，让单条消息超过累积buffer的初始大小
+                StringBuilder serviceName = new StringBuilder();
+                for(int j = 0; j < i * 100; j++) {
+                    serviceName.append('S');
+                }
+                request = new RegisterRequest.Builder()
+                        .protocolVersion(i % 4 == 1 ? Request.PROTOCOL_VERSION_1 : Request.PROTOCOL_VERSION_2)
+                        .serviceName(serviceName.toString())
+                        .serviceInstanceIp("192.168.0." + i)
+                        .serviceInstancePort(8080)
+                        .build();
+            }
+            expectedRequests.add(request);
+            ByteBuffer data = request.getData();
+            stream.write(data.array(), data.position(), data.remaining());
+        }
+        byte[] bytes = stream.toByteArray();
+
+        int[] chunkSizes = new int[] {1, 3, 7, 64, 1000, 4096, 65536, bytes.length};
+        for(int chunkSize : chunkSizes) {
+            ChunkedChannel channel = new ChunkedChannel(bytes, chunkSize);
+            MessageDecoder messageDecoder = new MessageDecoder(new ByteBufferPool(64 * 1024, 8, chunkSize % 2 == 0));
+
+            List<Message> messages = new ArrayList<>();
+            boolean connected = true;
+            while(connected) {
+                connected = messageDecoder.read(channel, messages);
+                channel.nextChunk();
+            }
+
+            if(messages.size() != expectedRequests.size()) {
+                throw new IllegalStateException("chunk=" + chunkSize + "，解析出的消息数量不对：" + messages.size());
+            }
+            for(int i = 0; i < messages.size(); i++) {
+                Request expected = expectedRequests.get(i);
+                Request actual = (Request) messages.get(i);
+                if(expected.getId() != actual.getId()
+                        || expected.getProtocolVersion() != actual.getProtocolVersion()
+                        || !expected.getClass().equals(actual.getClass())) {
+                    throw new IllegalStateException("chunk=" + chunkSize + "，第" + i + "条消息不对");
+                }
+            }
+            System.out.println("chunk=" + chunkSize + ": " + messages.size() + "条消息解析正确");
+        }
+
+        int maxReadBytesPerEvent = 16 * 1024;
+        ChunkedChannel channel = new ChunkedChannel(bytes, bytes.length);
+        MessageDecoder messageDecoder = new MessageDecoder(new ByteBufferPool(64 * 1024, 8, false), maxReadBytesPerEvent);
+        List<Message> messages = new ArrayList<>();
+        int events = 0;
+        boolean connected = true;
+        while(connected) {
+            int position = channel.position;
+            connected = messageDecoder.read(channel, messages);
+            events++;
+            // 一次最多多读一个累积buffer，单条消息最大是10KB左右，累积buffer不会超过32KB
+            if(channel.position - position > maxReadBytesPerEvent + 32 * 1024) {
+                throw new IllegalStateException("一次可读事件读取了" + (channel.position - position) + "字节");
+            }
+        }
+        if(messages.size() != expectedRequests.size() || events < bytes.length / (maxReadBytesPerEvent + 32 * 1024)) {
+            throw new IllegalStateException("限制读取字节数以后解析出的消息数量不对：" + messages.size() + "，读取次数：" + events);
+        }
+        System.out.println("maxReadBytesPerEvent=" + maxReadBytesPerEvent + ": " + bytes.length + "字节分" + events + "次读完");
+    }
+
+    /**
+     * 每次最多只能读到指定字节数的channel，读完之后返回-1
+     */
+    static class ChunkedChannel implements ReadableByteChannel {
+
+        private final byte[] bytes;
+        private final int chunkSize;
+        private int position = 0;
+        private int chunkEnd;
+
+        ChunkedChannel(byte[] bytes, int chunkSize) {
+            this.bytes = bytes;
+            this.chunkSize = chunkSize;
+            this.chunkEnd = Math.min(chunkSize, bytes.length);
+        }
+
+        void nextChunk() {
+            chunkEnd = Math.min(position + chunkSize, bytes.length);
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if(position == bytes.length) {
+                return -1;
+            }
+            int length = Math.min(dst.remaining(), chunkEnd - position);
+            dst.put(bytes, position, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
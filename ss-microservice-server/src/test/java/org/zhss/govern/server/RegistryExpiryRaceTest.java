@@ -0,0 +1,121 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.node.persist.RegistryMutation;
+import com.zhss.microservice.server.node.persist.RegistrySnapshotPersister;
+import com.zhss.microservice.server.node.persist.RegistryWriteAheadLog;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceInstances;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重新注册跟心跳超时摘除并发执行的测试程序
+ *
+ * 用法：RegistryExpiryRaceTest [轮数] [每轮的服务实例数量]
+ * 每一轮先注册一批已经心跳超时的服务实例，再一边摘除心跳超时的服务实例，一边用新的对象重新注册，
+ * 校验重新注册的服务实例都还在注册表里、摘除的数量跟预写日志里的摘除记录一致、
+ * 重放预写日志以后恢复出来的服务实例跟内存里的一样
+ */
+public class RegistryExpiryRaceTest {
+
+    private static final String SERVICE_NAME = "ORDER-SERVICE";
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int instances = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+
+        File dataDir = new File(System.getProperty("java.io.tmpdir"),
+                "ss-microservice-race-" + System.nanoTime());
+        dataDir.mkdirs();
+        RegistryWriteAheadLog writeAheadLog = RegistryWriteAheadLog.getInstance();
+        check(writeAheadLog.start(dataDir, Configuration.WAL_SYNC_POLICY_NONE, 1000, 0, 0), "启动预写日志");
+
+        ServiceRegistry serviceRegistry = new ServiceRegistry("race-test", false);
+        // 心跳超时检查是包内可见的，测试程序直接调用它，让摘除跟重新注册尽量撞在一起
+        Method expireHeartbeatTimeouts = ServiceRegistry.class.getDeclaredMethod("expireHeartbeatTimeouts", long.class);
+        expireHeartbeatTimeouts.setAccessible(true);
+
+        for(int round = 0; round < rounds; round++) {
+            long now = System.currentTimeMillis();
+            for(int i = 0; i < instances; i++) {
+                ServiceInstance serviceInstance = new ServiceInstance(SERVICE_NAME, ip(round, i), 8080);
+                serviceInstance.setLatestHeartbeatTime(now - 60000L);
+                serviceRegistry.register(serviceInstance);
+            }
+
+            // 已经过期的服务实例放在时间轮的下一个tick里，每一轮把检查的时间往后推一点
+            long expireTime = now + (round + 1) * 10000L;
+            CountDownLatch startLatch = new CountDownLatch(1);
+            Thread expiryThread = new Thread(() -> {
+                try {
+                    startLatch.await();
+                    expireHeartbeatTimeouts.invoke(serviceRegistry, expireTime);
+                } catch(Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            expiryThread.start();
+            startLatch.countDown();
+            for(int i = 0; i < instances; i++) {
+                ServiceInstance serviceInstance = new ServiceInstance(SERVICE_NAME, ip(round, i), 8080);
+                serviceInstance.setLatestHeartbeatTime(now + 3600 * 1000L);
+                serviceRegistry.register(serviceInstance);
+            }
+            expiryThread.join();
+        }
+        writeAheadLog.close();
+
+        ServiceInstances serviceInstances = serviceRegistry.getServiceInstances(SERVICE_NAME);
+        check(serviceInstances.size() == rounds * instances, "重新注册的服务实例都在注册表里：" + serviceInstances.size());
+
+        AtomicLong removes = new AtomicLong();
+        RegistryWriteAheadLog.read(new File(dataDir, RegistryWriteAheadLog.FILE_NAME), mutation -> {
+            if(mutation.getType() == RegistryMutation.REMOVE) {
+                removes.incrementAndGet();
+            }
+        });
+        long expired = serviceRegistry.getExpiryMetrics().getExpiredCount();
+        check(expired == removes.get(), "摘除的数量" + expired + "跟预写日志里的摘除记录" + removes.get() + "一致");
+
+        ServiceRegistry recovered = new ServiceRegistry("race-test-recovered", false);
+        RegistrySnapshotPersister.recover(dataDir, true, (replica, serviceName) -> recovered);
+        ServiceInstances recoveredInstances = recovered.getServiceInstances(SERVICE_NAME);
+        check(recoveredInstances.size() == rounds * instances,
+                "重放预写日志以后的服务实例数量：" + recoveredInstances.size());
+        for(int round = 0; round < rounds; round++) {
+            for(int i = 0; i < instances; i++) {
+                String serviceInstanceId = SERVICE_NAME + "_" + ip(round, i) + "_8080";
+                check(recoveredInstances.get(serviceInstanceId) != null, "重放以后丢了服务实例：" + serviceInstanceId);
+            }
+        }
+
+        System.out.println("rounds=" + rounds + ", instances=" + instances + ", expired=" + expired
+                + ", live=" + recoveredInstances.size());
+
+        File[] files = dataDir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(dataDir.toPath());
+        System.exit(0);
+    }
+
+    private static String ip(int round, int i) {
+        return "10." + round + "." + (i >> 8 & 255) + "." + (i & 255);
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
@@ -0,0 +1,221 @@
+package org.zhss.govern.server;
+
+import com.alibaba.fastjson.JSONObject;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.node.persist.RegistryMutation;
+import com.zhss.microservice.server.node.persist.RegistrySnapshotPersister;
+import com.zhss.microservice.server.node.persist.RegistryWriteAheadLog;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceInstances;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 注册表快照持久化和重启恢复的测试程序
+ *
+ * 用法：RegistrySnapshotBenchmarkTest [服务实例数量] [快照之后的预写日志记录数量]
+ * 先校验快照加载、快照之后预写日志的重放、预写日志的截断、快照损坏的处理，
+ * 再把大量服务实例写成快照，统计写快照的耗时和文件大小、重启恢复到可以提供服务的耗时，
+ * 同时对比一下同样的数据用fastjson序列化和解析的耗时
+ */
+public class RegistrySnapshotBenchmarkTest {
+
+    private static final int SERVICES = 1000;
+    private static final int SHARDS = 16;
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int walRecords = args.length > 1 ? Integer.parseInt(args[1]) : 10000;
+
+        verify();
+        benchmark(instances, walRecords);
+        System.exit(0);
+    }
+
+    private static void verify() throws Exception {
+        File dataDir = createDataDir();
+        RegistryWriteAheadLog writeAheadLog = RegistryWriteAheadLog.getInstance();
+        check(writeAheadLog.start(dataDir, Configuration.WAL_SYNC_POLICY_BATCH, 1000, 0, 0), "启动预写日志");
+
+        ServiceRegistry serviceRegistry = new ServiceRegistry("snapshot-test", false);
+        ServiceRegistry replicaRegistry = new ServiceRegistry("snapshot-test-replica", true);
+        for(int i = 1; i <= 3; i++) {
+            serviceRegistry.register(new ServiceInstance("ORDER-SERVICE", "10.0.0." + i, 8080));
+        }
+        replicaRegistry.register(new ServiceInstance("PAY-SERVICE", "10.0.1.1", 9090));
+
+        long lsn = writeAheadLog.getLastLsn();
+        check(RegistrySnapshotPersister.write(dataDir, lsn, Arrays.asList(serviceRegistry, replicaRegistry)) == 4,
+                "快照里的服务实例数量");
+        writeAheadLog.truncate(lsn);
+
+        // 快照之后的变动只在预写日志里
+        serviceRegistry.register(new ServiceInstance("ORDER-SERVICE", "10.0.0.4", 8080));
+        check(serviceRegistry.remove("ORDER-SERVICE", "10.0.0.1", 8080), "摘除服务实例");
+        check(!serviceRegistry.remove("ORDER-SERVICE", "10.0.0.1", 8080), "重复摘除");
+        writeAheadLog.close();
+
+        List<RegistryMutation> mutations = new ArrayList<>();
+        RegistryWriteAheadLog.read(new File(dataDir, RegistryWriteAheadLog.FILE_NAME), mutations::add);
+        check(mutations.size() == 2 && mutations.get(0).getLsn() == lsn + 1, "截掉了快照之前的预写日志");
+
+        Map<String, ServiceRegistry> recovered = new HashMap<>();
+        long snapshotLsn = RegistrySnapshotPersister.recover(dataDir, true,
+                (replica, serviceName) -> recovered.computeIfAbsent(replica + serviceName,
+                        key -> new ServiceRegistry("recovered-" + key, replica)));
+        check(snapshotLsn == lsn, "快照的日志序号");
+        ServiceInstances orderInstances = recovered.get("falseORDER-SERVICE").getServiceInstances("ORDER-SERVICE");
+        check(orderInstances.size() == 3, "快照加上预写日志重放以后的服务实例数量");
+        check(orderInstances.get("ORDER-SERVICE_10.0.0.1_8080") == null, "重放了摘除");
+        check(orderInstances.get("ORDER-SERVICE_10.0.0.4_8080") != null, "重放了注册");
+        check(orderInstances.get("ORDER-SERVICE_10.0.0.2_8080").getLatestHeartbeatTime() > System.currentTimeMillis(),
+                "多给一个心跳超时时间");
+        check(recovered.get("truePAY-SERVICE").getServiceInstances("PAY-SERVICE").size() == 1, "恢复了副本");
+
+        check(writeAheadLog.start(dataDir, Configuration.WAL_SYNC_POLICY_BATCH, 1000, 0, 0), "重启预写日志");
+        check(writeAheadLog.getLastLsn() == lsn + 2, "日志序号接着往后分配");
+        writeAheadLog.close();
+
+        // 快照损坏的时候不加载快照，只重放预写日志
+        File snapshotFile = new File(dataDir, RegistrySnapshotPersister.FILE_NAME);
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(snapshotFile, "rw")) {
+            randomAccessFile.seek(30);
+            randomAccessFile.write(0x7F);
+        }
+        recovered.clear();
+        check(RegistrySnapshotPersister.recover(dataDir, true,
+                (replica, serviceName) -> recovered.computeIfAbsent(replica + serviceName,
+                        key -> new ServiceRegistry("corrupted-" + key, replica))) == 0, "快照损坏");
+        check(recovered.get("falseORDER-SERVICE").getServiceInstances("ORDER-SERVICE").size() == 1, "只重放了预写日志");
+
+        // 快照的日志序号比预写日志里的大，预写日志的日志序号从快照往后分配
+        new File(dataDir, RegistryWriteAheadLog.FILE_NAME).delete();
+        check(writeAheadLog.start(dataDir, Configuration.WAL_SYNC_POLICY_BATCH, 1000, 0, 100), "重启预写日志");
+        check(writeAheadLog.appendRegister(false, "ORDER-SERVICE", "10.0.0.5", 8080, 1L) == 101, "从快照的日志序号往后分配");
+        writeAheadLog.close();
+        delete(dataDir);
+    }
+
+    private static void benchmark(int instances, int walRecords) throws Exception {
+        File dataDir = createDataDir();
+        String[] serviceNames = new String[SERVICES];
+        for(int i = 0; i < SERVICES; i++) {
+            serviceNames[i] = "SERVICE-" + i;
+        }
+
+        List<ServiceRegistry> serviceRegistries = new ArrayList<>();
+        for(int i = 0; i < SHARDS; i++) {
+            serviceRegistries.add(new ServiceRegistry("benchmark-" + i, false));
+        }
+        // 心跳时间设置到一个小时以后，不要让服务实例在测试过程中心跳超时
+        long latestHeartbeatTime = System.currentTimeMillis() + 3600 * 1000L;
+        for(int i = 0; i < instances; i++) {
+            ServiceInstance serviceInstance = new ServiceInstance(serviceNames[i % SERVICES], ip(i / SERVICES), 8080);
+            serviceInstance.setLatestHeartbeatTime(latestHeartbeatTime);
+            serviceRegistries.get(i % SERVICES % SHARDS).register(serviceInstance);
+        }
+
+        RegistryWriteAheadLog writeAheadLog = RegistryWriteAheadLog.getInstance();
+        check(writeAheadLog.start(dataDir, Configuration.WAL_SYNC_POLICY_NONE, 1000, 0, 0), "启动预写日志");
+        long start = System.nanoTime();
+        long written = RegistrySnapshotPersister.write(dataDir, writeAheadLog.getLastLsn(), serviceRegistries);
+        long writeNanos = System.nanoTime() - start;
+        check(written == instances, "快照里的服务实例数量");
+        long snapshotSize = new File(dataDir, RegistrySnapshotPersister.FILE_NAME).length();
+
+        // 快照之后又注册了一批服务实例，只记录在预写日志里
+        for(int i = instances; i < instances + walRecords; i++) {
+            ServiceInstance serviceInstance = new ServiceInstance(serviceNames[i % SERVICES], ip(i / SERVICES), 8080);
+            serviceInstance.setLatestHeartbeatTime(latestHeartbeatTime);
+            serviceRegistries.get(i % SERVICES % SHARDS).register(serviceInstance);
+        }
+        writeAheadLog.close();
+
+        // 同样的数据用fastjson序列化和解析
+        start = System.nanoTime();
+        Map<String, List<String>> jsonData = new HashMap<>();
+        for(ServiceRegistry serviceRegistry : serviceRegistries) {
+            for(ServiceInstances serviceInstances : serviceRegistry.getAllServiceInstances()) {
+                jsonData.put(serviceInstances.getServiceName(),
+                        serviceInstances.getLatestSnapshot(System.currentTimeMillis()).getServiceInstanceAddresses());
+            }
+        }
+        byte[] json = JSONObject.toJSONString(jsonData).getBytes();
+        long jsonWriteNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        JSONObject.parseObject(new String(json));
+        long jsonParseNanos = System.nanoTime() - start;
+
+        serviceRegistries = null;
+        jsonData = null;
+        System.gc();
+
+        List<ServiceRegistry> recoveredRegistries = new ArrayList<>();
+        for(int i = 0; i < SHARDS; i++) {
+            recoveredRegistries.add(new ServiceRegistry("recovered-" + i, false));
+        }
+        Map<String, Integer> shards = new HashMap<>();
+        for(int i = 0; i < SERVICES; i++) {
+            shards.put(serviceNames[i], i % SHARDS);
+        }
+        start = System.nanoTime();
+        RegistrySnapshotPersister.recover(dataDir, true,
+                (replica, serviceName) -> {
+                    // 校验用的注册表里的服务实例心跳超时被摘除，也会记进预写日志里，跳过这些服务
+                    Integer shard = shards.get(serviceName);
+                    return shard == null ? null : recoveredRegistries.get(shard);
+                });
+        long recoverNanos = System.nanoTime() - start;
+
+        long recovered = 0;
+        for(ServiceRegistry serviceRegistry : recoveredRegistries) {
+            for(ServiceInstances serviceInstances : serviceRegistry.getAllServiceInstances()) {
+                recovered += serviceInstances.size();
+            }
+        }
+        check(recovered == instances + walRecords, "恢复了所有的服务实例");
+
+        System.out.printf("instances=%d walRecords=%d: snapshot write %.1f ms, %.1f MB (%.1f B/instance); " +
+                        "recover %.1f ms; fastjson write %.1f ms, %.1f MB, parse %.1f ms%n",
+                instances, walRecords, writeNanos / 1e6, snapshotSize / 1024.0 / 1024.0,
+                (double) snapshotSize / instances, recoverNanos / 1e6,
+                jsonWriteNanos / 1e6, json.length / 1024.0 / 1024.0, jsonParseNanos / 1e6);
+        delete(dataDir);
+    }
+
+    private static String ip(int i) {
+        return "10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "." + (i & 255);
+    }
+
+    private static File createDataDir() {
+        File dataDir = new File(System.getProperty("java.io.tmpdir"),
+                "ss-microservice-snapshot-" + System.nanoTime());
+        dataDir.mkdirs();
+        return dataDir;
+    }
+
+    private static void delete(File dataDir) throws Exception {
+        File[] files = dataDir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(dataDir.toPath());
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
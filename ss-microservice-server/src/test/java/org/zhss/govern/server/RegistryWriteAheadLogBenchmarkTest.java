@@ -0,0 +1,168 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.node.persist.RegistryMutation;
+import com.zhss.microservice.server.node.persist.RegistryWriteAheadLog;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 注册表预写日志的测试程序
+ *
+ * 用法：RegistryWriteAheadLogBenchmarkTest [每种刷盘策略注册的服务实例数量] [线程数量]
+ * 先校验记录的读写、末尾不完整记录的截断、重启以后日志序号的恢复，
+ * 再用多个线程往注册表里注册服务实例，对比不同刷盘策略下每秒注册的数量、每批的记录数和刷盘次数
+ */
+public class RegistryWriteAheadLogBenchmarkTest {
+
+    public static void main(String[] args) throws Exception {
+        int registers = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+
+        verify();
+
+        run(Configuration.WAL_SYNC_POLICY_BATCH, registers, 1);
+        run(Configuration.WAL_SYNC_POLICY_BATCH, registers, threads);
+        run(Configuration.WAL_SYNC_POLICY_INTERVAL, registers, threads);
+        run(Configuration.WAL_SYNC_POLICY_NONE, registers, threads);
+        System.exit(0);
+    }
+
+    private static void verify() throws Exception {
+        File dataDir = createDataDir();
+        RegistryWriteAheadLog writeAheadLog = RegistryWriteAheadLog.getInstance();
+
+        check(writeAheadLog.appendRegister(false, "ORDER-SERVICE", "10.0.0.1", 8080, 1L) == 0, "没有启动的时候不记录");
+        check(writeAheadLog.start(dataDir, Configuration.WAL_SYNC_POLICY_BATCH, 1000, 0, 0), "启动");
+        long lsn = writeAheadLog.appendRegister(false, "ORDER-SERVICE", "10.0.0.1", 8080, 100L);
+        writeAheadLog.awaitDurable(lsn);
+        check(writeAheadLog.getDurableLsn() >= lsn, "等到刷盘以后才返回");
+        writeAheadLog.appendHeartbeat(false, "ORDER-SERVICE", "10.0.0.1", 8080, 150L);
+        writeAheadLog.appendRemove(true, "ORDER-SERVICE", "10.0.0.1", 8080, 200L);
+        writeAheadLog.close();
+
+        File file = new File(dataDir, RegistryWriteAheadLog.FILE_NAME);
+        List<RegistryMutation> mutations = new ArrayList<>();
+        long validLength = RegistryWriteAheadLog.read(file, mutations::add);
+        check(validLength == file.length(), "整个文件都是完整的记录");
+        check(mutations.size() == 2, "心跳默认不记录");
+        RegistryMutation register = mutations.get(0);
+        check(register.getLsn() == 1 && register.getType() == RegistryMutation.REGISTER && !register.isReplica() &&
+                register.getTimestamp() == 100L && register.getServiceName().equals("ORDER-SERVICE") &&
+                register.getServiceInstanceIp().equals("10.0.0.1") && register.getServiceInstancePort() == 8080,
+                "注册记录");
+        RegistryMutation remove = mutations.get(1);
+        check(remove.getLsn() == 2 && remove.getType() == RegistryMutation.REMOVE && remove.isReplica(), "摘除记录");
+
+        // 模拟写到一半宕机：末尾留下一条不完整的记录
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(randomAccessFile.length());
+            randomAccessFile.writeInt(100);
+            randomAccessFile.writeInt(12345);
+            randomAccessFile.write(new byte[10]);
+        }
+        check(writeAheadLog.start(dataDir, Configuration.WAL_SYNC_POLICY_NONE, 1000, 2, 0), "重启");
+        check(file.length() == validLength, "截掉了不完整的记录");
+        check(writeAheadLog.getLastLsn() == 2, "恢复了日志序号");
+        for(int i = 0; i < 4; i++) {
+            writeAheadLog.appendHeartbeat(false, "ORDER-SERVICE", "10.0.0.1", 8080, 300L + i);
+        }
+        writeAheadLog.close();
+
+        mutations.clear();
+        RegistryWriteAheadLog.read(file, mutations::add);
+        check(mutations.size() == 4, "每两次心跳记录一次");
+        check(mutations.get(2).getLsn() == 3 && mutations.get(2).getType() == RegistryMutation.HEARTBEAT,
+                "接着原来的日志序号往后记录");
+
+        // 校验和对不上的记录也不算完整的记录
+        try(RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+            randomAccessFile.seek(randomAccessFile.length() - 1);
+            randomAccessFile.write(0x7F);
+        }
+        mutations.clear();
+        RegistryWriteAheadLog.read(file, mutations::add);
+        check(mutations.size() == 3, "校验和对不上的记录不读出来");
+        delete(dataDir);
+    }
+
+    private static void run(String syncPolicy, int registers, int threads) throws Exception {
+        File dataDir = createDataDir();
+        RegistryWriteAheadLog writeAheadLog = RegistryWriteAheadLog.getInstance();
+        check(writeAheadLog.start(dataDir, syncPolicy, 200, 0, 0), "启动");
+
+        ServiceRegistry serviceRegistry = new ServiceRegistry("wal-test-" + syncPolicy + "-" + threads, false);
+        int registersPerThread = registers / threads;
+        long latestHeartbeatTime = System.currentTimeMillis() + 3600 * 1000L;
+        CountDownLatch startLatch = new CountDownLatch(1);
+        CountDownLatch doneLatch = new CountDownLatch(threads);
+        for(int t = 0; t < threads; t++) {
+            int thread = t;
+            new Thread(() -> {
+                try {
+                    startLatch.await();
+                    for(int i = 0; i < registersPerThread; i++) {
+                        ServiceInstance serviceInstance = new ServiceInstance("SERVICE-" + (i % 100),
+                                "10." + thread + "." + (i >> 8 & 255) + "." + (i & 255), 8080);
+                        // 逐条刷盘比较慢，不要让服务实例在测试过程中心跳超时被摘除
+                        serviceInstance.setLatestHeartbeatTime(latestHeartbeatTime);
+                        serviceRegistry.register(serviceInstance);
+                    }
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    doneLatch.countDown();
+                }
+            }).start();
+        }
+
+        long start = System.nanoTime();
+        startLatch.countDown();
+        doneLatch.await();
+        long nanos = System.nanoTime() - start;
+
+        long batches = writeAheadLog.getBatchCount();
+        long forces = writeAheadLog.getForceCount();
+        writeAheadLog.close();
+
+        long records = registersPerThread * (long) threads;
+        List<RegistryMutation> mutations = new ArrayList<>();
+        RegistryWriteAheadLog.read(new File(dataDir, RegistryWriteAheadLog.FILE_NAME), mutations::add);
+        check(mutations.size() == records, "所有的注册都记录下来了");
+
+        System.out.printf("policy=%s threads=%d: %d registers, %.0f registers/s, %d batches (%.1f records/batch), %d forces%n",
+                syncPolicy, threads, records, records * 1e9 / nanos,
+                batches, (double) records / Math.max(batches, 1), forces);
+        delete(dataDir);
+    }
+
+    private static File createDataDir() {
+        File dataDir = new File(System.getProperty("java.io.tmpdir"),
+                "ss-microservice-wal-" + System.nanoTime());
+        dataDir.mkdirs();
+        return dataDir;
+    }
+
+    private static void delete(File dataDir) {
+        File[] files = dataDir.listFiles();
+        if(files != null) {
+            for(File file : files) {
+                file.delete();
+            }
+        }
+        dataDir.delete();
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
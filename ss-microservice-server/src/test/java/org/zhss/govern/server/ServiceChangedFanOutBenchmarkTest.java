@@ -0,0 +1,230 @@
+package org.zhss.govern.server;
+
+import com.sun.management.ThreadMXBean;
+import com.zhss.microservice.common.entity.*;
+import com.zhss.microservice.common.network.ByteBufferPool;
+import com.zhss.microservice.common.network.MessageBatchWriter;
+import com.zhss.microservice.common.network.MessageDecoder;
+import com.zhss.microservice.server.slot.registry.ServiceChangedPush;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceInstances;
+import com.zhss.microservice.server.slot.registry.ServiceSnapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * 服务变动推送扇出的压测程序
+ *
+ * 用法：ServiceChangedFanOutBenchmarkTest [服务实例数量] [订阅者数量]
+ * 先校验共用请求体的请求经过批量写发送出去之后，对端解析出来跟直接构建的请求一样
+ * 再对比每个订阅者各自生成地址列表、各自编码，和所有订阅者共用一份编码好的请求体的耗时和内存分配
+ */
+public class ServiceChangedFanOutBenchmarkTest {
+
+    private static final String SERVICE_NAME = "ORDER-SERVICE";
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int subscribers = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+
+        ServiceInstances serviceInstances = new ServiceInstances(SERVICE_NAME, 256, 0);
+        List<ServiceInstance> registered = new ArrayList<>();
+        for(int i = 0; i < instances; i++) {
+            ServiceInstance serviceInstance = newServiceInstance(i);
+            serviceInstances.add(serviceInstance);
+            registered.add(serviceInstance);
+        }
+
+        verify(serviceInstances);
+
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        for(int round = 0; round < 5; round++) {
+            // 滚动发布的一次变动：摘除一个旧的服务实例，注册一个新的服务实例
+            long fromVersion = serviceInstances.getVersion();
+            serviceInstances.remove(registered.get(round));
+            serviceInstances.add(newServiceInstance(instances + round));
+            ServiceSnapshot snapshot = serviceInstances.getSnapshot(System.currentTimeMillis());
+
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            long perSubscriberBytes = perSubscriber(serviceInstances, snapshot, subscribers);
+            long perSubscriberNanos = System.nanoTime() - start;
+            long perSubscriberAllocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            long sharedBytes = shared(serviceInstances, snapshot, subscribers, Request.UNKNOWN_SERVICE_VERSION);
+            long sharedNanos = System.nanoTime() - start;
+            long sharedAllocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            long deltaBytes = shared(serviceInstances, snapshot, subscribers, fromVersion);
+            long deltaNanos = System.nanoTime() - start;
+            long deltaAllocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            check(perSubscriberBytes == sharedBytes, "共用请求体的字节数跟各自编码一样");
+            if(round < 2) {
+                continue;
+            }
+            System.out.printf("instances=%d subscribers=%d per-subscriber full push: %.1f ms, %d KB allocated%n",
+                    instances, subscribers, perSubscriberNanos / 1e6, perSubscriberAllocated / 1024);
+            System.out.printf("instances=%d subscribers=%d shared full push:         %.1f ms, %d KB allocated%n",
+                    instances, subscribers, sharedNanos / 1e6, sharedAllocated / 1024);
+            System.out.printf("instances=%d subscribers=%d shared delta push:        %.1f ms, %d KB allocated, %d bytes on wire%n",
+                    instances, subscribers, deltaNanos / 1e6, deltaAllocated / 1024, deltaBytes);
+        }
+    }
+
+    /**
+     * 原来的做法：每个订阅者重新生成地址列表，重新编码一个完整的请求
+     */
+    private static long perSubscriber(ServiceInstances serviceInstances, ServiceSnapshot snapshot, int subscribers) {
+        long bytes = 0;
+        for(int i = 0; i < subscribers; i++) {
+            List<String> serviceInstanceAddresses = new ArrayList<>();
+            for(ServiceInstance serviceInstance : snapshot.getServiceInstances()) {
+                serviceInstanceAddresses.add(serviceInstance.getAddress());
+            }
+            Request request = new ServiceChangedRequest.Builder()
+                    .serviceName(serviceInstances.getServiceName())
+                    .serviceInstanceAddresses(serviceInstanceAddresses)
+                    .serviceVersion(snapshot.getVersion())
+                    .build();
+            bytes += request.getData().remaining();
+        }
+        return bytes;
+    }
+
+    /**
+     * 所有订阅者共用一份请求体，每个订阅者只构建自己的请求头
+     */
+    private static long shared(ServiceInstances serviceInstances, ServiceSnapshot snapshot,
+                               int subscribers, long fromVersion) {
+        ServiceChangedPush push = new ServiceChangedPush(serviceInstances, snapshot);
+        long bytes = 0;
+        for(int i = 0; i < subscribers; i++) {
+            SharedRequestBody sharedBody = fromVersion == Request.UNKNOWN_SERVICE_VERSION ?
+                    push.getFullBody(Request.PROTOCOL_VERSION_2) : push.getDeltaBody(fromVersion);
+            Request request = new SharedBodyRequest.Builder()
+                    .sharedBody(sharedBody)
+                    .build();
+            for(int j = 0; j < request.getBufferCount(); j++) {
+                bytes += request.getBuffer(j).remaining();
+            }
+        }
+        return bytes;
+    }
+
+    private static void verify(ServiceInstances serviceInstances) throws Exception {
+        ServiceSnapshot snapshot = serviceInstances.getSnapshot(System.currentTimeMillis());
+        ServiceChangedPush push = new ServiceChangedPush(serviceInstances, snapshot);
+
+        Queue<Message> messageQueue = new LinkedList<>();
+        for(int protocolVersion : new int[] {Request.PROTOCOL_VERSION_1, Request.PROTOCOL_VERSION_2}) {
+            for(int i = 0; i < 3; i++) {
+                messageQueue.offer(new SharedBodyRequest.Builder()
+                        .protocolVersion(protocolVersion)
+                        .sharedBody(push.getFullBody(protocolVersion))
+                        .build());
+            }
+        }
+        messageQueue.offer(new SharedBodyRequest.Builder()
+                .sharedBody(push.getDeltaBody(snapshot.getVersion() - 2))
+                .build());
+        check(push.getFullBody(Request.PROTOCOL_VERSION_2) == push.getFullBody(Request.PROTOCOL_VERSION_2),
+                "同一个协议版本只编码一次");
+
+        // 每次最多写1000个字节，请求头和请求体都会被写一半
+        LimitedChannel channel = new LimitedChannel(1000);
+        MessageBatchWriter messageBatchWriter = new MessageBatchWriter(4, Integer.MAX_VALUE);
+        while(!messageBatchWriter.write(channel, messageQueue)) {
+        }
+
+        MessageDecoder messageDecoder = new MessageDecoder(new ByteBufferPool(1024 * 1024, 8, false));
+        List<Message> messages = new ArrayList<>();
+        messageDecoder.read(Channels.newChannel(new ByteArrayInputStream(channel.output.toByteArray())), messages);
+        check(messages.size() == 7, "解析出所有请求");
+        for(int i = 0; i < 6; i++) {
+            ServiceChangedRequest request = (ServiceChangedRequest) messages.get(i);
+            check(request.getServiceInstanceAddresses().equals(snapshot.getServiceInstanceAddresses()), "地址列表");
+            check(request.getServiceVersion() == (i < 3 ? Request.UNKNOWN_SERVICE_VERSION : snapshot.getVersion()),
+                    "第二版协议才带版本号");
+            check(i == 0 || request.getId() != ((Request) messages.get(i - 1)).getId(), "每个连接的请求id不一样");
+        }
+        ServiceChangedDeltaRequest deltaRequest = (ServiceChangedDeltaRequest) messages.get(6);
+        check(deltaRequest.getToVersion() == snapshot.getVersion()
+                && deltaRequest.getAddedAddresses().size() == 2, "增量请求");
+    }
+
+    private static ServiceInstance newServiceInstance(int i) {
+        return new ServiceInstance(SERVICE_NAME, "10.0." + (i >> 8 & 255) + "." + (i & 255), 8080);
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+    /**
+     * 每次write最多写入指定字节数的channel，模拟socket写缓冲满了
+     */
+    static class LimitedChannel implements GatheringByteChannel {
+
+        private final int maxBytesPerWrite;
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+        LimitedChannel(int maxBytesPerWrite) {
+            this.maxBytesPerWrite = maxBytesPerWrite;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            long written = 0;
+            for(int i = offset; i < offset + length && written < maxBytesPerWrite; i++) {
+                written += write(srcs[i], (int) (maxBytesPerWrite - written));
+            }
+            return written;
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs) {
+            return write(srcs, 0, srcs.length);
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return write(src, maxBytesPerWrite);
+        }
+
+        private int write(ByteBuffer src, int maxBytes) {
+            int bytes = Math.min(src.remaining(), maxBytes);
+            for(int i = 0; i < bytes; i++) {
+                output.write(src.get());
+            }
+            return bytes;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+    }
+
+}
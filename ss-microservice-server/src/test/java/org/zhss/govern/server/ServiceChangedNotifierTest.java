@@ -0,0 +1,64 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.slot.registry.ServiceChangedNotifier;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+
+/**
+ * 服务变动通知合并的测试程序
+ *
+ * 用法：ServiceChangedNotifierTest [服务实例数量] [每次注册间隔毫秒数]
+ * 先确认一次孤立的变动会立即推送，再模拟滚动发布，统计变动次数、推送次数和合并比例
+ * 使用默认配置：合并窗口100ms，立即推送第一次变动
+ */
+public class ServiceChangedNotifierTest {
+
+    public static void main(String[] args) throws Exception {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        long intervalMillis = args.length > 1 ? Long.parseLong(args[1]) : 4;
+        long windowMillis = Configuration.getInstance().getServiceChangedNotifyWindow();
+
+        ServiceChangedNotifier notifier = ServiceChangedNotifier.getInstance();
+        ServiceRegistry serviceRegistry = new ServiceRegistry("test", false);
+        serviceRegistry.subscribe("client-connection", "ORDER-SERVICE");
+
+        // 孤立的一次变动立即推送
+        serviceRegistry.register(newServiceInstance(0));
+        check(notifier.getPushCount() == 1, "孤立的变动立即推送");
+
+        // 滚动发布
+        Thread.sleep(windowMillis * 2);
+        long changedBefore = notifier.getChangedCount();
+        long pushBefore = notifier.getPushCount();
+        long start = System.currentTimeMillis();
+        for(int i = 1; i <= instances; i++) {
+            serviceRegistry.register(newServiceInstance(i));
+            Thread.sleep(intervalMillis);
+        }
+        long elapsed = System.currentTimeMillis() - start;
+
+        // 等最后一个合并窗口推送出去
+        Thread.sleep(windowMillis * 3);
+        long changed = notifier.getChangedCount() - changedBefore;
+        long pushes = notifier.getPushCount() - pushBefore;
+        check(changed == instances, "变动次数");
+        check(pushes <= elapsed / windowMillis + 2, "每个合并窗口最多推送一次");
+        check(serviceRegistry.getServiceInstances("ORDER-SERVICE").getSnapshot(
+                System.currentTimeMillis()).getVersion() == instances + 1, "最后一次推送是最新的快照");
+
+        System.out.printf("rollout: %d changes in %d ms, window=%d ms, pushes=%d, coalescing ratio=%.1f%n",
+                changed, elapsed, windowMillis, pushes, (double) changed / pushes);
+    }
+
+    private static ServiceInstance newServiceInstance(int i) {
+        return new ServiceInstance("ORDER-SERVICE", "10.0." + (i >> 8 & 255) + "." + (i & 255), 8080);
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
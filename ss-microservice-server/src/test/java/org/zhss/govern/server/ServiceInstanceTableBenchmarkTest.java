@@ -0,0 +1,144 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceInstanceTable;
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Properties;
+
+/**
+ * 基本类型数组的服务实例表的测试程序
+ *
+ * 用法：ServiceInstanceTableBenchmarkTest [是否使用基本类型数组的服务实例表] [服务实例数量]
+ * 两种模式各跑一个JVM，比如 -Xmx2g ServiceInstanceTableBenchmarkTest false 1000000
+ * 先校验服务实例表的放入、心跳、删除，再往注册表里注册大量服务实例，
+ * 统计注册表占用的堆内存、full gc的停顿时间和心跳的耗时
+ */
+public class ServiceInstanceTableBenchmarkTest {
+
+    private static final int SERVICES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        boolean primitiveInstanceTable = args.length > 0 && Boolean.parseBoolean(args[0]);
+        int instances = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+
+        verify();
+
+        Configuration.getInstance().parse(writeConfig(primitiveInstanceTable).getAbsolutePath());
+        String[] serviceNames = new String[SERVICES];
+        int[] serviceNameIds = new int[SERVICES];
+        for(int i = 0; i < SERVICES; i++) {
+            serviceNames[i] = "SERVICE-" + i;
+            serviceNameIds[i] = ServiceNameDictionary.getInstance().intern(serviceNames[i]).getId();
+        }
+        String[] serviceInstanceIps = new String[instances / SERVICES + 1];
+        for(int i = 0; i < serviceInstanceIps.length; i++) {
+            serviceInstanceIps[i] = "10." + (i >> 16 & 255) + "." + (i >> 8 & 255) + "." + (i & 255);
+        }
+
+        long heapBefore = usedHeapAfterGc();
+        ServiceRegistry serviceRegistry = new ServiceRegistry("table-test", false);
+        // 注册、gc花的时间比较长，心跳时间设置到一个小时以后，不要让服务实例在测试过程中心跳超时
+        long latestHeartbeatTime = System.currentTimeMillis() + 3600 * 1000L;
+        for(int i = 0; i < instances; i++) {
+            ServiceInstance serviceInstance = new ServiceInstance(
+                    serviceNames[i % SERVICES], serviceInstanceIps[i / SERVICES], 8080);
+            serviceInstance.setLatestHeartbeatTime(latestHeartbeatTime);
+            serviceRegistry.register(serviceInstance);
+        }
+        long heapAfter = usedHeapAfterGc();
+
+        // full gc要标记所有存活的对象，停顿时间跟注册表里的对象数量成正比
+        long gcTime = totalGcTime();
+        int fullGcs = 5;
+        for(int i = 0; i < fullGcs; i++) {
+            System.gc();
+        }
+        gcTime = totalGcTime() - gcTime;
+
+        long heartbeats = instances * 5L;
+        long start = System.nanoTime();
+        for(long i = 0; i < heartbeats; i++) {
+            int n = (int) (i % instances);
+            check(serviceRegistry.heartbeat(serviceNameIds[n % SERVICES], serviceNames[n % SERVICES],
+                    serviceInstanceIps[n / SERVICES], 8080, System.currentTimeMillis()), "注册过的服务实例都能心跳");
+        }
+        long heartbeatNanos = System.nanoTime() - start;
+
+        System.out.printf("primitiveInstanceTable=%s instances=%d: registry heap %.1f MB (%.0f B/instance), " +
+                        "full gc %.1f ms/pause, heartbeat %.1f ns/op%n",
+                primitiveInstanceTable, instances,
+                (heapAfter - heapBefore) / 1024.0 / 1024.0, (double) (heapAfter - heapBefore) / instances,
+                (double) gcTime / fullGcs, (double) heartbeatNanos / heartbeats);
+        System.exit(0);
+    }
+
+    private static void verify() {
+        ServiceInstanceTable serviceInstanceTable = new ServiceInstanceTable();
+        for(long key = 0; key < 10000; key++) {
+            serviceInstanceTable.put(key << 16 | 8080, key);
+        }
+        check(serviceInstanceTable.size() == 10000, "扩容以后服务实例都在");
+        check(serviceInstanceTable.heartbeat(5L << 16 | 8080, 100L), "心跳");
+        check(serviceInstanceTable.getHeartbeatTime(5L << 16 | 8080) == 100L, "更新了心跳时间");
+        check(!serviceInstanceTable.heartbeat(5L << 16 | 9090, 100L), "没有放入过的服务实例");
+        for(long key = 0; key < 10000; key += 2) {
+            check(serviceInstanceTable.remove(key << 16 | 8080), "删除");
+        }
+        check(!serviceInstanceTable.remove(0L << 16 | 8080), "重复删除");
+        for(long key = 1; key < 10000; key += 2) {
+            check(serviceInstanceTable.getHeartbeatTime(key << 16 | 8080) == (key == 5 ? 100L : key),
+                    "删除以后探测链上的服务实例还能找到");
+        }
+        check(serviceInstanceTable.size() == 5000, "服务实例数量");
+    }
+
+    private static long usedHeapAfterGc() {
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long totalGcTime() {
+        long gcTime = 0;
+        for(GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcTime += garbageCollector.getCollectionTime();
+        }
+        return gcTime;
+    }
+
+    private static File writeConfig(boolean primitiveInstanceTable) throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.NODE_ID, "1");
+        properties.setProperty(Configuration.NODE_IP, "127.0.0.1");
+        properties.setProperty(Configuration.NODE_INTERN_TCP_PORT, "19601");
+        properties.setProperty(Configuration.NODE_CLIENT_HTTP_PORT, "19602");
+        properties.setProperty(Configuration.NODE_CLIENT_TCP_PORT, "19603");
+        properties.setProperty(Configuration.IS_CONTROLLER_CANDIDATE, "false");
+        properties.setProperty(Configuration.DATA_DIR,
+                new File(System.getProperty("java.io.tmpdir"), "ss-microservice-benchmark").getAbsolutePath());
+        properties.setProperty(Configuration.CONTROLLER_CANDIDATE_SERVERS, "127.0.0.1:19601");
+        properties.setProperty(Configuration.REGISTRY_PRIMITIVE_INSTANCE_TABLE, String.valueOf(primitiveInstanceTable));
+
+        File configFile = File.createTempFile("ss-microservice-benchmark", ".properties");
+        configFile.deleteOnExit();
+        try(FileOutputStream outputStream = new FileOutputStream(configFile)) {
+            properties.store(outputStream, null);
+        }
+        return configFile;
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
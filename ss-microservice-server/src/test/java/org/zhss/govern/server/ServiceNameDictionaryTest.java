@@ -0,0 +1,117 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.HeartbeatRequest;
+import com.zhss.microservice.common.utils.ServiceNameDictionary;
+import com.zhss.microservice.common.utils.SlotRoutingTable;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+/**
+ * 服务名称字典的测试程序
+ *
+ * 用法：ServiceNameDictionaryTest [解码次数]
+ * 先校验同一个名称每次都拿到同一个id、缓存的槽位跟路由算出来的一致、读完以后position移到名称后面
+ * 再对比每次new String解码服务名称和从字典里查服务名称分配的字节数
+ */
+public class ServiceNameDictionaryTest {
+
+    private static final int SERVICES = 100;
+
+    public static void main(String[] args) {
+        int decodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+
+        ServiceNameDictionary dictionary = ServiceNameDictionary.getInstance();
+        ByteBuffer[] frames = new ByteBuffer[SERVICES];
+        for(int i = 0; i < SERVICES; i++) {
+            frames[i] = frame("SERVICE-" + i);
+        }
+
+        for(int i = 0; i < SERVICES; i++) {
+            ServiceNameDictionary.Entry entry = read(dictionary, frames[i]);
+            check(entry.getServiceName().equals("SERVICE-" + i), "解码出来的服务名称");
+            check(entry.getSlot() == SlotRoutingTable.routeSlot("SERVICE-" + i), "缓存的槽位");
+            check(frames[i].getInt() == 8080, "读完以后position移到名称后面");
+            check(read(dictionary, frames[i]) == entry, "同一个名称拿到同一个条目");
+            check(dictionary.intern("SERVICE-" + i) == entry, "用字符串查到同一个条目");
+        }
+        check(read(dictionary, frames[1]).getId() != read(dictionary, frames[2]).getId(), "不同的名称不同的id");
+
+        HeartbeatRequest heartbeatRequest = HeartbeatRequest.deserialize(heartbeatBody("SERVICE-7"));
+        check(heartbeatRequest.getServiceName() == read(dictionary, frames[7]).getServiceName(), "解码请求用的是字典里的名称");
+        check(heartbeatRequest.getServiceSlot() == SlotRoutingTable.routeSlot("SERVICE-7"), "解码请求带上了槽位");
+
+        com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long blackhole = 0;
+
+        for(int round = 0; round < 3; round++) {
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for(int i = 0; i < decodes; i++) {
+                ByteBuffer frame = frames[i % SERVICES];
+                frame.rewind();
+                byte[] serviceNameBytes = new byte[frame.getInt()];
+                frame.get(serviceNameBytes);
+                String serviceName = new String(serviceNameBytes);
+                blackhole += SlotRoutingTable.routeSlot(serviceName);
+            }
+            long stringNanos = System.nanoTime() - start;
+            long stringBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            start = System.nanoTime();
+            for(int i = 0; i < decodes; i++) {
+                blackhole += read(dictionary, frames[i % SERVICES]).getSlot();
+            }
+            long dictionaryNanos = System.nanoTime() - start;
+            long dictionaryBytes = threadMXBean.getThreadAllocatedBytes(threadId) - allocated;
+
+            System.out.printf("round %d: new String %.1f ns/op %.1f B/op, dictionary %.1f ns/op %.2f B/op%n",
+                    round,
+                    (double) stringNanos / decodes, (double) stringBytes / decodes,
+                    (double) dictionaryNanos / decodes, (double) dictionaryBytes / decodes);
+        }
+        System.out.println("blackhole=" + blackhole + " dictionary size=" + dictionary.size());
+    }
+
+    private static ServiceNameDictionary.Entry read(ServiceNameDictionary dictionary, ByteBuffer frame) {
+        frame.rewind();
+        return dictionary.read(frame, frame.getInt());
+    }
+
+    /**
+     * 服务名称长度 + 服务名称 + 端口号
+     */
+    private static ByteBuffer frame(String serviceName) {
+        ByteBuffer frame = ByteBuffer.allocate(4 + serviceName.length() + 4);
+        frame.putInt(serviceName.length());
+        frame.put(serviceName.getBytes());
+        frame.putInt(8080);
+        frame.flip();
+        return frame;
+    }
+
+    /**
+     * 心跳请求去掉请求头以后的请求体
+     */
+    private static ByteBuffer heartbeatBody(String serviceName) {
+        ByteBuffer data = new HeartbeatRequest.Builder()
+                .serviceName(serviceName)
+                .serviceInstanceIp("10.0.0.1")
+                .serviceInstancePort(8080)
+                .build()
+                .getData();
+        int headerBytes = data.limit() - (4 + serviceName.length() + 4 + "10.0.0.1".length() + 4);
+        data.position(headerBytes);
+        return data.slice();
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
@@ -0,0 +1,128 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.server.slot.registry.ServiceDelta;
+import com.zhss.microservice.server.slot.registry.ServiceInstance;
+import com.zhss.microservice.server.slot.registry.ServiceInstances;
+import com.zhss.microservice.server.slot.registry.ServiceSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 服务实例列表快照的测试和压测程序
+ *
+ * 用法：ServiceSnapshotBenchmarkTest [服务实例数量] [变动次数] [订阅者数量]
+ * 先校验版本号、变动记录和快照发布限流的语义
+ * 再模拟滚动发布：每次摘除一个旧的服务实例、注册一个新的服务实例，每次变动之后通知所有订阅者
+ * 对比原来的CopyOnWriteArrayList加每个订阅者重新生成地址列表，和按需发布、所有订阅者共用的快照
+ */
+public class ServiceSnapshotBenchmarkTest {
+
+    public static void main(String[] args) {
+        int instances = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int changes = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+        int subscribers = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        verify();
+
+        for(int round = 0; round < 3; round++) {
+            long copyOnWrite = copyOnWrite(instances, changes, subscribers);
+            long snapshot = snapshot(instances, changes, subscribers, 0);
+            long limited = snapshot(instances, changes, subscribers, 10);
+            if(round == 0) {
+                continue;
+            }
+            System.out.printf("instances=%d subscribers=%d copy-on-write list: %.1f us/change%n",
+                    instances, subscribers, copyOnWrite / 1000.0 / changes);
+            System.out.printf("instances=%d subscribers=%d snapshot:           %.1f us/change%n",
+                    instances, subscribers, snapshot / 1000.0 / changes);
+            System.out.printf("instances=%d subscribers=%d snapshot(10ms):     %.1f us/change%n",
+                    instances, subscribers, limited / 1000.0 / changes);
+        }
+    }
+
+    private static void verify() {
+        ServiceInstances serviceInstances = new ServiceInstances("SERVICE", 4, 1000);
+        check(serviceInstances.add(newServiceInstance(1)), "新增服务实例");
+        check(!serviceInstances.add(newServiceInstance(1)), "重复注册不算变动");
+        check(serviceInstances.getVersion() == 1, "版本号");
+
+        ServiceSnapshot snapshot = serviceInstances.getSnapshot(1000);
+        check(snapshot.getVersion() == 1 && snapshot.getServiceInstanceAddresses().size() == 1, "第一次发布");
+
+        serviceInstances.add(newServiceInstance(2));
+        check(serviceInstances.getSnapshot(1500).getVersion() == 1, "发布间隔内返回旧快照");
+        check(serviceInstances.getSnapshot(2000).getVersion() == 2, "发布间隔到了发布新快照");
+
+        check(!serviceInstances.remove(newServiceInstance(1)), "不是同一个对象不摘除");
+        for(int i = 3; i <= 6; i++) {
+            serviceInstances.add(newServiceInstance(i));
+        }
+        List<ServiceDelta> deltas = serviceInstances.getDeltasSince(2);
+        check(deltas.size() == 4 && deltas.get(0).getVersion() == 3, "增量补齐");
+        check(serviceInstances.getDeltasSince(1) == null, "变动记录不够的时候要求全量");
+        check(serviceInstances.getDeltasSince(6).isEmpty(), "已经是最新版本");
+    }
+
+    private static long copyOnWrite(int instances, int changes, int subscribers) {
+        List<ServiceInstance> serviceInstances = new CopyOnWriteArrayList<>();
+        for(int i = 0; i < instances; i++) {
+            serviceInstances.add(newServiceInstance(i));
+        }
+
+        long start = System.nanoTime();
+        long addresses = 0;
+        for(int i = 0; i < changes; i++) {
+            serviceInstances.remove(0);
+            serviceInstances.add(newServiceInstance(instances + i));
+
+            for(int j = 0; j < subscribers; j++) {
+                List<String> serviceInstanceAddresses = new ArrayList<>();
+                for(ServiceInstance serviceInstance : serviceInstances) {
+                    serviceInstanceAddresses.add(serviceInstance.getAddress());
+                }
+                addresses += serviceInstanceAddresses.size();
+            }
+        }
+        check(addresses == (long) instances * changes * subscribers, "地址数量");
+        return System.nanoTime() - start;
+    }
+
+    private static long snapshot(int instances, int changes, int subscribers, long publishIntervalMillis) {
+        List<ServiceInstance> registered = new ArrayList<>();
+        ServiceInstances serviceInstances = new ServiceInstances("SERVICE", 256, publishIntervalMillis);
+        for(int i = 0; i < instances; i++) {
+            ServiceInstance serviceInstance = newServiceInstance(i);
+            serviceInstances.add(serviceInstance);
+            registered.add(serviceInstance);
+        }
+
+        long start = System.nanoTime();
+        long addresses = 0;
+        for(int i = 0; i < changes; i++) {
+            serviceInstances.remove(registered.get(i));
+            ServiceInstance serviceInstance = newServiceInstance(instances + i);
+            serviceInstances.add(serviceInstance);
+            registered.add(serviceInstance);
+
+            ServiceSnapshot snapshot = serviceInstances.getSnapshot(System.currentTimeMillis());
+            for(int j = 0; j < subscribers; j++) {
+                addresses += snapshot.getServiceInstanceAddresses().size();
+            }
+        }
+        check(addresses == (long) instances * changes * subscribers, "地址数量");
+        return System.nanoTime() - start;
+    }
+
+    private static ServiceInstance newServiceInstance(int i) {
+        return new ServiceInstance("SERVICE", "10.0." + (i >> 8 & 255) + "." + (i & 255), 8080 + (i >> 16));
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
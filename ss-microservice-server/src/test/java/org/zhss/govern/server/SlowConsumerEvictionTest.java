@@ -0,0 +1,114 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.common.entity.FetchServerNodeIdRequest;
+import com.zhss.microservice.server.config.Configuration;
+import com.zhss.microservice.server.node.network.ClientMessageQueue;
+import com.zhss.microservice.server.node.network.ClientMessageQueues;
+import com.zhss.microservice.server.node.network.ClientNIOServer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * 慢客户端断开的测试程序
+ *
+ * 客户端连续发送一批请求但是一直不读响应，服务端的发送队列超过上限以后客户端也不再发送请求，
+ * 这时候服务端等不到OP_WRITE事件，也没有新的消息要发送，校验连接还是会在超时以后被断开
+ */
+public class SlowConsumerEvictionTest {
+
+    private static final int PORT = 19610;
+    private static final int MAX_MESSAGES = 100;
+    private static final long SLOW_CONSUMER_TIMEOUT = 1000L;
+    private static final int REQUESTS_PER_BATCH = 10000;
+
+    public static void main(String[] args) throws Exception {
+        Configuration.getInstance().parse(writeConfig().getAbsolutePath());
+        ClientNIOServer.getInstance().start();
+        Thread.sleep(500);
+
+        Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress("127.0.0.1", PORT));
+        OutputStream outputStream = socket.getOutputStream();
+        byte[] request = new FetchServerNodeIdRequest.Builder().build().getData().array();
+        ClientMessageQueues clientMessageQueues = ClientMessageQueues.getInstance();
+
+        // 一直发请求不读响应，直到两端的socket缓冲都满了，服务端的发送队列一直超过上限
+        byte[] batch = new byte[request.length * REQUESTS_PER_BATCH];
+        for(int i = 0; i < REQUESTS_PER_BATCH; i++) {
+            System.arraycopy(request, 0, batch, i * request.length, request.length);
+        }
+        long deadline = System.currentTimeMillis() + 30000L;
+        ClientMessageQueue messageQueue = null;
+        while(System.currentTimeMillis() < deadline) {
+            outputStream.write(batch);
+            outputStream.flush();
+            Thread.sleep(100);
+            messageQueue = getMessageQueue(clientMessageQueues);
+            if(messageQueue == null || messageQueue.size() < MAX_MESSAGES) {
+                continue;
+            }
+            // 过了一会儿还超过上限，说明socket缓冲已经满了，IO线程发不出去了
+            Thread.sleep(500);
+            if(messageQueue.size() >= MAX_MESSAGES) {
+                break;
+            }
+        }
+        check(messageQueue != null && messageQueue.isCongested(), "发送队列超过上限");
+        long congestedTime = System.currentTimeMillis();
+
+        // 客户端什么都不做，等待服务端断开这个连接
+        deadline = congestedTime + SLOW_CONSUMER_TIMEOUT + 5000L;
+        while(getMessageQueue(clientMessageQueues) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        long evictedTime = System.currentTimeMillis();
+        check(getMessageQueue(clientMessageQueues) == null, "不读数据的慢客户端被断开");
+        check(evictedTime - messageQueue.getOverLimitSince() > SLOW_CONSUMER_TIMEOUT, "没有到超时时间就断开了");
+
+        System.out.println("queue=" + messageQueue + ", evicted after " + (evictedTime - congestedTime) + "ms");
+        socket.close();
+        System.exit(0);
+    }
+
+    private static ClientMessageQueue getMessageQueue(ClientMessageQueues clientMessageQueues) {
+        for(ClientMessageQueue messageQueue : clientMessageQueues.getMessageQueues().values()) {
+            return messageQueue;
+        }
+        return null;
+    }
+
+    private static File writeConfig() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty(Configuration.NODE_ID, "1");
+        properties.setProperty(Configuration.NODE_IP, "127.0.0.1");
+        properties.setProperty(Configuration.NODE_INTERN_TCP_PORT, "19611");
+        properties.setProperty(Configuration.NODE_CLIENT_HTTP_PORT, "19612");
+        properties.setProperty(Configuration.NODE_CLIENT_TCP_PORT, String.valueOf(PORT));
+        properties.setProperty(Configuration.IS_CONTROLLER_CANDIDATE, "false");
+        properties.setProperty(Configuration.DATA_DIR,
+                new File(System.getProperty("java.io.tmpdir"), "ss-microservice-slow-consumer").getAbsolutePath());
+        properties.setProperty(Configuration.CONTROLLER_CANDIDATE_SERVERS, "127.0.0.1:19611");
+        properties.setProperty(Configuration.CLIENT_OUTBOUND_QUEUE_MAX_MESSAGES, String.valueOf(MAX_MESSAGES));
+        properties.setProperty(Configuration.CLIENT_SLOW_CONSUMER_TIMEOUT, String.valueOf(SLOW_CONSUMER_TIMEOUT));
+
+        File configFile = File.createTempFile("ss-microservice-slow-consumer", ".properties");
+        configFile.deleteOnExit();
+        try(FileOutputStream outputStream = new FileOutputStream(configFile)) {
+            properties.store(outputStream, null);
+        }
+        return configFile;
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package org.zhss.govern.server;
+
+import com.zhss.microservice.server.slot.registry.ServiceRegistry;
+import com.zhss.microservice.server.slot.registry.SubscriptionIndex;
+
+/**
+ * 订阅关系索引的测试程序
+ *
+ * 用法：SubscriptionIndexTest [连接数量] [每个连接订阅的服务数量]
+ * 先校验重复订阅只算一次、断开连接的时候取消它所有的订阅
+ * 再模拟大量客户端反复连接、订阅、断开，确认订阅者不会越积越多，并统计断开连接时清理订阅的耗时
+ */
+public class SubscriptionIndexTest {
+
+    private static final int SERVICES = 100;
+
+    public static void main(String[] args) {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int subscriptionsPerConnection = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        ServiceRegistry[] serviceRegistries = new ServiceRegistry[] {
+                new ServiceRegistry("test-0", false), new ServiceRegistry("test-1", false)};
+        SubscriptionIndex subscriptionIndex = SubscriptionIndex.getInstance();
+
+        // 重复订阅
+        for(int i = 0; i < 3; i++) {
+            registry(serviceRegistries, 0).subscribe("connection-a", service(0));
+            registry(serviceRegistries, 1).subscribe("connection-a", service(1));
+        }
+        registry(serviceRegistries, 0).subscribe("connection-b", service(0));
+        check(registry(serviceRegistries, 0).getSubscriberCount(service(0)) == 2, "重复订阅只算一次");
+        check(subscriptionIndex.getSubscriptionCount("connection-a") == 2, "连接订阅的服务");
+
+        // 断开连接
+        check(subscriptionIndex.removeConnection("connection-a") == 2, "取消连接的所有订阅");
+        check(registry(serviceRegistries, 0).getSubscriberCount(service(0)) == 1, "只取消断开的连接");
+        check(registry(serviceRegistries, 1).getSubscriberCount(service(1)) == 0, "另一个分片的订阅也取消了");
+        check(subscriptionIndex.removeConnection("connection-a") == 0, "重复清理");
+        subscriptionIndex.removeConnection("connection-b");
+
+        // 客户端反复连接、订阅、断开，同时最多保持1000个连接
+        long removeNanos = 0;
+        for(int i = 0; i < connections; i++) {
+            String clientConnectionId = "connection-" + i;
+            for(int j = 0; j < subscriptionsPerConnection; j++) {
+                int serviceNo = (i + j * 7) % SERVICES;
+                registry(serviceRegistries, serviceNo).subscribe(clientConnectionId, service(serviceNo));
+            }
+            if(i >= 1000) {
+                long start = System.nanoTime();
+                subscriptionIndex.removeConnection("connection-" + (i - 1000));
+                removeNanos += System.nanoTime() - start;
+            }
+        }
+
+        int subscribers = 0;
+        for(int serviceNo = 0; serviceNo < SERVICES; serviceNo++) {
+            subscribers += registry(serviceRegistries, serviceNo).getSubscriberCount(service(serviceNo));
+        }
+        check(subscriptionIndex.getConnectionCount() == Math.min(connections, 1000), "有订阅的连接数量");
+        check(subscribers == Math.min(connections, 1000) * subscriptionsPerConnection, "订阅者没有越积越多");
+
+        System.out.printf("connections=%d subscriptions/connection=%d remaining subscribers=%d, %.2f us/disconnect%n",
+                connections, subscriptionsPerConnection, subscribers,
+                removeNanos / 1000.0 / Math.max(1, connections - 1000));
+    }
+
+    private static ServiceRegistry registry(ServiceRegistry[] serviceRegistries, int serviceNo) {
+        return serviceRegistries[serviceNo % serviceRegistries.length];
+    }
+
+    private static String service(int serviceNo) {
+        return "SERVICE-" + serviceNo;
+    }
+
+    private static void check(boolean condition, String message) {
+        if(!condition) {
+            throw new IllegalStateException("校验失败：" + message);
+        }
+    }
+
+}